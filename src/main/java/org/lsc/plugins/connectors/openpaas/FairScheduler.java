@@ -0,0 +1,265 @@
+/*
+ ****************************************************************************
+ * Ldap Synchronization Connector provides tools to synchronize
+ * electronic identities from a list of data sources including
+ * any database with a JDBC connector, another LDAP directory,
+ * flat files...
+ *
+ *                  ==LICENSE NOTICE==
+ * 
+ * Copyright (c) 2008 - 2019 LSC Project 
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+
+ *    * Redistributions of source code must retain the above copyright
+ * notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ * notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the LSC Project nor the names of its
+ * contributors may be used to endorse or promote products derived from
+ * this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS
+ * IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED
+ * TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A
+ * PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER
+ * OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ *                  ==LICENSE NOTICE==
+ *
+ *               (c) 2008 - 2019 LSC Project
+ *         Raphael Ouazana <rouazana@linagora.com>
+ ****************************************************************************
+ */
+package org.lsc.plugins.connectors.openpaas;
+
+import java.util.ArrayDeque;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import javax.ws.rs.ProcessingException;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.collect.ImmutableMap;
+
+/**
+ * Shares a budget of concurrent OpenPaaS requests between the tenants, i.e. the OpenPaaS
+ * instances, a JVM synchronizes. Each tenant queues its requests on its own; when a request
+ * completes, the freed slot goes to the waiting tenant with the fewest requests in flight
+ * relative to its weight, so that a slow tenant holding its slots does not delay the others.
+ * A tenant never has more requests in flight than its weighted share of the budget, at least
+ * one, so that a tenant whose requests hang cannot hold every slot. A tenant alone may use the
+ * whole budget.
+ */
+public class FairScheduler {
+
+	public static final int DEFAULT_CONCURRENCY = 16;
+	public static final int DEFAULT_WEIGHT = 1;
+
+	private static final Logger LOGGER = LoggerFactory.getLogger(FairScheduler.class);
+
+	private static FairScheduler shared;
+
+	private final int concurrency;
+	private final Map<String, Tenant> tenants = new LinkedHashMap<>();
+	private int inFlight;
+	private long nextTicket;
+
+	public FairScheduler(int concurrency) {
+		this.concurrency = concurrency;
+	}
+
+	/**
+	 * @return the scheduler of the JVM, created with the concurrency of the first service using it
+	 */
+	public static synchronized FairScheduler shared(int concurrency) {
+		if (shared == null) {
+			shared = new FairScheduler(concurrency);
+		} else if (shared.concurrency != concurrency) {
+			LOGGER.warn(String.format("OpenPaaS request scheduler already started with a concurrency of %d, ignoring %d", shared.concurrency, concurrency));
+		}
+		return shared;
+	}
+
+	/**
+	 * @return the tenant of the given name, whose weight is updated if it already exists,
+	 *         to be left once no longer used
+	 */
+	public synchronized Tenant tenant(String name, int weight) {
+		Tenant tenant = tenants.computeIfAbsent(name, key -> new Tenant(name));
+		tenant.weight = weight;
+		tenant.users++;
+		return tenant;
+	}
+
+	/**
+	 * Removes the tenant once its last user leaves it, so that the others share its slots.
+	 */
+	public synchronized void leave(Tenant tenant) {
+		if (--tenant.users == 0) {
+			tenants.remove(tenant.name, tenant);
+			notifyAll();
+		}
+	}
+
+	/**
+	 * @return the metrics of each tenant, by name
+	 */
+	public synchronized Map<String, TenantMetrics> getMetrics() {
+		ImmutableMap.Builder<String, TenantMetrics> metrics = ImmutableMap.builder();
+		tenants.values().forEach(tenant -> metrics.put(tenant.name, new TenantMetrics(tenant)));
+		return metrics.build();
+	}
+
+	/**
+	 * Waits for a request slot, in the queue of the tenant.
+	 */
+	synchronized void acquire(Tenant tenant) {
+		long ticket = nextTicket++;
+		long queuedAt = System.nanoTime();
+		tenant.queue.add(ticket);
+		tenant.maxQueueDepth = Math.max(tenant.maxQueueDepth, tenant.queue.size());
+		try {
+			while (!(inFlight < concurrency && tenant.queue.peekFirst() == ticket && nextTenant() == tenant)) {
+				wait();
+			}
+		} catch (InterruptedException e) {
+			tenant.queue.remove(ticket);
+			notifyAll();
+			Thread.currentThread().interrupt();
+			throw new ProcessingException("Interrupted while waiting for an OpenPaaS request slot", e);
+		}
+		tenant.queue.removeFirst();
+		tenant.inFlight++;
+		inFlight++;
+		tenant.waitNanos += System.nanoTime() - queuedAt;
+		// Another tenant may take the next slot
+		notifyAll();
+	}
+
+	synchronized void release(Tenant tenant, long latencyNanos) {
+		tenant.inFlight--;
+		inFlight--;
+		tenant.requests++;
+		tenant.latencyNanos += latencyNanos;
+		tenant.maxLatencyNanos = Math.max(tenant.maxLatencyNanos, latencyNanos);
+		notifyAll();
+	}
+
+	/**
+	 * @return the weighted share of the budget of the tenant, rounded up
+	 */
+	int share(Tenant tenant) {
+		int totalWeight = tenants.values().stream().mapToInt(other -> other.weight).sum();
+		return Math.max(1, (int) Math.ceil((double) concurrency * tenant.weight / Math.max(totalWeight, tenant.weight)));
+	}
+
+	private Tenant nextTenant() {
+		return tenants.values().stream()
+			.filter(tenant -> !tenant.queue.isEmpty() && tenant.inFlight < share(tenant))
+			.min(Comparator.comparingDouble((Tenant tenant) -> (double) tenant.inFlight / tenant.weight)
+				.thenComparingLong(tenant -> tenant.queue.peekFirst()))
+			.orElse(null);
+	}
+
+	/**
+	 * The requests to an OpenPaaS instance, with their statistics. Guarded by the scheduler.
+	 */
+	public static class Tenant {
+		private final String name;
+		private final Deque<Long> queue = new ArrayDeque<>();
+		private int weight = DEFAULT_WEIGHT;
+		private int users;
+		private int inFlight;
+		private int maxQueueDepth;
+		private long requests;
+		private long latencyNanos;
+		private long maxLatencyNanos;
+		private long waitNanos;
+
+		private Tenant(String name) {
+			this.name = name;
+		}
+
+		public String getName() {
+			return name;
+		}
+	}
+
+	/**
+	 * Snapshot of the statistics of a tenant.
+	 */
+	public static class TenantMetrics {
+		private final int weight;
+		private final int inFlight;
+		private final int queueDepth;
+		private final int maxQueueDepth;
+		private final long requests;
+		private final long meanLatencyMillis;
+		private final long maxLatencyMillis;
+		private final long meanWaitMillis;
+
+		private TenantMetrics(Tenant tenant) {
+			weight = tenant.weight;
+			inFlight = tenant.inFlight;
+			queueDepth = tenant.queue.size();
+			maxQueueDepth = tenant.maxQueueDepth;
+			requests = tenant.requests;
+			meanLatencyMillis = tenant.requests > 0 ? TimeUnit.NANOSECONDS.toMillis(tenant.latencyNanos / tenant.requests) : 0;
+			maxLatencyMillis = TimeUnit.NANOSECONDS.toMillis(tenant.maxLatencyNanos);
+			meanWaitMillis = tenant.requests > 0 ? TimeUnit.NANOSECONDS.toMillis(tenant.waitNanos / tenant.requests) : 0;
+		}
+
+		public int getWeight() {
+			return weight;
+		}
+
+		public int getInFlight() {
+			return inFlight;
+		}
+
+		public int getQueueDepth() {
+			return queueDepth;
+		}
+
+		public int getMaxQueueDepth() {
+			return maxQueueDepth;
+		}
+
+		public long getRequests() {
+			return requests;
+		}
+
+		public long getMeanLatencyMillis() {
+			return meanLatencyMillis;
+		}
+
+		public long getMaxLatencyMillis() {
+			return maxLatencyMillis;
+		}
+
+		public long getMeanWaitMillis() {
+			return meanWaitMillis;
+		}
+
+		@Override
+		public String toString() {
+			return String.format("%d requests (latency mean %d ms, max %d ms), wait mean %d ms, queue depth %d (max %d), %d in flight, weight %d",
+					requests, meanLatencyMillis, maxLatencyMillis, meanWaitMillis, queueDepth, maxQueueDepth, inFlight, weight);
+		}
+	}
+}
@@ -0,0 +1,211 @@
+/*
+ ****************************************************************************
+ * Ldap Synchronization Connector provides tools to synchronize
+ * electronic identities from a list of data sources including
+ * any database with a JDBC connector, another LDAP directory,
+ * flat files...
+ *
+ *                  ==LICENSE NOTICE==
+ * 
+ * Copyright (c) 2008 - 2019 LSC Project 
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+
+ *    * Redistributions of source code must retain the above copyright
+ * notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ * notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the LSC Project nor the names of its
+ * contributors may be used to endorse or promote products derived from
+ * this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS
+ * IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED
+ * TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A
+ * PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER
+ * OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ *                  ==LICENSE NOTICE==
+ *
+ *               (c) 2008 - 2019 LSC Project
+ *         Raphael Ouazana <rouazana@linagora.com>
+ ****************************************************************************
+ */
+package org.lsc.plugins.connectors.openpaas;
+
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.lsc.LscModifications;
+import org.lsc.beans.IBean;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Dedicated lane for the requests to groups with many members, which can take minutes
+ * each. They run on {@code concurrency} lane threads, so that the LSC threads stay
+ * available for the small groups, and the requests to a same group run one after the
+ * other, in the order they were queued. At most {@code concurrency * QUEUED_PER_PLACE}
+ * requests wait in the lane: past that, the callers wait for a place in the queue.
+ */
+public class GiantGroupLane implements AutoCloseable {
+
+	public static final int DEFAULT_CONCURRENCY = 1;
+
+	public static final int QUEUED_PER_PLACE = 16;
+
+	private static final Logger LOGGER = LoggerFactory.getLogger(GiantGroupLane.class);
+
+	private final int threshold;
+	private final ExecutorService workers;
+	private final Semaphore queueSlots;
+
+	/**
+	 * The last request queued for each group, the next one runs once it is done.
+	 */
+	private final Map<String, CompletableFuture<?>> lastRequests = new ConcurrentHashMap<>();
+
+	/**
+	 * The groups seen with at least {@code threshold} members.
+	 */
+	private final Set<String> giantGroups = ConcurrentHashMap.newKeySet();
+
+	public GiantGroupLane(int threshold, int concurrency) {
+		this.threshold = threshold;
+		AtomicInteger threadCount = new AtomicInteger();
+		this.workers = Executors.newFixedThreadPool(concurrency, runnable -> {
+			Thread thread = new Thread(runnable, "openpaas-giant-group-" + threadCount.incrementAndGet());
+			thread.setDaemon(true);
+			return thread;
+		});
+		this.queueSlots = new Semaphore(concurrency * QUEUED_PER_PLACE, true);
+	}
+
+	/**
+	 * @return the number of members of the group before or after the modifications,
+	 *         whichever is larger, as known without querying OpenPaaS
+	 */
+	public static int memberCount(LscModifications lm) {
+		int count = Optional.ofNullable(lm.getModificationsItemsByHash().get("members"))
+			.map(List::size)
+			.orElse(0);
+		IBean destination = lm.getDestinationBean();
+		if (destination != null) {
+			Set<Object> members = destination.getDatasetById("members");
+			if (members != null) {
+				count = Math.max(count, members.size());
+			}
+		}
+		return count;
+	}
+
+	public boolean isGiant(int memberCount) {
+		return memberCount >= threshold;
+	}
+
+	public boolean isGiant(LscModifications lm) {
+		return isGiant(memberCount(lm));
+	}
+
+	/**
+	 * Remembers whether the group is giant, from its member count as just read.
+	 */
+	public void remember(String group, int memberCount) {
+		if (isGiant(memberCount)) {
+			giantGroups.add(key(group));
+		} else {
+			giantGroups.remove(key(group));
+		}
+	}
+
+	/**
+	 * @return true if the group was seen giant, or has requests in the lane, which the
+	 *         requests sent to it must then follow
+	 */
+	public boolean isKnown(String group) {
+		String key = key(group);
+		return giantGroups.contains(key) || lastRequests.containsKey(key);
+	}
+
+	/**
+	 * Queues a request to the group, run once the requests queued before to the same group are done.
+	 * Waits for a place in the queue if it is full.
+	 * @throws InterruptedException if interrupted while waiting, then nothing is queued
+	 */
+	public <T> CompletableFuture<T> submit(String group, Callable<T> request) throws InterruptedException {
+		if (!queueSlots.tryAcquire()) {
+			LOGGER.info("The giant groups lane is full, waiting for a place to queue: " + group);
+			queueSlots.acquire();
+		}
+		String key = key(group);
+		giantGroups.add(key);
+		CompletableFuture<T> next;
+		synchronized (lastRequests) {
+			CompletableFuture<?> previous = lastRequests.getOrDefault(key, CompletableFuture.completedFuture(null));
+			// Runs whatever the outcome of the previous request
+			next = previous.handleAsync((result, failure) -> call(request), workers);
+			lastRequests.put(key, next);
+		}
+		CompletableFuture<T> queued = next;
+		next.whenComplete((result, failure) -> {
+			queueSlots.release();
+			lastRequests.remove(key, queued);
+		});
+		return next;
+	}
+
+	private static <T> T call(Callable<T> request) {
+		try {
+			return request.call();
+		} catch (RuntimeException e) {
+			throw e;
+		} catch (Exception e) {
+			throw new CompletionException(e);
+		}
+	}
+
+	/**
+	 * Waits for the requests queued so far to be done, whatever their outcome.
+	 */
+	public void awaitQueued() throws InterruptedException {
+		CompletableFuture<?>[] queued = lastRequests.values().toArray(new CompletableFuture<?>[0]);
+		try {
+			CompletableFuture.allOf(queued).get();
+		} catch (ExecutionException e) {
+			// Failures are handled by those who queued the requests
+		}
+	}
+
+	/**
+	 * Stops the lane threads once the requests queued so far are done.
+	 */
+	@Override
+	public void close() {
+		workers.shutdown();
+	}
+
+	private static String key(String group) {
+		return group.toLowerCase(Locale.ROOT);
+	}
+}
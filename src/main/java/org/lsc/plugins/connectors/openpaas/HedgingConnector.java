@@ -0,0 +1,341 @@
+/*
+ ****************************************************************************
+ * Ldap Synchronization Connector provides tools to synchronize
+ * electronic identities from a list of data sources including
+ * any database with a JDBC connector, another LDAP directory,
+ * flat files...
+ *
+ *                  ==LICENSE NOTICE==
+ * 
+ * Copyright (c) 2008 - 2019 LSC Project 
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+
+ *    * Redistributions of source code must retain the above copyright
+ * notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ * notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the LSC Project nor the names of its
+ * contributors may be used to endorse or promote products derived from
+ * this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS
+ * IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED
+ * TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A
+ * PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER
+ * OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ *                  ==LICENSE NOTICE==
+ *
+ *               (c) 2008 - 2019 LSC Project
+ *         Raphael Ouazana <rouazana@linagora.com>
+ ****************************************************************************
+ */
+package org.lsc.plugins.connectors.openpaas;
+
+import java.util.Arrays;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.ws.rs.ProcessingException;
+
+import org.glassfish.jersey.client.ClientRequest;
+import org.glassfish.jersey.client.ClientResponse;
+import org.glassfish.jersey.client.spi.AsyncConnectorCallback;
+import org.glassfish.jersey.client.spi.Connector;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+/**
+ * Jersey connector sending a second copy of a lookup GET when the first one has not been
+ * answered within a percentile of the recent lookup latencies. The first copy is sent by the
+ * calling thread, the second one by a hedging thread. The first response wins: the first copy
+ * is {@link TimeoutConnector.Abort aborted} if the second one is answered before, otherwise
+ * the second response is closed when it comes.
+ * <p>
+ * Each copy goes through the connectors below, so that it takes its own slot when placed
+ * above a {@link ScheduledConnector}.
+ * <p>
+ * The extra requests are bounded by a budget: each lookup earns a fraction of a hedge, and
+ * hedging stops once the earned hedges are spent. Listings are never hedged, their duration
+ * depends on their size rather than on the server.
+ */
+public class HedgingConnector implements Connector {
+
+	private static final Logger LOGGER = LoggerFactory.getLogger(HedgingConnector.class);
+
+	public static final int DEFAULT_BUDGET_PERCENT = 5;
+
+	// Lookups timed before hedging starts, and lookups the percentile is computed over
+	static final int MIN_SAMPLES = 20;
+	private static final int WINDOW = 1000;
+	// New samples before the hedge delay is computed again
+	private static final int REFRESH_SAMPLES = 50;
+	// Hedges that can be saved up while the server is fast, in hundredths
+	private static final int MAX_SAVED_HEDGES = 10 * 100;
+
+	private final Connector delegate;
+	private final int percentile;
+	private final int budgetPercent;
+	private final ExecutorService executor;
+	private final ScheduledThreadPoolExecutor timer;
+
+	private final long[] latencies = new long[WINDOW];
+	private int sampleCount;
+	private int samplesSinceRefresh;
+	private volatile long hedgeDelayNanos = -1;
+	// Hedges earned and not spent yet, in hundredths of a hedge
+	private int savedHedges;
+
+	private final AtomicLong lookupCount = new AtomicLong();
+	private final AtomicLong hedgeCount = new AtomicLong();
+	private final AtomicLong hedgeWinCount = new AtomicLong();
+
+	/**
+	 * @param percentile the percentile of the recent lookup latencies after which a lookup is hedged
+	 * @param budgetPercent the maximum hedges per hundred lookups
+	 */
+	public HedgingConnector(Connector delegate, int percentile, int budgetPercent) {
+		this.delegate = delegate;
+		this.percentile = percentile;
+		this.budgetPercent = budgetPercent;
+		this.executor = Executors.newCachedThreadPool(new ThreadFactoryBuilder()
+				.setNameFormat("openpaas-hedging-%d")
+				.setDaemon(true)
+				.build());
+		this.timer = new ScheduledThreadPoolExecutor(1, new ThreadFactoryBuilder()
+				.setNameFormat("openpaas-hedging-timer-%d")
+				.setDaemon(true)
+				.build());
+		timer.setRemoveOnCancelPolicy(true);
+	}
+
+	/**
+	 * @return the lookups sent through this connector
+	 */
+	public long getLookupCount() {
+		return lookupCount.get();
+	}
+
+	/**
+	 * @return the lookups sent a second time
+	 */
+	public long getHedgeCount() {
+		return hedgeCount.get();
+	}
+
+	/**
+	 * @return the second copies answered before the first ones
+	 */
+	public long getHedgeWinCount() {
+		return hedgeWinCount.get();
+	}
+
+	/**
+	 * @return the current time after which a lookup is hedged, or -1 while too few lookups were timed
+	 */
+	public long getHedgeDelayMillis() {
+		long delay = hedgeDelayNanos;
+		return delay < 0 ? -1 : TimeUnit.NANOSECONDS.toMillis(delay);
+	}
+
+	@Override
+	public ClientResponse apply(ClientRequest request) throws ProcessingException {
+		if (!"GET".equals(request.getMethod())
+				|| RequestMonitor.Category.of(request.getMethod(), request.getUri().getPath(), request.getUri().getRawQuery())
+					!= RequestMonitor.Category.LOOKUPS) {
+			return delegate.apply(request);
+		}
+		lookupCount.incrementAndGet();
+		earnHedge();
+		long delay = hedgeDelayNanos;
+		if (delay < 0) {
+			return timed(request);
+		}
+		// Copied before sending, the connectors below may rewrite the request
+		Race race = new Race(new ClientRequest(request));
+		request.setProperty(TimeoutConnector.ABORT_PROPERTY, race.abort);
+		ScheduledFuture<?> hedge = timer.schedule(() -> race.hedge(delay), delay, TimeUnit.NANOSECONDS);
+		ClientResponse response;
+		try {
+			response = timed(request);
+		} catch (ProcessingException e) {
+			hedge.cancel(false);
+			return race.failed(e);
+		}
+		hedge.cancel(false);
+		return race.answered(response);
+	}
+
+	/**
+	 * The first copy of a lookup, sent by the caller, against the second one, sent by the hedging
+	 * executor once the hedge delay is over. The first response wins, and aborts the first copy
+	 * if it comes from the second one.
+	 */
+	private final class Race {
+		private final ClientRequest copy;
+		private final TimeoutConnector.Abort abort = new TimeoutConnector.Abort();
+		private final CompletableFuture<ClientResponse> winner = new CompletableFuture<>();
+		// Completed once the second copy is answered or failed
+		private final CompletableFuture<ClientResponse> second = new CompletableFuture<>();
+		private boolean firstDone;
+		private boolean secondSent;
+
+		private Race(ClientRequest copy) {
+			this.copy = copy;
+		}
+
+		/**
+		 * Sends the second copy unless the first one is done or the budget is spent.
+		 */
+		private void hedge(long delay) {
+			synchronized (this) {
+				if (firstDone || !spendHedge()) {
+					return;
+				}
+				secondSent = true;
+			}
+			LOGGER.debug(String.format("GET %s not answered after %d ms, sending it again",
+					copy.getUri(), TimeUnit.NANOSECONDS.toMillis(delay)));
+			hedgeCount.incrementAndGet();
+			try {
+				executor.execute(this::sendSecond);
+			} catch (RejectedExecutionException e) {
+				second.completeExceptionally(new ProcessingException(e));
+			}
+		}
+
+		private void sendSecond() {
+			try {
+				ClientResponse response = timed(copy);
+				if (winner.complete(response)) {
+					hedgeWinCount.incrementAndGet();
+					abort.abort();
+				} else {
+					response.close();
+				}
+				second.complete(response);
+			} catch (RuntimeException e) {
+				second.completeExceptionally(e);
+			}
+		}
+
+		/**
+		 * @return the first response, the given one or the second copy's
+		 */
+		private ClientResponse answered(ClientResponse response) {
+			synchronized (this) {
+				firstDone = true;
+			}
+			if (winner.complete(response)) {
+				return response;
+			}
+			try {
+				response.close();
+			} catch (RuntimeException e) {
+				// Aborted while received
+			}
+			return winner.join();
+		}
+
+		/**
+		 * @return the response of the second copy, if sent and answered
+		 * @throws ProcessingException the failure of the first copy otherwise
+		 */
+		private ClientResponse failed(ProcessingException failure) {
+			boolean hedged;
+			synchronized (this) {
+				firstDone = true;
+				hedged = secondSent;
+			}
+			if (!hedged) {
+				throw failure;
+			}
+			try {
+				second.get();
+				return winner.join();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new ProcessingException("Interrupted while waiting for the OpenPaaS response", e);
+			} catch (ExecutionException e) {
+				throw failure;
+			}
+		}
+	}
+
+	/**
+	 * Sends the request, and adds its duration to the recent latencies unless it failed.
+	 */
+	private ClientResponse timed(ClientRequest request) {
+		long start = System.nanoTime();
+		ClientResponse response = delegate.apply(request);
+		if (response.getStatus() < 500) {
+			record(System.nanoTime() - start);
+		}
+		return response;
+	}
+
+	private synchronized void earnHedge() {
+		savedHedges = Math.min(savedHedges + budgetPercent, MAX_SAVED_HEDGES);
+	}
+
+	private synchronized boolean spendHedge() {
+		if (savedHedges < 100) {
+			return false;
+		}
+		savedHedges -= 100;
+		return true;
+	}
+
+	private void record(long nanos) {
+		long[] window;
+		synchronized (this) {
+			latencies[sampleCount % WINDOW] = nanos;
+			sampleCount++;
+			samplesSinceRefresh++;
+			if (sampleCount < MIN_SAMPLES || (hedgeDelayNanos >= 0 && samplesSinceRefresh < REFRESH_SAMPLES)) {
+				return;
+			}
+			samplesSinceRefresh = 0;
+			window = Arrays.copyOf(latencies, Math.min(sampleCount, WINDOW));
+		}
+		Arrays.sort(window);
+		hedgeDelayNanos = window[Math.min(window.length - 1, window.length * percentile / 100)];
+	}
+
+	@Override
+	public Future<?> apply(ClientRequest request, AsyncConnectorCallback callback) {
+		return delegate.apply(request, callback);
+	}
+
+	@Override
+	public String getName() {
+		return delegate.getName() + " hedged after p" + percentile;
+	}
+
+	@Override
+	public void close() {
+		timer.shutdownNow();
+		executor.shutdownNow();
+		delegate.close();
+	}
+}
@@ -0,0 +1,429 @@
+/*
+ ****************************************************************************
+ * Ldap Synchronization Connector provides tools to synchronize
+ * electronic identities from a list of data sources including
+ * any database with a JDBC connector, another LDAP directory,
+ * flat files...
+ *
+ *                  ==LICENSE NOTICE==
+ * 
+ * Copyright (c) 2008 - 2019 LSC Project 
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+
+ *    * Redistributions of source code must retain the above copyright
+ * notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ * notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the LSC Project nor the names of its
+ * contributors may be used to endorse or promote products derived from
+ * this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS
+ * IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED
+ * TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A
+ * PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER
+ * OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ *                  ==LICENSE NOTICE==
+ *
+ *               (c) 2008 - 2019 LSC Project
+ *         Raphael Ouazana <rouazana@linagora.com>
+ ****************************************************************************
+ */
+package org.lsc.plugins.connectors.openpaas;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.util.ArrayList;
+import java.util.Hashtable;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Queue;
+import java.util.Set;
+import java.util.StringJoiner;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+
+import javax.naming.CommunicationException;
+import javax.naming.Context;
+import javax.naming.NameNotFoundException;
+import javax.naming.NamingEnumeration;
+import javax.naming.NamingException;
+import javax.naming.directory.Attribute;
+import javax.naming.directory.Attributes;
+import javax.naming.directory.DirContext;
+import javax.naming.directory.InitialDirContext;
+import javax.naming.directory.SearchControls;
+import javax.naming.directory.SearchResult;
+import javax.naming.ldap.InitialLdapContext;
+import javax.naming.ldap.LdapContext;
+import javax.naming.ldap.LdapName;
+import javax.naming.ldap.Rdn;
+import javax.naming.ldap.StartTlsRequest;
+import javax.naming.ldap.StartTlsResponse;
+
+import org.lsc.configuration.ConnectionType;
+import org.lsc.configuration.LdapAuthenticationType;
+import org.lsc.configuration.LdapConnectionType;
+import org.lsc.configuration.LdapDerefAliasesType;
+import org.lsc.configuration.LdapReferralType;
+import org.lsc.configuration.LdapVersionType;
+import org.lsc.configuration.LscConfiguration;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.base.Ticker;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Iterables;
+
+/**
+ * Resolves the mail of LDAP entries from their DN, for the members dataset of a group
+ * task. It replaces one search per member with one search per batch of members sharing
+ * the same parent entry, and remembers the mails of the entries already resolved for
+ * a while, for all the groups of the run. Entries without mail are only remembered for
+ * a short time, so that a mail added meanwhile is found by the next runs of a daemon.
+ * <p>
+ * From a task script:
+ * <pre>
+ * org.lsc.plugins.connectors.openpaas.LdapMailResolver.forConnection("openldap")
+ *     .resolve(srcBean.getDatasetValuesById("member"))
+ * </pre>
+ */
+public class LdapMailResolver {
+
+	public static final int BATCH_SIZE = 100;
+	public static final long CACHE_SIZE = 100000;
+	public static final long CACHE_TTL_SECONDS = 600;
+	public static final long MISSING_TTL_SECONDS = 60;
+	public static final String MAIL_ATTRIBUTE = "mail";
+
+	private static final Logger LOGGER = LoggerFactory.getLogger(LdapMailResolver.class);
+	private static final ConcurrentMap<String, LdapMailResolver> RESOLVERS = new ConcurrentHashMap<>();
+	private static final String DEFAULT_FACTORY = "com.sun.jndi.ldap.LdapCtxFactory";
+	private static final List<String> SECURITY_PROPERTIES = ImmutableList.of(Context.SECURITY_AUTHENTICATION,
+			Context.SECURITY_PRINCIPAL, Context.SECURITY_CREDENTIALS);
+	// Contexts kept open between two groups
+	private static final int MAX_IDLE_CONTEXTS = 4;
+
+	private final Callable<DirContext> contexts;
+	private final Queue<DirContext> idleContexts = new ConcurrentLinkedQueue<>();
+	private final int batchSize;
+	private final Cache<LdapName, String> mails;
+	private final Cache<LdapName, Boolean> missing;
+
+	LdapMailResolver(Callable<DirContext> contexts, int batchSize, long cacheSize) {
+		this(contexts, batchSize, cacheSize, Ticker.systemTicker());
+	}
+
+	LdapMailResolver(Callable<DirContext> contexts, int batchSize, long cacheSize, Ticker ticker) {
+		this.contexts = contexts;
+		this.batchSize = batchSize;
+		this.mails = CacheBuilder.newBuilder()
+			.maximumSize(cacheSize)
+			.expireAfterWrite(CACHE_TTL_SECONDS, TimeUnit.SECONDS)
+			.ticker(ticker)
+			.build();
+		this.missing = CacheBuilder.newBuilder()
+			.maximumSize(cacheSize)
+			.expireAfterWrite(MISSING_TTL_SECONDS, TimeUnit.SECONDS)
+			.ticker(ticker)
+			.build();
+	}
+
+	/**
+	 * @param connectionName the name of an LDAP connection of the LSC configuration
+	 * @return the resolver shared by all the tasks using this connection
+	 */
+	public static LdapMailResolver forConnection(String connectionName) {
+		return RESOLVERS.computeIfAbsent(connectionName, name -> {
+			ConnectionType connection = LscConfiguration.getConnection(name);
+			if (!(connection instanceof LdapConnectionType)) {
+				throw new IllegalArgumentException("No LDAP connection named " + name);
+			}
+			LdapConnectionType ldapConnection = (LdapConnectionType) connection;
+			Hashtable<String, String> environment = environment(ldapConnection);
+			boolean startTls = Boolean.TRUE.equals(ldapConnection.isTlsActivated());
+			return new LdapMailResolver(() -> open(environment, startTls), BATCH_SIZE, CACHE_SIZE);
+		});
+	}
+
+	/**
+	 * The JNDI environment of an LSC LDAP connection: its factory, servers, authentication,
+	 * referral, alias dereferencing and protocol version. The paging, sorting and binary
+	 * attribute settings do not apply to the searches of a few entries by DN.
+	 */
+	static Hashtable<String, String> environment(LdapConnectionType connection) {
+		Hashtable<String, String> environment = new Hashtable<>();
+		environment.put(Context.INITIAL_CONTEXT_FACTORY, Optional.ofNullable(connection.getFactory()).orElse(DEFAULT_FACTORY));
+		environment.put(Context.PROVIDER_URL, serverUrls(connection.getUrl()));
+		LdapAuthenticationType authentication = Optional.ofNullable(connection.getAuthentication()).orElse(LdapAuthenticationType.SIMPLE);
+		if (authentication == LdapAuthenticationType.NONE) {
+			environment.put(Context.SECURITY_AUTHENTICATION, "none");
+		} else {
+			environment.put(Context.SECURITY_AUTHENTICATION, mechanism(authentication));
+			if (connection.getUsername() != null && !connection.getUsername().isEmpty()) {
+				environment.put(Context.SECURITY_PRINCIPAL, connection.getUsername());
+				environment.put(Context.SECURITY_CREDENTIALS, Optional.ofNullable(connection.getPassword()).orElse(""));
+			}
+		}
+		if (Boolean.TRUE.equals(connection.isSaslMutualAuthentication())) {
+			environment.put("javax.security.sasl.server.authentication", "true");
+		}
+		environment.put(Context.REFERRAL, referral(Optional.ofNullable(connection.getReferral()).orElse(LdapReferralType.IGNORE)));
+		environment.put("java.naming.ldap.derefAliases",
+				derefAliases(Optional.ofNullable(connection.getDerefAliases()).orElse(LdapDerefAliasesType.NEVER)));
+		environment.put("java.naming.ldap.version", connection.getVersion() == LdapVersionType.VERSION_2 ? "2" : "3");
+		return environment;
+	}
+
+	private static String mechanism(LdapAuthenticationType authentication) {
+		switch (authentication) {
+		case SIMPLE:
+			return "simple";
+		case SASL:
+			// Authenticated by the TLS client certificate
+			return "EXTERNAL";
+		default:
+			return authentication.value();
+		}
+	}
+
+	private static String referral(LdapReferralType referral) {
+		switch (referral) {
+		case THROUGH:
+			return "follow";
+		case THROW:
+		case ERROR:
+			return "throw";
+		default:
+			return "ignore";
+		}
+	}
+
+	private static String derefAliases(LdapDerefAliasesType derefAliases) {
+		switch (derefAliases) {
+		case SEARCH:
+			return "searching";
+		case FIND:
+			return "finding";
+		case ALWAYS:
+			return "always";
+		default:
+			return "never";
+		}
+	}
+
+	/**
+	 * Opens a context, binding after StartTLS when activated so that credentials are not
+	 * sent in clear text.
+	 */
+	private static DirContext open(Hashtable<String, String> environment, boolean startTls) throws NamingException {
+		if (!startTls) {
+			return new InitialDirContext(environment);
+		}
+		Hashtable<String, String> anonymous = new Hashtable<>(environment);
+		SECURITY_PROPERTIES.forEach(anonymous::remove);
+		LdapContext context = new InitialLdapContext(anonymous, null);
+		try {
+			StartTlsResponse tls = (StartTlsResponse) context.extendedOperation(new StartTlsRequest());
+			tls.negotiate();
+			for (String property : SECURITY_PROPERTIES) {
+				if (environment.containsKey(property)) {
+					// Bound on the next operation, over the TLS session
+					context.addToEnvironment(property, environment.get(property));
+				}
+			}
+			return context;
+		} catch (NamingException | IOException | RuntimeException e) {
+			context.close();
+			if (e instanceof NamingException) {
+				throw (NamingException) e;
+			}
+			NamingException failure = new CommunicationException("StartTLS failed: " + e.getMessage());
+			failure.setRootCause(e);
+			throw failure;
+		}
+	}
+
+	/**
+	 * Drops the base DN of the connection URLs: members are searched by their full DN.
+	 */
+	private static String serverUrls(String urls) {
+		StringJoiner result = new StringJoiner(" ");
+		for (String url : urls.trim().split("\\s+")) {
+			try {
+				URI uri = new URI(url);
+				result.add(uri.getScheme() + "://" + uri.getRawAuthority() + "/");
+			} catch (URISyntaxException e) {
+				throw new IllegalArgumentException("Invalid LDAP URL " + url, e);
+			}
+		}
+		return result.toString();
+	}
+
+	/**
+	 * @param dns the DNs of the entries, as a list of strings
+	 * @return the mails of these entries in the same order, without the entries which
+	 *         have no mail, which do not exist, whose DN is invalid or which could not be read
+	 */
+	public List<String> resolve(List<?> dns) throws NamingException {
+		Map<String, LdapName> names = new LinkedHashMap<>();
+		for (Object dn : dns) {
+			try {
+				names.put(String.valueOf(dn), new LdapName(String.valueOf(dn)));
+			} catch (NamingException | IllegalArgumentException e) {
+				LOGGER.debug("Ignoring invalid member DN: " + dn);
+			}
+		}
+		Map<LdapName, Set<LdapName>> missingByParent = new LinkedHashMap<>();
+		for (LdapName name : names.values()) {
+			if (!isKnown(name) && name.size() > 0) {
+				missingByParent.computeIfAbsent((LdapName) name.getPrefix(name.size() - 1), parent -> new LinkedHashSet<>()).add(name);
+			}
+		}
+		if (!missingByParent.isEmpty()) {
+			search(missingByParent);
+		}
+		List<String> result = new ArrayList<>();
+		for (LdapName name : names.values()) {
+			String mail = mails.getIfPresent(name);
+			if (mail != null) {
+				result.add(mail);
+			} else {
+				LOGGER.debug("No mail found for: " + name);
+			}
+		}
+		return result;
+	}
+
+	private boolean isKnown(LdapName name) {
+		return mails.getIfPresent(name) != null || missing.getIfPresent(name) != null;
+	}
+
+	private void search(Map<LdapName, Set<LdapName>> missingByParent) throws NamingException {
+		DirContext context = acquire();
+		boolean reusable = true;
+		try {
+			SearchControls controls = new SearchControls();
+			controls.setSearchScope(SearchControls.ONELEVEL_SCOPE);
+			controls.setReturningAttributes(new String[] { MAIL_ATTRIBUTE });
+			for (Map.Entry<LdapName, Set<LdapName>> children : missingByParent.entrySet()) {
+				for (List<LdapName> batch : Iterables.partition(children.getValue(), batchSize)) {
+					try {
+						search(context, children.getKey(), batch, controls);
+					} catch (CommunicationException e) {
+						reusable = false;
+						throw e;
+					} catch (NamingException e) {
+						LOGGER.warn(String.format("Searching %d members under %s failed (%s), reading them one by one",
+								batch.size(), children.getKey(), e));
+						read(context, batch);
+					}
+				}
+			}
+		} finally {
+			release(context, reusable);
+		}
+	}
+
+	private DirContext acquire() throws NamingException {
+		DirContext context = idleContexts.poll();
+		if (context != null) {
+			return context;
+		}
+		try {
+			return contexts.call();
+		} catch (NamingException e) {
+			throw e;
+		} catch (Exception e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	private void release(DirContext context, boolean reusable) throws NamingException {
+		if (reusable && idleContexts.size() < MAX_IDLE_CONTEXTS) {
+			idleContexts.offer(context);
+		} else {
+			context.close();
+		}
+	}
+
+	private void search(DirContext context, LdapName parent, List<LdapName> batch, SearchControls controls) throws NamingException {
+		List<Object> arguments = new ArrayList<>();
+		StringBuilder filter = new StringBuilder("(|");
+		for (LdapName name : batch) {
+			Rdn rdn = name.getRdn(name.size() - 1);
+			NamingEnumeration<? extends Attribute> attributes = rdn.toAttributes().getAll();
+			filter.append("(&");
+			while (attributes.hasMore()) {
+				Attribute attribute = attributes.next();
+				filter.append('(').append(attribute.getID()).append("={").append(arguments.size()).append("})");
+				arguments.add(attribute.get());
+			}
+			filter.append(')');
+		}
+		filter.append(')');
+		NamingEnumeration<SearchResult> results = context.search(parent, filter.toString(), arguments.toArray(), controls);
+		try {
+			while (results.hasMore()) {
+				SearchResult result = results.next();
+				Attributes attributes = result.getAttributes();
+				Attribute mail = attributes.get(MAIL_ATTRIBUTE);
+				if (mail != null && mail.size() > 0) {
+					mails.put(new LdapName(result.getNameInNamespace()), String.valueOf(mail.get(0)));
+				}
+			}
+		} finally {
+			results.close();
+		}
+		for (LdapName name : batch) {
+			if (mails.getIfPresent(name) == null) {
+				// Do not search again soon the entries without mail
+				missing.put(name, Boolean.TRUE);
+			}
+		}
+	}
+
+	/**
+	 * Reads the members of a batch which could not be searched, so that one of them does
+	 * not prevent resolving the others.
+	 */
+	private void read(DirContext context, List<LdapName> batch) throws CommunicationException {
+		for (LdapName name : batch) {
+			try {
+				Attribute mail = context.getAttributes(name, new String[] { MAIL_ATTRIBUTE }).get(MAIL_ATTRIBUTE);
+				if (mail != null && mail.size() > 0) {
+					mails.put(name, String.valueOf(mail.get(0)));
+				} else {
+					missing.put(name, Boolean.TRUE);
+				}
+			} catch (NameNotFoundException e) {
+				missing.put(name, Boolean.TRUE);
+			} catch (CommunicationException e) {
+				throw e;
+			} catch (NamingException e) {
+				// Not remembered, tried again with the next group
+				LOGGER.warn("Unable to read the mail of " + name + " (" + e + ")");
+			}
+		}
+	}
+}
@@ -0,0 +1,310 @@
+/*
+ ****************************************************************************
+ * Ldap Synchronization Connector provides tools to synchronize
+ * electronic identities from a list of data sources including
+ * any database with a JDBC connector, another LDAP directory,
+ * flat files...
+ *
+ *                  ==LICENSE NOTICE==
+ * 
+ * Copyright (c) 2008 - 2019 LSC Project 
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+
+ *    * Redistributions of source code must retain the above copyright
+ * notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ * notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the LSC Project nor the names of its
+ * contributors may be used to endorse or promote products derived from
+ * this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS
+ * IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED
+ * TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A
+ * PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER
+ * OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ *                  ==LICENSE NOTICE==
+ *
+ *               (c) 2008 - 2019 LSC Project
+ *         Raphael Ouazana <rouazana@linagora.com>
+ ****************************************************************************
+ */
+package org.lsc.plugins.connectors.openpaas;
+
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+
+import javax.ws.rs.ProcessingException;
+
+import org.glassfish.jersey.client.ClientRequest;
+import org.glassfish.jersey.client.ClientResponse;
+import org.glassfish.jersey.client.spi.AsyncConnectorCallback;
+import org.glassfish.jersey.client.spi.Connector;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+
+/**
+ * Jersey connector spreading the requests over several OpenPaaS frontends serving the same
+ * instance. The requests are built against the connection url, and sent to the endpoint with
+ * the fewest requests in flight weighted by its recent latency.
+ * <p>
+ * An endpoint failing several requests in a row, by a connection error or a 5xx status, is left
+ * out for a while, then tried again. GET requests failing this way are retried on another
+ * endpoint; other requests may have been applied, their failure is returned as is.
+ */
+public class LoadBalancingConnector implements Connector {
+
+	private static final Logger LOGGER = LoggerFactory.getLogger(LoadBalancingConnector.class);
+
+	public static final int UNHEALTHY_AFTER_FAILURES = 3;
+	public static final long DEFAULT_UNHEALTHY_MILLIS = 10000;
+
+	private static final Set<String> IDEMPOTENT_METHODS = ImmutableSet.of("GET", "HEAD");
+	// Weight of the last request in the latency average
+	private static final double LATENCY_SMOOTHING = 0.2;
+
+	private final Connector delegate;
+	private final String baseUrl;
+	private final List<Endpoint> endpoints;
+	private final long unhealthyNanos;
+	private final AtomicInteger rotation = new AtomicInteger();
+
+	/**
+	 * An OpenPaaS frontend, with its requests in flight, latency and recent failures.
+	 */
+	public static final class Endpoint {
+		private final String url;
+		private final AtomicInteger outstanding = new AtomicInteger();
+		private final AtomicLong requestCount = new AtomicLong();
+		private final AtomicLong failureCount = new AtomicLong();
+		private volatile double latencyNanos;
+		private int consecutiveFailures;
+		private long unhealthyUntil;
+
+		private Endpoint(String url) {
+			this.url = url;
+		}
+
+		public String getUrl() {
+			return url;
+		}
+
+		public long getRequestCount() {
+			return requestCount.get();
+		}
+
+		public long getFailureCount() {
+			return failureCount.get();
+		}
+
+		private double load() {
+			// Endpoints without latency yet are tried first
+			return (outstanding.get() + 1) * Math.max(latencyNanos, 1);
+		}
+
+		private synchronized boolean isHealthy(long now) {
+			return consecutiveFailures < UNHEALTHY_AFTER_FAILURES || now - unhealthyUntil >= 0;
+		}
+
+		private synchronized long getUnhealthyUntil() {
+			return unhealthyUntil;
+		}
+
+		@Override
+		public String toString() {
+			return String.format("%s: %d requests, %d failures", url, requestCount.get(), failureCount.get());
+		}
+	}
+
+	/**
+	 * @param baseUrl the url the requests are built against
+	 * @param endpointUrls the urls of the frontends to send them to
+	 */
+	public LoadBalancingConnector(Connector delegate, String baseUrl, List<String> endpointUrls) {
+		this(delegate, baseUrl, endpointUrls, DEFAULT_UNHEALTHY_MILLIS);
+	}
+
+	LoadBalancingConnector(Connector delegate, String baseUrl, List<String> endpointUrls, long unhealthyMillis) {
+		this.delegate = delegate;
+		this.baseUrl = withoutTrailingSlash(baseUrl);
+		this.endpoints = endpointUrls.stream()
+			.map(url -> new Endpoint(withoutTrailingSlash(url)))
+			.collect(Collectors.collectingAndThen(Collectors.toList(), ImmutableList::copyOf));
+		this.unhealthyNanos = TimeUnit.MILLISECONDS.toNanos(unhealthyMillis);
+	}
+
+	private static String withoutTrailingSlash(String url) {
+		return url.endsWith("/") ? url.substring(0, url.length() - 1) : url;
+	}
+
+	public List<Endpoint> getEndpoints() {
+		return endpoints;
+	}
+
+	@Override
+	public ClientResponse apply(ClientRequest request) throws ProcessingException {
+		String relativeUri = relativeUri(request);
+		boolean idempotent = IDEMPOTENT_METHODS.contains(request.getMethod());
+		Set<Endpoint> tried = new HashSet<>();
+		while (true) {
+			Endpoint endpoint = choose(tried);
+			tried.add(endpoint);
+			boolean retryable = idempotent && tried.size() < endpoints.size();
+			request.setUri(URI.create(endpoint.url + relativeUri));
+			long start = begin(endpoint);
+			ClientResponse response;
+			try {
+				response = delegate.apply(request);
+			} catch (ProcessingException e) {
+				// An aborted request says nothing about the endpoint
+				boolean aborted = TimeoutConnector.isAborted(request);
+				end(endpoint, start, !aborted);
+				if (!retryable || aborted) {
+					throw e;
+				}
+				LOGGER.warn(String.format("%s %s failed (%s), retrying on another endpoint", request.getMethod(), request.getUri(), e.getMessage()));
+				continue;
+			}
+			boolean failed = isServerError(response.getStatus());
+			end(endpoint, start, failed);
+			if (!failed || !retryable) {
+				return response;
+			}
+			LOGGER.warn(String.format("%s %s failed (%d), retrying on another endpoint", request.getMethod(), request.getUri(), response.getStatus()));
+			response.close();
+		}
+	}
+
+	@Override
+	public Future<?> apply(ClientRequest request, final AsyncConnectorCallback callback) {
+		final Endpoint endpoint = choose(ImmutableSet.of());
+		request.setUri(URI.create(endpoint.url + relativeUri(request)));
+		final long start = begin(endpoint);
+		try {
+			return delegate.apply(request, new AsyncConnectorCallback() {
+				@Override
+				public void response(ClientResponse response) {
+					end(endpoint, start, isServerError(response.getStatus()));
+					callback.response(response);
+				}
+
+				@Override
+				public void failure(Throwable failure) {
+					end(endpoint, start, true);
+					callback.failure(failure);
+				}
+			});
+		} catch (RuntimeException e) {
+			end(endpoint, start, true);
+			throw e;
+		}
+	}
+
+	private String relativeUri(ClientRequest request) {
+		String uri = request.getUri().toString();
+		if (!uri.startsWith(baseUrl)) {
+			throw new ProcessingException(String.format("%s is not under %s", uri, baseUrl));
+		}
+		return uri.substring(baseUrl.length());
+	}
+
+	private static boolean isServerError(int status) {
+		return status >= 500;
+	}
+
+	/**
+	 * @return the least loaded healthy endpoint not tried yet, or else the one back the soonest
+	 */
+	private Endpoint choose(Set<Endpoint> tried) {
+		long now = System.nanoTime();
+		List<Endpoint> candidates = new ArrayList<>(endpoints.size());
+		// Starting from a different endpoint each time spreads the ties
+		int first = Math.floorMod(rotation.getAndIncrement(), endpoints.size());
+		for (int i = 0; i < endpoints.size(); i++) {
+			Endpoint endpoint = endpoints.get((first + i) % endpoints.size());
+			if (!tried.contains(endpoint)) {
+				candidates.add(endpoint);
+			}
+		}
+		Endpoint chosen = null;
+		for (Endpoint candidate : candidates) {
+			if (candidate.isHealthy(now) && (chosen == null || candidate.load() < chosen.load())) {
+				chosen = candidate;
+			}
+		}
+		if (chosen != null) {
+			return chosen;
+		}
+		for (Endpoint candidate : candidates) {
+			if (chosen == null || candidate.getUnhealthyUntil() - chosen.getUnhealthyUntil() < 0) {
+				chosen = candidate;
+			}
+		}
+		return chosen;
+	}
+
+	private static long begin(Endpoint endpoint) {
+		endpoint.outstanding.incrementAndGet();
+		endpoint.requestCount.incrementAndGet();
+		return System.nanoTime();
+	}
+
+	private void end(Endpoint endpoint, long start, boolean failed) {
+		long now = System.nanoTime();
+		endpoint.outstanding.decrementAndGet();
+		if (!failed) {
+			endpoint.latencyNanos = endpoint.latencyNanos == 0 ? now - start
+				: endpoint.latencyNanos + LATENCY_SMOOTHING * (now - start - endpoint.latencyNanos);
+		}
+		synchronized (endpoint) {
+			if (!failed) {
+				if (endpoint.consecutiveFailures >= UNHEALTHY_AFTER_FAILURES) {
+					LOGGER.info("OpenPaaS endpoint " + endpoint.url + " is back");
+				}
+				endpoint.consecutiveFailures = 0;
+				return;
+			}
+			endpoint.failureCount.incrementAndGet();
+			endpoint.consecutiveFailures++;
+			// Past the threshold, a failure extends the exclusion only once it is over
+			if (endpoint.consecutiveFailures == UNHEALTHY_AFTER_FAILURES
+					|| (endpoint.consecutiveFailures > UNHEALTHY_AFTER_FAILURES && now - endpoint.unhealthyUntil >= 0)) {
+				endpoint.unhealthyUntil = now + unhealthyNanos;
+				LOGGER.warn(String.format("OpenPaaS endpoint %s left out for %d s after %d failures in a row",
+						endpoint.url, TimeUnit.NANOSECONDS.toSeconds(unhealthyNanos), endpoint.consecutiveFailures));
+			}
+		}
+	}
+
+	@Override
+	public String getName() {
+		return delegate.getName() + " balanced over " + endpoints.size() + " endpoints";
+	}
+
+	@Override
+	public void close() {
+		delegate.close();
+	}
+}
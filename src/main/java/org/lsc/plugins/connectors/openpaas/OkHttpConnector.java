@@ -0,0 +1,278 @@
+/*
+ ****************************************************************************
+ * Ldap Synchronization Connector provides tools to synchronize
+ * electronic identities from a list of data sources including
+ * any database with a JDBC connector, another LDAP directory,
+ * flat files...
+ *
+ *                  ==LICENSE NOTICE==
+ * 
+ * Copyright (c) 2008 - 2019 LSC Project 
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+
+ *    * Redistributions of source code must retain the above copyright
+ * notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ * notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the LSC Project nor the names of its
+ * contributors may be used to endorse or promote products derived from
+ * this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS
+ * IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED
+ * TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A
+ * PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER
+ * OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ *                  ==LICENSE NOTICE==
+ *
+ *               (c) 2008 - 2019 LSC Project
+ *         Raphael Ouazana <rouazana@linagora.com>
+ ****************************************************************************
+ */
+package org.lsc.plugins.connectors.openpaas;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import javax.ws.rs.ProcessingException;
+import javax.ws.rs.core.HttpHeaders;
+
+import org.glassfish.jersey.client.ClientProperties;
+import org.glassfish.jersey.client.ClientRequest;
+import org.glassfish.jersey.client.ClientResponse;
+import org.glassfish.jersey.client.spi.AsyncConnectorCallback;
+import org.glassfish.jersey.client.spi.Connector;
+import org.glassfish.jersey.message.internal.Statuses;
+
+import com.google.common.collect.ImmutableList;
+
+import okhttp3.Call;
+import okhttp3.Callback;
+import okhttp3.ConnectionPool;
+import okhttp3.Headers;
+import okhttp3.MediaType;
+import okhttp3.OkHttpClient;
+import okhttp3.Protocol;
+import okhttp3.Request;
+import okhttp3.RequestBody;
+import okhttp3.Response;
+import okhttp3.ResponseBody;
+
+/**
+ * Jersey connector sending requests through an HTTP/2 capable OkHttp client.
+ * <p>
+ * Concurrent requests to the same OpenPaaS instance are multiplexed as streams
+ * of a single connection instead of each using its own socket. https URLs negotiate
+ * HTTP/2 through ALPN and fall back to HTTP/1.1 when the server does not support it.
+ * Plain http URLs have no negotiation, they use HTTP/1.1 unless HTTP/2 with prior
+ * knowledge (h2c) is asked for, which fails with servers not speaking it.
+ * <p>
+ * Connect and read timeouts are taken from the request properties, or else from the client
+ * configuration, and the {@link TimeoutConnector#DEADLINE_PROPERTY deadline} of a request
+ * bounds its whole call. A synchronous call is cancelled by the
+ * {@link TimeoutConnector#ABORT_PROPERTY abort} of its request.
+ */
+public class OkHttpConnector implements Connector {
+
+	private static final byte[] EMPTY_BODY = new byte[0];
+	static final int DEFAULT_MAX_IDLE_CONNECTIONS = 5;
+	private static final long KEEP_ALIVE_MINUTES = 5;
+
+	private final OkHttpClient client;
+
+	public OkHttpConnector(String url) {
+		this(url, DEFAULT_MAX_IDLE_CONNECTIONS, false);
+	}
+
+	/**
+	 * @param maxIdleConnections the number of connections kept open once idle
+	 * @param priorKnowledge whether HTTP/2 is sent to the http url without negotiation
+	 * @throws IllegalArgumentException if HTTP/2 with prior knowledge is asked for an https url
+	 */
+	public OkHttpConnector(String url, int maxIdleConnections, boolean priorKnowledge) {
+		client = new OkHttpClient.Builder()
+				.protocols(protocolsFor(URI.create(url), priorKnowledge))
+				.connectionPool(new ConnectionPool(maxIdleConnections, KEEP_ALIVE_MINUTES, TimeUnit.MINUTES))
+				.connectTimeout(0, TimeUnit.MILLISECONDS)
+				.readTimeout(0, TimeUnit.MILLISECONDS)
+				.writeTimeout(0, TimeUnit.MILLISECONDS)
+				.followRedirects(false)
+				.build();
+	}
+
+	private static List<Protocol> protocolsFor(URI uri, boolean priorKnowledge) {
+		boolean https = "https".equalsIgnoreCase(uri.getScheme());
+		if (priorKnowledge) {
+			if (https) {
+				throw new IllegalArgumentException("HTTP/2 with prior knowledge needs an http url: " + uri);
+			}
+			return ImmutableList.of(Protocol.H2_PRIOR_KNOWLEDGE);
+		}
+		if (https) {
+			return ImmutableList.of(Protocol.HTTP_2, Protocol.HTTP_1_1);
+		}
+		return ImmutableList.of(Protocol.HTTP_1_1);
+	}
+
+	@Override
+	public ClientResponse apply(ClientRequest request) throws ProcessingException {
+		try {
+			Call call = newCall(request);
+			TimeoutConnector.Abort abort = TimeoutConnector.abortOf(request);
+			if (abort != null) {
+				abort.arm(call::cancel);
+			}
+			Response response = call.execute();
+			return toClientResponse(request, response);
+		} catch (IOException e) {
+			throw new ProcessingException(e);
+		}
+	}
+
+	@Override
+	public Future<?> apply(final ClientRequest request, final AsyncConnectorCallback callback) {
+		final CompletableFuture<ClientResponse> future = new CompletableFuture<>();
+		final Call call;
+		try {
+			call = newCall(request);
+		} catch (IOException | ProcessingException e) {
+			ProcessingException failure = e instanceof ProcessingException ? (ProcessingException) e : new ProcessingException(e);
+			callback.failure(failure);
+			future.completeExceptionally(failure);
+			return future;
+		}
+		call.enqueue(new Callback() {
+			@Override
+			public void onFailure(Call call, IOException e) {
+				ProcessingException failure = new ProcessingException(e);
+				callback.failure(failure);
+				future.completeExceptionally(failure);
+			}
+
+			@Override
+			public void onResponse(Call call, Response response) {
+				ClientResponse clientResponse = toClientResponse(request, response);
+				callback.response(clientResponse);
+				future.complete(clientResponse);
+			}
+		});
+		return future;
+	}
+
+	private Call newCall(ClientRequest request) throws IOException {
+		byte[] entity = EMPTY_BODY;
+		if (request.hasEntity()) {
+			final ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+			request.setStreamProvider(contentLength -> buffer);
+			request.writeEntity();
+			entity = buffer.toByteArray();
+		}
+
+		Request.Builder builder = new Request.Builder().url(request.getUri().toURL());
+		String contentType = null;
+		for (Map.Entry<String, List<String>> header : request.getStringHeaders().entrySet()) {
+			if (HttpHeaders.CONTENT_TYPE.equalsIgnoreCase(header.getKey())) {
+				contentType = header.getValue().isEmpty() ? null : header.getValue().get(0);
+			} else if (!HttpHeaders.CONTENT_LENGTH.equalsIgnoreCase(header.getKey())) {
+				for (String value : header.getValue()) {
+					builder.addHeader(header.getKey(), value);
+				}
+			}
+		}
+
+		String method = request.getMethod();
+		RequestBody body = null;
+		if (permitsRequestBody(method)) {
+			body = RequestBody.create(contentType == null ? null : MediaType.parse(contentType), entity);
+		}
+		builder.method(method, body);
+
+		return clientFor(request).newCall(builder.build());
+	}
+
+	/**
+	 * OkHttp rejects a body, even empty, on GET and HEAD, and requires one on POST, PUT and PATCH.
+	 */
+	private static boolean permitsRequestBody(String method) {
+		return !"GET".equals(method) && !"HEAD".equals(method);
+	}
+
+	private OkHttpClient clientFor(ClientRequest request) {
+		Integer connectTimeout = intProperty(request, ClientProperties.CONNECT_TIMEOUT);
+		Integer readTimeout = intProperty(request, ClientProperties.READ_TIMEOUT);
+		Integer deadline = intProperty(request, TimeoutConnector.DEADLINE_PROPERTY);
+		if (connectTimeout == null && readTimeout == null && deadline == null) {
+			return client;
+		}
+		// Derived clients share the connection pool and the dispatcher of the main one
+		OkHttpClient.Builder builder = client.newBuilder();
+		if (connectTimeout != null) {
+			builder.connectTimeout(connectTimeout, TimeUnit.MILLISECONDS);
+		}
+		if (readTimeout != null) {
+			builder.readTimeout(readTimeout, TimeUnit.MILLISECONDS);
+		}
+		if (deadline != null) {
+			builder.callTimeout(deadline, TimeUnit.MILLISECONDS);
+		}
+		return builder.build();
+	}
+
+	private static Integer intProperty(ClientRequest request, String name) {
+		Object value = request.getProperty(name);
+		if (value == null) {
+			value = request.getConfiguration().getProperty(name);
+		}
+		if (value == null) {
+			return null;
+		}
+		if (value instanceof Number) {
+			return ((Number) value).intValue();
+		}
+		return Integer.valueOf(value.toString());
+	}
+
+	private static ClientResponse toClientResponse(ClientRequest request, Response response) {
+		ClientResponse clientResponse = new ClientResponse(
+				response.message().isEmpty() ? Statuses.from(response.code()) : Statuses.from(response.code(), response.message()),
+				request);
+		Headers headers = response.headers();
+		for (String name : headers.names()) {
+			clientResponse.headers(name, headers.values(name));
+		}
+		ResponseBody body = response.body();
+		InputStream entityStream = body != null ? body.byteStream() : new ByteArrayInputStream(EMPTY_BODY);
+		clientResponse.setEntityStream(entityStream);
+		return clientResponse;
+	}
+
+	@Override
+	public String getName() {
+		return "OkHttp " + client.protocols();
+	}
+
+	@Override
+	public void close() {
+		client.dispatcher().executorService().shutdown();
+		client.connectionPool().evictAll();
+	}
+}
@@ -42,12 +42,27 @@
  */
 package org.lsc.plugins.connectors.openpaas;
 
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
 import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
 
 import javax.ws.rs.NotFoundException;
 import javax.ws.rs.ProcessingException;
 import javax.ws.rs.WebApplicationException;
+import javax.ws.rs.client.Client;
 import javax.ws.rs.client.ClientBuilder;
 import javax.ws.rs.client.Entity;
 import javax.ws.rs.client.WebTarget;
@@ -55,43 +70,433 @@ import javax.ws.rs.core.GenericType;
 import javax.ws.rs.core.MediaType;
 import javax.ws.rs.core.Response;
 import javax.ws.rs.core.Response.Status;
+import javax.ws.rs.core.Response.StatusType;
 
+import org.glassfish.jersey.client.ClientConfig;
+import org.glassfish.jersey.client.ClientProperties;
+import org.glassfish.jersey.client.spi.Connector;
 import org.glassfish.jersey.client.filter.HttpBasicAuthFilter;
 import org.glassfish.jersey.jackson.JacksonFeature;
+import org.lsc.LscDatasetModification;
+import org.lsc.LscDatasetModification.LscDatasetModificationType;
 import org.lsc.configuration.TaskType;
+import org.lsc.exception.LscServiceConfigurationException;
 import org.lsc.plugins.connectors.openpaas.beans.Group;
 import org.lsc.plugins.connectors.openpaas.beans.GroupItem;
+import org.lsc.plugins.connectors.openpaas.beans.GroupMetadata;
 import org.lsc.plugins.connectors.openpaas.beans.GroupWithMembersEmails;
 import org.lsc.plugins.connectors.openpaas.beans.GroupWithMembersEmails.Membership;
 import org.lsc.plugins.connectors.openpaas.beans.Member;
+import org.lsc.plugins.connectors.openpaas.beans.MemberIndex;
+import org.lsc.plugins.connectors.openpaas.beans.UserMember;
+import org.lsc.plugins.connectors.openpaas.generated.OpenpaasGroupService;
+import org.lsc.plugins.connectors.openpaas.generated.OpenpaasService;
+import org.lsc.plugins.connectors.openpaas.generated.TransportType;
+import org.lsc.plugins.connectors.openpaas.jfr.FlightRecorderEvents;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
+import com.google.common.collect.ImmutableList;
+
 public class OpenpaasDao {
 	
 	public static final int GROUPS_LIMIT = Integer.MAX_VALUE;
 	public static final int MEMBERS_LIMIT = Integer.MAX_VALUE;
 	public static final String GROUP_PATH = "/group/api/groups"; 
+	public static final String USER_PATH = "/api/users";
+	public static final String ITEMS_COUNT_HEADER = "X-ESN-Items-Count";
+	public static final int DEFAULT_CACHE_MAX_MEMBERS = 1000000;
+	public static final int DEFAULT_CACHE_TTL_SECONDS = 60;
 
 	protected static final Logger LOGGER = LoggerFactory.getLogger(OpenpaasDao.class);
 
+	private final Client client;
+	private final TrafficRecorder trafficRecorder;
+	private final RequestMonitor requestMonitor;
+	private final LoadBalancingConnector loadBalancer;
+	private final HedgingConnector hedging;
+	private final FairScheduler scheduler;
+	private final FairScheduler.Tenant tenant;
 	private WebTarget groupClient;
+	private WebTarget userClient;
+
+	private final MemberIndex memberIndex = new MemberIndex();
+	private final Map<String, String> groupIds = new ConcurrentHashMap<>();
+	private final Map<String, String> groupEmails = new ConcurrentHashMap<>();
+	// Once the groups are listed, only the groups created since have an unknown id
+	private volatile boolean groupsListed;
+	private final Set<String> createdGroupEmails = ConcurrentHashMap.newKeySet();
+	private final Cache<String, CachedMembers> cachedMembers;
+	/**
+	 * Cleared once OpenPaaS answered a member list without Last-Modified, the pre-check then only costs a request.
+	 */
+	private volatile boolean membersPrecheck;
+	private final Cache<String, GroupWithMembersEmails> cachedGroups;
+	private final boolean upsert;
+	private final Integer pageSize;
 
 	public OpenpaasDao(String url, String username, String password, TaskType task) {
-		groupClient = ClientBuilder.newClient()
+		this(url, username, password, task, new OpenpaasGroupService());
+	}
+
+	/**
+	 * @throws IllegalArgumentException if the performance settings are invalid
+	 */
+	public OpenpaasDao(String url, String username, String password, TaskType task, OpenpaasService settings) {
+		this(url, username, password, task, performanceOf(settings));
+	}
+
+	public OpenpaasDao(String url, String username, String password, TaskType task, PerformanceSettings performance) {
+		ClientConfig clientConfig = new ClientConfig();
+		PerformanceSettings.Timeouts timeouts = performance.getDefaultTimeouts();
+		if (timeouts.getConnectMillis() != null) {
+			clientConfig.property(ClientProperties.CONNECT_TIMEOUT, timeouts.getConnectMillis());
+		}
+		if (timeouts.getReadMillis() != null) {
+			clientConfig.property(ClientProperties.READ_TIMEOUT, timeouts.getReadMillis());
+		}
+		requestMonitor = new RequestMonitor(performance.getSlowRequestMillis(), performance.getStallWarningSeconds());
+		List<String> endpoints = performance.getEndpoints();
+		// The endpoints use the same scheme, and thus the same protocols
+		String transportUrl = endpoints.isEmpty() ? url : endpoints.get(0);
+		Connector connector = requestMonitor.wrap(performance.getTransport() != TransportType.HTTP_1_1
+				? TimeoutConnector.of(new OkHttpConnector(transportUrl,
+					Optional.ofNullable(performance.getConnectionPoolSize()).orElse(OkHttpConnector.DEFAULT_MAX_IDLE_CONNECTIONS),
+					performance.getTransport() == TransportType.H2C), performance)
+				: TimeoutConnector.ofHttpUrlConnection(performance));
+		if (!endpoints.isEmpty()) {
+			loadBalancer = new LoadBalancingConnector(connector, url, endpoints);
+			connector = loadBalancer;
+		} else {
+			loadBalancer = null;
+		}
+		if (performance.getSchedulerWeight() != null) {
+			scheduler = FairScheduler.shared(performance.getSchedulerConcurrency());
+			tenant = scheduler.tenant(url, performance.getSchedulerWeight());
+			connector = new ScheduledConnector(connector, scheduler, tenant);
+		} else {
+			scheduler = null;
+			tenant = null;
+		}
+		// Above the scheduler, each copy of a hedged lookup takes its own slot
+		if (performance.getHedgePercentile() != null) {
+			hedging = new HedgingConnector(connector, performance.getHedgePercentile(), performance.getHedgeBudgetPercent());
+			connector = hedging;
+		} else {
+			hedging = null;
+		}
+		if (performance.isTracing()) {
+			connector = new TracingConnector(connector);
+		}
+		clientConfig.connector(connector);
+		client = ClientBuilder.newClient(clientConfig)
 				.register(new HttpBasicAuthFilter(username, password))
 				.register(JacksonFeature.class)
+				.register(requestMonitor);
+		if (performance.getTrafficRecordFile() != null) {
+			trafficRecorder = new TrafficRecorder(performance.getTrafficRecordFile());
+			client.register(trafficRecorder);
+		} else {
+			trafficRecorder = null;
+		}
+		FlightRecorderEvents.httpCallFilter(groupEmails::get).ifPresent(client::register);
+		groupClient = client
 				.target(url)
 				.path(GROUP_PATH);
+		userClient = client
+				.target(url)
+				.path(USER_PATH);
+		int cacheMaxMembers = Optional.ofNullable(performance.getGroupCacheMaxMembers()).orElse(DEFAULT_CACHE_MAX_MEMBERS);
+		if (performance.isMembersPrecheck()) {
+			// A single segment, so that a large group can use the whole weight
+			cachedMembers = CacheBuilder.newBuilder()
+				.concurrencyLevel(1)
+				.maximumWeight(cacheMaxMembers)
+				.weigher((String groupId, CachedMembers cached) -> 1 + cached.members.size())
+				.build();
+		} else {
+			cachedMembers = null;
+		}
+		membersPrecheck = cachedMembers != null;
+		if (performance.getGroupCacheMaxMembers() != null) {
+			cachedGroups = CacheBuilder.newBuilder()
+				.concurrencyLevel(1)
+				.maximumWeight(cacheMaxMembers)
+				.weigher((String email, GroupWithMembersEmails group) -> 1 + group.getMembers().size())
+				.expireAfterWrite(performance.getGroupCacheTtlSeconds(), TimeUnit.SECONDS)
+				.recordStats()
+				.build();
+		} else {
+			cachedGroups = null;
+		}
+		upsert = performance.isUpsert();
+		pageSize = performance.getPageSize();
+	}
+
+	private static PerformanceSettings performanceOf(OpenpaasService settings) {
+		try {
+			return PerformanceSettings.of(settings);
+		} catch (LscServiceConfigurationException e) {
+			throw new IllegalArgumentException(e.getMessage(), e);
+		}
+	}
+
+	/**
+	 * Version of the members of a group: their count, and when the membership last changed.
+	 */
+	private static class MembersVersion {
+		private final int count;
+		private final Date lastModified;
+
+		private MembersVersion(int count, Date lastModified) {
+			this.count = count;
+			this.lastModified = lastModified;
+		}
+
+		/**
+		 * @return the version the response tells, or empty unless it carries both the items count
+		 *         and a strong Last-Modified, at least one second before the response date
+		 */
+		private static Optional<MembersVersion> of(Response response) {
+			String count = response.getHeaderString(ITEMS_COUNT_HEADER);
+			Date lastModified = response.getLastModified();
+			if (count == null || lastModified == null) {
+				return Optional.empty();
+			}
+			// Last-Modified has a one second resolution, a change in the same second would go unnoticed
+			Date date = Optional.ofNullable(response.getDate()).orElseGet(Date::new);
+			if (date.getTime() - lastModified.getTime() < TimeUnit.SECONDS.toMillis(1)) {
+				return Optional.empty();
+			}
+			return Optional.of(new MembersVersion(Integer.parseInt(count), lastModified));
+		}
+
+		@Override
+		public boolean equals(Object other) {
+			if (!(other instanceof MembersVersion)) {
+				return false;
+			}
+			MembersVersion version = (MembersVersion) other;
+			return count == version.count && lastModified.equals(version.lastModified);
+		}
+
+		@Override
+		public int hashCode() {
+			return Objects.hash(count, lastModified);
+		}
+	}
+
+	/**
+	 * Members of a group as last downloaded, with their version.
+	 */
+	private static class CachedMembers {
+		private final MembersVersion version;
+		private final List<Member> members;
+
+		private CachedMembers(MembersVersion version, List<Member> members) {
+			this.version = version;
+			this.members = members;
+		}
 	}
 	
+	/**
+	 * Closes the HTTP client, its connections, the stall watchdog and the traffic recording, if any,
+	 * and leaves the request scheduler.
+	 */
+	public void close() {
+		client.close();
+		requestMonitor.close();
+		if (scheduler != null) {
+			scheduler.leave(tenant);
+		}
+		if (trafficRecorder != null) {
+			try {
+				trafficRecorder.close();
+			} catch (IOException e) {
+				LOGGER.warn("Unable to close the traffic recording (" + e + ")");
+			}
+		}
+	}
+
+	/**
+	 * @return the slow request log, stall watchdog and request timings
+	 */
+	public RequestMonitor getRequestMonitor() {
+		return requestMonitor;
+	}
+
+	/**
+	 * @return the OpenPaaS frontends the requests are spread over, if several
+	 */
+	public List<LoadBalancingConnector.Endpoint> getEndpoints() {
+		return loadBalancer != null ? loadBalancer.getEndpoints() : ImmutableList.of();
+	}
+
+	/**
+	 * @return the lookups sent again when slow to answer, if hedged
+	 */
+	public Optional<HedgingConnector> getHedging() {
+		return Optional.ofNullable(hedging);
+	}
+
+	/**
+	 * @return the latency and queue depth of the requests to this OpenPaaS, if scheduled
+	 */
+	public Optional<FairScheduler.TenantMetrics> getSchedulerMetrics() {
+		return Optional.ofNullable(scheduler).map(scheduler -> scheduler.getMetrics().get(tenant.getName()));
+	}
+
+	/**
+	 * @return the hits, misses and evictions of the group cache, if enabled
+	 */
+	public Optional<CacheStats> getGroupCacheStats() {
+		return Optional.ofNullable(cachedGroups).map(Cache::stats);
+	}
+
+	/**
+	 * @return true if creations are sent without checking first that the group does not exist
+	 */
+	public boolean isUpsert() {
+		return upsert;
+	}
+
+	/**
+	 * @return the ids of the users and groups seen or looked up so far
+	 */
+	public MemberIndex getMemberIndex() {
+		return memberIndex;
+	}
+
+	/**
+	 * Applies modifications to a group, looking up first the ids of the new members.
+	 */
+	public GroupWithMembersEmails modify(GroupWithMembersEmails group, Map<String, List<Object>> modificationsItems) {
+		List<Object> members = modificationsItems.get("members");
+		if (members != null) {
+			resolveMembers(members.stream().map(String::valueOf).collect(Collectors.toList()));
+		}
+		return group.modify(modificationsItems, memberIndex);
+	}
+
+	/**
+	 * Applies modifications to a group, as LSC computed them against the given current group,
+	 * so that it is written without being read again.
+	 * A member both deleted and added under another address is neither removed nor added again.
+	 */
+	public GroupWithMembersEmails modify(GroupWithMembersEmails currentGroup, List<LscDatasetModification> modifications) {
+		Map<String, List<Object>> replacedItems = new HashMap<>();
+		List<String> addedMembers = new ArrayList<>();
+		List<String> deletedMembers = new ArrayList<>();
+		for (LscDatasetModification modification : modifications) {
+			List<Object> values = modification.getValues();
+			if (!"members".equals(modification.getAttributeName())) {
+				// Name and email are single valued, and cannot be unset
+				if (modification.getOperation() != LscDatasetModificationType.DELETE_VALUES) {
+					replacedItems.put(modification.getAttributeName(), values);
+				}
+			} else if (modification.getOperation() == LscDatasetModificationType.ADD_VALUES) {
+				values.forEach(value -> addedMembers.add(String.valueOf(value)));
+			} else if (modification.getOperation() == LscDatasetModificationType.DELETE_VALUES) {
+				values.forEach(value -> deletedMembers.add(String.valueOf(value)));
+			} else {
+				replacedItems.put(modification.getAttributeName(), values);
+			}
+		}
+		// Deleted members come from the current group, they are already known
+		resolveMembers(addedMembers);
+		return modify(currentGroup, replacedItems).withMemberChanges(addedMembers, deletedMembers, memberIndex);
+	}
+
+	/**
+	 * @return the id of the group, from the groups seen so far or else looked up
+	 */
+	public Optional<String> getGroupId(String email) {
+		String groupId = groupIds.get(email.toLowerCase(Locale.ROOT));
+		return groupId != null ? Optional.of(groupId) : lookForGroup(email);
+	}
+
+	private void learnGroupId(String email, String groupId) {
+		if (email != null && groupId != null) {
+			groupIds.put(email.toLowerCase(Locale.ROOT), groupId);
+			groupEmails.put(groupId, email);
+		}
+	}
+
+	private void forgetGroupId(String groupId) {
+		String email = groupEmails.remove(groupId);
+		if (email != null) {
+			groupIds.remove(email.toLowerCase(Locale.ROOT), groupId);
+		}
+	}
+
+	/**
+	 * Looks up the members not indexed yet: known group ids first, then users, and groups
+	 * only when the group list was not fetched or the group was created since.
+	 */
+	private void resolveMembers(List<String> emails) {
+		for (String email : emails) {
+			if (memberIndex.isResolved(email)) {
+				continue;
+			}
+			String knownGroupId = groupIds.get(email.toLowerCase(Locale.ROOT));
+			if (knownGroupId != null) {
+				memberIndex.learnGroup(knownGroupId, email);
+				continue;
+			}
+			Optional<UserMember.Member> user = lookForUser(email);
+			if (user.isPresent()) {
+				memberIndex.learnUser(Optional.ofNullable(user.get()._id).orElse(user.get().id), user.get().preferredEmail, user.get().emails);
+				continue;
+			}
+			Optional<String> groupId = groupsListed && !createdGroupEmails.contains(email.toLowerCase(Locale.ROOT))
+				? Optional.empty()
+				: lookForGroup(email);
+			if (groupId.isPresent()) {
+				memberIndex.learnGroup(groupId.get(), email);
+			} else {
+				memberIndex.learnExternal(email);
+			}
+		}
+	}
+
+	private Optional<UserMember.Member> lookForUser(String email) {
+		WebTarget target = userClient.queryParam("email", email);
+		LOGGER.debug("GETting user: " + target.getUri().toString());
+		try {
+			List<UserMember.Member> users = target.request().get(new GenericType<List<UserMember.Member>>(){});
+			return users.size() == 1 ? Optional.of(users.get(0)) : Optional.empty();
+		} catch (WebApplicationException e) {
+			// The member is then written by email and resolved by OpenPaaS
+			LOGGER.debug(String.format("Unable to look for user %s (%s)", email, e));
+			return Optional.empty();
+		}
+	}
+
 	public List<GroupItem> getGroupList() throws ProcessingException, WebApplicationException {
-		WebTarget target = groupClient.path("").queryParam("limit", GROUPS_LIMIT);
-		LOGGER.debug("GETting group list: " + target.getUri().toString());
-		return target.request().get(new GenericType<List<GroupItem>>(){});
+		List<GroupItem> groups = getList("group list", groupClient.path(""), GROUPS_LIMIT, new GenericType<List<GroupItem>>(){});
+		groups.forEach(group -> learnGroupId(group.email, group.id));
+		createdGroupEmails.clear();
+		groupsListed = true;
+		return groups;
 	}
 
 	public GroupWithMembersEmails getGroup(String email) throws ProcessingException, WebApplicationException {
+		if (cachedGroups == null) {
+			return fetchGroup(email);
+		}
+		String key = email.toLowerCase(Locale.ROOT);
+		GroupWithMembersEmails group = cachedGroups.getIfPresent(key);
+		if (group == null) {
+			group = fetchGroup(email);
+			cachedGroups.put(key, group);
+		}
+		return group;
+	}
+
+	private GroupWithMembersEmails fetchGroup(String email) throws ProcessingException, WebApplicationException {
 		WebTarget groupTarget = groupClient.queryParam("email", email);
 		LOGGER.debug("GETting group: " + groupTarget.getUri().toString());
 		List<Group> groups = groupTarget.request().get(new GenericType<List<Group>>(){});
@@ -102,13 +507,143 @@ public class OpenpaasDao {
 			throw new ProcessingException(String.format("More than one group (%d) found for email: %s", groups.size(), email));
 		}
 		Group group = groups.get(0);
-		WebTarget membersTarget = groupClient.path(group.id).path("members").queryParam("limit", MEMBERS_LIMIT);
-		LOGGER.debug("GETting group members: " + membersTarget.getUri().toString());
-		List<Member> members = membersTarget.request().get(new GenericType<List<Member>>(){});
+		learnGroupId(group.email, group.id);
+		List<Member> members = getMembers(group.id);
+		memberIndex.learn(members);
 		return new GroupWithMembersEmails(group, members);
 	}
 
+	/**
+	 * When members pre-check is enabled and the members of the group are cached, only the first member
+	 * is requested at first: the full list is downloaded unless the items count and the Last-Modified
+	 * of the membership both match the cached ones. The version of the downloaded list is taken from
+	 * the headers of its response. Without a Last-Modified, the count alone is not trusted, and
+	 * the pre-check is disabled.
+	 */
+	private List<Member> getMembers(String groupId) {
+		WebTarget membersTarget = groupClient.path(groupId).path("members");
+		if (!membersPrecheck) {
+			return getList("group members", membersTarget, MEMBERS_LIMIT, new GenericType<List<Member>>(){});
+		}
+		CachedMembers cached = cachedMembers.getIfPresent(groupId);
+		if (cached != null) {
+			Optional<MembersVersion> version = getMembersVersion(membersTarget);
+			if (version.isPresent() && version.get().equals(cached.version)) {
+				LOGGER.debug(String.format("Group members unchanged (%d members), skipping download", cached.members.size()));
+				return cached.members;
+			}
+		}
+		AtomicReference<Optional<MembersVersion>> version = new AtomicReference<>(Optional.empty());
+		List<Member> members = getList("group members", membersTarget, MEMBERS_LIMIT, new GenericType<List<Member>>(){},
+				response -> version.set(versionOf(response)));
+		// A change while the pages are downloaded leaves a version older than the list, the next check downloads it again
+		if (version.get().isPresent() && version.get().get().count == members.size()) {
+			cachedMembers.put(groupId, new CachedMembers(version.get().get(), members));
+		} else {
+			cachedMembers.invalidate(groupId);
+		}
+		return members;
+	}
+
+	private Optional<MembersVersion> getMembersVersion(WebTarget membersTarget) {
+		WebTarget precheckTarget = membersTarget.queryParam("limit", 1);
+		LOGGER.debug("GETting group members version: " + precheckTarget.getUri().toString());
+		Response response = precheckTarget.request().get();
+		try {
+			return checkResponse(response) ? versionOf(response) : Optional.empty();
+		} finally {
+			response.close();
+		}
+	}
+
+	private Optional<MembersVersion> versionOf(Response response) {
+		if (response.getLastModified() == null && membersPrecheck) {
+			LOGGER.info("OpenPaaS sends group members without Last-Modified, disabling the members pre-check");
+			membersPrecheck = false;
+			cachedMembers.invalidateAll();
+		}
+		return MembersVersion.of(response);
+	}
+
+	/**
+	 * Gets a list in pages of {@link PerformanceSettings#getPageSize()} items, if set, or else at once.
+	 */
+	private <T> List<T> getList(String description, WebTarget target, int limit, GenericType<List<T>> type) {
+		return getList(description, target, limit, type, null);
+	}
+
+	/**
+	 * @param firstResponse if not null, given the first response, before its entity is read
+	 */
+	private <T> List<T> getList(String description, WebTarget target, int limit, GenericType<List<T>> type, Consumer<Response> firstResponse) {
+		if (pageSize == null) {
+			WebTarget listTarget = target.queryParam("limit", limit);
+			LOGGER.debug(String.format("GETting %s: %s", description, listTarget.getUri()));
+			return get(listTarget, type, firstResponse);
+		}
+		List<T> items = new ArrayList<>();
+		for (int offset = 0; ; offset += pageSize) {
+			WebTarget pageTarget = target.queryParam("limit", pageSize).queryParam("offset", offset);
+			LOGGER.debug(String.format("GETting %s page: %s", description, pageTarget.getUri()));
+			List<T> page = get(pageTarget, type, offset == 0 ? firstResponse : null);
+			items.addAll(page);
+			if (page.size() < pageSize) {
+				return items;
+			}
+		}
+	}
+
+	private static <T> List<T> get(WebTarget target, GenericType<List<T>> type, Consumer<Response> responseHeaders) {
+		if (responseHeaders == null) {
+			return target.request().get(type);
+		}
+		Response response = target.request().get();
+		try {
+			if (response.getStatus() == Status.NOT_FOUND.getStatusCode()) {
+				throw new NotFoundException(response);
+			}
+			if (!checkResponse(response)) {
+				throw new WebApplicationException(response);
+			}
+			responseHeaders.accept(response);
+			return response.readEntity(type);
+		} finally {
+			response.close();
+		}
+	}
+
+	private void forgetMembers(String groupId) {
+		if (cachedMembers != null) {
+			cachedMembers.invalidate(groupId);
+		}
+		forgetGroup(groupId);
+	}
+
+	/**
+	 * Drops the cached group, found by the email learned along with its id when it was fetched.
+	 */
+	private void forgetGroup(String groupId) {
+		if (cachedGroups == null) {
+			return;
+		}
+		String email = groupEmails.get(groupId);
+		if (email != null) {
+			cachedGroups.invalidate(email.toLowerCase(Locale.ROOT));
+		}
+	}
+
 	public boolean createGroup(GroupWithMembersEmails newGroup) {
+		return createGroup(newGroup, null);
+	}
+
+	/**
+	 * Creates a group. In upsert mode, when OpenPaaS answers that the email is already in use,
+	 * the existing group is looked up and modified with the given items instead.
+	 */
+	public boolean createGroup(GroupWithMembersEmails newGroup, Map<String, List<Object>> modificationsItems) {
+		if (cachedGroups != null && newGroup.getEmail() != null) {
+			cachedGroups.invalidate(newGroup.getEmail().toLowerCase(Locale.ROOT));
+		}
 		WebTarget target = groupClient.path("");
 		LOGGER.debug("POSTing group: " + target.getUri().toString());
 		Response response = target.request().post(Entity.entity(newGroup, MediaType.APPLICATION_JSON_TYPE));
@@ -116,7 +651,13 @@ public class OpenpaasDao {
 		response.close();
 		if (checkResponse(response)) {
 			LOGGER.debug("POST is successful");
+			if (newGroup.getEmail() != null) {
+				createdGroupEmails.add(newGroup.getEmail().toLowerCase(Locale.ROOT));
+			}
 			return true;
+		} else if (upsert && modificationsItems != null && isDuplicate(response)) {
+			LOGGER.debug(String.format("Group %s already exists, modifying it", newGroup.getEmail()));
+			return modifyGroup(modify(getGroup(newGroup.getEmail()), modificationsItems));
 		} else {
 			LOGGER.error(String.format("Error %d (%s - %s) while creating group: %s",
 					response.getStatus(),
@@ -126,9 +667,22 @@ public class OpenpaasDao {
 			return false;
 		}
 	}
+
+	/**
+	 * @return true if OpenPaaS refused a creation with 409 Conflict, as it does when the email is already in use
+	 */
+	private static boolean isDuplicate(Response response) {
+		return response.getStatus() == Status.CONFLICT.getStatusCode();
+	}
 	
 	public boolean deleteGroup(String email) {
 		String groupId = lookForGroup(email).orElseThrow(() -> new NotFoundException());
+		return deleteGroupById(groupId);
+	}
+
+	public boolean deleteGroupById(String groupId) {
+		forgetMembers(groupId);
+		forgetGroupId(groupId);
 		WebTarget target = groupClient.path(groupId);
 		LOGGER.debug("DELETing group: " + target.getUri().toString());
 		Response response = target.request().delete();
@@ -148,14 +702,27 @@ public class OpenpaasDao {
 	}
 
 	public boolean modifyGroup(GroupWithMembersEmails modifiedGroup) {
-		WebTarget target = groupClient.path(modifiedGroup.getId());
+		if (!modifiedGroup.isMetadataModified()) {
+			LOGGER.debug("Group metadata unchanged, skipping POST: " + groupClient.path(modifiedGroup.getId()).getUri().toString());
+		} else if (!updateGroupMetadata(modifiedGroup.getId(), modifiedGroup.toMetadata())) {
+			return false;
+		}
+		return addMembers(modifiedGroup.getId(), modifiedGroup.getMembersToAdd())
+			&& removeMembers(modifiedGroup.getId(), modifiedGroup.getMembersToRemove());
+	}
+
+	public boolean updateGroupMetadata(String groupId, GroupMetadata metadata) {
+		forgetGroup(groupId);
+		WebTarget target = groupClient.path(groupId);
 		LOGGER.debug("POSTing group: " + target.getUri().toString());
-		Response response = target.request().post(Entity.entity(modifiedGroup, MediaType.APPLICATION_JSON_TYPE));
+		Response response = target.request().post(Entity.entity(metadata, MediaType.APPLICATION_JSON_TYPE));
 		String rawResponseBody = response.readEntity(String.class);
 		response.close();
 		if (checkResponse(response)) {
 			LOGGER.debug("POST is successful");
-			return modifyGroupMembership(target, modifiedGroup);
+			forgetGroupId(groupId);
+			learnGroupId(metadata.email, groupId);
+			return true;
 		} else {
 			LOGGER.error(String.format("Error %d (%s - %s) while modifying group: %s",
 					response.getStatus(),
@@ -170,56 +737,120 @@ public class OpenpaasDao {
 		return Status.Family.familyOf(response.getStatus()) == Status.Family.SUCCESSFUL;
 	}
 	
-	private boolean modifyGroupMembership(WebTarget groupTarget, GroupWithMembersEmails group) {
-		return addMembersToGroup(groupTarget, group.getMembersToAdd())
-			&& removeMembersToGroup(groupTarget, group.getMembersToRemove());
+	public boolean addMembers(String groupId, List<Membership> membersToAdd) {
+		if (!membersToAdd.isEmpty()) {
+			forgetMembers(groupId);
+		}
+		return postMembers(groupClient.path(groupId).path("members").queryParam("action", "add"), membersToAdd);
+	}
+
+	public boolean removeMembers(String groupId, List<Membership> membersToRemove) {
+		if (!membersToRemove.isEmpty()) {
+			forgetMembers(groupId);
+		}
+		return postMembers(groupClient.path(groupId).path("members").queryParam("action", "remove"), membersToRemove);
 	}
 
-	private boolean addMembersToGroup(WebTarget groupTarget, List<Membership> membersToAdd) {
-		if (membersToAdd.size() == 0) {
+	/**
+	 * Posts a batch of memberships. When OpenPaaS rejects the batch content, the halves are
+	 * posted again recursively, so that the valid memberships are applied and only the
+	 * rejected ones are reported, with a few requests per rejected membership.
+	 * @return true if all the memberships were applied
+	 */
+	private boolean postMembers(WebTarget target, List<Membership> memberships) {
+		if (memberships.size() == 0) {
 			return true;
 		}
-		WebTarget target = groupTarget.path("members").queryParam("action", "add");
-		LOGGER.debug("POSTing group: " + target.getUri().toString());
-		Response response = target.request().post(Entity.entity(membersToAdd, MediaType.APPLICATION_JSON_TYPE));
-		String rawResponseBody = response.readEntity(String.class);
-		response.close();
-		if (checkResponse(response)) {
-			LOGGER.debug("POST is successful");
+		Optional<Rejection> rejection = post(target, memberships);
+		if (!rejection.isPresent()) {
 			return true;
-		} else {
-			LOGGER.error(String.format("Error %d (%s - %s) while modifying group: %s",
-					response.getStatus(),
-					response.getStatusInfo(),
-					rawResponseBody,
-					target.getUri().toString()));
-			return false;
 		}
+		// Each level of the bisection sends two requests, enough for a couple of rejected memberships
+		int bisectionRequests = 4 * (32 - Integer.numberOfLeadingZeros(memberships.size()));
+		return bisect(target, memberships, rejection.get(), new AtomicInteger(bisectionRequests));
 	}
 
-	private boolean removeMembersToGroup(WebTarget groupTarget, List<Membership> membersToRemove) {
-		if (membersToRemove.size() == 0) {
-			return true;
+	/**
+	 * The answer of OpenPaaS to a membership batch it did not apply.
+	 */
+	private static class Rejection {
+		private final int status;
+		private final StatusType statusInfo;
+		private final String body;
+
+		private Rejection(Response response, String body) {
+			this.status = response.getStatus();
+			this.statusInfo = response.getStatusInfo();
+			this.body = body;
+		}
+
+		/**
+		 * @return true if OpenPaaS refused the request content, which may come from a few entries only
+		 */
+		private boolean isContentRejected() {
+			return status == 400 || status == 409 || status == 422;
+		}
+
+		private boolean isSameAs(Rejection other) {
+			return status == other.status && Objects.equals(body, other.body);
 		}
-		WebTarget target = groupTarget.path("members").queryParam("action", "remove");
+	}
+
+	/**
+	 * @return the answer of OpenPaaS unless it applied the memberships
+	 */
+	private Optional<Rejection> post(WebTarget target, List<Membership> memberships) {
 		LOGGER.debug("POSTing group: " + target.getUri().toString());
-		Response response = target.request().post(Entity.entity(membersToRemove, MediaType.APPLICATION_JSON_TYPE));
+		Response response = target.request().post(Entity.entity(memberships, MediaType.APPLICATION_JSON_TYPE));
 		String rawResponseBody = response.readEntity(String.class);
 		response.close();
 		if (checkResponse(response)) {
 			LOGGER.debug("POST is successful");
-			return true;
-		} else {
-			LOGGER.error(String.format("Error %d (%s - %s) while modifying group: %s",
-					response.getStatus(),
-					response.getStatusInfo(),
-					rawResponseBody,
-					target.getUri().toString()));
+			return Optional.empty();
+		}
+		return Optional.of(new Rejection(response, rawResponseBody));
+	}
+
+	/**
+	 * Posts the halves of a rejected batch, then bisects again the rejected halves. When both halves
+	 * are rejected like the whole batch, the cause is the request rather than a few memberships, e.g.
+	 * a malformed payload or a refused authorization, and the bisection stops. It also stops once
+	 * its requests are spent, so that it never sends more than a few requests per level.
+	 */
+	private boolean bisect(WebTarget target, List<Membership> memberships, Rejection rejection, AtomicInteger remainingRequests) {
+		if (!rejection.isContentRejected() || memberships.size() == 1 || remainingRequests.get() < 2) {
+			logRejection(target, memberships, rejection);
+			return false;
+		}
+		LOGGER.debug(String.format("Batch of %d members rejected (%d), bisecting", memberships.size(), rejection.status));
+		int middle = memberships.size() / 2;
+		List<Membership> firstHalf = memberships.subList(0, middle);
+		List<Membership> secondHalf = memberships.subList(middle, memberships.size());
+		remainingRequests.addAndGet(-2);
+		Optional<Rejection> firstRejection = post(target, firstHalf);
+		Optional<Rejection> secondRejection = post(target, secondHalf);
+		if (firstRejection.isPresent() && secondRejection.isPresent()
+				&& firstRejection.get().isSameAs(rejection) && secondRejection.get().isSameAs(rejection)) {
+			logRejection(target, memberships, rejection);
 			return false;
 		}
+		boolean firstHalfApplied = !firstRejection.isPresent() || bisect(target, firstHalf, firstRejection.get(), remainingRequests);
+		boolean secondHalfApplied = !secondRejection.isPresent() || bisect(target, secondHalf, secondRejection.get(), remainingRequests);
+		return firstHalfApplied && secondHalfApplied;
+	}
+
+	private static void logRejection(WebTarget target, List<Membership> memberships, Rejection rejection) {
+		LOGGER.error(String.format("Error %d (%s - %s) while modifying group: %s%s",
+				rejection.status,
+				rejection.statusInfo,
+				rejection.body,
+				target.getUri().toString(),
+				memberships.size() == 1
+					? String.format(" (rejected member %s %s)", memberships.get(0).getObjectType(), memberships.get(0).getId())
+					: String.format(" (%d members not applied)", memberships.size())));
 	}
 
-	private Optional<String> lookForGroup(String email) {
+	public Optional<String> lookForGroup(String email) {
 		WebTarget userTarget = groupClient.queryParam("email", email);
 		LOGGER.debug("GETting group: " + userTarget.getUri().toString());
 		List<Group> groups = userTarget.request().get(new GenericType<List<Group>>(){});
@@ -230,6 +861,7 @@ public class OpenpaasDao {
 			LOGGER.warn(String.format("Too many groups (%d) found for email: %s", groups.size(), email));
 			return Optional.empty();
 		}
+		learnGroupId(groups.get(0).email, groups.get(0).id);
 		return Optional.of(groups.get(0).id);
 	}
 	
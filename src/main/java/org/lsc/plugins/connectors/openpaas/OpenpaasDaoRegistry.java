@@ -0,0 +1,130 @@
+/*
+ ****************************************************************************
+ * Ldap Synchronization Connector provides tools to synchronize
+ * electronic identities from a list of data sources including
+ * any database with a JDBC connector, another LDAP directory,
+ * flat files...
+ *
+ *                  ==LICENSE NOTICE==
+ * 
+ * Copyright (c) 2008 - 2019 LSC Project 
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+
+ *    * Redistributions of source code must retain the above copyright
+ * notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ * notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the LSC Project nor the names of its
+ * contributors may be used to endorse or promote products derived from
+ * this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS
+ * IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED
+ * TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A
+ * PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER
+ * OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ *                  ==LICENSE NOTICE==
+ *
+ *               (c) 2008 - 2019 LSC Project
+ *         Raphael Ouazana <rouazana@linagora.com>
+ ****************************************************************************
+ */
+package org.lsc.plugins.connectors.openpaas;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.lsc.configuration.TaskType;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.hash.HashCode;
+import com.google.common.hash.Hashing;
+
+/**
+ * JVM-wide registry of the OpenPaaS DAOs, so that the tasks and services writing to a same
+ * OpenPaaS share one HTTP client, its connections, the caches and the member index. A DAO is
+ * shared by the services using the same url, credentials and client settings, and closed when
+ * the last of them releases it.
+ */
+public class OpenpaasDaoRegistry {
+
+	private static final Logger LOGGER = LoggerFactory.getLogger(OpenpaasDaoRegistry.class);
+
+	private static final Map<List<Object>, SharedDao> DAOS = new HashMap<>();
+
+	private static class SharedDao {
+		private final OpenpaasDao dao;
+		private int references;
+
+		private SharedDao(OpenpaasDao dao) {
+			this.dao = dao;
+		}
+	}
+
+	private OpenpaasDaoRegistry() {
+	}
+
+	/**
+	 * @return the DAO shared with the other services using the same connection and client settings,
+	 *         to be released once no longer used
+	 */
+	public static synchronized OpenpaasDao acquire(String url, String username, String password, TaskType task,
+			PerformanceSettings performance) {
+		SharedDao shared = DAOS.computeIfAbsent(key(url, username, password, performance), key -> {
+			LOGGER.debug("Creating OpenPaaS client for " + url);
+			return new SharedDao(new OpenpaasDao(url, username, password, task, performance));
+		});
+		shared.references++;
+		return shared.dao;
+	}
+
+	/**
+	 * Closes the DAO if no other service uses it.
+	 */
+	public static synchronized void release(OpenpaasDao dao) {
+		DAOS.entrySet().stream()
+			.filter(entry -> entry.getValue().dao == dao)
+			.findFirst()
+			.ifPresent(entry -> {
+				if (--entry.getValue().references == 0) {
+					LOGGER.debug("Closing OpenPaaS client");
+					DAOS.remove(entry.getKey());
+					dao.close();
+				}
+			});
+	}
+
+	/**
+	 * @return the number of services using the DAOs
+	 */
+	static synchronized int getReferenceCount() {
+		return DAOS.values().stream().mapToInt(shared -> shared.references).sum();
+	}
+
+	/**
+	 * The connection and the settings the DAO is built from. The credentials are only kept hashed,
+	 * the registry living as long as the JVM.
+	 */
+	private static List<Object> key(String url, String username, String password, PerformanceSettings performance) {
+		return Arrays.asList(url, credentials(username, password), performance);
+	}
+
+	private static HashCode credentials(String username, String password) {
+		return Hashing.sha256().hashString(username + '\0' + password, StandardCharsets.UTF_8);
+	}
+}
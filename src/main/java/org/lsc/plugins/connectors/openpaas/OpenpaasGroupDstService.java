@@ -42,15 +42,36 @@
  */
 package org.lsc.plugins.connectors.openpaas;
 
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
 import java.util.List;
+import java.util.Locale;
 import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.Collectors;
 
 import javax.ws.rs.NotFoundException;
 import javax.ws.rs.ProcessingException;
 import javax.ws.rs.WebApplicationException;
 
 import org.lsc.LscDatasets;
+import org.lsc.LscModificationType;
 import org.lsc.LscModifications;
 import org.lsc.beans.IBean;
 import org.lsc.configuration.PluginConnectionType;
@@ -62,15 +83,19 @@ import org.lsc.plugins.connectors.openpaas.beans.GroupItem;
 import org.lsc.plugins.connectors.openpaas.beans.GroupWithMembersEmails;
 import org.lsc.plugins.connectors.openpaas.generated.OpenpaasGroupService;
 import org.lsc.plugins.connectors.openpaas.generated.OpenpaasService;
+import org.lsc.plugins.connectors.openpaas.generated.TransportType;
+import org.lsc.plugins.connectors.openpaas.generated.WriteModeType;
 import org.lsc.service.IWritableService;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
 
-public class OpenpaasGroupDstService implements IWritableService {
+public class OpenpaasGroupDstService implements IWritableService, Closeable {
 	
 	protected static final Logger LOGGER = LoggerFactory.getLogger(OpenpaasGroupDstService.class);
+
 	/**
 	 * Preceding the object feeding, it will be instantiated from this class.
 	 */
@@ -80,6 +105,55 @@ public class OpenpaasGroupDstService implements IWritableService {
 	private final PluginConnectionType connexion;
 
 	private final OpenpaasDao openpaasDao;
+
+	private final WriteJournal journal;
+
+	private final Shard shard;
+
+	private final SyncPlanner planner;
+
+	private final int plannedWritesLimit;
+
+	private final long plannedWritesMaxAgeMillis;
+
+	/**
+	 * Sends the planned writes once old enough, null unless writes are planned.
+	 */
+	private final ScheduledExecutorService planFlusher;
+
+	/**
+	 * The writes which failed while sent with no caller to report them to.
+	 */
+	private final List<String> failedBackgroundWrites = new ArrayList<>();
+
+	/**
+	 * The writes waiting in the giant groups lane, those left at JVM exit are journaled.
+	 */
+	private final Set<LscModifications> queuedGiantWrites = Collections.synchronizedSet(Collections.newSetFromMap(new IdentityHashMap<>()));
+
+	private final Thread flushShutdownHook;
+
+	private final GiantGroupLane giantGroupLane;
+
+	private final boolean blindUpdates;
+
+	/**
+	 * Null unless tracing is enabled.
+	 */
+	private final ServiceTracing tracing;
+
+	private volatile Set<String> knownGroupEmails;
+
+	private final AtomicBoolean released = new AtomicBoolean();
+
+	/**
+	 * The requests sent by this service, the client may be shared with other tasks.
+	 */
+	private final RequestMonitor.Timings timings = new RequestMonitor.Timings();
+
+	private long runStart = System.currentTimeMillis();
+
+	private Map<RequestMonitor.Category, RequestMonitor.Timing> runStartTimings = timings.get();
 	
 	/**
 	 * Create the service
@@ -97,14 +171,109 @@ public class OpenpaasGroupDstService implements IWritableService {
         	service = (OpenpaasService) task.getPluginDestinationService().getAny().get(0);
 			beanClass = (Class<IBean>) Class.forName(task.getBean());
 			connexion = (PluginConnectionType) service.getConnection().getReference();
+			PerformanceSettings performance = PerformanceSettings.of(service);
+			blindUpdates = performance.isBlindUpdates();
+			tracing = performance.isTracing() ? new ServiceTracing() : null;
+			shard = performance.getShard();
+			if (!shard.isAll()) {
+				LOGGER.info("Synchronizing OpenPaaS groups of " + shard);
+			}
 			
-			openpaasDao = new OpenpaasDao(connexion.getUrl(), connexion.getUsername(), connexion.getPassword(), task);
+			checkEndpoints(connexion.getUrl(), performance.getEndpoints());
+			checkTransport(connexion.getUrl(), performance);
+			openpaasDao = OpenpaasDaoRegistry.acquire(connexion.getUrl(), connexion.getUsername(), connexion.getPassword(), task, performance);
 			
-		} catch (ClassNotFoundException e) {
+			if (performance.getJournalFile() != null) {
+				journal = new WriteJournal(Paths.get(performance.getJournalFile()));
+				try (RequestMonitor.Scope scope = RequestMonitor.scope(timings)) {
+					replayPendingWrites();
+				}
+			} else {
+				journal = null;
+			}
+
+			int giantConcurrency = performance.getGiantGroupConcurrency();
+			WriteModeType writeMode = performance.getWriteMode();
+			if (writeMode != WriteModeType.IMMEDIATE) {
+				planner = new SyncPlanner(openpaasDao, journal, performance.getWriteConcurrency(), performance.getMembershipChunkSize(),
+						writeMode == WriteModeType.DRY_RUN, Optional.ofNullable(performance.getGiantGroupThreshold()).orElse(Integer.MAX_VALUE),
+						giantConcurrency);
+			} else {
+				planner = null;
+			}
+			if (planner == null && performance.getGiantGroupThreshold() != null) {
+				giantGroupLane = new GiantGroupLane(performance.getGiantGroupThreshold(), giantConcurrency);
+			} else {
+				giantGroupLane = null;
+			}
+			plannedWritesLimit = performance.getPlannedWritesLimit();
+			plannedWritesMaxAgeMillis = TimeUnit.SECONDS.toMillis(performance.getPlannedWritesMaxAgeSeconds());
+			if (planner != null || giantGroupLane != null) {
+				// LSC may exit without closing the service
+				flushShutdownHook = new Thread(this::abandonWrites, "openpaas-write-abandon");
+				Runtime.getRuntime().addShutdownHook(flushShutdownHook);
+			} else {
+				flushShutdownHook = null;
+			}
+			if (planner != null) {
+				planFlusher = Executors.newSingleThreadScheduledExecutor(runnable -> {
+					Thread thread = new Thread(runnable, "openpaas-plan-flusher");
+					thread.setDaemon(true);
+					return thread;
+				});
+				planFlusher.scheduleWithFixedDelay(() -> flushDueWrites(plannedWritesMaxAgeMillis), 1, 1, TimeUnit.SECONDS);
+			} else {
+				planFlusher = null;
+			}
+		} catch (ClassNotFoundException | IOException | UncheckedIOException e) {
 			throw new LscServiceConfigurationException(e);
 		}
 	}
 	
+	/**
+	 * @throws LscServiceConfigurationException unless the endpoints are http or https urls of the same scheme
+	 */
+	private static void checkEndpoints(String url, List<String> endpoints) throws LscServiceConfigurationException {
+		if (endpoints.isEmpty()) {
+			return;
+		}
+		Set<String> schemes = new HashSet<>();
+		for (String endpoint : endpoints) {
+			try {
+				URI uri = new URI(endpoint);
+				if (!"http".equalsIgnoreCase(uri.getScheme()) && !"https".equalsIgnoreCase(uri.getScheme())) {
+					throw new LscServiceConfigurationException("Endpoint is not an http or https url: " + endpoint);
+				}
+				schemes.add(uri.getScheme().toLowerCase(Locale.ROOT));
+			} catch (URISyntaxException e) {
+				throw new LscServiceConfigurationException("Invalid endpoint: " + endpoint, e);
+			}
+		}
+		if (schemes.size() > 1) {
+			throw new LscServiceConfigurationException("endpoints must all use the same scheme");
+		}
+		LOGGER.info(String.format("Spreading requests to %s over %s", url, endpoints));
+	}
+
+	/**
+	 * @throws LscServiceConfigurationException if HTTP/2 with prior knowledge is asked for https urls
+	 */
+	private static void checkTransport(String url, PerformanceSettings performance) throws LscServiceConfigurationException {
+		if (performance.getTransport() == TransportType.HTTP_1_1) {
+			return;
+		}
+		// The endpoints use the same scheme, and thus the same protocols
+		String transportUrl = performance.getEndpoints().isEmpty() ? url : performance.getEndpoints().get(0);
+		boolean https = "https".equalsIgnoreCase(URI.create(transportUrl).getScheme());
+		if (performance.getTransport() == TransportType.H2C && https) {
+			throw new LscServiceConfigurationException("H2C transport needs http urls, use HTTP_2 with https ones: " + transportUrl);
+		}
+		if (performance.getTransport() == TransportType.HTTP_2 && !https) {
+			LOGGER.info(String.format("HTTP/2 is only negotiated with https urls, requests to %s use HTTP/1.1, "
+					+ "set the transport to H2C if the server speaks HTTP/2 without TLS", transportUrl));
+		}
+	}
+
 	@Override
 	public IBean getBean(String pivotName, LscDatasets pivotAttributes, boolean fromSameService)
 			throws LscServiceException {
@@ -117,8 +286,28 @@ public class OpenpaasGroupDstService implements IWritableService {
 		if (email == null) {
 			return null;
 		}
+		return traced("OpenPaaS getBean", email, null, () -> getBean(pivotName, email));
+	}
+
+	private IBean getBean(String pivotName, String email) throws LscServiceException {
+		if (!shard.contains(email)) {
+			LOGGER.debug(String.format("%s/%s is outside %s", pivotName, email, shard));
+			return null;
+		}
 		try {
-			GroupWithMembersEmails group = openpaasDao.getGroup(email);
+			if (openpaasDao.isUpsert() && !isKnownGroup(email)) {
+				LOGGER.debug(String.format("%s/%s not in the group list, it will be upserted", pivotName, email));
+				return null;
+			}
+			GroupWithMembersEmails group;
+			if (giantGroupLane != null && giantGroupLane.isKnown(email)) {
+				group = getGroupInLane(email);
+			} else {
+				group = openpaasDao.getGroup(email);
+			}
+			if (giantGroupLane != null) {
+				giantGroupLane.remember(email, group.getMembers().size());
+			}
 			return groupToBean(group);
 		} catch (ProcessingException e) {
 			LOGGER.error(String.format("ProcessingException while getting bean %s/%s (%s)",
@@ -141,6 +330,46 @@ public class OpenpaasGroupDstService implements IWritableService {
 
 	}
 
+	/**
+	 * Fetches a giant group from the lane, after the writes queued to it.
+	 */
+	private GroupWithMembersEmails getGroupInLane(String email) throws LscServiceException {
+		try {
+			return giantGroupLane.submit(email, RequestMonitor.inCurrentScope(() -> openpaasDao.getGroup(email))).get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new LscServiceException(e);
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof RuntimeException) {
+				throw (RuntimeException) e.getCause();
+			}
+			throw new LscServiceException(e.getCause());
+		}
+	}
+
+	/**
+	 * In upsert mode, tells without a request whether a group exists, from the group list fetched
+	 * once per synchronization. Groups created meanwhile by someone else are handled by the upsert.
+	 */
+	private boolean isKnownGroup(String email) {
+		Set<String> known = knownGroupEmails;
+		if (known == null) {
+			synchronized (this) {
+				if (knownGroupEmails == null) {
+					rememberGroups(openpaasDao.getGroupList());
+				}
+				known = knownGroupEmails;
+			}
+		}
+		return known.contains(email.toLowerCase(Locale.ROOT));
+	}
+
+	private void rememberGroups(List<GroupItem> groupList) {
+		knownGroupEmails = groupList.stream()
+			.map(group -> group.email.toLowerCase(Locale.ROOT))
+			.collect(Collectors.toCollection(ConcurrentHashMap::newKeySet));
+	}
+
 	private IBean groupToBean(GroupWithMembersEmails group) throws InstantiationException, IllegalAccessException {
 		IBean bean = beanClass.newInstance();
 		bean.setMainIdentifier(group.getEmail());
@@ -148,13 +377,34 @@ public class OpenpaasGroupDstService implements IWritableService {
 		return bean;
 	}
 
+	/**
+	 * Also logs the request timings of the previous synchronization, which ends with the writes it planned.
+	 */
 	@Override
 	public Map<String, LscDatasets> getListPivots() throws LscServiceException {
+		try (RequestMonitor.Scope scope = RequestMonitor.scope(timings)) {
+			try {
+				// The writes planned during a previous synchronization must be visible
+				flushWrites();
+			} finally {
+				logRunTimings(false);
+			}
+			return listPivots();
+		}
+	}
+
+	private Map<String, LscDatasets> listPivots() throws LscServiceException {
 		try {
 			List<GroupItem> groupList = openpaasDao.getGroupList();
+			if (openpaasDao.isUpsert()) {
+				rememberGroups(groupList);
+			}
 
 			Map<String, LscDatasets> listPivots = new HashMap<String, LscDatasets>();
 			for (GroupItem group: groupList) {
+				if (!shard.contains(group.email)) {
+					continue;
+				}
 				listPivots.put(group.email, group.toDatasets());
 			}
 			return ImmutableMap.copyOf(listPivots);
@@ -171,38 +421,432 @@ public class OpenpaasGroupDstService implements IWritableService {
 
 	@Override
 	public boolean apply(LscModifications lm) throws LscServiceException {
+		return traced("OpenPaaS apply", lm.getMainIdentifier(), lm.getOperation(), () -> applyOrQueue(lm));
+	}
+
+	private boolean applyOrQueue(LscModifications lm) throws LscServiceException {
+		LscModificationType operation = lm.getOperation();
+		if (lm.getMainIdentifier() != null && !shard.contains(lm.getMainIdentifier())) {
+			LOGGER.debug(String.format("Ignoring %s of %s, outside %s", operation, lm.getMainIdentifier(), shard));
+			return true;
+		}
+		if (planner != null) {
+			LOGGER.debug(String.format("Planning %s of %s", operation, lm.getMainIdentifier()));
+			planner.record(lm);
+			// Past the limit, the writes are sent by the threads planning more of them
+			flushDueWrites(Long.MAX_VALUE);
+			return true;
+		}
+		if (giantGroupLane != null && operation != LscModificationType.CHANGE_ID && lm.getMainIdentifier() != null
+				&& (giantGroupLane.isGiant(lm) || giantGroupLane.isKnown(lm.getMainIdentifier()))) {
+			LOGGER.debug(String.format("Queuing %s of %s to the giant groups lane", operation, lm.getMainIdentifier()));
+			queueGiantWrite(lm);
+			return true;
+		}
+		return applyNow(lm);
+	}
+
+	/**
+	 * Queues a write to the giant groups lane, its failure is reported by the next pivot listing or the closing.
+	 */
+	private void queueGiantWrite(LscModifications lm) throws LscServiceException {
+		queuedGiantWrites.add(lm);
 		try {
-			switch(lm.getOperation()) {
-			case CHANGE_ID:
-				LOGGER.warn("Trying to change ID of an OpenPaaS group, impossible operation, ignored.");
-				// Silently return without doing anything
-				return true;
-			case CREATE_OBJECT:
-				LOGGER.debug("Creating OpenPaaS group: " + lm.getMainIdentifier());
-				return openpaasDao.createGroup(GroupWithMembersEmails.fromModifications(lm.getModificationsItemsByHash()));
-			case UPDATE_OBJECT:
-				LOGGER.debug("Getting OpenPaaS group for update: " + lm.getMainIdentifier());
-				GroupWithMembersEmails group = openpaasDao.getGroup(lm.getMainIdentifier());
-				LOGGER.debug("Modifying OpenPaaS group: " + lm.getMainIdentifier() + " with: " + lm.getModificationsItemsByHash());
-				GroupWithMembersEmails modifiedGroup = group.modify(lm.getModificationsItemsByHash());
-				return openpaasDao.modifyGroup(modifiedGroup);
-			case DELETE_OBJECT:
-				LOGGER.debug("Deleting OpenPaaS group: " + lm.getMainIdentifier());
-				return openpaasDao.deleteGroup(lm.getMainIdentifier());
-			default:
-				LOGGER.error(String.format("Unknown operation %s", lm.getOperation()));
-				return false;
-			}
+			giantGroupLane.submit(lm.getMainIdentifier(), RequestMonitor.inCurrentScope(() -> {
+				if (!queuedGiantWrites.remove(lm)) {
+					// Journaled on JVM exit
+					return null;
+				}
+				boolean applied;
+				try {
+					applied = applyNow(lm);
+				} catch (LscServiceException | RuntimeException e) {
+					LOGGER.debug(e.toString(), e);
+					applied = false;
+				}
+				if (!applied) {
+					LOGGER.error(String.format("Unable to apply %s of OpenPaaS group %s from the giant groups lane", lm.getOperation(), lm.getMainIdentifier()));
+					synchronized (failedBackgroundWrites) {
+						failedBackgroundWrites.add(lm.getMainIdentifier());
+					}
+				}
+				return null;
+			}));
+		} catch (InterruptedException e) {
+			queuedGiantWrites.remove(lm);
+			Thread.currentThread().interrupt();
+			throw new LscServiceException(e);
+		}
+	}
+
+	/**
+	 * Runs a call in a span, if tracing is enabled.
+	 */
+	private <T> T traced(String name, String email, LscModificationType operation, ServiceTracing.TracedCall<T> call) throws LscServiceException {
+		try (RequestMonitor.Scope scope = RequestMonitor.scope(timings)) {
+			return tracing != null ? tracing.traced(name, email, operation, call) : call.call();
+		}
+	}
+
+	/**
+	 * Logs the requests this service sent since the previous call, skipped if none unless closing.
+	 */
+	private synchronized void logRunTimings(boolean closing) {
+		long now = System.currentTimeMillis();
+		Map<RequestMonitor.Category, RequestMonitor.Timing> current = timings.get();
+		boolean sent = current.entrySet().stream().anyMatch(timing -> timing.getValue().getCount() > runStartTimings.get(timing.getKey()).getCount());
+		if (closing || sent) {
+			LOGGER.info(String.format("OpenPaaS timings for %s: %s", connexion.getUrl(),
+					RequestMonitor.summarize(now - runStart, current, runStartTimings)));
+		}
+		runStart = now;
+		runStartTimings = current;
+	}
+
+	private boolean applyNow(LscModifications lm) throws LscServiceException {
+		LscModificationType operation = lm.getOperation();
+		JournaledWrite journaled = new JournaledWrite(lm);
+		boolean applied;
+		try {
+			applied = writeOrThrow(lm, lm.getModificationsItemsByHash(), journaled);
 		} catch (ProcessingException e) {
 			LOGGER.error(String.format("ProcessingException while writing (%s)", e));
 			LOGGER.debug(e.toString(), e);
+			// Left pending, to be replayed
+			journaled.release();
+			return false;
+		} catch (IOException e) {
+			LOGGER.error(String.format("Unable to journal %s of %s (%s)", operation, lm.getMainIdentifier(), e));
+			throw new LscServiceException(e);
+		}
+		try {
+			// OpenPaaS answered, replaying this write could not change the outcome
+			journaled.complete();
+		} catch (IOException e) {
+			LOGGER.warn(String.format("Unable to journal completion of %s of %s (%s)", operation, lm.getMainIdentifier(), e));
+		}
+		return applied;
+	}
+
+	/**
+	 * A write journaled, if there is a journal, once what it sends is known and before sending it.
+	 */
+	private class JournaledWrite {
+		private final LscModifications lm;
+		private Long sequence;
+
+		private JournaledWrite(LscModifications lm) {
+			this.lm = lm;
+		}
+
+		private void begin(Map<String, List<Object>> items) throws IOException {
+			if (journal != null && lm.getOperation() != LscModificationType.CHANGE_ID) {
+				sequence = journal.begin(lm.getOperation(), lm.getMainIdentifier(), items);
+			}
+		}
+
+		private void complete() throws IOException {
+			if (sequence != null) {
+				journal.complete(sequence);
+			}
+		}
+
+		private void release() {
+			if (sequence != null) {
+				journal.release(sequence);
+			}
+		}
+	}
+
+	private boolean writeOrThrow(LscModifications lm, Map<String, List<Object>> items, JournaledWrite journaled) throws ProcessingException, IOException {
+		LscModificationType operation = lm.getOperation();
+		String mainIdentifier = lm.getMainIdentifier();
+		switch(operation) {
+		case CHANGE_ID:
+			LOGGER.warn("Trying to change ID of an OpenPaaS group, impossible operation, ignored.");
+			// Silently return without doing anything
+			return true;
+		case CREATE_OBJECT:
+			LOGGER.debug("Creating OpenPaaS group: " + mainIdentifier);
+			journaled.begin(items);
+			GroupWithMembersEmails newGroup = GroupWithMembersEmails.fromModifications(items);
+			boolean created = openpaasDao.createGroup(newGroup, items);
+			if (created && knownGroupEmails != null && newGroup.getEmail() != null) {
+				knownGroupEmails.add(newGroup.getEmail().toLowerCase(Locale.ROOT));
+			}
+			return created;
+		case UPDATE_OBJECT:
+			if (blindUpdates && lm.getDestinationBean() != null) {
+				return writeBlindly(lm, items, journaled);
+			}
+			LOGGER.debug("Getting OpenPaaS group for update: " + mainIdentifier);
+			GroupWithMembersEmails group = openpaasDao.getGroup(mainIdentifier);
+			LOGGER.debug("Modifying OpenPaaS group: " + mainIdentifier + " with: " + items);
+			GroupWithMembersEmails modifiedGroup = openpaasDao.modify(group, items);
+			journaled.begin(WriteJournal.withMemberDelta(items, group, modifiedGroup, openpaasDao.getMemberIndex()));
+			return openpaasDao.modifyGroup(modifiedGroup);
+		case DELETE_OBJECT:
+			LOGGER.debug("Deleting OpenPaaS group: " + mainIdentifier);
+			journaled.begin(items);
+			return openpaasDao.deleteGroup(mainIdentifier);
+		default:
+			LOGGER.error(String.format("Unknown operation %s", operation));
 			return false;
 		}
+	}
+
+	/**
+	 * Updates a group from the destination bean LSC compared and the modifications it computed,
+	 * without reading the group again.
+	 */
+	private boolean writeBlindly(LscModifications lm, Map<String, List<Object>> items, JournaledWrite journaled) throws IOException {
+		IBean destination = lm.getDestinationBean();
+		Optional<String> groupId = Optional.ofNullable(destination.getDatasetFirstValueById("id"));
+		if (!groupId.isPresent()) {
+			groupId = openpaasDao.getGroupId(lm.getMainIdentifier());
+		}
+		if (!groupId.isPresent()) {
+			LOGGER.error("OpenPaaS group not found, unable to update it: " + lm.getMainIdentifier());
+			return false;
+		}
+		List<String> members = Optional.ofNullable(destination.getDatasetById("members"))
+			.map(values -> values.stream().map(String::valueOf).collect(Collectors.toList()))
+			.orElse(ImmutableList.of());
+		GroupWithMembersEmails currentGroup = new GroupWithMembersEmails(groupId.get(),
+				destination.getDatasetFirstValueById("name"),
+				Optional.ofNullable(destination.getDatasetFirstValueById("email")).orElse(lm.getMainIdentifier()),
+				members);
+		LOGGER.debug("Modifying OpenPaaS group: " + lm.getMainIdentifier() + " with: " + lm.getLscAttributeModifications());
+		GroupWithMembersEmails modifiedGroup = openpaasDao.modify(currentGroup, lm.getLscAttributeModifications());
+		journaled.begin(WriteJournal.withMemberDelta(items, currentGroup, modifiedGroup, openpaasDao.getMemberIndex()));
+		return openpaasDao.modifyGroup(modifiedGroup);
+	}
+
+	/**
+	 * Replays the writes a previous run left pending. They may have been applied or not,
+	 * so each one is turned into the write leading to the same state from the current one.
+	 */
+	private void replayPendingWrites() throws LscServiceConfigurationException {
+		for (WriteJournal.Entry entry : journal.getPending()) {
+			LOGGER.info(String.format("Replaying pending %s of OpenPaaS group %s", entry.getOperation(), entry.getMainIdentifier()));
+			try {
+				if (replay(entry)) {
+					journal.complete(entry.getSequence());
+				} else {
+					LOGGER.error(String.format("Unable to replay %s of OpenPaaS group %s, keeping it pending", entry.getOperation(), entry.getMainIdentifier()));
+				}
+			} catch (ProcessingException | WebApplicationException e) {
+				LOGGER.error(String.format("Exception while replaying %s of OpenPaaS group %s, keeping it pending (%s)", entry.getOperation(), entry.getMainIdentifier(), e));
+				LOGGER.debug(e.toString(), e);
+			} catch (IOException e) {
+				throw new LscServiceConfigurationException(e);
+			}
+		}
+		try {
+			journal.compact();
+		} catch (IOException e) {
+			throw new LscServiceConfigurationException(e);
+		}
+	}
 
+	private boolean replay(WriteJournal.Entry entry) {
+		Map<String, List<Object>> items = entry.getItems();
+		GroupWithMembersEmails target = GroupWithMembersEmails.fromModifications(items);
+		switch (entry.getOperation()) {
+		case CREATE_OBJECT:
+			String email = Optional.ofNullable(target.getEmail()).orElse(entry.getMainIdentifier());
+			Optional<GroupWithMembersEmails> created = findGroup(email);
+			if (created.isPresent()) {
+				return openpaasDao.modifyGroup(openpaasDao.modify(created.get(), items));
+			}
+			return openpaasDao.createGroup(target);
+		case UPDATE_OBJECT:
+			Optional<GroupWithMembersEmails> group = findGroup(entry.getMainIdentifier());
+			if (!group.isPresent() && target.getEmail() != null) {
+				// The email change was applied
+				group = findGroup(target.getEmail());
+			}
+			if (!group.isPresent()) {
+				LOGGER.warn("OpenPaaS group not found, skipping update: " + entry.getMainIdentifier());
+				return true;
+			}
+			// Updates are journaled with the members they add and remove
+			Map<String, List<Object>> groupItems = WriteJournal.withMembers(items, group.get().getMembers(), openpaasDao.getMemberIndex());
+			return openpaasDao.modifyGroup(openpaasDao.modify(group.get(), groupItems));
+		case DELETE_OBJECT:
+			try {
+				return openpaasDao.deleteGroup(entry.getMainIdentifier());
+			} catch (NotFoundException e) {
+				return true;
+			}
+		default:
+			return true;
+		}
+	}
+
+	private Optional<GroupWithMembersEmails> findGroup(String email) {
+		try {
+			return Optional.of(openpaasDao.getGroup(email));
+		} catch (NotFoundException e) {
+			return Optional.empty();
+		}
 	}
 
 	@Override
 	public List<String> getWriteDatasetIds() {
 		return service.getWritableAttributes().getString();
 	}
+
+	/**
+	 * Waits for the writes queued to the giant groups lane, replays the writes left pending in the journal,
+	 * if any, then sends the planned writes.
+	 * @throws LscServiceException if queued or planned writes failed, since the previous call included,
+	 *         so that LSC reports the run as failed
+	 */
+	private void flushWrites() throws LscServiceException {
+		if (giantGroupLane != null) {
+			try {
+				giantGroupLane.awaitQueued();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new LscServiceException(e);
+			}
+		}
+		if (journal != null) {
+			// The writes which failed since the start are replayed as well
+			replayPendingWrites();
+		}
+		List<String> failures = new ArrayList<>();
+		synchronized (failedBackgroundWrites) {
+			failures.addAll(failedBackgroundWrites);
+			failedBackgroundWrites.clear();
+		}
+		if (planner != null && !planner.isEmpty()) {
+			failures.addAll(planner.flush().getFailedWrites());
+		}
+		if (!failures.isEmpty()) {
+			throw new LscServiceException(failureMessage(failures));
+		}
+	}
+
+	private String failureMessage(List<String> failures) {
+		return String.format("%d writes to OpenPaaS groups failed%s: %s", failures.size(),
+				journal != null ? ", they are left pending in the journal" : "", failures);
+	}
+
+	/**
+	 * Sends the planned writes once they reach the limit, or once the first one reaches the given age,
+	 * so that they do not wait for the next pivot listing or the closing, which LSC may never do.
+	 * The failures are reported by the next pivot listing or the closing.
+	 */
+	private void flushDueWrites(long maxAgeMillis) {
+		if (!planner.isDue(plannedWritesLimit, maxAgeMillis)) {
+			return;
+		}
+		try (RequestMonitor.Scope scope = RequestMonitor.scope(timings)) {
+			List<String> failures = planner.flush().getFailedWrites();
+			if (!failures.isEmpty()) {
+				LOGGER.error(failureMessage(failures));
+				synchronized (failedBackgroundWrites) {
+					failedBackgroundWrites.addAll(failures);
+				}
+			}
+		} catch (RuntimeException e) {
+			LOGGER.error(String.format("Unable to send the planned writes to OpenPaaS groups (%s)", e));
+			LOGGER.debug(e.toString(), e);
+		}
+	}
+
+	/**
+	 * Run when the JVM exits without closing the service: sending writes then is not reliable,
+	 * so the planned writes and those waiting in the giant groups lane are only left pending
+	 * in the journal, if any.
+	 */
+	private void abandonWrites() {
+		int abandoned = 0;
+		if (planner != null && !planner.isEmpty()) {
+			abandoned += planner.abandon();
+		}
+		List<LscModifications> queued;
+		synchronized (queuedGiantWrites) {
+			queued = new ArrayList<>(queuedGiantWrites);
+			queuedGiantWrites.clear();
+		}
+		for (LscModifications lm : queued) {
+			leavePending(lm);
+		}
+		abandoned += queued.size();
+		if (abandoned == 0) {
+			return;
+		}
+		if (journal != null) {
+			LOGGER.warn(String.format("Exiting before sending %d writes, they are left pending in the journal", abandoned));
+		} else {
+			LOGGER.error(String.format("Exiting before sending %d writes, they are lost", abandoned));
+		}
+	}
+
+	private void leavePending(LscModifications lm) {
+		if (journal == null) {
+			return;
+		}
+		try {
+			journal.release(journal.begin(lm.getOperation(), lm.getMainIdentifier(), lm.getModificationsItemsByHash()));
+		} catch (IOException e) {
+			LOGGER.error(String.format("Unable to journal %s of %s (%s)", lm.getOperation(), lm.getMainIdentifier(), e));
+		}
+	}
+
+	/**
+	 * Executes the planned writes, if any, logs the request timings, group cache, hedging and request statistics,
+	 * closes the journal and releases the OpenPaaS client.
+	 * @throws IOException if planned writes failed
+	 */
+	@Override
+	public void close() throws IOException {
+		if (planFlusher != null) {
+			planFlusher.shutdown();
+			try {
+				// Lets a plan being sent complete before the journal and the client are closed
+				planFlusher.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		}
+		LscServiceException flushFailure = null;
+		try (RequestMonitor.Scope scope = RequestMonitor.scope(timings)) {
+			flushWrites();
+		} catch (LscServiceException e) {
+			flushFailure = e;
+		}
+		if (giantGroupLane != null) {
+			giantGroupLane.close();
+		}
+		logRunTimings(true);
+		openpaasDao.getGroupCacheStats().ifPresent(stats -> LOGGER.info(String.format(
+				"OpenPaaS group cache: %d hits, %d misses, %d evictions (hit rate %.1f%%)",
+				stats.hitCount(), stats.missCount(), stats.evictionCount(), stats.hitRate() * 100)));
+		openpaasDao.getEndpoints().forEach(endpoint -> LOGGER.info("OpenPaaS endpoint " + endpoint));
+		openpaasDao.getHedging().ifPresent(hedging -> LOGGER.info(String.format(
+				"OpenPaaS lookups hedged: %d of %d, %d answered first by the second copy (hedged after %d ms)",
+				hedging.getHedgeCount(), hedging.getLookupCount(), hedging.getHedgeWinCount(), hedging.getHedgeDelayMillis())));
+		openpaasDao.getSchedulerMetrics().ifPresent(metrics -> LOGGER.info(String.format(
+				"OpenPaaS requests to %s: %s", connexion.getUrl(), metrics)));
+		if (flushShutdownHook != null) {
+			try {
+				Runtime.getRuntime().removeShutdownHook(flushShutdownHook);
+			} catch (IllegalStateException e) {
+				// Already shutting down
+			}
+		}
+		if (journal != null) {
+			journal.close();
+		}
+		if (released.compareAndSet(false, true)) {
+			OpenpaasDaoRegistry.release(openpaasDao);
+		}
+		if (flushFailure != null) {
+			throw new IOException(flushFailure.getMessage(), flushFailure);
+		}
+	}
 }
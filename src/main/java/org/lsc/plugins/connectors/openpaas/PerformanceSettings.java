@@ -0,0 +1,442 @@
+/*
+ ****************************************************************************
+ * Ldap Synchronization Connector provides tools to synchronize
+ * electronic identities from a list of data sources including
+ * any database with a JDBC connector, another LDAP directory,
+ * flat files...
+ *
+ *                  ==LICENSE NOTICE==
+ * 
+ * Copyright (c) 2008 - 2019 LSC Project 
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+
+ *    * Redistributions of source code must retain the above copyright
+ * notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ * notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the LSC Project nor the names of its
+ * contributors may be used to endorse or promote products derived from
+ * this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS
+ * IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED
+ * TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A
+ * PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER
+ * OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ *                  ==LICENSE NOTICE==
+ *
+ *               (c) 2008 - 2019 LSC Project
+ *         Raphael Ouazana <rouazana@linagora.com>
+ ****************************************************************************
+ */
+package org.lsc.plugins.connectors.openpaas;
+
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+
+import org.lsc.exception.LscServiceConfigurationException;
+import org.lsc.plugins.connectors.openpaas.RequestMonitor.Category;
+import org.lsc.plugins.connectors.openpaas.generated.OpenpaasService;
+import org.lsc.plugins.connectors.openpaas.generated.OperationTimeoutsType;
+import org.lsc.plugins.connectors.openpaas.generated.PerformanceType;
+import org.lsc.plugins.connectors.openpaas.generated.TimeoutsType;
+import org.lsc.plugins.connectors.openpaas.generated.TransportType;
+import org.lsc.plugins.connectors.openpaas.generated.WriteModeType;
+
+import com.google.common.collect.ImmutableList;
+
+/**
+ * The tuning of the OpenPaaS client and of the writes, from the {@code performance} element
+ * of the service, checked once.
+ */
+public final class PerformanceSettings {
+
+	/**
+	 * The version of the {@code performance} element this plugin understands.
+	 */
+	public static final String VERSION = "1";
+
+	public static final int DEFAULT_CONNECT_MILLIS = 10000;
+
+	public static final int DEFAULT_READ_MILLIS = 60000;
+
+	/**
+	 * Connect, read and overall timeouts of a request, null when not limited.
+	 */
+	public static final class Timeouts {
+		private static final Timeouts NONE = new Timeouts(null, null, null);
+
+		/**
+		 * Those of the requests with no timeouts set: a request hung on a dead connection fails,
+		 * one slowly reading a large list does not.
+		 */
+		private static final Timeouts DEFAULTS = new Timeouts(DEFAULT_CONNECT_MILLIS, DEFAULT_READ_MILLIS, null);
+
+		private final Integer connectMillis;
+		private final Integer readMillis;
+		private final Integer deadlineMillis;
+
+		Timeouts(Integer connectMillis, Integer readMillis, Integer deadlineMillis) {
+			this.connectMillis = connectMillis;
+			this.readMillis = readMillis;
+			this.deadlineMillis = deadlineMillis;
+		}
+
+		public Integer getConnectMillis() {
+			return connectMillis;
+		}
+
+		public Integer getReadMillis() {
+			return readMillis;
+		}
+
+		/**
+		 * @return the time from the request sending to the end of the response reading
+		 */
+		public Integer getDeadlineMillis() {
+			return deadlineMillis;
+		}
+
+		private Timeouts orElse(Timeouts defaults) {
+			return new Timeouts(connectMillis != null ? connectMillis : defaults.connectMillis,
+					readMillis != null ? readMillis : defaults.readMillis,
+					deadlineMillis != null ? deadlineMillis : defaults.deadlineMillis);
+		}
+
+		@Override
+		public boolean equals(Object other) {
+			if (!(other instanceof Timeouts)) {
+				return false;
+			}
+			Timeouts timeouts = (Timeouts) other;
+			return Objects.equals(connectMillis, timeouts.connectMillis)
+				&& Objects.equals(readMillis, timeouts.readMillis)
+				&& Objects.equals(deadlineMillis, timeouts.deadlineMillis);
+		}
+
+		@Override
+		public int hashCode() {
+			return Objects.hash(connectMillis, readMillis, deadlineMillis);
+		}
+
+		@Override
+		public String toString() {
+			return String.format("connect %s ms, read %s ms, deadline %s ms", connectMillis, readMillis, deadlineMillis);
+		}
+	}
+
+	private final Timeouts defaultTimeouts;
+	private final Map<Category, Timeouts> timeouts = new EnumMap<>(Category.class);
+	private final Integer connectionPoolSize;
+	private final int schedulerConcurrency;
+	private final int writeConcurrency;
+	private final int giantGroupConcurrency;
+	private final Integer pageSize;
+	private final int membershipChunkSize;
+	private final Integer groupCacheMaxMembers;
+	private final int groupCacheTtlSeconds;
+	private final Integer hedgePercentile;
+	private final int hedgeBudgetPercent;
+	private final TransportType transport;
+	private final List<String> endpoints;
+	private final String trafficRecordFile;
+	private final String journalFile;
+	private final Shard shard;
+	private final WriteModeType writeMode;
+	private final int plannedWritesLimit;
+	private final int plannedWritesMaxAgeSeconds;
+	private final Integer giantGroupThreshold;
+	private final boolean membersPrecheck;
+	private final boolean upsert;
+	private final boolean blindUpdates;
+	private final Integer schedulerWeight;
+	private final boolean tracing;
+	private final Integer slowRequestMillis;
+	private final Integer stallWarningSeconds;
+
+	private PerformanceSettings(PerformanceType performance) throws LscServiceConfigurationException {
+		defaultTimeouts = timeouts("timeouts", performance.getTimeouts()).orElse(Timeouts.DEFAULTS);
+		for (OperationTimeoutsType operationTimeouts : performance.getOperationTimeouts()) {
+			if (operationTimeouts.getOperation() == null) {
+				throw new LscServiceConfigurationException("operationTimeouts must have an operation");
+			}
+			Category category = Category.valueOf(operationTimeouts.getOperation().name());
+			if (timeouts.containsKey(category)) {
+				throw new LscServiceConfigurationException("operationTimeouts set twice for " + operationTimeouts.getOperation());
+			}
+			timeouts.put(category, timeouts("operationTimeouts of " + operationTimeouts.getOperation(), operationTimeouts).orElse(defaultTimeouts));
+		}
+		for (Category category : Category.values()) {
+			timeouts.putIfAbsent(category, defaultTimeouts);
+		}
+		connectionPoolSize = positive("connectionPoolSize", performance.getConnectionPoolSize());
+		schedulerConcurrency = Optional.ofNullable(positive("schedulerConcurrency", performance.getSchedulerConcurrency()))
+				.orElse(FairScheduler.DEFAULT_CONCURRENCY);
+		writeConcurrency = Optional.ofNullable(positive("writeConcurrency", performance.getWriteConcurrency()))
+				.orElse(SyncPlanner.DEFAULT_CONCURRENCY);
+		giantGroupConcurrency = Optional.ofNullable(positive("giantGroupConcurrency", performance.getGiantGroupConcurrency()))
+				.orElse(GiantGroupLane.DEFAULT_CONCURRENCY);
+		pageSize = positive("pageSize", performance.getPageSize());
+		membershipChunkSize = Optional.ofNullable(positive("membershipChunkSize", performance.getMembershipChunkSize()))
+				.orElse(SyncPlanner.DEFAULT_CHUNK_SIZE);
+		groupCacheMaxMembers = positive("groupCacheMaxMembers", performance.getGroupCacheMaxMembers());
+		groupCacheTtlSeconds = Optional.ofNullable(positive("groupCacheTtlSeconds", performance.getGroupCacheTtlSeconds()))
+				.orElse(OpenpaasDao.DEFAULT_CACHE_TTL_SECONDS);
+		hedgePercentile = positive("hedgePercentile", performance.getHedgePercentile());
+		if (hedgePercentile != null && hedgePercentile > 99) {
+			throw new LscServiceConfigurationException(String.format("hedgePercentile must be below 100 (%d)", hedgePercentile));
+		}
+		hedgeBudgetPercent = Optional.ofNullable(positive("hedgeBudgetPercent", performance.getHedgeBudgetPercent()))
+				.orElse(HedgingConnector.DEFAULT_BUDGET_PERCENT);
+		if (hedgeBudgetPercent > 100) {
+			throw new LscServiceConfigurationException(String.format("hedgeBudgetPercent must be at most 100 (%d)", hedgeBudgetPercent));
+		}
+		transport = Optional.ofNullable(performance.getTransport()).orElse(TransportType.HTTP_1_1);
+		if (performance.getEndpoints() != null && performance.getEndpoints().getString().isEmpty()) {
+			throw new LscServiceConfigurationException("endpoints must not be empty");
+		}
+		endpoints = performance.getEndpoints() != null ? ImmutableList.copyOf(performance.getEndpoints().getString()) : ImmutableList.of();
+		trafficRecordFile = performance.getTrafficRecordFile();
+		journalFile = performance.getJournalFile();
+		shard = Shard.of(performance.getShardIndex(), performance.getShardCount());
+		writeMode = Optional.ofNullable(performance.getWriteMode()).orElse(WriteModeType.IMMEDIATE);
+		plannedWritesLimit = Optional.ofNullable(positive("plannedWritesLimit", performance.getPlannedWritesLimit()))
+				.orElse(SyncPlanner.DEFAULT_PLANNED_WRITES_LIMIT);
+		plannedWritesMaxAgeSeconds = Optional.ofNullable(positive("plannedWritesMaxAgeSeconds", performance.getPlannedWritesMaxAgeSeconds()))
+				.orElse(SyncPlanner.DEFAULT_PLANNED_WRITES_MAX_AGE_SECONDS);
+		giantGroupThreshold = positive("giantGroupThreshold", performance.getGiantGroupThreshold());
+		membersPrecheck = Boolean.TRUE.equals(performance.isMembersPrecheck());
+		upsert = Boolean.TRUE.equals(performance.isUpsert());
+		blindUpdates = Boolean.TRUE.equals(performance.isBlindUpdates());
+		schedulerWeight = positive("schedulerWeight", performance.getSchedulerWeight());
+		tracing = Boolean.TRUE.equals(performance.isTracing());
+		slowRequestMillis = performance.getSlowRequestMillis();
+		if (slowRequestMillis != null && slowRequestMillis < 0) {
+			throw new LscServiceConfigurationException(String.format("slowRequestMillis must not be negative (%d)", slowRequestMillis));
+		}
+		stallWarningSeconds = positive("stallWarningSeconds", performance.getStallWarningSeconds());
+	}
+
+	/**
+	 * @throws LscServiceConfigurationException if the version is not supported or a value is not positive
+	 */
+	public static PerformanceSettings of(OpenpaasService service) throws LscServiceConfigurationException {
+		PerformanceType performance = service.getPerformance();
+		if (performance == null) {
+			performance = new PerformanceType();
+		} else if (!VERSION.equals(performance.getVersion())) {
+			throw new LscServiceConfigurationException(String.format("Unsupported performance version %s, expected %s",
+					performance.getVersion(), VERSION));
+		}
+		return new PerformanceSettings(performance);
+	}
+
+	private static Timeouts timeouts(String name, TimeoutsType timeouts) throws LscServiceConfigurationException {
+		if (timeouts == null) {
+			return Timeouts.NONE;
+		}
+		return new Timeouts(positive(name + " connectMillis", timeouts.getConnectMillis()),
+				positive(name + " readMillis", timeouts.getReadMillis()),
+				positive(name + " deadlineMillis", timeouts.getDeadlineMillis()));
+	}
+
+	private static Integer positive(String name, Integer value) throws LscServiceConfigurationException {
+		if (value != null && value < 1) {
+			throw new LscServiceConfigurationException(String.format("%s must be positive (%d)", name, value));
+		}
+		return value;
+	}
+
+	/**
+	 * @return the timeouts of all the requests but those of operations with their own ones
+	 */
+	public Timeouts getDefaultTimeouts() {
+		return defaultTimeouts;
+	}
+
+	public Timeouts getTimeouts(Category category) {
+		return timeouts.get(category);
+	}
+
+	/**
+	 * @return the number of idle connections kept by the HTTP/2 transport, null for its default
+	 */
+	public Integer getConnectionPoolSize() {
+		return connectionPoolSize;
+	}
+
+	public int getSchedulerConcurrency() {
+		return schedulerConcurrency;
+	}
+
+	public int getWriteConcurrency() {
+		return writeConcurrency;
+	}
+
+	public int getGiantGroupConcurrency() {
+		return giantGroupConcurrency;
+	}
+
+	/**
+	 * @return the number of groups or members per list request, null to get them all at once
+	 */
+	public Integer getPageSize() {
+		return pageSize;
+	}
+
+	public int getMembershipChunkSize() {
+		return membershipChunkSize;
+	}
+
+	/**
+	 * @return the total member count of the cached groups, null when groups are not cached
+	 */
+	public Integer getGroupCacheMaxMembers() {
+		return groupCacheMaxMembers;
+	}
+
+	public int getGroupCacheTtlSeconds() {
+		return groupCacheTtlSeconds;
+	}
+
+	/**
+	 * @return the percentile of the recent lookup latencies after which a lookup is sent again, null when lookups are not hedged
+	 */
+	public Integer getHedgePercentile() {
+		return hedgePercentile;
+	}
+
+	/**
+	 * @return the maximum lookups sent again per hundred lookups
+	 */
+	public int getHedgeBudgetPercent() {
+		return hedgeBudgetPercent;
+	}
+
+	public TransportType getTransport() {
+		return transport;
+	}
+
+	/**
+	 * @return the urls the requests are spread over, empty to send them all to the connection url
+	 */
+	public List<String> getEndpoints() {
+		return endpoints;
+	}
+
+	/**
+	 * @return the file the HTTP traffic is recorded to, null when not recorded
+	 */
+	public String getTrafficRecordFile() {
+		return trafficRecordFile;
+	}
+
+	/**
+	 * @return the file the writes are journaled to, null when not journaled
+	 */
+	public String getJournalFile() {
+		return journalFile;
+	}
+
+	public Shard getShard() {
+		return shard;
+	}
+
+	public WriteModeType getWriteMode() {
+		return writeMode;
+	}
+
+	/**
+	 * @return the number of recorded writes from which the planned writes are sent
+	 */
+	public int getPlannedWritesLimit() {
+		return plannedWritesLimit;
+	}
+
+	/**
+	 * @return the time after which a recorded write is sent with the planned writes
+	 */
+	public int getPlannedWritesMaxAgeSeconds() {
+		return plannedWritesMaxAgeSeconds;
+	}
+
+	/**
+	 * @return the member count from which a group is written in the giant group lane, null when there is no such lane
+	 */
+	public Integer getGiantGroupThreshold() {
+		return giantGroupThreshold;
+	}
+
+	public boolean isMembersPrecheck() {
+		return membersPrecheck;
+	}
+
+	public boolean isUpsert() {
+		return upsert;
+	}
+
+	public boolean isBlindUpdates() {
+		return blindUpdates;
+	}
+
+	/**
+	 * @return the weight of this OpenPaaS in the shared scheduler, null when its requests are not scheduled
+	 */
+	public Integer getSchedulerWeight() {
+		return schedulerWeight;
+	}
+
+	public boolean isTracing() {
+		return tracing;
+	}
+
+	/**
+	 * @return the duration from which a request is logged as slow, null when not logged
+	 */
+	public Integer getSlowRequestMillis() {
+		return slowRequestMillis;
+	}
+
+	/**
+	 * @return the time in flight after which a request is reported as stalled, null when not reported
+	 */
+	public Integer getStallWarningSeconds() {
+		return stallWarningSeconds;
+	}
+
+	/**
+	 * The journal, shard, write mode and its limits, giant group threshold and blind updates only matter to the service,
+	 * services differing only by those can share an OpenPaaS client.
+	 */
+	private List<Object> values() {
+		return Arrays.asList(timeouts, connectionPoolSize, schedulerConcurrency, writeConcurrency, giantGroupConcurrency,
+				pageSize, membershipChunkSize, groupCacheMaxMembers, groupCacheTtlSeconds, hedgePercentile, hedgeBudgetPercent,
+				transport, endpoints, trafficRecordFile, membersPrecheck, upsert, schedulerWeight, tracing, slowRequestMillis,
+				stallWarningSeconds);
+	}
+
+	@Override
+	public boolean equals(Object other) {
+		return other instanceof PerformanceSettings && values().equals(((PerformanceSettings) other).values());
+	}
+
+	@Override
+	public int hashCode() {
+		return values().hashCode();
+	}
+}
@@ -0,0 +1,485 @@
+/*
+ ****************************************************************************
+ * Ldap Synchronization Connector provides tools to synchronize
+ * electronic identities from a list of data sources including
+ * any database with a JDBC connector, another LDAP directory,
+ * flat files...
+ *
+ *                  ==LICENSE NOTICE==
+ * 
+ * Copyright (c) 2008 - 2019 LSC Project 
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+
+ *    * Redistributions of source code must retain the above copyright
+ * notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ * notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the LSC Project nor the names of its
+ * contributors may be used to endorse or promote products derived from
+ * this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS
+ * IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED
+ * TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A
+ * PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER
+ * OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ *                  ==LICENSE NOTICE==
+ *
+ *               (c) 2008 - 2019 LSC Project
+ *         Raphael Ouazana <rouazana@linagora.com>
+ ****************************************************************************
+ */
+package org.lsc.plugins.connectors.openpaas;
+
+import java.io.Closeable;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+
+import javax.ws.rs.ProcessingException;
+import javax.ws.rs.client.ClientRequestContext;
+import javax.ws.rs.client.ClientRequestFilter;
+import javax.ws.rs.ext.WriterInterceptor;
+import javax.ws.rs.ext.WriterInterceptorContext;
+
+import org.glassfish.jersey.client.ClientRequest;
+import org.glassfish.jersey.client.ClientResponse;
+import org.glassfish.jersey.client.spi.AsyncConnectorCallback;
+import org.glassfish.jersey.client.spi.Connector;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.base.Splitter;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+/**
+ * Watches the OpenPaaS requests: logs the ones slower than a threshold with their size,
+ * reports the ones still in flight after a delay with the thread waiting for them, and
+ * adds up the request time per {@link Category}. The requests are timed by the connector
+ * it {@link #wrap(Connector) wraps}, from the request sending to the response headers;
+ * it must also be registered on the client to count the bytes sent and to tell the
+ * {@link #scope(Timings) scope} a request is sent in.
+ * <p>
+ * The requests are added up for the whole client, and also for the scope of the thread sending
+ * them, if any, so that each of the services sharing a client can report its own requests.
+ */
+public class RequestMonitor implements ClientRequestFilter, WriterInterceptor, Closeable {
+
+	private static final Logger LOGGER = LoggerFactory.getLogger(RequestMonitor.class);
+
+	private static final String SENT_BYTES_PROPERTY = RequestMonitor.class.getName() + ".sentBytes";
+	private static final String SCOPE_PROPERTY = RequestMonitor.class.getName() + ".scope";
+	private static final ThreadLocal<Timings> SCOPE = new ThreadLocal<>();
+	private static final int STALLED_STACK_DEPTH = 5;
+
+	/**
+	 * What a request is spent on.
+	 */
+	public enum Category {
+		LISTING("listing"),
+		LOOKUPS("lookups"),
+		CREATES("creates"),
+		UPDATES("updates"),
+		MEMBERSHIP_WRITES("membership writes"),
+		DELETES("deletes");
+
+		private final String label;
+
+		Category(String label) {
+			this.label = label;
+		}
+
+		/**
+		 * GET of the group list, other GETs, POST of a group, POST of group metadata,
+		 * POST of memberships and DELETE.
+		 */
+		static Category of(String method, String path, String query) {
+			List<String> segments = Splitter.on('/').omitEmptyStrings().splitToList(path);
+			int groupsIndex = segments.indexOf("groups");
+			boolean groupPath = groupsIndex >= 0 && groupsIndex + 1 < segments.size();
+			switch (method) {
+			case "POST":
+				if (!segments.isEmpty() && segments.get(segments.size() - 1).equals("members")) {
+					return MEMBERSHIP_WRITES;
+				}
+				return groupPath ? UPDATES : CREATES;
+			case "DELETE":
+				return DELETES;
+			default:
+				boolean byEmail = query != null && Splitter.on('&').splitToList(query).stream().anyMatch(parameter -> parameter.startsWith("email="));
+				return groupsIndex == segments.size() - 1 && !byEmail ? LISTING : LOOKUPS;
+			}
+		}
+
+		@Override
+		public String toString() {
+			return label;
+		}
+	}
+
+	/**
+	 * Number of requests of a category and time spent waiting for them.
+	 */
+	public static final class Timing {
+		private final long count;
+		private final long nanos;
+
+		Timing(long count, long nanos) {
+			this.count = count;
+			this.nanos = nanos;
+		}
+
+		public long getCount() {
+			return count;
+		}
+
+		public long getMillis() {
+			return TimeUnit.NANOSECONDS.toMillis(nanos);
+		}
+
+		/**
+		 * @return the requests sent since the given timing of the same category
+		 */
+		public Timing minus(Timing since) {
+			return new Timing(count - since.count, nanos - since.nanos);
+		}
+
+		@Override
+		public String toString() {
+			return String.format("%d requests in %s", count, formatMillis(getMillis()));
+		}
+	}
+
+	/**
+	 * Request counts and times per category, added up as the requests complete.
+	 */
+	public static final class Timings {
+		private final Map<Category, LongAdder> counts = new EnumMap<>(Category.class);
+		private final Map<Category, LongAdder> nanos = new EnumMap<>(Category.class);
+
+		public Timings() {
+			for (Category category : Category.values()) {
+				counts.put(category, new LongAdder());
+				nanos.put(category, new LongAdder());
+			}
+		}
+
+		private void add(Category category, long duration) {
+			counts.get(category).increment();
+			nanos.get(category).add(duration);
+		}
+
+		/**
+		 * @return the requests added so far, per category
+		 */
+		public Map<Category, Timing> get() {
+			Map<Category, Timing> timings = new EnumMap<>(Category.class);
+			for (Category category : Category.values()) {
+				timings.put(category, new Timing(counts.get(category).sum(), nanos.get(category).sum()));
+			}
+			return timings;
+		}
+	}
+
+	/**
+	 * The requests of the thread are added to some timings until closed.
+	 */
+	public interface Scope extends AutoCloseable {
+		@Override
+		void close();
+	}
+
+	private static final class InFlight {
+		private final String method;
+		private final String uri;
+		private final Thread thread = Thread.currentThread();
+		private final long start = System.nanoTime();
+		private volatile boolean reported;
+
+		private InFlight(ClientRequest request) {
+			this.method = request.getMethod();
+			this.uri = request.getUri().toString();
+		}
+	}
+
+	private final long slowNanos;
+	private final Timings timings = new Timings();
+	private final Set<InFlight> inFlight = ConcurrentHashMap.newKeySet();
+	private final ScheduledExecutorService watchdog;
+	private final AtomicLong slowCount = new AtomicLong();
+	private final AtomicLong stalledCount = new AtomicLong();
+
+	/**
+	 * @param slowRequestMillis duration from which requests are logged, or null to log none
+	 * @param stallSeconds duration from which requests in flight are reported, or null to report none
+	 */
+	public RequestMonitor(Integer slowRequestMillis, Integer stallSeconds) {
+		this.slowNanos = slowRequestMillis != null ? TimeUnit.MILLISECONDS.toNanos(slowRequestMillis) : Long.MAX_VALUE;
+		if (stallSeconds != null) {
+			long stallNanos = TimeUnit.SECONDS.toNanos(stallSeconds);
+			watchdog = Executors.newSingleThreadScheduledExecutor(new ThreadFactoryBuilder()
+					.setNameFormat("openpaas-stall-watchdog-%d")
+					.setDaemon(true)
+					.build());
+			// Checking twice per period reports a stall at most 1.5 period after the request was sent
+			long checkMillis = Math.max(100, TimeUnit.NANOSECONDS.toMillis(stallNanos) / 2);
+			watchdog.scheduleWithFixedDelay(() -> reportStalled(stallNanos), checkMillis, checkMillis, TimeUnit.MILLISECONDS);
+		} else {
+			watchdog = null;
+		}
+	}
+
+	/**
+	 * Adds the requests the current thread sends to the given timings too, until the scope is closed.
+	 */
+	public static Scope scope(Timings timings) {
+		Timings previous = SCOPE.get();
+		SCOPE.set(timings);
+		return () -> {
+			if (previous != null) {
+				SCOPE.set(previous);
+			} else {
+				SCOPE.remove();
+			}
+		};
+	}
+
+	/**
+	 * @return the task, run in the scope of the current thread, if any
+	 */
+	public static <T> Callable<T> inCurrentScope(Callable<T> task) {
+		Timings timings = SCOPE.get();
+		if (timings == null) {
+			return task;
+		}
+		return () -> {
+			try (Scope scope = scope(timings)) {
+				return task.call();
+			}
+		};
+	}
+
+	/**
+	 * @return the action, run in the scope of the current thread, if any
+	 */
+	public static <T> Consumer<T> inCurrentScope(Consumer<T> action) {
+		Timings timings = SCOPE.get();
+		if (timings == null) {
+			return action;
+		}
+		return item -> {
+			try (Scope scope = scope(timings)) {
+				action.accept(item);
+			}
+		};
+	}
+
+	/**
+	 * @return a connector sending the requests through the given one and monitoring them
+	 */
+	public Connector wrap(final Connector delegate) {
+		return new Connector() {
+			@Override
+			public ClientResponse apply(ClientRequest request) throws ProcessingException {
+				InFlight call = begin(request);
+				ClientResponse response = null;
+				try {
+					response = delegate.apply(request);
+					return response;
+				} finally {
+					end(call, request, response);
+				}
+			}
+
+			@Override
+			public Future<?> apply(final ClientRequest request, final AsyncConnectorCallback callback) {
+				final InFlight call = begin(request);
+				try {
+					return delegate.apply(request, new AsyncConnectorCallback() {
+						@Override
+						public void response(ClientResponse response) {
+							end(call, request, response);
+							callback.response(response);
+						}
+
+						@Override
+						public void failure(Throwable failure) {
+							end(call, request, null);
+							callback.failure(failure);
+						}
+					});
+				} catch (RuntimeException e) {
+					end(call, request, null);
+					throw e;
+				}
+			}
+
+			@Override
+			public String getName() {
+				return delegate.getName() + " monitored";
+			}
+
+			@Override
+			public void close() {
+				delegate.close();
+			}
+		};
+	}
+
+	/**
+	 * Tells the scope of the request, which may be sent from another thread, e.g. when hedged.
+	 */
+	@Override
+	public void filter(ClientRequestContext requestContext) {
+		Timings scoped = SCOPE.get();
+		if (scoped != null) {
+			requestContext.setProperty(SCOPE_PROPERTY, scoped);
+		}
+	}
+
+	@Override
+	public void aroundWriteTo(WriterInterceptorContext context) throws IOException {
+		final long[] sent = new long[1];
+		context.setProperty(SENT_BYTES_PROPERTY, sent);
+		context.setOutputStream(new FilterOutputStream(context.getOutputStream()) {
+			@Override
+			public void write(int b) throws IOException {
+				out.write(b);
+				sent[0]++;
+			}
+
+			@Override
+			public void write(byte[] b, int off, int len) throws IOException {
+				out.write(b, off, len);
+				sent[0] += len;
+			}
+		});
+		context.proceed();
+	}
+
+	private InFlight begin(ClientRequest request) {
+		InFlight call = new InFlight(request);
+		inFlight.add(call);
+		return call;
+	}
+
+	private void end(InFlight call, ClientRequest request, ClientResponse response) {
+		long duration = System.nanoTime() - call.start;
+		inFlight.remove(call);
+		Category category = Category.of(call.method, request.getUri().getPath(), request.getUri().getRawQuery());
+		timings.add(category, duration);
+		Timings scoped = (Timings) request.getProperty(SCOPE_PROPERTY);
+		if (scoped != null) {
+			scoped.add(category, duration);
+		}
+		if (duration >= slowNanos || call.reported) {
+			slowCount.incrementAndGet();
+			long[] sent = (long[]) request.getProperty(SENT_BYTES_PROPERTY);
+			LOGGER.warn(String.format("Slow OpenPaaS request: %s %s took %d ms (%d bytes sent, %s, %s)",
+					call.method, call.uri,
+					TimeUnit.NANOSECONDS.toMillis(duration),
+					sent != null ? sent[0] : 0,
+					response == null ? "no response"
+						: response.getLength() >= 0 ? response.getLength() + " bytes received" : "response size unknown",
+					response == null ? "failed" : "status " + response.getStatus()));
+		}
+	}
+
+	private void reportStalled(long stallNanos) {
+		long now = System.nanoTime();
+		for (InFlight call : inFlight) {
+			if (call.reported || now - call.start < stallNanos) {
+				continue;
+			}
+			call.reported = true;
+			stalledCount.incrementAndGet();
+			String stack = Arrays.stream(call.thread.getStackTrace())
+				.limit(STALLED_STACK_DEPTH)
+				.map(element -> "\n\tat " + element)
+				.collect(Collectors.joining());
+			LOGGER.warn(String.format("OpenPaaS request %s %s in flight for %d s on thread %s (%s)%s",
+					call.method, call.uri, TimeUnit.NANOSECONDS.toSeconds(now - call.start),
+					call.thread.getName(), call.thread.getState(), stack));
+		}
+	}
+
+	/**
+	 * @return the number of slow requests logged so far
+	 */
+	public long getSlowCount() {
+		return slowCount.get();
+	}
+
+	/**
+	 * @return the number of requests reported by the watchdog so far
+	 */
+	public long getStalledCount() {
+		return stalledCount.get();
+	}
+
+	/**
+	 * @return the number of requests in flight
+	 */
+	public int getInFlightCount() {
+		return inFlight.size();
+	}
+
+	/**
+	 * @return the requests sent so far through the client, per category
+	 */
+	public Map<Category, Timing> getTimings() {
+		return timings.get();
+	}
+
+	/**
+	 * @return the wall-clock time and the request time per category between two {@link #getTimings()} or {@link Timings#get()}
+	 */
+	public static String summarize(long wallClockMillis, Map<Category, Timing> timings, Map<Category, Timing> since) {
+		StringBuilder summary = new StringBuilder(formatMillis(wallClockMillis)).append(" wall-clock");
+		for (Category category : Category.values()) {
+			Timing timing = timings.get(category).minus(since.get(category));
+			summary.append(", ").append(category).append(": ").append(timing);
+		}
+		return summary.toString();
+	}
+
+	private static String formatMillis(long millis) {
+		return millis < 10000 ? millis + " ms" : String.format("%.1f s", millis / 1000.0);
+	}
+
+	/**
+	 * Stops the watchdog.
+	 */
+	@Override
+	public void close() {
+		if (watchdog != null) {
+			watchdog.shutdownNow();
+		}
+	}
+}
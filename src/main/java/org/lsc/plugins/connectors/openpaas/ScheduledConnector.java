@@ -0,0 +1,114 @@
+/*
+ ****************************************************************************
+ * Ldap Synchronization Connector provides tools to synchronize
+ * electronic identities from a list of data sources including
+ * any database with a JDBC connector, another LDAP directory,
+ * flat files...
+ *
+ *                  ==LICENSE NOTICE==
+ * 
+ * Copyright (c) 2008 - 2019 LSC Project 
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+
+ *    * Redistributions of source code must retain the above copyright
+ * notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ * notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the LSC Project nor the names of its
+ * contributors may be used to endorse or promote products derived from
+ * this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS
+ * IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED
+ * TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A
+ * PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER
+ * OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ *                  ==LICENSE NOTICE==
+ *
+ *               (c) 2008 - 2019 LSC Project
+ *         Raphael Ouazana <rouazana@linagora.com>
+ ****************************************************************************
+ */
+package org.lsc.plugins.connectors.openpaas;
+
+import java.util.concurrent.Future;
+
+import javax.ws.rs.ProcessingException;
+
+import org.glassfish.jersey.client.ClientRequest;
+import org.glassfish.jersey.client.ClientResponse;
+import org.glassfish.jersey.client.spi.AsyncConnectorCallback;
+import org.glassfish.jersey.client.spi.Connector;
+
+/**
+ * Jersey connector sending each request once the {@link FairScheduler} gives its tenant a slot.
+ * The slot is held until the response headers are received.
+ */
+public class ScheduledConnector implements Connector {
+
+	private final Connector delegate;
+	private final FairScheduler scheduler;
+	private final FairScheduler.Tenant tenant;
+
+	public ScheduledConnector(Connector delegate, FairScheduler scheduler, FairScheduler.Tenant tenant) {
+		this.delegate = delegate;
+		this.scheduler = scheduler;
+		this.tenant = tenant;
+	}
+
+	@Override
+	public ClientResponse apply(ClientRequest request) throws ProcessingException {
+		scheduler.acquire(tenant);
+		long start = System.nanoTime();
+		try {
+			return delegate.apply(request);
+		} finally {
+			scheduler.release(tenant, System.nanoTime() - start);
+		}
+	}
+
+	@Override
+	public Future<?> apply(ClientRequest request, final AsyncConnectorCallback callback) {
+		scheduler.acquire(tenant);
+		final long start = System.nanoTime();
+		try {
+			return delegate.apply(request, new AsyncConnectorCallback() {
+				@Override
+				public void response(ClientResponse response) {
+					scheduler.release(tenant, System.nanoTime() - start);
+					callback.response(response);
+				}
+
+				@Override
+				public void failure(Throwable failure) {
+					scheduler.release(tenant, System.nanoTime() - start);
+					callback.failure(failure);
+				}
+			});
+		} catch (RuntimeException e) {
+			scheduler.release(tenant, System.nanoTime() - start);
+			throw e;
+		}
+	}
+
+	@Override
+	public String getName() {
+		return delegate.getName() + " scheduled for " + tenant.getName();
+	}
+
+	@Override
+	public void close() {
+		delegate.close();
+	}
+}
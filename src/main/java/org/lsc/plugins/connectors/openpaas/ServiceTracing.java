@@ -0,0 +1,94 @@
+/*
+ ****************************************************************************
+ * Ldap Synchronization Connector provides tools to synchronize
+ * electronic identities from a list of data sources including
+ * any database with a JDBC connector, another LDAP directory,
+ * flat files...
+ *
+ *                  ==LICENSE NOTICE==
+ * 
+ * Copyright (c) 2008 - 2019 LSC Project 
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+
+ *    * Redistributions of source code must retain the above copyright
+ * notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ * notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the LSC Project nor the names of its
+ * contributors may be used to endorse or promote products derived from
+ * this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS
+ * IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED
+ * TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A
+ * PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER
+ * OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ *                  ==LICENSE NOTICE==
+ *
+ *               (c) 2008 - 2019 LSC Project
+ *         Raphael Ouazana <rouazana@linagora.com>
+ ****************************************************************************
+ */
+package org.lsc.plugins.connectors.openpaas;
+
+import org.lsc.LscModificationType;
+import org.lsc.exception.LscServiceException;
+
+import io.opentelemetry.api.GlobalOpenTelemetry;
+import io.opentelemetry.api.common.AttributeKey;
+import io.opentelemetry.api.trace.Span;
+import io.opentelemetry.api.trace.SpanBuilder;
+import io.opentelemetry.api.trace.StatusCode;
+import io.opentelemetry.api.trace.Tracer;
+import io.opentelemetry.context.Scope;
+
+/**
+ * Runs the calls of a service in OpenTelemetry spans. Only loaded when tracing is enabled, so that
+ * the plugin runs without the OpenTelemetry API, which LSC or the agent provides, otherwise.
+ */
+class ServiceTracing {
+
+	static final AttributeKey<String> GROUP_EMAIL_ATTRIBUTE = AttributeKey.stringKey("openpaas.group.email");
+	static final AttributeKey<String> OPERATION_ATTRIBUTE = AttributeKey.stringKey("lsc.operation");
+
+	private final Tracer tracer = GlobalOpenTelemetry.get().getTracer(TracingConnector.INSTRUMENTATION_NAME);
+
+	interface TracedCall<T> {
+		T call() throws LscServiceException;
+	}
+
+	/**
+	 * Runs a call in a span, current while the call runs so that the requests it sends are its children.
+	 */
+	<T> T traced(String name, String email, LscModificationType operation, TracedCall<T> call) throws LscServiceException {
+		SpanBuilder spanBuilder = tracer.spanBuilder(name).setAttribute(GROUP_EMAIL_ATTRIBUTE, email);
+		if (operation != null) {
+			spanBuilder.setAttribute(OPERATION_ATTRIBUTE, operation.name());
+		}
+		Span span = spanBuilder.startSpan();
+		try (Scope scope = span.makeCurrent()) {
+			T result = call.call();
+			if (Boolean.FALSE.equals(result)) {
+				span.setStatus(StatusCode.ERROR);
+			}
+			return result;
+		} catch (LscServiceException | RuntimeException e) {
+			span.recordException(e);
+			span.setStatus(StatusCode.ERROR);
+			throw e;
+		} finally {
+			span.end();
+		}
+	}
+}
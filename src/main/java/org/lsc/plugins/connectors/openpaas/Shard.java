@@ -0,0 +1,103 @@
+/*
+ ****************************************************************************
+ * Ldap Synchronization Connector provides tools to synchronize
+ * electronic identities from a list of data sources including
+ * any database with a JDBC connector, another LDAP directory,
+ * flat files...
+ *
+ *                  ==LICENSE NOTICE==
+ * 
+ * Copyright (c) 2008 - 2019 LSC Project 
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+
+ *    * Redistributions of source code must retain the above copyright
+ * notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ * notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the LSC Project nor the names of its
+ * contributors may be used to endorse or promote products derived from
+ * this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS
+ * IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED
+ * TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A
+ * PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER
+ * OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ *                  ==LICENSE NOTICE==
+ *
+ *               (c) 2008 - 2019 LSC Project
+ *         Raphael Ouazana <rouazana@linagora.com>
+ ****************************************************************************
+ */
+package org.lsc.plugins.connectors.openpaas;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Locale;
+
+import org.lsc.exception.LscServiceConfigurationException;
+
+import com.google.common.hash.Hashing;
+
+/**
+ * The part of the groups a node synchronizes when several ones split the work, as a
+ * hash of the lowercased group email. Nodes only need to agree on the shard count.
+ */
+public class Shard {
+
+	private static final Shard ALL = new Shard(0, 1);
+
+	private final int index;
+	private final int count;
+
+	private Shard(int index, int count) {
+		this.index = index;
+		this.count = count;
+	}
+
+	/**
+	 * @param index the shard of this node, from 0 to count - 1, or null when not sharding
+	 * @param count the number of shards, or null when not sharding
+	 */
+	public static Shard of(Integer index, Integer count) throws LscServiceConfigurationException {
+		if (index == null && count == null) {
+			return ALL;
+		}
+		if (index == null || count == null) {
+			throw new LscServiceConfigurationException("shardIndex and shardCount must be set together");
+		}
+		if (count < 1 || index < 0 || index >= count) {
+			throw new LscServiceConfigurationException(String.format("Invalid shard %d of %d, shardIndex must be between 0 and shardCount - 1", index, count));
+		}
+		return new Shard(index, count);
+	}
+
+	public boolean isAll() {
+		return count == 1;
+	}
+
+	public boolean contains(String email) {
+		if (isAll()) {
+			return true;
+		}
+		// Consistent hashing moves as few groups as possible when the shard count changes
+		return Hashing.consistentHash(
+				Hashing.murmur3_128().hashString(email.toLowerCase(Locale.ROOT), StandardCharsets.UTF_8),
+				count) == index;
+	}
+
+	@Override
+	public String toString() {
+		return String.format("shard %d of %d", index, count);
+	}
+}
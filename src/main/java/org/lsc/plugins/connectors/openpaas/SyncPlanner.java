@@ -0,0 +1,565 @@
+/*
+ ****************************************************************************
+ * Ldap Synchronization Connector provides tools to synchronize
+ * electronic identities from a list of data sources including
+ * any database with a JDBC connector, another LDAP directory,
+ * flat files...
+ *
+ *                  ==LICENSE NOTICE==
+ * 
+ * Copyright (c) 2008 - 2019 LSC Project 
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+
+ *    * Redistributions of source code must retain the above copyright
+ * notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ * notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the LSC Project nor the names of its
+ * contributors may be used to endorse or promote products derived from
+ * this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS
+ * IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED
+ * TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A
+ * PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER
+ * OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ *                  ==LICENSE NOTICE==
+ *
+ *               (c) 2008 - 2019 LSC Project
+ *         Raphael Ouazana <rouazana@linagora.com>
+ ****************************************************************************
+ */
+package org.lsc.plugins.connectors.openpaas;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+
+import javax.ws.rs.NotFoundException;
+import javax.ws.rs.ProcessingException;
+import javax.ws.rs.WebApplicationException;
+
+import org.codehaus.jackson.map.ObjectMapper;
+import org.lsc.LscModificationType;
+import org.lsc.LscModifications;
+import org.lsc.plugins.connectors.openpaas.beans.GroupMetadata;
+import org.lsc.plugins.connectors.openpaas.beans.GroupWithMembersEmails;
+import org.lsc.plugins.connectors.openpaas.beans.GroupWithMembersEmails.Membership;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.base.Stopwatch;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Iterables;
+import com.google.common.collect.Lists;
+
+/**
+ * Collects the writes of a run instead of sending them one by one, then sends them
+ * as an optimized plan:
+ * <ul>
+ * <li>successive writes to a same group are merged, a creation followed by a deletion cancels out,
+ * and a deletion followed by an update becomes a recreation of the updated group,</li>
+ * <li>the current state of the groups is fetched in parallel, and updates leaving a group
+ * unchanged and deletions of missing groups are dropped,</li>
+ * <li>membership changes are packed in chunks of a fixed size,</li>
+ * <li>deletions are sent first, so that creations can reuse their emails, then creations,
+ * then updates, each phase with a bounded number of concurrent groups.</li>
+ * </ul>
+ * Groups with many members are fetched and written in a separate lane with its own
+ * concurrency, so that they do not hold back the small groups.
+ * In dry run, the plan is only logged. The writes which fail are reported in the plan and,
+ * with a journal, left pending in it so that they are replayed. Plans are sent one at a time,
+ * in the order their writes were recorded.
+ */
+public class SyncPlanner {
+
+	public static final int DEFAULT_CONCURRENCY = 4;
+	public static final int DEFAULT_CHUNK_SIZE = 500;
+	public static final int DEFAULT_PLANNED_WRITES_LIMIT = 1000;
+	public static final int DEFAULT_PLANNED_WRITES_MAX_AGE_SECONDS = 10;
+
+	private static final Logger LOGGER = LoggerFactory.getLogger(SyncPlanner.class);
+
+	private final OpenpaasDao openpaasDao;
+	private final WriteJournal journal;
+	private final int concurrency;
+	private final int chunkSize;
+	private final boolean dryRun;
+	private final int giantThreshold;
+	private final int giantConcurrency;
+	private final ObjectMapper mapper = new ObjectMapper();
+	private final Map<String, List<PlannedWrite>> writesByGroup = new LinkedHashMap<>();
+	private final Object flushLock = new Object();
+	private int recordedWrites;
+	private long firstRecordNanos;
+
+	/**
+	 * A write to a group, merged from the modifications LSC applied to it during the run.
+	 */
+	static class PlannedWrite {
+		private final LscModificationType operation;
+		private final String mainIdentifier;
+		private final Map<String, List<Object>> items;
+		/**
+		 * The items journaled once planned, with the member delta of an update.
+		 */
+		private Map<String, List<Object>> journalItems;
+		private int memberCount;
+		private String groupId;
+		private GroupWithMembersEmails newGroup;
+		private GroupMetadata metadata;
+		private List<List<Membership>> additions = ImmutableList.of();
+		private List<List<Membership>> removals = ImmutableList.of();
+		private boolean failed;
+
+		private PlannedWrite(LscModificationType operation, String mainIdentifier, Map<String, List<Object>> items) {
+			this.operation = operation;
+			this.mainIdentifier = mainIdentifier;
+			this.items = items;
+		}
+
+		LscModificationType getOperation() {
+			return operation;
+		}
+
+		int getRequestCount() {
+			if (failed) {
+				return 0;
+			}
+			switch (operation) {
+			case CREATE_OBJECT:
+				return 1;
+			case DELETE_OBJECT:
+				return groupId != null ? 1 : 0;
+			default:
+				return (metadata != null ? 1 : 0) + additions.size() + removals.size();
+			}
+		}
+	}
+
+	/**
+	 * Summary of a plan, in requests and payload bytes.
+	 */
+	public static class Plan {
+		private final List<PlannedWrite> deletions;
+		private final List<PlannedWrite> creations;
+		private final List<PlannedWrite> updates;
+		private final List<PlannedWrite> failedWrites;
+		private final int droppedWrites;
+		private final int requestCount;
+		private final long bytes;
+
+		private Plan(List<PlannedWrite> deletions, List<PlannedWrite> creations, List<PlannedWrite> updates, List<PlannedWrite> failedWrites, int droppedWrites, int requestCount, long bytes) {
+			this.deletions = deletions;
+			this.creations = creations;
+			this.updates = updates;
+			this.failedWrites = new ArrayList<>(failedWrites);
+			this.droppedWrites = droppedWrites;
+			this.requestCount = requestCount;
+			this.bytes = bytes;
+		}
+
+		public int getRequestCount() {
+			return requestCount;
+		}
+
+		public long getBytes() {
+			return bytes;
+		}
+
+		public int getDroppedWrites() {
+			return droppedWrites;
+		}
+
+		/**
+		 * @return the main identifiers of the groups whose write failed, while planning or executing
+		 */
+		public List<String> getFailedWrites() {
+			return failedWrites.stream()
+				.map(write -> write.mainIdentifier)
+				.collect(Collectors.toList());
+		}
+
+		@Override
+		public String toString() {
+			return String.format("%d write requests (%d bytes of payload): %d deletions, %d creations, %d updates, %d writes merged or dropped as no-ops",
+					requestCount, bytes, deletions.size(), creations.size(), updates.size(), droppedWrites);
+		}
+	}
+
+	/**
+	 * @param journal the journal of the writes, or null
+	 */
+	public SyncPlanner(OpenpaasDao openpaasDao, WriteJournal journal, int concurrency, int chunkSize, boolean dryRun) {
+		this(openpaasDao, journal, concurrency, chunkSize, dryRun, Integer.MAX_VALUE, GiantGroupLane.DEFAULT_CONCURRENCY);
+	}
+
+	/**
+	 * @param giantThreshold the member count from which a group goes to the giant groups lane
+	 * @param giantConcurrency the number of giant groups fetched or written at a time
+	 */
+	public SyncPlanner(OpenpaasDao openpaasDao, WriteJournal journal, int concurrency, int chunkSize, boolean dryRun, int giantThreshold, int giantConcurrency) {
+		this.openpaasDao = openpaasDao;
+		this.journal = journal;
+		this.concurrency = concurrency;
+		this.chunkSize = chunkSize;
+		this.dryRun = dryRun;
+		this.giantThreshold = giantThreshold;
+		this.giantConcurrency = giantConcurrency;
+	}
+
+	public synchronized void record(LscModifications lm) {
+		if (lm.getOperation() == LscModificationType.CHANGE_ID || lm.getMainIdentifier() == null) {
+			return;
+		}
+		if (recordedWrites == 0) {
+			firstRecordNanos = System.nanoTime();
+		}
+		recordedWrites++;
+		PlannedWrite write = new PlannedWrite(lm.getOperation(), lm.getMainIdentifier(), new HashMap<>(lm.getModificationsItemsByHash()));
+		write.memberCount = GiantGroupLane.memberCount(lm);
+		List<PlannedWrite> writes = writesByGroup.computeIfAbsent(lm.getMainIdentifier().toLowerCase(Locale.ROOT), key -> new ArrayList<>());
+		PlannedWrite last = writes.isEmpty() ? null : writes.get(writes.size() - 1);
+		if (last == null) {
+			writes.add(write);
+		} else if (last.operation == LscModificationType.DELETE_OBJECT) {
+			if (write.operation == LscModificationType.CREATE_OBJECT) {
+				writes.add(write);
+			} else if (write.operation == LscModificationType.UPDATE_OBJECT) {
+				// The update was computed against the group before its deletion
+				Optional<PlannedWrite> recreation = recreation(lm, write);
+				if (recreation.isPresent()) {
+					writes.add(recreation.get());
+				} else {
+					LOGGER.warn(String.format("Dropping the update of OpenPaaS group %s, planned for deletion", lm.getMainIdentifier()));
+				}
+			}
+		} else if (write.operation == LscModificationType.DELETE_OBJECT) {
+			writes.remove(writes.size() - 1);
+			if (last.operation == LscModificationType.UPDATE_OBJECT) {
+				writes.add(write);
+			}
+		} else {
+			// Later values of an attribute replace earlier ones
+			last.items.putAll(write.items);
+			last.memberCount = Math.max(last.memberCount, write.memberCount);
+		}
+	}
+
+	/**
+	 * @return the creation of the group an update leads to, from the group LSC compared, if known
+	 */
+	private static Optional<PlannedWrite> recreation(LscModifications lm, PlannedWrite update) {
+		if (lm.getDestinationBean() == null) {
+			return Optional.empty();
+		}
+		Map<String, List<Object>> items = new HashMap<>();
+		for (String attribute : ImmutableList.of("name", "email", "members")) {
+			Optional.ofNullable(lm.getDestinationBean().getDatasetById(attribute))
+				.ifPresent(values -> items.put(attribute, new ArrayList<>(values)));
+		}
+		items.putAll(update.items);
+		PlannedWrite creation = new PlannedWrite(LscModificationType.CREATE_OBJECT, update.mainIdentifier, items);
+		creation.memberCount = update.memberCount;
+		return Optional.of(creation);
+	}
+
+	/**
+	 * @return true if the recorded writes reached the given count, or the first one the given age
+	 */
+	public synchronized boolean isDue(int maxWrites, long maxAgeMillis) {
+		return recordedWrites > 0
+			&& (recordedWrites >= maxWrites || TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - firstRecordNanos) >= maxAgeMillis);
+	}
+
+	public synchronized boolean isEmpty() {
+		return writesByGroup.isEmpty();
+	}
+
+	/**
+	 * Drops the recorded writes without sending them, leaving them pending in the journal if any,
+	 * so that the next run replays them.
+	 * @return the number of writes dropped
+	 */
+	public int abandon() {
+		List<PlannedWrite> writes = takeRecordedWrites();
+		for (PlannedWrite write : writes) {
+			leavePending(write);
+		}
+		return writes.size();
+	}
+
+	private synchronized List<PlannedWrite> takeRecordedWrites() {
+		List<PlannedWrite> writes = writesByGroup.values().stream()
+			.flatMap(List::stream)
+			.collect(Collectors.toList());
+		writesByGroup.clear();
+		recordedWrites = 0;
+		return writes;
+	}
+
+	/**
+	 * Plans the recorded writes, then sends them unless in dry run.
+	 * @return the plan, with the writes which failed
+	 */
+	public Plan flush() {
+		// A later plan may hold writes to the same groups
+		synchronized (flushLock) {
+			return flushInOrder();
+		}
+	}
+
+	private Plan flushInOrder() {
+		List<PlannedWrite> writes;
+		int recorded;
+		synchronized (this) {
+			recorded = recordedWrites;
+			writes = takeRecordedWrites();
+		}
+		Stopwatch stopwatch = Stopwatch.createStarted();
+		Plan plan = plan(writes, recorded);
+		LOGGER.info(String.format("Planned %s in %d ms", plan, stopwatch.elapsed(TimeUnit.MILLISECONDS)));
+		if (dryRun) {
+			LOGGER.info("Dry run, the plan is not executed");
+			return plan;
+		}
+		for (PlannedWrite write : plan.failedWrites) {
+			leavePending(write);
+		}
+		stopwatch.reset().start();
+		plan.failedWrites.addAll(execute(plan.deletions));
+		plan.failedWrites.addAll(execute(plan.creations));
+		plan.failedWrites.addAll(execute(plan.updates));
+		LOGGER.info(String.format("Executed the plan in %d ms, %d group writes failed", stopwatch.elapsed(TimeUnit.MILLISECONDS), plan.failedWrites.size()));
+		return plan;
+	}
+
+	private Plan plan(List<PlannedWrite> writes, int recorded) {
+		ForkJoinPool regularPool = new ForkJoinPool(concurrency);
+		ForkJoinPool giantPool = new ForkJoinPool(giantConcurrency);
+		// The requests sent from the pools are reported as the caller's
+		Consumer<PlannedWrite> prepare = RequestMonitor.inCurrentScope(this::prepare);
+		try {
+			// A parallel stream started from a pool task runs in that pool
+			Future<?> regular = regularPool.submit(() -> lane(writes, false).parallelStream().forEach(prepare));
+			Future<?> giant = giantPool.submit(() -> lane(writes, true).parallelStream().forEach(prepare));
+			regular.get();
+			giant.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException(e);
+		} catch (ExecutionException e) {
+			throw new IllegalStateException(e.getCause());
+		} finally {
+			regularPool.shutdown();
+			giantPool.shutdown();
+		}
+		List<PlannedWrite> planned = writes.stream()
+			.filter(write -> write.getRequestCount() > 0)
+			.collect(Collectors.toList());
+		List<PlannedWrite> failed = writes.stream()
+			.filter(write -> write.failed)
+			.collect(Collectors.toList());
+		long bytes = 0;
+		for (PlannedWrite write : planned) {
+			bytes += bytes(write);
+		}
+		return new Plan(
+			byOperation(planned, LscModificationType.DELETE_OBJECT),
+			byOperation(planned, LscModificationType.CREATE_OBJECT),
+			byOperation(planned, LscModificationType.UPDATE_OBJECT),
+			failed,
+			recorded - planned.size() - failed.size(),
+			planned.stream().mapToInt(PlannedWrite::getRequestCount).sum(),
+			bytes);
+	}
+
+	private static List<PlannedWrite> byOperation(List<PlannedWrite> writes, LscModificationType operation) {
+		return writes.stream()
+			.filter(write -> write.operation == operation)
+			.collect(Collectors.toList());
+	}
+
+	/**
+	 * Fetches what a write needs from OpenPaaS and computes its requests.
+	 */
+	private void prepare(PlannedWrite write) {
+		try {
+			switch (write.operation) {
+			case CREATE_OBJECT:
+				write.newGroup = GroupWithMembersEmails.fromModifications(write.items);
+				break;
+			case DELETE_OBJECT:
+				write.groupId = openpaasDao.lookForGroup(write.mainIdentifier).orElse(null);
+				break;
+			case UPDATE_OBJECT:
+				GroupWithMembersEmails group = openpaasDao.getGroup(write.mainIdentifier);
+				GroupWithMembersEmails modifiedGroup = openpaasDao.modify(group, write.items);
+				write.groupId = group.getId();
+				write.metadata = modifiedGroup.isMetadataModified() ? modifiedGroup.toMetadata() : null;
+				write.journalItems = WriteJournal.withMemberDelta(write.items, group, modifiedGroup, openpaasDao.getMemberIndex());
+				write.additions = Lists.partition(modifiedGroup.getMembersToAdd(), chunkSize);
+				write.removals = Lists.partition(modifiedGroup.getMembersToRemove(), chunkSize);
+				break;
+			default:
+				break;
+			}
+		} catch (NotFoundException e) {
+			LOGGER.error(String.format("OpenPaaS group %s not found, dropping its %s", write.mainIdentifier, write.operation));
+			write.failed = true;
+		} catch (ProcessingException | WebApplicationException e) {
+			LOGGER.error(String.format("Exception while planning %s of OpenPaaS group %s (%s)", write.operation, write.mainIdentifier, e));
+			LOGGER.debug(e.toString(), e);
+			write.failed = true;
+		}
+	}
+
+	private long bytes(PlannedWrite write) {
+		try {
+			switch (write.operation) {
+			case CREATE_OBJECT:
+				return mapper.writeValueAsBytes(write.newGroup).length;
+			case UPDATE_OBJECT:
+				long bytes = write.metadata != null ? mapper.writeValueAsBytes(write.metadata).length : 0;
+				for (List<Membership> chunk : Iterables.concat(write.additions, write.removals)) {
+					bytes += mapper.writeValueAsBytes(chunk).length;
+				}
+				return bytes;
+			default:
+				return 0;
+			}
+		} catch (IOException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	private List<PlannedWrite> lane(List<PlannedWrite> writes, boolean giant) {
+		return writes.stream()
+			.filter(write -> (write.memberCount >= giantThreshold) == giant)
+			.collect(Collectors.toList());
+	}
+
+	/**
+	 * @return the writes which failed
+	 */
+	private List<PlannedWrite> execute(List<PlannedWrite> writes) {
+		if (writes.isEmpty()) {
+			return ImmutableList.of();
+		}
+		ExecutorService regularExecutor = Executors.newFixedThreadPool(concurrency);
+		ExecutorService giantExecutor = Executors.newFixedThreadPool(giantConcurrency);
+		try {
+			Map<PlannedWrite, Future<Boolean>> results = new LinkedHashMap<>();
+			for (PlannedWrite write : lane(writes, true)) {
+				results.put(write, giantExecutor.submit(RequestMonitor.inCurrentScope(() -> executeJournaled(write))));
+			}
+			for (PlannedWrite write : lane(writes, false)) {
+				results.put(write, regularExecutor.submit(RequestMonitor.inCurrentScope(() -> executeJournaled(write))));
+			}
+			List<PlannedWrite> failures = new ArrayList<>();
+			for (Map.Entry<PlannedWrite, Future<Boolean>> result : results.entrySet()) {
+				if (!result.getValue().get()) {
+					failures.add(result.getKey());
+				}
+			}
+			return failures;
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException(e);
+		} catch (ExecutionException e) {
+			throw new IllegalStateException(e.getCause());
+		} finally {
+			regularExecutor.shutdown();
+			giantExecutor.shutdown();
+		}
+	}
+
+	private boolean executeJournaled(PlannedWrite write) {
+		Optional<Long> sequence = Optional.empty();
+		try {
+			if (journal != null) {
+				sequence = Optional.of(journal.begin(write.operation, write.mainIdentifier,
+						write.journalItems != null ? write.journalItems : write.items));
+			}
+			boolean applied = false;
+			try {
+				applied = execute(write);
+			} finally {
+				if (sequence.isPresent()) {
+					if (applied) {
+						journal.complete(sequence.get());
+					} else {
+						journal.release(sequence.get());
+					}
+				}
+			}
+			return applied;
+		} catch (ProcessingException e) {
+			LOGGER.error(String.format("ProcessingException while writing (%s)", e));
+			LOGGER.debug(e.toString(), e);
+			return false;
+		} catch (IOException e) {
+			LOGGER.error(String.format("Unable to journal %s of %s (%s)", write.operation, write.mainIdentifier, e));
+			return false;
+		}
+	}
+
+	private void leavePending(PlannedWrite write) {
+		if (journal == null) {
+			return;
+		}
+		try {
+			journal.release(journal.begin(write.operation, write.mainIdentifier, write.items));
+		} catch (IOException e) {
+			LOGGER.error(String.format("Unable to journal %s of %s (%s)", write.operation, write.mainIdentifier, e));
+		}
+	}
+
+	private boolean execute(PlannedWrite write) {
+		switch (write.operation) {
+		case CREATE_OBJECT:
+			LOGGER.debug("Creating OpenPaaS group: " + write.mainIdentifier);
+			return openpaasDao.createGroup(write.newGroup, write.items);
+		case DELETE_OBJECT:
+			LOGGER.debug("Deleting OpenPaaS group: " + write.mainIdentifier);
+			return openpaasDao.deleteGroupById(write.groupId);
+		default:
+			LOGGER.debug("Modifying OpenPaaS group: " + write.mainIdentifier);
+			if (write.metadata != null && !openpaasDao.updateGroupMetadata(write.groupId, write.metadata)) {
+				return false;
+			}
+			boolean applied = true;
+			for (List<Membership> chunk : write.additions) {
+				applied &= openpaasDao.addMembers(write.groupId, chunk);
+			}
+			for (List<Membership> chunk : write.removals) {
+				applied &= openpaasDao.removeMembers(write.groupId, chunk);
+			}
+			return applied;
+		}
+	}
+}
@@ -0,0 +1,334 @@
+/*
+ ****************************************************************************
+ * Ldap Synchronization Connector provides tools to synchronize
+ * electronic identities from a list of data sources including
+ * any database with a JDBC connector, another LDAP directory,
+ * flat files...
+ *
+ *                  ==LICENSE NOTICE==
+ * 
+ * Copyright (c) 2008 - 2019 LSC Project 
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+
+ *    * Redistributions of source code must retain the above copyright
+ * notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ * notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the LSC Project nor the names of its
+ * contributors may be used to endorse or promote products derived from
+ * this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS
+ * IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED
+ * TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A
+ * PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER
+ * OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ *                  ==LICENSE NOTICE==
+ *
+ *               (c) 2008 - 2019 LSC Project
+ *         Raphael Ouazana <rouazana@linagora.com>
+ ****************************************************************************
+ */
+package org.lsc.plugins.connectors.openpaas;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.SocketTimeoutException;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import javax.ws.rs.ProcessingException;
+
+import org.glassfish.jersey.client.ClientProperties;
+import org.glassfish.jersey.client.ClientRequest;
+import org.glassfish.jersey.client.ClientResponse;
+import org.glassfish.jersey.client.HttpUrlConnector;
+import org.glassfish.jersey.client.spi.AsyncConnectorCallback;
+import org.glassfish.jersey.client.spi.Connector;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+/**
+ * Jersey connector applying to each request the {@link PerformanceSettings.Timeouts} of its
+ * {@link RequestMonitor.Category}.
+ * <p>
+ * The timeouts are passed to the transport as request properties. The HTTP/2 transport honors
+ * all of them. The HTTP/1.1 transport of Jersey only knows the client-wide connect and read
+ * timeouts, so this connector enforces the deadlines itself: the connection of a synchronous
+ * request still running at its deadline, response reading included, is disconnected.
+ * <p>
+ * A synchronous request given an {@link Abort} in its {@link #ABORT_PROPERTY} property can also
+ * be stopped from another thread, its connection is then disconnected or its call cancelled.
+ */
+public class TimeoutConnector implements Connector {
+
+	/**
+	 * Request property holding the deadline of the request, in milliseconds.
+	 */
+	public static final String DEADLINE_PROPERTY = TimeoutConnector.class.getName() + ".deadline";
+
+	/**
+	 * Request property holding the {@link Abort} of the request, if it may be aborted.
+	 */
+	public static final String ABORT_PROPERTY = TimeoutConnector.class.getName() + ".abort";
+
+	private static final ThreadLocal<Opening> OPENING = new ThreadLocal<>();
+
+	private final Connector delegate;
+	private final PerformanceSettings performance;
+	private final ScheduledThreadPoolExecutor timer;
+
+	private TimeoutConnector(Connector delegate, PerformanceSettings performance, ScheduledThreadPoolExecutor timer) {
+		this.delegate = delegate;
+		this.performance = performance;
+		this.timer = timer;
+	}
+
+	/**
+	 * @return a connector sending requests through the given HTTP/2 transport
+	 */
+	public static TimeoutConnector of(OkHttpConnector transport, PerformanceSettings performance) {
+		return new TimeoutConnector(transport, performance, null);
+	}
+
+	/**
+	 * @return a connector sending requests through the HTTP/1.1 transport of Jersey
+	 */
+	public static TimeoutConnector ofHttpUrlConnection(PerformanceSettings performance) {
+		ScheduledThreadPoolExecutor timer = new ScheduledThreadPoolExecutor(1, new ThreadFactoryBuilder()
+				.setNameFormat("openpaas-deadline-%d")
+				.setDaemon(true)
+				.build());
+		timer.setRemoveOnCancelPolicy(true);
+		HttpUrlConnector transport = new HttpUrlConnector(url -> {
+			HttpURLConnection connection = (HttpURLConnection) url.openConnection();
+			Opening opening = OPENING.get();
+			if (opening != null) {
+				opening.opened(connection);
+			}
+			return connection;
+		});
+		return new TimeoutConnector(transport, performance, timer);
+	}
+
+	/**
+	 * Stops a request sent by another thread. The transport {@link #arm(Runnable) arms} it
+	 * with the way to stop the request once sent.
+	 */
+	public static final class Abort {
+		private Runnable action;
+		private boolean aborted;
+
+		/**
+		 * Makes the request fail, or the reading of its response if already received.
+		 */
+		public void abort() {
+			Runnable armed;
+			synchronized (this) {
+				aborted = true;
+				armed = action;
+			}
+			if (armed != null) {
+				armed.run();
+			}
+		}
+
+		public synchronized boolean isAborted() {
+			return aborted;
+		}
+
+		/**
+		 * Runs the action once aborted, at once if the request already was.
+		 */
+		void arm(Runnable action) {
+			synchronized (this) {
+				this.action = action;
+				if (!aborted) {
+					return;
+				}
+			}
+			action.run();
+		}
+	}
+
+	/**
+	 * @return the abort of the request, if it may be aborted
+	 */
+	static Abort abortOf(ClientRequest request) {
+		return (Abort) request.getProperty(ABORT_PROPERTY);
+	}
+
+	/**
+	 * @return true if the request failed because it was aborted
+	 */
+	static boolean isAborted(ClientRequest request) {
+		Abort abort = abortOf(request);
+		return abort != null && abort.isAborted();
+	}
+
+	/**
+	 * What to do with the connection of the request the current thread sends.
+	 */
+	private interface Opening {
+		void opened(HttpURLConnection connection) throws IOException;
+	}
+
+	/**
+	 * Disconnects a connection once its time is up, unless its response was read before.
+	 */
+	private final class Deadline {
+		private final int millis;
+		private ScheduledFuture<?> expiry;
+		private volatile boolean expired;
+
+		private Deadline(int millis) {
+			this.millis = millis;
+		}
+
+		private void start(HttpURLConnection connection) {
+			expiry = timer.schedule(() -> {
+				expired = true;
+				connection.disconnect();
+			}, millis, TimeUnit.MILLISECONDS);
+		}
+
+		private void cancel() {
+			if (expiry != null) {
+				expiry.cancel(false);
+			}
+		}
+
+		private SocketTimeoutException exceeded() {
+			return new SocketTimeoutException(String.format("Deadline of %d ms exceeded", millis));
+		}
+
+		private InputStream watch(InputStream entityStream) {
+			return new FilterInputStream(entityStream) {
+				@Override
+				public int read() throws IOException {
+					try {
+						int b = super.read();
+						if (b < 0) {
+							cancel();
+						}
+						return b;
+					} catch (IOException e) {
+						throw expired ? exceeded() : e;
+					}
+				}
+
+				@Override
+				public int read(byte[] b, int off, int len) throws IOException {
+					try {
+						int read = super.read(b, off, len);
+						if (read < 0) {
+							cancel();
+						}
+						return read;
+					} catch (IOException e) {
+						throw expired ? exceeded() : e;
+					}
+				}
+
+				@Override
+				public void close() throws IOException {
+					cancel();
+					super.close();
+				}
+			};
+		}
+	}
+
+	@Override
+	public ClientResponse apply(ClientRequest request) throws ProcessingException {
+		PerformanceSettings.Timeouts timeouts = applyTimeouts(request);
+		Abort abort = abortOf(request);
+		if (timer == null || (timeouts.getDeadlineMillis() == null && abort == null)) {
+			return delegate.apply(request);
+		}
+		Deadline deadline = timeouts.getDeadlineMillis() != null ? new Deadline(timeouts.getDeadlineMillis()) : null;
+		OPENING.set(connection -> {
+			if (deadline != null) {
+				deadline.start(connection);
+			}
+			if (abort != null) {
+				abort.arm(connection::disconnect);
+				if (abort.isAborted()) {
+					throw new IOException("Request aborted");
+				}
+			}
+		});
+		ClientResponse response;
+		try {
+			response = delegate.apply(request);
+		} catch (RuntimeException e) {
+			// Disconnected by another thread, the connection may fail with any exception
+			if (deadline != null) {
+				deadline.cancel();
+				if (deadline.expired) {
+					throw new ProcessingException(deadline.exceeded());
+				}
+			}
+			if (abort != null && abort.isAborted() && !(e instanceof ProcessingException)) {
+				throw new ProcessingException("Request aborted", e);
+			}
+			throw e;
+		} finally {
+			OPENING.remove();
+		}
+		if (deadline != null) {
+			response.setEntityStream(deadline.watch(response.getEntityStream()));
+		}
+		return response;
+	}
+
+	@Override
+	public Future<?> apply(ClientRequest request, AsyncConnectorCallback callback) {
+		// The connection is opened by another thread, only the client-wide timeouts apply on HTTP/1.1
+		applyTimeouts(request);
+		return delegate.apply(request, callback);
+	}
+
+	private PerformanceSettings.Timeouts applyTimeouts(ClientRequest request) {
+		PerformanceSettings.Timeouts timeouts = performance.getTimeouts(RequestMonitor.Category.of(
+				request.getMethod(), request.getUri().getPath(), request.getUri().getRawQuery()));
+		if (timeouts.getConnectMillis() != null) {
+			request.setProperty(ClientProperties.CONNECT_TIMEOUT, timeouts.getConnectMillis());
+		}
+		if (timeouts.getReadMillis() != null) {
+			request.setProperty(ClientProperties.READ_TIMEOUT, timeouts.getReadMillis());
+		}
+		if (timeouts.getDeadlineMillis() != null) {
+			request.setProperty(DEADLINE_PROPERTY, timeouts.getDeadlineMillis());
+		}
+		return timeouts;
+	}
+
+	@Override
+	public String getName() {
+		return delegate.getName() + " with timeouts";
+	}
+
+	@Override
+	public void close() {
+		if (timer != null) {
+			timer.shutdownNow();
+		}
+		delegate.close();
+	}
+}
@@ -0,0 +1,168 @@
+/*
+ ****************************************************************************
+ * Ldap Synchronization Connector provides tools to synchronize
+ * electronic identities from a list of data sources including
+ * any database with a JDBC connector, another LDAP directory,
+ * flat files...
+ *
+ *                  ==LICENSE NOTICE==
+ * 
+ * Copyright (c) 2008 - 2019 LSC Project 
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+
+ *    * Redistributions of source code must retain the above copyright
+ * notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ * notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the LSC Project nor the names of its
+ * contributors may be used to endorse or promote products derived from
+ * this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS
+ * IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED
+ * TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A
+ * PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER
+ * OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ *                  ==LICENSE NOTICE==
+ *
+ *               (c) 2008 - 2019 LSC Project
+ *         Raphael Ouazana <rouazana@linagora.com>
+ ****************************************************************************
+ */
+package org.lsc.plugins.connectors.openpaas;
+
+import java.util.concurrent.Future;
+
+import javax.ws.rs.ProcessingException;
+import javax.ws.rs.core.MultivaluedMap;
+
+import org.glassfish.jersey.client.ClientRequest;
+import org.glassfish.jersey.client.ClientResponse;
+import org.glassfish.jersey.client.spi.AsyncConnectorCallback;
+import org.glassfish.jersey.client.spi.Connector;
+
+import io.opentelemetry.api.GlobalOpenTelemetry;
+import io.opentelemetry.api.OpenTelemetry;
+import io.opentelemetry.api.common.AttributeKey;
+import io.opentelemetry.api.trace.Span;
+import io.opentelemetry.api.trace.SpanKind;
+import io.opentelemetry.api.trace.StatusCode;
+import io.opentelemetry.api.trace.Tracer;
+import io.opentelemetry.context.Context;
+import io.opentelemetry.context.propagation.TextMapSetter;
+
+/**
+ * Jersey connector sending each request in a client span, child of the current span, and
+ * propagating the trace context to OpenPaaS in the request headers (W3C {@code traceparent}
+ * with the default propagators).
+ */
+public class TracingConnector implements Connector {
+
+	public static final String INSTRUMENTATION_NAME = "org.lsc.plugins.connectors.openpaas";
+
+	static final AttributeKey<String> HTTP_METHOD = AttributeKey.stringKey("http.request.method");
+	static final AttributeKey<String> URL = AttributeKey.stringKey("url.full");
+	static final AttributeKey<Long> HTTP_STATUS = AttributeKey.longKey("http.response.status_code");
+
+	private static final TextMapSetter<MultivaluedMap<String, Object>> HEADER_SETTER =
+			(headers, name, value) -> headers.putSingle(name, value);
+
+	private final Connector delegate;
+	private final OpenTelemetry openTelemetry;
+	private final Tracer tracer;
+
+	/**
+	 * Sends the spans to the global OpenTelemetry.
+	 */
+	public TracingConnector(Connector delegate) {
+		this(delegate, GlobalOpenTelemetry.get());
+	}
+
+	public TracingConnector(Connector delegate, OpenTelemetry openTelemetry) {
+		this.delegate = delegate;
+		this.openTelemetry = openTelemetry;
+		this.tracer = openTelemetry.getTracer(INSTRUMENTATION_NAME);
+	}
+
+	@Override
+	public ClientResponse apply(ClientRequest request) throws ProcessingException {
+		Span span = startSpan(request);
+		try {
+			ClientResponse response = delegate.apply(request);
+			end(span, response);
+			return response;
+		} catch (RuntimeException e) {
+			fail(span, e);
+			throw e;
+		}
+	}
+
+	@Override
+	public Future<?> apply(ClientRequest request, final AsyncConnectorCallback callback) {
+		final Span span = startSpan(request);
+		try {
+			return delegate.apply(request, new AsyncConnectorCallback() {
+				@Override
+				public void response(ClientResponse response) {
+					end(span, response);
+					callback.response(response);
+				}
+
+				@Override
+				public void failure(Throwable failure) {
+					fail(span, failure);
+					callback.failure(failure);
+				}
+			});
+		} catch (RuntimeException e) {
+			fail(span, e);
+			throw e;
+		}
+	}
+
+	private Span startSpan(ClientRequest request) {
+		Span span = tracer.spanBuilder(request.getMethod())
+				.setSpanKind(SpanKind.CLIENT)
+				.setAttribute(HTTP_METHOD, request.getMethod())
+				.setAttribute(URL, request.getUri().toString())
+				.startSpan();
+		openTelemetry.getPropagators().getTextMapPropagator()
+				.inject(Context.current().with(span), request.getHeaders(), HEADER_SETTER);
+		return span;
+	}
+
+	private static void end(Span span, ClientResponse response) {
+		span.setAttribute(HTTP_STATUS, (long) response.getStatus());
+		if (response.getStatus() >= 400) {
+			span.setStatus(StatusCode.ERROR);
+		}
+		span.end();
+	}
+
+	private static void fail(Span span, Throwable failure) {
+		span.recordException(failure);
+		span.setStatus(StatusCode.ERROR);
+		span.end();
+	}
+
+	@Override
+	public String getName() {
+		return delegate.getName() + " traced";
+	}
+
+	@Override
+	public void close() {
+		delegate.close();
+	}
+}
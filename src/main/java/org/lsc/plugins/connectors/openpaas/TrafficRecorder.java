@@ -0,0 +1,282 @@
+/*
+ ****************************************************************************
+ * Ldap Synchronization Connector provides tools to synchronize
+ * electronic identities from a list of data sources including
+ * any database with a JDBC connector, another LDAP directory,
+ * flat files...
+ *
+ *                  ==LICENSE NOTICE==
+ * 
+ * Copyright (c) 2008 - 2019 LSC Project 
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+
+ *    * Redistributions of source code must retain the above copyright
+ * notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ * notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the LSC Project nor the names of its
+ * contributors may be used to endorse or promote products derived from
+ * this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS
+ * IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED
+ * TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A
+ * PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER
+ * OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ *                  ==LICENSE NOTICE==
+ *
+ *               (c) 2008 - 2019 LSC Project
+ *         Raphael Ouazana <rouazana@linagora.com>
+ ****************************************************************************
+ */
+package org.lsc.plugins.connectors.openpaas;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.UnsupportedEncodingException;
+import java.io.Writer;
+import java.net.URI;
+import java.net.URLDecoder;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.StringJoiner;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.zip.GZIPOutputStream;
+
+import javax.ws.rs.client.ClientRequestContext;
+import javax.ws.rs.client.ClientRequestFilter;
+import javax.ws.rs.client.ClientResponseContext;
+import javax.ws.rs.client.ClientResponseFilter;
+import javax.ws.rs.ext.WriterInterceptor;
+import javax.ws.rs.ext.WriterInterceptorContext;
+
+import org.codehaus.jackson.JsonNode;
+import org.codehaus.jackson.map.ObjectMapper;
+import org.codehaus.jackson.node.ArrayNode;
+import org.codehaus.jackson.node.ObjectNode;
+import org.codehaus.jackson.node.TextNode;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.collect.ImmutableSet;
+import com.google.common.hash.Hashing;
+import com.google.common.io.ByteStreams;
+
+/**
+ * Records the OpenPaaS HTTP traffic of a Jersey client to a gzipped file, one JSON
+ * record per exchange: start offset and duration in milliseconds, method, path and
+ * query, request body, status, a few response headers and response body.
+ * <p>
+ * Emails and names are replaced by keyed hashes before being written. The key is
+ * random and never written, so recordings cannot be reversed, but the same address
+ * is always replaced by the same token within a recording and the payload shapes
+ * are left untouched.
+ */
+public class TrafficRecorder implements ClientRequestFilter, ClientResponseFilter, WriterInterceptor, Closeable {
+
+	private static final Logger LOGGER = LoggerFactory.getLogger(TrafficRecorder.class);
+
+	private static final String START_PROPERTY = TrafficRecorder.class.getName() + ".start";
+	private static final String BODY_PROPERTY = TrafficRecorder.class.getName() + ".body";
+	private static final Pattern EMAIL = Pattern.compile("[^@\\s\"'<>,;]+@([^@\\s\"'<>,;]+)");
+	private static final ImmutableSet<String> NAME_FIELDS = ImmutableSet.of("name", "firstname", "lastname", "displayName");
+	private static final ImmutableSet<String> RECORDED_HEADERS = ImmutableSet.of("Content-Type", "X-ESN-Items-Count");
+
+	private final ObjectMapper mapper = new ObjectMapper();
+	private final byte[] key = new byte[32];
+	private final Writer output;
+	private final long origin = System.nanoTime();
+
+	/**
+	 * @throws UncheckedIOException if the file cannot be created
+	 */
+	public TrafficRecorder(String file) {
+		new SecureRandom().nextBytes(key);
+		try {
+			output = new OutputStreamWriter(new GZIPOutputStream(new FileOutputStream(file), true), StandardCharsets.UTF_8);
+		} catch (IOException e) {
+			throw new UncheckedIOException("Unable to create traffic record file " + file, e);
+		}
+		LOGGER.info("Recording OpenPaaS traffic to " + file);
+	}
+
+	@Override
+	public void filter(ClientRequestContext requestContext) {
+		requestContext.setProperty(START_PROPERTY, System.nanoTime());
+	}
+
+	@Override
+	public void aroundWriteTo(WriterInterceptorContext context) throws IOException {
+		final ByteArrayOutputStream copy = new ByteArrayOutputStream();
+		final OutputStream original = context.getOutputStream();
+		context.setOutputStream(new OutputStream() {
+			@Override
+			public void write(int b) throws IOException {
+				original.write(b);
+				copy.write(b);
+			}
+
+			@Override
+			public void write(byte[] b, int off, int len) throws IOException {
+				original.write(b, off, len);
+				copy.write(b, off, len);
+			}
+
+			@Override
+			public void flush() throws IOException {
+				original.flush();
+			}
+
+			@Override
+			public void close() throws IOException {
+				original.close();
+			}
+		});
+		context.setProperty(BODY_PROPERTY, copy);
+		context.proceed();
+	}
+
+	@Override
+	public void filter(ClientRequestContext requestContext, ClientResponseContext responseContext) throws IOException {
+		long end = System.nanoTime();
+		Object start = requestContext.getProperty(START_PROPERTY);
+		if (!(start instanceof Long)) {
+			return;
+		}
+		byte[] responseBody = new byte[0];
+		if (responseContext.hasEntity()) {
+			try (InputStream entity = responseContext.getEntityStream()) {
+				responseBody = ByteStreams.toByteArray(entity);
+			}
+			responseContext.setEntityStream(new ByteArrayInputStream(responseBody));
+		}
+		Object requestBody = requestContext.getProperty(BODY_PROPERTY);
+
+		ObjectNode record = mapper.createObjectNode();
+		record.put("t", (((Long) start) - origin) / 1000000);
+		record.put("d", (end - (Long) start) / 1000000);
+		record.put("m", requestContext.getMethod());
+		record.put("u", anonymizeUri(requestContext.getUri()));
+		if (requestBody instanceof ByteArrayOutputStream) {
+			record.put("q", anonymizeBody(((ByteArrayOutputStream) requestBody).toByteArray()));
+		}
+		record.put("s", responseContext.getStatus());
+		ObjectNode headers = record.putObject("h");
+		for (Map.Entry<String, List<String>> header : responseContext.getHeaders().entrySet()) {
+			if (RECORDED_HEADERS.stream().anyMatch(name -> name.equalsIgnoreCase(header.getKey())) && !header.getValue().isEmpty()) {
+				headers.put(header.getKey(), header.getValue().get(0));
+			}
+		}
+		record.put("b", anonymizeBody(responseBody));
+		write(mapper.writeValueAsString(record));
+	}
+
+	private synchronized void write(String record) {
+		try {
+			output.write(record);
+			output.write('\n');
+			// Keep the file readable up to the last exchange even if the JVM dies
+			output.flush();
+		} catch (IOException e) {
+			LOGGER.warn("Unable to record OpenPaaS exchange: " + e);
+		}
+	}
+
+	private String anonymizeUri(URI uri) throws UnsupportedEncodingException {
+		String path = uri.getRawPath();
+		if (uri.getRawQuery() == null) {
+			return path;
+		}
+		StringJoiner query = new StringJoiner("&", path + "?", "");
+		for (String parameter : uri.getRawQuery().split("&")) {
+			int separator = parameter.indexOf('=');
+			if (separator < 0) {
+				query.add(parameter);
+				continue;
+			}
+			String value = URLDecoder.decode(parameter.substring(separator + 1), "UTF-8");
+			query.add(parameter.substring(0, separator + 1) + URLEncoder.encode(anonymizeText(value), "UTF-8"));
+		}
+		return query.toString();
+	}
+
+	private String anonymizeBody(byte[] body) {
+		if (body.length == 0) {
+			return "";
+		}
+		try {
+			return mapper.writeValueAsString(anonymize(mapper.readTree(body), null));
+		} catch (IOException e) {
+			return anonymizeText(new String(body, StandardCharsets.UTF_8));
+		}
+	}
+
+	private JsonNode anonymize(JsonNode node, String fieldName) {
+		if (node.isTextual()) {
+			String text = node.getTextValue();
+			return new TextNode(NAME_FIELDS.contains(fieldName) ? token("n", text) : anonymizeText(text));
+		}
+		if (node.isArray()) {
+			ArrayNode array = (ArrayNode) node;
+			for (int i = 0; i < array.size(); i++) {
+				array.set(i, anonymize(array.get(i), fieldName));
+			}
+		} else if (node.isObject()) {
+			ObjectNode object = (ObjectNode) node;
+			List<String> names = new ArrayList<>();
+			object.getFieldNames().forEachRemaining(names::add);
+			for (String name : names) {
+				object.put(name, anonymize(object.get(name), name));
+			}
+		}
+		return node;
+	}
+
+	private String anonymizeText(String text) {
+		Matcher matcher = EMAIL.matcher(text);
+		StringBuffer result = new StringBuffer();
+		while (matcher.find()) {
+			String email = token("u", matcher.group().toLowerCase()) + "@" + token("d", matcher.group(1).toLowerCase()) + ".invalid";
+			matcher.appendReplacement(result, Matcher.quoteReplacement(email));
+		}
+		matcher.appendTail(result);
+		return result.toString();
+	}
+
+	private String token(String prefix, String value) {
+		return prefix + Hashing.sha256().newHasher()
+			.putBytes(key)
+			.putString(value, StandardCharsets.UTF_8)
+			.hash()
+			.toString()
+			.substring(0, 12);
+	}
+
+	@Override
+	public synchronized void close() throws IOException {
+		output.close();
+	}
+}
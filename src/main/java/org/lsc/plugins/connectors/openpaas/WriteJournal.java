@@ -0,0 +1,392 @@
+/*
+ ****************************************************************************
+ * Ldap Synchronization Connector provides tools to synchronize
+ * electronic identities from a list of data sources including
+ * any database with a JDBC connector, another LDAP directory,
+ * flat files...
+ *
+ *                  ==LICENSE NOTICE==
+ * 
+ * Copyright (c) 2008 - 2019 LSC Project 
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+
+ *    * Redistributions of source code must retain the above copyright
+ * notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ * notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the LSC Project nor the names of its
+ * contributors may be used to endorse or promote products derived from
+ * this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS
+ * IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED
+ * TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A
+ * PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER
+ * OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ *                  ==LICENSE NOTICE==
+ *
+ *               (c) 2008 - 2019 LSC Project
+ *         Raphael Ouazana <rouazana@linagora.com>
+ ****************************************************************************
+ */
+package org.lsc.plugins.connectors.openpaas;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import org.codehaus.jackson.JsonNode;
+import org.codehaus.jackson.map.ObjectMapper;
+import org.codehaus.jackson.node.ObjectNode;
+import org.codehaus.jackson.type.TypeReference;
+import org.lsc.LscModificationType;
+import org.lsc.plugins.connectors.openpaas.beans.GroupWithMembersEmails;
+import org.lsc.plugins.connectors.openpaas.beans.MemberIndex;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.collect.ImmutableList;
+
+/**
+ * Append-only journal of the writes sent to OpenPaaS, one JSON line per record.
+ * <p>
+ * A write is journaled and synced to disk before being sent, and marked done once
+ * OpenPaaS answered. Done records are only written to the file, they reach the disk
+ * with the next sync: losing some of them in an OS crash only means replaying writes
+ * which were already applied, which the replay must tolerate anyway. Concurrent
+ * writes share syncs: a thread waiting for a sync in progress finds its record
+ * already on disk when that sync ends, or syncs every record appended meanwhile.
+ * <p>
+ * The journal is rewritten with the pending writes only once the records of done writes
+ * pass a threshold, and updates are journaled with the members they add and remove
+ * rather than the full member list, so that it stays small in a long running process.
+ */
+public class WriteJournal implements Closeable {
+
+	public static final int DEFAULT_COMPACTION_THRESHOLD = 10000;
+
+	/**
+	 * Items of an update journaled with its member delta, replacing the members item.
+	 */
+	public static final String ADDED_MEMBERS = "addedMembers";
+	public static final String REMOVED_MEMBERS = "removedMembers";
+
+	private static final Logger LOGGER = LoggerFactory.getLogger(WriteJournal.class);
+
+	private final ObjectMapper mapper = new ObjectMapper();
+	private final Path file;
+	private final int compactionThreshold;
+	private final Map<Long, Entry> pending = new LinkedHashMap<>();
+	/**
+	 * The writes begun by this process and still being sent.
+	 */
+	private final Set<Long> inProgress = new HashSet<>();
+	private final Object syncLock = new Object();
+	private FileChannel channel;
+	private long lastSequence;
+	private long appendedRecords;
+	private long syncedRecords;
+	private long syncCount;
+	private long doneRecords;
+
+	public static class Entry {
+		private final long sequence;
+		private final LscModificationType operation;
+		private final String mainIdentifier;
+		private final Map<String, List<Object>> items;
+
+		private Entry(long sequence, LscModificationType operation, String mainIdentifier, Map<String, List<Object>> items) {
+			this.sequence = sequence;
+			this.operation = operation;
+			this.mainIdentifier = mainIdentifier;
+			this.items = items;
+		}
+
+		public long getSequence() {
+			return sequence;
+		}
+
+		public LscModificationType getOperation() {
+			return operation;
+		}
+
+		public String getMainIdentifier() {
+			return mainIdentifier;
+		}
+
+		public Map<String, List<Object>> getItems() {
+			return items;
+		}
+	}
+
+	/**
+	 * Opens the journal, reading the writes left pending by a previous run.
+	 */
+	public WriteJournal(Path file) throws IOException {
+		this(file, DEFAULT_COMPACTION_THRESHOLD);
+	}
+
+	/**
+	 * @param compactionThreshold the number of records of done writes from which the journal is compacted
+	 */
+	public WriteJournal(Path file, int compactionThreshold) throws IOException {
+		this.file = file;
+		this.compactionThreshold = compactionThreshold;
+		if (Files.exists(file)) {
+			read();
+		}
+		channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+	}
+
+	private void read() throws IOException {
+		try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+			String line;
+			while ((line = reader.readLine()) != null) {
+				JsonNode record;
+				try {
+					record = mapper.readTree(line);
+				} catch (IOException e) {
+					// Only the last record can be torn by a crash
+					LOGGER.warn("Ignoring unreadable journal record in " + file + ": " + line);
+					continue;
+				}
+				if (record.has("done")) {
+					pending.remove(record.get("done").getLongValue());
+					continue;
+				}
+				Entry entry = new Entry(record.get("seq").getLongValue(),
+						LscModificationType.valueOf(record.get("op").getTextValue()),
+						record.get("id").getTextValue(),
+						mapper.<Map<String, List<Object>>>readValue(record.get("items"), new TypeReference<Map<String, List<Object>>>(){}));
+				pending.put(entry.sequence, entry);
+				lastSequence = Math.max(lastSequence, entry.sequence);
+			}
+		}
+		if (!pending.isEmpty()) {
+			LOGGER.warn(String.format("%d OpenPaaS writes were left pending in %s", pending.size(), file));
+		}
+	}
+
+	/**
+	 * @return the writes begun but not marked done, in journal order, but those still being sent
+	 */
+	public synchronized List<Entry> getPending() {
+		return ImmutableList.copyOf(pending.values().stream()
+			.filter(entry -> !inProgress.contains(entry.sequence))
+			.collect(Collectors.toList()));
+	}
+
+	/**
+	 * Journals a write and returns once it is on disk.
+	 * @return the sequence number to mark the write done with
+	 */
+	public long begin(LscModificationType operation, String mainIdentifier, Map<String, List<Object>> items) throws IOException {
+		long record;
+		long sequence;
+		synchronized (this) {
+			sequence = ++lastSequence;
+			Entry entry = new Entry(sequence, operation, mainIdentifier, items);
+			append(toRecord(entry));
+			pending.put(sequence, entry);
+			inProgress.add(sequence);
+			record = appendedRecords;
+		}
+		sync(record);
+		return sequence;
+	}
+
+	/**
+	 * Marks a write done, without waiting for the record to reach the disk, and compacts
+	 * the journal once done writes fill most of it.
+	 */
+	public void complete(long sequence) throws IOException {
+		boolean compact;
+		synchronized (this) {
+			inProgress.remove(sequence);
+			if (pending.remove(sequence) == null) {
+				return;
+			}
+			ObjectNode node = mapper.createObjectNode();
+			node.put("done", sequence);
+			append(node);
+			// The record of the write and the one marking it done
+			doneRecords += 2;
+			compact = doneRecords >= compactionThreshold && doneRecords > pending.size();
+		}
+		if (compact) {
+			compact();
+		}
+	}
+
+	/**
+	 * Leaves a write pending once it could not be sent, so that it is replayed.
+	 */
+	public synchronized void release(long sequence) {
+		inProgress.remove(sequence);
+	}
+
+	/**
+	 * @return the items of an update, with the members it adds to and removes from the group instead of the members
+	 */
+	public static Map<String, List<Object>> withMemberDelta(Map<String, List<Object>> items, GroupWithMembersEmails group,
+			GroupWithMembersEmails modifiedGroup, MemberIndex index) {
+		if (!items.containsKey("members")) {
+			return items;
+		}
+		Map<String, List<Object>> deltaItems = new HashMap<>(items);
+		deltaItems.remove("members");
+		deltaItems.put(ADDED_MEMBERS, missing(modifiedGroup.getMembers(), group.getMembers(), index));
+		deltaItems.put(REMOVED_MEMBERS, missing(group.getMembers(), modifiedGroup.getMembers(), index));
+		return deltaItems;
+	}
+
+	private static List<Object> missing(List<String> members, List<String> others, MemberIndex index) {
+		Set<String> otherKeys = others.stream()
+			.map(index::key)
+			.collect(Collectors.toSet());
+		return members.stream()
+			.filter(member -> !otherKeys.contains(index.key(member)))
+			.collect(Collectors.toList());
+	}
+
+	/**
+	 * @return the items of an update journaled with its member delta, with the members this delta leads to from the current ones
+	 */
+	public static Map<String, List<Object>> withMembers(Map<String, List<Object>> items, List<String> currentMembers, MemberIndex index) {
+		if (!items.containsKey(ADDED_MEMBERS) && !items.containsKey(REMOVED_MEMBERS)) {
+			return items;
+		}
+		Set<String> removedKeys = values(items, REMOVED_MEMBERS).stream()
+			.map(index::key)
+			.collect(Collectors.toSet());
+		List<Object> members = new ArrayList<>();
+		Set<String> keys = new HashSet<>();
+		for (String member : currentMembers) {
+			if (!removedKeys.contains(index.key(member)) && keys.add(index.key(member))) {
+				members.add(member);
+			}
+		}
+		for (String member : values(items, ADDED_MEMBERS)) {
+			if (keys.add(index.key(member))) {
+				members.add(member);
+			}
+		}
+		Map<String, List<Object>> fullItems = new HashMap<>(items);
+		fullItems.remove(ADDED_MEMBERS);
+		fullItems.remove(REMOVED_MEMBERS);
+		fullItems.put("members", members);
+		return fullItems;
+	}
+
+	private static List<String> values(Map<String, List<Object>> items, String key) {
+		return Optional.ofNullable(items.get(key))
+			.map(values -> values.stream().map(String::valueOf).collect(Collectors.toList()))
+			.orElse(ImmutableList.of());
+	}
+
+	private ObjectNode toRecord(Entry entry) {
+		ObjectNode node = mapper.createObjectNode();
+		node.put("seq", entry.sequence);
+		node.put("op", entry.operation.name());
+		node.put("id", entry.mainIdentifier);
+		node.put("items", mapper.valueToTree(entry.items));
+		return node;
+	}
+
+	private void append(ObjectNode node) throws IOException {
+		write(channel, node);
+		appendedRecords++;
+	}
+
+	private void write(FileChannel output, ObjectNode node) throws IOException {
+		ByteBuffer buffer = ByteBuffer.wrap((mapper.writeValueAsString(node) + "\n").getBytes(StandardCharsets.UTF_8));
+		while (buffer.hasRemaining()) {
+			output.write(buffer);
+		}
+	}
+
+	private void sync(long record) throws IOException {
+		synchronized (syncLock) {
+			if (syncedRecords >= record) {
+				return;
+			}
+			long target;
+			FileChannel current;
+			synchronized (this) {
+				target = appendedRecords;
+				current = channel;
+			}
+			current.force(false);
+			syncedRecords = target;
+			syncCount++;
+		}
+	}
+
+	/**
+	 * @return the number of disk syncs, lower than the number of writes under concurrency
+	 */
+	long getSyncCount() {
+		synchronized (syncLock) {
+			return syncCount;
+		}
+	}
+
+	/**
+	 * Rewrites the journal with the pending writes only, so that it does not grow across runs.
+	 */
+	public void compact() throws IOException {
+		synchronized (syncLock) {
+			synchronized (this) {
+				Path compacted = file.resolveSibling(file.getFileName() + ".tmp");
+				try (FileChannel output = FileChannel.open(compacted, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+					for (Entry entry : pending.values()) {
+						write(output, toRecord(entry));
+					}
+					output.force(false);
+				}
+				channel.close();
+				Files.move(compacted, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+				channel = FileChannel.open(file, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+				syncedRecords = appendedRecords;
+				doneRecords = 0;
+			}
+		}
+	}
+
+	@Override
+	public void close() throws IOException {
+		synchronized (syncLock) {
+			synchronized (this) {
+				channel.force(false);
+				channel.close();
+			}
+		}
+	}
+}
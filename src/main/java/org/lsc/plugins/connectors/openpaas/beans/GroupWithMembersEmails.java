@@ -43,18 +43,22 @@
 package org.lsc.plugins.connectors.openpaas.beans;
 
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Objects;
 import java.util.Optional;
+import java.util.Set;
 import java.util.stream.Collectors;
 
 import org.codehaus.jackson.annotate.JsonIgnoreProperties;
 import org.lsc.LscDatasets;
+import org.lsc.plugins.connectors.openpaas.jfr.FlightRecorderEvents;
+import org.lsc.plugins.connectors.openpaas.jfr.FlightRecorderEvents.MembershipDiff;
 
 import com.google.common.collect.ImmutableList;
-import com.google.common.collect.Lists;
 
-@JsonIgnoreProperties({"membersToAdd", "membersToRemove"})
+@JsonIgnoreProperties({"membersToAdd", "membersToRemove", "metadataModified"})
 public class GroupWithMembersEmails {
 	private final String id;
 	private final String name;
@@ -63,8 +67,9 @@ public class GroupWithMembersEmails {
 	private final String creator;
 	private final List<String> members;
 	
-	private final List<String> membersToAdd;
-	private final List<String> membersToRemove;
+	private final List<Membership> membersToAdd;
+	private final List<Membership> membersToRemove;
+	private final boolean metadataModified;
 	
 	public GroupWithMembersEmails(Group group, List<Member> members) {
 		id = group.id;
@@ -76,15 +81,24 @@ public class GroupWithMembersEmails {
 			.collect(Collectors.toList());
 		membersToAdd = ImmutableList.of();
 		membersToRemove = ImmutableList.of();
+		metadataModified = false;
 	}
 	
-	private GroupWithMembersEmails(String id, String name, String email, List<String> membersEmails, List<String> membersToAdd, List<String> membersToRemove) {
+	/**
+	 * @param membersEmails the current members, e.g. as read by LSC in the destination bean
+	 */
+	public GroupWithMembersEmails(String id, String name, String email, List<String> membersEmails) {
+		this(id, name, email, ImmutableList.copyOf(membersEmails), ImmutableList.of(), ImmutableList.of(), false);
+	}
+	
+	private GroupWithMembersEmails(String id, String name, String email, List<String> membersEmails, List<Membership> membersToAdd, List<Membership> membersToRemove, boolean metadataModified) {
 		this.id = id;
 		this.name = name;
 		this.email = email;
 		this.members = membersEmails;
 		this.membersToAdd = membersToAdd;
 		this.membersToRemove = membersToRemove;
+		this.metadataModified = metadataModified;
 		this.creator = null;
 	}
 
@@ -93,18 +107,80 @@ public class GroupWithMembersEmails {
 		String email = getFirstValueAsString(modificationsItems, "email", null);
 		List<String> membersEmails = getMembers(modificationsItems);
 		String id = null;
-		return new GroupWithMembersEmails(id, name, email, ImmutableList.copyOf(membersEmails), ImmutableList.of(), ImmutableList.of());
+		return new GroupWithMembersEmails(id, name, email, ImmutableList.copyOf(membersEmails), ImmutableList.of(), ImmutableList.of(), true);
 	}
 
 	public GroupWithMembersEmails modify(Map<String, List<Object>> modificationsItems) {
+		return modify(modificationsItems, new MemberIndex());
+	}
+
+	/**
+	 * @param index the ids of the known users and groups: members are compared and
+	 *        written by id, members listed by an alias are neither added nor removed
+	 */
+	public GroupWithMembersEmails modify(Map<String, List<Object>> modificationsItems, MemberIndex index) {
+		MembershipDiff diff = FlightRecorderEvents.beginMembershipDiff();
 		String name = getFirstValueAsString(modificationsItems, "name", this.name);
 		String email = getFirstValueAsString(modificationsItems, "email", this.email);
-		List<String> newMembers = getMembers(modificationsItems);
-		List<String> membersToAdd = Lists.newArrayList(newMembers);
-		membersToAdd.removeAll(members);
-		List<String> membersToRemove = Lists.newArrayList(members);
-		membersToRemove.removeAll(newMembers);
-		return new GroupWithMembersEmails(id, name, email, ImmutableList.copyOf(newMembers), ImmutableList.copyOf(membersToAdd), ImmutableList.copyOf(membersToRemove));
+		boolean metadataModified = !Objects.equals(name, this.name) || !Objects.equals(email, this.email);
+		if (!modificationsItems.containsKey("members")) {
+			diff.end(this.email, members.size(), 0, 0);
+			return new GroupWithMembersEmails(id, name, email, members, ImmutableList.of(), ImmutableList.of(), metadataModified);
+		}
+		Map<String, String> newMembers = new LinkedHashMap<>();
+		for (String member : getMembers(modificationsItems)) {
+			newMembers.putIfAbsent(index.key(member), index.canonical(member));
+		}
+		Set<String> currentKeys = members.stream()
+			.map(index::key)
+			.collect(Collectors.toSet());
+		List<Membership> membersToAdd = newMembers.entrySet().stream()
+			.filter(member -> !currentKeys.contains(member.getKey()))
+			.map(member -> index.membership(member.getValue()))
+			.collect(Collectors.toList());
+		List<Membership> membersToRemove = members.stream()
+			.filter(member -> !newMembers.containsKey(index.key(member)))
+			.map(index::membership)
+			.collect(Collectors.toList());
+		diff.end(this.email, members.size(), membersToAdd.size(), membersToRemove.size());
+		return new GroupWithMembersEmails(id, name, email, ImmutableList.copyOf(newMembers.values()), ImmutableList.copyOf(membersToAdd), ImmutableList.copyOf(membersToRemove), metadataModified);
+	}
+
+	/**
+	 * Adds and removes members on top of the modifications of this group, compared by member:
+	 * a member removed and added again, e.g. under another case or alias, stays without being
+	 * written, as does a member added while already in the group.
+	 * @param index the ids of the known users and groups, added members included
+	 */
+	public GroupWithMembersEmails withMemberChanges(List<String> addedMembers, List<String> removedMembers, MemberIndex index) {
+		Set<String> addedKeys = addedMembers.stream()
+			.map(index::key)
+			.collect(Collectors.toSet());
+		Set<String> currentKeys = members.stream()
+			.map(index::key)
+			.collect(Collectors.toSet());
+		Map<String, String> added = new LinkedHashMap<>();
+		for (String member : addedMembers) {
+			String key = index.key(member);
+			if (!currentKeys.contains(key)) {
+				added.putIfAbsent(key, index.canonical(member));
+			}
+		}
+		Map<String, String> removed = new LinkedHashMap<>();
+		for (String member : removedMembers) {
+			String key = index.key(member);
+			if (!addedKeys.contains(key)) {
+				removed.putIfAbsent(key, member);
+			}
+		}
+		List<String> newMembers = members.stream()
+			.filter(member -> !removed.containsKey(index.key(member)))
+			.collect(Collectors.toList());
+		newMembers.addAll(added.values());
+		return new GroupWithMembersEmails(id, name, email, ImmutableList.copyOf(newMembers),
+				ImmutableList.<Membership>builder().addAll(membersToAdd).addAll(added.values().stream().map(index::membership).iterator()).build(),
+				ImmutableList.<Membership>builder().addAll(membersToRemove).addAll(removed.values().stream().map(index::membership).iterator()).build(),
+				metadataModified);
 	}
 
 	private static String getFirstValueAsString(Map<String, List<Object>> modificationsItems, String key, String defaultValue) {
@@ -154,16 +230,23 @@ public class GroupWithMembersEmails {
 		return members;
 	}
 	
+	/**
+	 * @return true if the name or the email differ from the group this one was modified from
+	 */
+	public boolean isMetadataModified() {
+		return metadataModified;
+	}
+
+	public GroupMetadata toMetadata() {
+		return new GroupMetadata(name, email);
+	}
+	
 	public List<Membership> getMembersToAdd() {
-		return membersToAdd.stream()
-			.map(Membership::fromEmail)
-			.collect(Collectors.toList());
+		return membersToAdd;
 	}
 	
 	public List<Membership> getMembersToRemove() {
-		return membersToRemove.stream()
-			.map(Membership::fromEmail)
-			.collect(Collectors.toList());
+		return membersToRemove;
 	}
 	
 	public static class Membership {
@@ -0,0 +1,179 @@
+/*
+ ****************************************************************************
+ * Ldap Synchronization Connector provides tools to synchronize
+ * electronic identities from a list of data sources including
+ * any database with a JDBC connector, another LDAP directory,
+ * flat files...
+ *
+ *                  ==LICENSE NOTICE==
+ * 
+ * Copyright (c) 2008 - 2019 LSC Project 
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+
+ *    * Redistributions of source code must retain the above copyright
+ * notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ * notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the LSC Project nor the names of its
+ * contributors may be used to endorse or promote products derived from
+ * this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS
+ * IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED
+ * TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A
+ * PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER
+ * OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ *                  ==LICENSE NOTICE==
+ *
+ *               (c) 2008 - 2019 LSC Project
+ *         Raphael Ouazana <rouazana@linagora.com>
+ ****************************************************************************
+ */
+package org.lsc.plugins.connectors.openpaas.beans;
+
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+
+import org.lsc.plugins.connectors.openpaas.beans.GroupWithMembersEmails.Membership;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+
+/**
+ * Maps the addresses of OpenPaaS users and groups to their id, so that memberships are
+ * compared and written with typed ids rather than emails. A member listed by one of
+ * its aliases, or with another case, is recognized as the same member.
+ * <p>
+ * Fed by the members payloads of the fetched groups and by the lookups of the DAO.
+ * Addresses belonging to no user nor group are remembered as external ones. The index
+ * is bounded, and forgets addresses after a while so that changes of the users are seen.
+ */
+public class MemberIndex {
+
+	public static final long DEFAULT_MAX_ADDRESSES = 500000;
+	public static final long DEFAULT_TTL_SECONDS = 3600;
+
+	private static final class Entry {
+		private final String canonical;
+		private final Membership membership;
+
+		private Entry(String canonical, Membership membership) {
+			this.canonical = canonical;
+			this.membership = membership;
+		}
+	}
+
+	private final Cache<String, Entry> entries;
+	private final Cache<String, Boolean> externalEmails;
+
+	public MemberIndex() {
+		this(DEFAULT_MAX_ADDRESSES, DEFAULT_TTL_SECONDS);
+	}
+
+	public MemberIndex(long maxAddresses, long ttlSeconds) {
+		entries = CacheBuilder.newBuilder()
+			.maximumSize(maxAddresses)
+			.expireAfterWrite(ttlSeconds, TimeUnit.SECONDS)
+			.build();
+		externalEmails = CacheBuilder.newBuilder()
+			.maximumSize(maxAddresses)
+			.expireAfterWrite(ttlSeconds, TimeUnit.SECONDS)
+			.build();
+	}
+
+	public void learn(List<? extends Member> members) {
+		for (Member member : members) {
+			if (member instanceof UserMember && ((UserMember) member).member != null) {
+				UserMember.Member user = ((UserMember) member).member;
+				learnUser(member.getId(), user.preferredEmail, user.emails);
+			} else if (member instanceof GroupMember && member.getEmail() != null) {
+				learnGroup(member.getId(), member.getEmail());
+			}
+		}
+	}
+
+	public void learnUser(String id, String preferredEmail, List<String> emails) {
+		if (id == null || preferredEmail == null) {
+			return;
+		}
+		Entry entry = new Entry(preferredEmail, Membership.fromUserId(id));
+		index(preferredEmail, entry);
+		if (emails != null) {
+			for (String email : emails) {
+				index(email, entry);
+			}
+		}
+	}
+
+	public void learnGroup(String id, String email) {
+		if (id != null) {
+			index(email, new Entry(email, Membership.fromGroupId(id)));
+		}
+	}
+
+	public void learnExternal(String email) {
+		externalEmails.put(normalize(email), Boolean.TRUE);
+	}
+
+	private void index(String email, Entry entry) {
+		String normalized = normalize(email);
+		entries.put(normalized, entry);
+		externalEmails.invalidate(normalized);
+	}
+
+	/**
+	 * @return true if this address is known to be a user, a group or an external address
+	 */
+	public boolean isResolved(String email) {
+		String normalized = normalize(email);
+		return entries.getIfPresent(normalized) != null || externalEmails.getIfPresent(normalized) != null;
+	}
+
+	/**
+	 * @return the preferred email of the user having this address, or the address itself
+	 */
+	public String canonical(String email) {
+		Entry entry = entries.getIfPresent(normalize(email));
+		return entry != null ? entry.canonical : email;
+	}
+
+	/**
+	 * @return the typed membership of the user or group having this address, or an
+	 *         email membership when it is unknown
+	 */
+	public Membership membership(String email) {
+		Entry entry = entries.getIfPresent(normalize(email));
+		return entry != null ? entry.membership : Membership.fromEmail(email);
+	}
+
+	/**
+	 * @return a key equal for all the addresses of a same member, its id when known
+	 */
+	public String key(String email) {
+		Entry entry = entries.getIfPresent(normalize(email));
+		if (entry == null) {
+			return normalize(email);
+		}
+		return entry.membership.getObjectType() + ":" + entry.membership.getId();
+	}
+
+	public long size() {
+		return entries.size();
+	}
+
+	private static String normalize(String email) {
+		return email.trim().toLowerCase(Locale.ROOT);
+	}
+}
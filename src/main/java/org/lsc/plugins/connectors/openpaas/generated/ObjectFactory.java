@@ -43,4 +43,28 @@ public class ObjectFactory {
     public OpenpaasGroupService createOpenpaasGroupService() {
         return new OpenpaasGroupService();
     }
+
+    /**
+     * Create an instance of {@link PerformanceType }
+     * 
+     */
+    public PerformanceType createPerformanceType() {
+        return new PerformanceType();
+    }
+
+    /**
+     * Create an instance of {@link TimeoutsType }
+     * 
+     */
+    public TimeoutsType createTimeoutsType() {
+        return new TimeoutsType();
+    }
+
+    /**
+     * Create an instance of {@link OperationTimeoutsType }
+     * 
+     */
+    public OperationTimeoutsType createOperationTimeoutsType() {
+        return new OperationTimeoutsType();
+    }
 }
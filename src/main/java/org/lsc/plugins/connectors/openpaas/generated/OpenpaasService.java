@@ -2,7 +2,7 @@
 // This file was generated by the JavaTM Architecture for XML Binding(JAXB) Reference Implementation, v2.2.8-b130911.1802 
 // See <a href="http://java.sun.com/xml/jaxb">http://java.sun.com/xml/jaxb</a> 
 // Any modifications to this file will be lost upon recompilation of the source schema. 
-// Generated on: 2019.05.20 at 05:31:37 PM CEST 
+// Generated on: 2026.10.19 at 11:02:15 AM CEST 
 //
 
 
@@ -29,6 +29,7 @@ import org.lsc.configuration.ValuesType;
  *     &lt;extension base="{http://lsc-project.org/XSD/lsc-core-2.1.xsd}serviceType">
  *       &lt;sequence>
  *         &lt;element name="writableAttributes" type="{http://lsc-project.org/XSD/lsc-core-2.1.xsd}valuesType"/>
+ *         &lt;element name="performance" type="{http://lsc-project.org/XSD/lsc-openpaas-plugin-1.0.xsd}performanceType" minOccurs="0"/>
  *       &lt;/sequence>
  *     &lt;/extension>
  *   &lt;/complexContent>
@@ -39,7 +40,8 @@ import org.lsc.configuration.ValuesType;
  */
 @XmlAccessorType(XmlAccessType.FIELD)
 @XmlType(name = "openpaasService", namespace = "http://lsc-project.org/XSD/lsc-openpaas-plugin-1.0.xsd", propOrder = {
-    "writableAttributes"
+    "writableAttributes",
+    "performance"
 })
 @XmlSeeAlso({
     OpenpaasGroupService.class
@@ -50,6 +52,7 @@ public abstract class OpenpaasService
 
     @XmlElement(required = true)
     protected ValuesType writableAttributes;
+    protected PerformanceType performance;
 
     /**
      * Gets the value of the writableAttributes property.
@@ -75,4 +78,28 @@ public abstract class OpenpaasService
         this.writableAttributes = value;
     }
 
+    /**
+     * Gets the value of the performance property.
+     * 
+     * @return
+     *     possible object is
+     *     {@link PerformanceType }
+     *     
+     */
+    public PerformanceType getPerformance() {
+        return performance;
+    }
+
+    /**
+     * Sets the value of the performance property.
+     * 
+     * @param value
+     *     allowed object is
+     *     {@link PerformanceType }
+     *     
+     */
+    public void setPerformance(PerformanceType value) {
+        this.performance = value;
+    }
+
 }
@@ -0,0 +1,112 @@
+/*
+ ****************************************************************************
+ * Ldap Synchronization Connector provides tools to synchronize
+ * electronic identities from a list of data sources including
+ * any database with a JDBC connector, another LDAP directory,
+ * flat files...
+ *
+ *                  ==LICENSE NOTICE==
+ * 
+ * Copyright (c) 2008 - 2019 LSC Project 
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+
+ *    * Redistributions of source code must retain the above copyright
+ * notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ * notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the LSC Project nor the names of its
+ * contributors may be used to endorse or promote products derived from
+ * this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS
+ * IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED
+ * TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A
+ * PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER
+ * OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ *                  ==LICENSE NOTICE==
+ *
+ *               (c) 2008 - 2019 LSC Project
+ *         Raphael Ouazana <rouazana@linagora.com>
+ ****************************************************************************
+ */
+package org.lsc.plugins.connectors.openpaas.jfr;
+
+import java.util.Optional;
+import java.util.function.Function;
+
+/**
+ * Entry point to the Java Flight Recorder events of the plugin. The events use the {@code jdk.jfr}
+ * API (Java 11, or Java 8 from update 262): they are built from {@code src/main/jfr} by the
+ * {@code jfr} Maven profile, active when building with Java 11 or later, and only loaded when the
+ * JVM provides that API. Built or run without it, the plugin works without events.
+ */
+public final class FlightRecorderEvents {
+
+	private static final String RECORDER_CLASS = FlightRecorderEvents.class.getPackage().getName() + ".JfrRecorder";
+
+	private static final Optional<Recorder> RECORDER = loadRecorder();
+
+	/**
+	 * Measures the computation of the membership changes of a group.
+	 */
+	public interface MembershipDiff {
+		void end(String groupEmail, int groupSize, int adds, int removes);
+	}
+
+	/**
+	 * Creates the events, implemented in the {@code jfr} source set.
+	 */
+	interface Recorder {
+		Optional<MembershipDiff> beginMembershipDiff();
+
+		Object httpCallFilter(Function<String, String> groupEmailById);
+	}
+
+	private static final MembershipDiff NO_MEMBERSHIP_DIFF = (groupEmail, groupSize, adds, removes) -> { };
+
+	private FlightRecorderEvents() {
+	}
+
+	/**
+	 * @return true if the plugin was built with its events and the JVM can record them
+	 */
+	public static boolean isAvailable() {
+		return RECORDER.isPresent();
+	}
+
+	public static MembershipDiff beginMembershipDiff() {
+		if (!RECORDER.isPresent()) {
+			return NO_MEMBERSHIP_DIFF;
+		}
+		return RECORDER.get().beginMembershipDiff().orElse(NO_MEMBERSHIP_DIFF);
+	}
+
+	/**
+	 * @param groupEmailById the email of a group, if known, from its id
+	 * @return the Jersey filter recording an event per request, if available
+	 */
+	public static Optional<Object> httpCallFilter(Function<String, String> groupEmailById) {
+		return RECORDER.map(recorder -> recorder.httpCallFilter(groupEmailById));
+	}
+
+	private static Optional<Recorder> loadRecorder() {
+		ClassLoader classLoader = FlightRecorderEvents.class.getClassLoader();
+		try {
+			Class.forName("jdk.jfr.Event", false, classLoader);
+			return Optional.of((Recorder) Class.forName(RECORDER_CLASS, true, classLoader).newInstance());
+		} catch (ClassNotFoundException | LinkageError | InstantiationException | IllegalAccessException e) {
+			return Optional.empty();
+		}
+	}
+}
@@ -0,0 +1,162 @@
+/*
+ ****************************************************************************
+ * Ldap Synchronization Connector provides tools to synchronize
+ * electronic identities from a list of data sources including
+ * any database with a JDBC connector, another LDAP directory,
+ * flat files...
+ *
+ *                  ==LICENSE NOTICE==
+ * 
+ * Copyright (c) 2008 - 2019 LSC Project 
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+
+ *    * Redistributions of source code must retain the above copyright
+ * notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ * notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the LSC Project nor the names of its
+ * contributors may be used to endorse or promote products derived from
+ * this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS
+ * IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED
+ * TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A
+ * PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER
+ * OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ *                  ==LICENSE NOTICE==
+ *
+ *               (c) 2008 - 2019 LSC Project
+ *         Raphael Ouazana <rouazana@linagora.com>
+ ****************************************************************************
+ */
+package org.lsc.plugins.connectors.openpaas.jfr;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+import java.net.URLDecoder;
+import java.util.List;
+import java.util.function.Function;
+
+import javax.ws.rs.client.ClientRequestContext;
+import javax.ws.rs.client.ClientRequestFilter;
+import javax.ws.rs.client.ClientResponseContext;
+import javax.ws.rs.client.ClientResponseFilter;
+import javax.ws.rs.ext.WriterInterceptor;
+import javax.ws.rs.ext.WriterInterceptorContext;
+
+import com.google.common.base.Splitter;
+
+/**
+ * Jersey filter recording an {@link HttpCallEvent} per OpenPaaS request. Only registered when
+ * {@link FlightRecorderEvents#isAvailable()}. Requests failing without a response are not recorded.
+ */
+public class FlightRecorderFilter implements ClientRequestFilter, ClientResponseFilter, WriterInterceptor {
+
+	private static final String EVENT_PROPERTY = FlightRecorderFilter.class.getName() + ".event";
+	private static final String GROUPS_SEGMENT = "groups";
+
+	private final Function<String, String> groupEmailById;
+
+	/**
+	 * @param groupEmailById the email of a group, if known, from its id
+	 */
+	public FlightRecorderFilter(Function<String, String> groupEmailById) {
+		this.groupEmailById = groupEmailById;
+	}
+
+	@Override
+	public void filter(ClientRequestContext requestContext) {
+		HttpCallEvent event = new HttpCallEvent();
+		if (!event.isEnabled()) {
+			return;
+		}
+		event.begin();
+		requestContext.setProperty(EVENT_PROPERTY, event);
+	}
+
+	@Override
+	public void aroundWriteTo(WriterInterceptorContext context) throws IOException {
+		HttpCallEvent event = (HttpCallEvent) context.getProperty(EVENT_PROPERTY);
+		if (event == null) {
+			context.proceed();
+			return;
+		}
+		OutputStream original = context.getOutputStream();
+		context.setOutputStream(new FilterOutputStream(original) {
+			@Override
+			public void write(int b) throws IOException {
+				out.write(b);
+				event.requestBytes++;
+			}
+
+			@Override
+			public void write(byte[] b, int off, int len) throws IOException {
+				out.write(b, off, len);
+				event.requestBytes += len;
+			}
+		});
+		context.proceed();
+	}
+
+	@Override
+	public void filter(ClientRequestContext requestContext, ClientResponseContext responseContext) {
+		HttpCallEvent event = (HttpCallEvent) requestContext.getProperty(EVENT_PROPERTY);
+		if (event == null) {
+			return;
+		}
+		event.end();
+		if (!event.shouldCommit()) {
+			return;
+		}
+		List<String> segments = Splitter.on('/').omitEmptyStrings().splitToList(requestContext.getUri().getPath());
+		int groupsIndex = segments.indexOf(GROUPS_SEGMENT);
+		StringBuilder operation = new StringBuilder(requestContext.getMethod()).append(' ');
+		for (int i = 0; i < segments.size(); i++) {
+			operation.append('/').append(i == groupsIndex + 1 && groupsIndex >= 0 ? "{id}" : segments.get(i));
+		}
+		String action = queryParameter(requestContext, "action");
+		if (action != null) {
+			operation.append("?action=").append(action);
+		}
+		event.operation = operation.toString();
+		if (groupsIndex >= 0 && groupsIndex + 1 < segments.size()) {
+			event.groupEmail = groupEmailById.apply(segments.get(groupsIndex + 1));
+		} else if (groupsIndex >= 0) {
+			event.groupEmail = queryParameter(requestContext, "email");
+		}
+		event.status = responseContext.getStatus();
+		event.responseBytes = responseContext.getLength();
+		event.commit();
+	}
+
+	private static String queryParameter(ClientRequestContext requestContext, String name) {
+		String query = requestContext.getUri().getRawQuery();
+		if (query == null) {
+			return null;
+		}
+		for (String parameter : Splitter.on('&').split(query)) {
+			List<String> nameAndValue = Splitter.on('=').limit(2).splitToList(parameter);
+			if (nameAndValue.get(0).equals(name) && nameAndValue.size() == 2) {
+				try {
+					return URLDecoder.decode(nameAndValue.get(1), "UTF-8");
+				} catch (UnsupportedEncodingException e) {
+					throw new IllegalStateException(e);
+				}
+			}
+		}
+		return null;
+	}
+}
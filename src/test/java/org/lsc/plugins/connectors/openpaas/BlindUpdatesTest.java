@@ -0,0 +1,152 @@
+/*
+ ****************************************************************************
+ * Ldap Synchronization Connector provides tools to synchronize
+ * electronic identities from a list of data sources including
+ * any database with a JDBC connector, another LDAP directory,
+ * flat files...
+ *
+ *                  ==LICENSE NOTICE==
+ * 
+ * Copyright (c) 2008 - 2019 LSC Project 
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+
+ *    * Redistributions of source code must retain the above copyright
+ * notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ * notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the LSC Project nor the names of its
+ * contributors may be used to endorse or promote products derived from
+ * this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS
+ * IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED
+ * TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A
+ * PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER
+ * OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ *                  ==LICENSE NOTICE==
+ *
+ *               (c) 2008 - 2019 LSC Project
+ *         Raphael Ouazana <rouazana@linagora.com>
+ ****************************************************************************
+ */
+package org.lsc.plugins.connectors.openpaas;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.lsc.LscDatasetModification;
+import org.lsc.LscDatasetModification.LscDatasetModificationType;
+import org.lsc.LscDatasets;
+import org.lsc.LscModificationType;
+import org.lsc.LscModifications;
+import org.lsc.beans.IBean;
+import org.lsc.plugins.connectors.openpaas.generated.OpenpaasGroupService;
+
+import com.google.common.collect.ImmutableList;
+
+public class BlindUpdatesTest {
+	private static final boolean FROM_SAME_SERVICE = true;
+	private static final String GROUP_EMAIL = "group@open-paas.org";
+
+	private OpenpaasStandInServer server;
+	private OpenpaasGroupDstService testee;
+
+	@BeforeEach
+	void setup() throws Exception {
+		server = new OpenpaasStandInServer().start();
+		server.createUser("member1@example.com", "alias1@example.com");
+		server.createUser("member2@example.com");
+		server.createUser("member3@example.com");
+		server.createGroup("test group", GROUP_EMAIL, ImmutableList.of("member1@example.com", "member2@example.com"));
+		OpenpaasGroupService service = OpenpaasTestTasks.groupService();
+		service.getPerformance().setBlindUpdates(true);
+		testee = new OpenpaasGroupDstService(OpenpaasTestTasks.task(server.getUrl(), service));
+	}
+
+	@AfterEach
+	void tearDown() throws Exception {
+		testee.close();
+		server.close();
+	}
+
+	@Test
+	public void addedAndDeletedMembersShouldBeWrittenWithoutReadingTheGroup() throws Exception {
+		LscModifications modifications = update(
+			new LscDatasetModification(LscDatasetModificationType.ADD_VALUES, "members", ImmutableList.of("member3@example.com")),
+			new LscDatasetModification(LscDatasetModificationType.DELETE_VALUES, "members", ImmutableList.of("member1@example.com")));
+		server.resetRequestCounts();
+
+		assertThat(testee.apply(modifications)).isTrue();
+
+		assertThat(server.getMembers(GROUP_EMAIL).get()).containsOnly("member2@example.com", "member3@example.com");
+		assertThat(server.getRequestCount("GET /")).isZero();
+		assertThat(server.getRequestCount("GET /{id}/members")).isZero();
+		assertThat(server.getRequestCount("POST /{id}")).isZero();
+	}
+
+	@Test
+	public void memberReaddedWithAnotherCaseShouldStay() throws Exception {
+		LscModifications modifications = update(
+			new LscDatasetModification(LscDatasetModificationType.ADD_VALUES, "members", ImmutableList.of("Member1@Example.com")),
+			new LscDatasetModification(LscDatasetModificationType.DELETE_VALUES, "members", ImmutableList.of("member1@example.com")));
+		server.resetRequestCounts();
+
+		assertThat(testee.apply(modifications)).isTrue();
+
+		assertThat(server.getMembers(GROUP_EMAIL).get()).containsOnly("member1@example.com", "member2@example.com");
+		assertThat(server.getRequestCount("POST /{id}/members")).isZero();
+	}
+
+	@Test
+	public void memberReaddedWithAnAliasShouldStay() throws Exception {
+		LscModifications modifications = update(
+			new LscDatasetModification(LscDatasetModificationType.ADD_VALUES, "members", ImmutableList.of("alias1@example.com")),
+			new LscDatasetModification(LscDatasetModificationType.DELETE_VALUES, "members", ImmutableList.of("member1@example.com")));
+		server.resetRequestCounts();
+
+		assertThat(testee.apply(modifications)).isTrue();
+
+		assertThat(server.getMembers(GROUP_EMAIL).get()).containsOnly("member1@example.com", "member2@example.com");
+		assertThat(server.getRequestCount("POST /{id}/members")).isZero();
+	}
+
+	@Test
+	public void replacedAttributesShouldBeComparedWithTheDestinationBean() throws Exception {
+		LscModifications modifications = update(
+			new LscDatasetModification(LscDatasetModificationType.REPLACE_VALUES, "name", ImmutableList.of("new name")),
+			new LscDatasetModification(LscDatasetModificationType.REPLACE_VALUES, "members", ImmutableList.of("member2@example.com", "member3@example.com")));
+		server.resetRequestCounts();
+
+		assertThat(testee.apply(modifications)).isTrue();
+
+		assertThat(server.getName(GROUP_EMAIL)).contains("new name");
+		assertThat(server.getMembers(GROUP_EMAIL).get()).containsOnly("member2@example.com", "member3@example.com");
+		assertThat(server.getRequestCount("GET /")).isZero();
+		assertThat(server.getRequestCount("GET /{id}/members")).isZero();
+		assertThat(server.getPostedMembershipCount("user")).isEqualTo(2);
+	}
+
+	private LscModifications update(LscDatasetModification... datasetModifications) throws Exception {
+		LscDatasets pivot = new LscDatasets();
+		pivot.put("email", GROUP_EMAIL);
+		IBean destination = testee.getBean("id", pivot, FROM_SAME_SERVICE);
+		LscModifications modifications = new LscModifications(LscModificationType.UPDATE_OBJECT);
+		modifications.setMainIdentifer(GROUP_EMAIL);
+		modifications.setDestinationBean(destination);
+		modifications.setLscAttributeModifications(ImmutableList.copyOf(datasetModifications));
+		return modifications;
+	}
+}
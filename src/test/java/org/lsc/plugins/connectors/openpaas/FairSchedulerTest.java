@@ -0,0 +1,200 @@
+/*
+ ****************************************************************************
+ * Ldap Synchronization Connector provides tools to synchronize
+ * electronic identities from a list of data sources including
+ * any database with a JDBC connector, another LDAP directory,
+ * flat files...
+ *
+ *                  ==LICENSE NOTICE==
+ * 
+ * Copyright (c) 2008 - 2019 LSC Project 
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+
+ *    * Redistributions of source code must retain the above copyright
+ * notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ * notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the LSC Project nor the names of its
+ * contributors may be used to endorse or promote products derived from
+ * this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS
+ * IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED
+ * TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A
+ * PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER
+ * OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ *                  ==LICENSE NOTICE==
+ *
+ *               (c) 2008 - 2019 LSC Project
+ *         Raphael Ouazana <rouazana@linagora.com>
+ ****************************************************************************
+ */
+package org.lsc.plugins.connectors.openpaas;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.lsc.plugins.connectors.openpaas.FairScheduler.Tenant;
+import org.lsc.plugins.connectors.openpaas.generated.OpenpaasGroupService;
+
+import com.google.common.collect.ImmutableList;
+
+public class FairSchedulerTest {
+
+	private ExecutorService executor;
+	private List<String> grants;
+
+	@BeforeEach
+	void setup() {
+		executor = Executors.newCachedThreadPool();
+		grants = new CopyOnWriteArrayList<>();
+	}
+
+	@AfterEach
+	void tearDown() {
+		executor.shutdownNow();
+	}
+
+	@Test
+	public void freedSlotShouldGoToTheTenantWithFewerRequestsInFlight() throws Exception {
+		FairScheduler scheduler = new FairScheduler(2);
+		Tenant slow = scheduler.tenant("slow", 1);
+		// Alone, the slow tenant may use the whole budget
+		scheduler.acquire(slow);
+		scheduler.acquire(slow);
+		for (int i = 0; i < 3; i++) {
+			queue(scheduler, slow);
+		}
+		awaitQueueDepth(scheduler, "slow", 3);
+		Tenant fast = scheduler.tenant("fast", 1);
+		queue(scheduler, fast);
+		awaitQueueDepth(scheduler, "fast", 1);
+
+		scheduler.release(slow, 0);
+		awaitGrants(1);
+
+		assertThat(grants).containsExactly("fast");
+		assertThat(scheduler.getMetrics().get("slow").getQueueDepth()).isEqualTo(3);
+	}
+
+	@Test
+	public void slotsShouldBeSharedByWeight() throws Exception {
+		FairScheduler scheduler = new FairScheduler(4);
+		Tenant blocker = scheduler.tenant("blocker", 1);
+		for (int i = 0; i < 4; i++) {
+			scheduler.acquire(blocker);
+		}
+		Tenant heavy = scheduler.tenant("heavy", 3);
+		Tenant light = scheduler.tenant("light", 1);
+		for (int i = 0; i < 10; i++) {
+			queue(scheduler, heavy);
+			queue(scheduler, light);
+		}
+		awaitQueueDepth(scheduler, "heavy", 10);
+		awaitQueueDepth(scheduler, "light", 10);
+
+		for (int i = 0; i < 4; i++) {
+			scheduler.release(blocker, 0);
+		}
+		awaitGrants(4);
+
+		assertThat(scheduler.getMetrics().get("heavy").getInFlight()).isEqualTo(3);
+		assertThat(scheduler.getMetrics().get("light").getInFlight()).isEqualTo(1);
+		assertThat(scheduler.getMetrics().get("heavy").getMaxQueueDepth()).isEqualTo(10);
+	}
+
+	@Test
+	public void hungTenantShouldNotHoldMoreThanItsShare() throws Exception {
+		FairScheduler scheduler = new FairScheduler(4);
+		Tenant hung = scheduler.tenant("hung", 1);
+		Tenant other = scheduler.tenant("other", 1);
+		for (int i = 0; i < 4; i++) {
+			queue(scheduler, hung);
+		}
+		awaitGrants(2);
+
+		assertThat(grants).containsExactly("hung", "hung");
+		assertThat(scheduler.getMetrics().get("hung").getQueueDepth()).isEqualTo(2);
+		scheduler.acquire(other);
+		scheduler.acquire(other);
+		assertThat(scheduler.getMetrics().get("other").getInFlight()).isEqualTo(2);
+	}
+
+	@Test
+	public void leftTenantShouldGiveBackItsShare() throws Exception {
+		FairScheduler scheduler = new FairScheduler(2);
+		Tenant first = scheduler.tenant("first", 1);
+		Tenant second = scheduler.tenant("second", 1);
+		scheduler.acquire(first);
+		queue(scheduler, first);
+		awaitQueueDepth(scheduler, "first", 1);
+
+		scheduler.leave(second);
+		awaitGrants(1);
+
+		assertThat(grants).containsExactly("first");
+		assertThat(scheduler.getMetrics()).containsOnlyKeys("first");
+	}
+
+	@Test
+	public void daoRequestsShouldBeMeasuredPerTenant() throws Exception {
+		try (OpenpaasStandInServer server = new OpenpaasStandInServer().start()) {
+			server.createGroup("test group", "group@open-paas.org", ImmutableList.of());
+			OpenpaasGroupService service = OpenpaasTestTasks.groupService();
+			service.getPerformance().setSchedulerWeight(2);
+			OpenpaasDao dao = new OpenpaasDao(server.getUrl(), OpenpaasTestTasks.USERNAME, OpenpaasTestTasks.PASSWORD, OpenpaasTestTasks.task(server.getUrl(), service), service);
+
+			dao.getGroupList();
+			dao.getGroup("group@open-paas.org");
+
+			FairScheduler.TenantMetrics metrics = dao.getSchedulerMetrics().get();
+			assertThat(metrics.getRequests()).isEqualTo(3);
+			assertThat(metrics.getWeight()).isEqualTo(2);
+			assertThat(metrics.getInFlight()).isZero();
+			dao.close();
+		}
+	}
+
+	private void queue(FairScheduler scheduler, Tenant tenant) {
+		executor.submit(() -> {
+			scheduler.acquire(tenant);
+			grants.add(tenant.getName());
+		});
+	}
+
+	private static void awaitQueueDepth(FairScheduler scheduler, String tenant, int depth) throws InterruptedException {
+		long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+		while (scheduler.getMetrics().get(tenant).getQueueDepth() < depth && System.nanoTime() < deadline) {
+			Thread.sleep(5);
+		}
+		assertThat(scheduler.getMetrics().get(tenant).getQueueDepth()).isEqualTo(depth);
+	}
+
+	private void awaitGrants(int count) throws InterruptedException {
+		long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+		while (grants.size() < count && System.nanoTime() < deadline) {
+			Thread.sleep(5);
+		}
+		// Leave time for an unfair extra grant to show up
+		Thread.sleep(50);
+	}
+}
@@ -0,0 +1,191 @@
+/*
+ ****************************************************************************
+ * Ldap Synchronization Connector provides tools to synchronize
+ * electronic identities from a list of data sources including
+ * any database with a JDBC connector, another LDAP directory,
+ * flat files...
+ *
+ *                  ==LICENSE NOTICE==
+ * 
+ * Copyright (c) 2008 - 2019 LSC Project 
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+
+ *    * Redistributions of source code must retain the above copyright
+ * notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ * notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the LSC Project nor the names of its
+ * contributors may be used to endorse or promote products derived from
+ * this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS
+ * IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED
+ * TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A
+ * PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER
+ * OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ *                  ==LICENSE NOTICE==
+ *
+ *               (c) 2008 - 2019 LSC Project
+ *         Raphael Ouazana <rouazana@linagora.com>
+ ****************************************************************************
+ */
+package org.lsc.plugins.connectors.openpaas;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.lsc.LscDatasetModification;
+import org.lsc.LscDatasetModification.LscDatasetModificationType;
+import org.lsc.LscDatasets;
+import org.lsc.LscModificationType;
+import org.lsc.LscModifications;
+import org.lsc.beans.IBean;
+import org.lsc.beans.SimpleBean;
+import org.lsc.exception.LscServiceException;
+import org.lsc.plugins.connectors.openpaas.generated.OpenpaasGroupService;
+
+import com.google.common.collect.ImmutableList;
+
+public class GiantGroupLaneTest {
+	private static final boolean FROM_SAME_SERVICE = true;
+	private static final String GIANT_GROUP_EMAIL = "giant@open-paas.org";
+	private static final String SMALL_GROUP_EMAIL = "small@open-paas.org";
+
+	private OpenpaasStandInServer server;
+	private OpenpaasGroupDstService testee;
+
+	@BeforeEach
+	void setup() throws Exception {
+		server = new OpenpaasStandInServer().start();
+		OpenpaasGroupService service = OpenpaasTestTasks.groupService();
+		service.getPerformance().setGiantGroupThreshold(100);
+		testee = new OpenpaasGroupDstService(OpenpaasTestTasks.task(server.getUrl(), service));
+	}
+
+	@AfterEach
+	void tearDown() throws Exception {
+		testee.close();
+		server.close();
+	}
+
+	@Test
+	public void memberCountShouldConsiderCurrentAndNewMembers() {
+		LscModifications modifications = creation(GIANT_GROUP_EMAIL, members(10));
+		SimpleBean destination = new SimpleBean();
+		LscDatasets datasets = new LscDatasets();
+		datasets.put("members", members(150));
+		destination.setDatasets(datasets);
+		modifications.setDestinationBean(destination);
+
+		assertThat(GiantGroupLane.memberCount(modifications)).isEqualTo(150);
+	}
+
+	@Test
+	public void giantGroupWritesShouldBeQueuedAndAwaitedBeforeListingPivots() throws Exception {
+		server.setLatency(200, TimeUnit.MILLISECONDS);
+
+		assertThat(testee.apply(creation(GIANT_GROUP_EMAIL, members(150)))).isTrue();
+		assertThat(server.getGroupCount()).isZero();
+
+		assertThat(testee.getListPivots()).containsOnlyKeys(GIANT_GROUP_EMAIL);
+		assertThat(server.getMembers(GIANT_GROUP_EMAIL).get()).hasSize(150);
+	}
+
+	@Test
+	public void giantGroupLookupsShouldFollowTheQueuedWrites() throws Exception {
+		server.setLatency(100, TimeUnit.MILLISECONDS);
+		testee.apply(creation(GIANT_GROUP_EMAIL, members(150)));
+		LscDatasets pivot = new LscDatasets();
+		pivot.put("email", GIANT_GROUP_EMAIL);
+
+		IBean bean = testee.getBean("id", pivot, FROM_SAME_SERVICE);
+
+		assertThat(bean.getDatasetById("members")).hasSize(150);
+	}
+
+	@Test
+	public void failedGiantGroupWritesShouldFailTheNextPivotListing() throws Exception {
+		testee.apply(update("missing@open-paas.org", members(150)));
+
+		assertThatThrownBy(() -> testee.getListPivots())
+			.isInstanceOf(LscServiceException.class)
+			.hasMessageContaining("missing@open-paas.org");
+	}
+
+	@Test
+	public void laneShouldRunAtMostItsConcurrency() throws Exception {
+		try (GiantGroupLane lane = new GiantGroupLane(100, 1)) {
+			CountDownLatch release = new CountDownLatch(1);
+			lane.submit(GIANT_GROUP_EMAIL, () -> release.await(1, TimeUnit.SECONDS));
+
+			CompletableFuture<Boolean> other = lane.submit("other-" + GIANT_GROUP_EMAIL, () -> true);
+
+			assertThatThrownBy(() -> other.get(200, TimeUnit.MILLISECONDS)).isInstanceOf(TimeoutException.class);
+			release.countDown();
+			assertThat(other.get(1, TimeUnit.SECONDS)).isTrue();
+		}
+	}
+
+	@Test
+	public void requestsToASameGiantGroupShouldRunInOrder() throws Exception {
+		try (GiantGroupLane lane = new GiantGroupLane(100, 2)) {
+			CountDownLatch release = new CountDownLatch(1);
+			lane.submit(GIANT_GROUP_EMAIL, () -> {
+				throw new IllegalStateException(String.valueOf(release.await(1, TimeUnit.SECONDS)));
+			});
+
+			CompletableFuture<Boolean> next = lane.submit(GIANT_GROUP_EMAIL.toUpperCase(Locale.ROOT), () -> true);
+
+			assertThatThrownBy(() -> next.get(200, TimeUnit.MILLISECONDS)).isInstanceOf(TimeoutException.class);
+			release.countDown();
+			assertThat(next.get(1, TimeUnit.SECONDS)).isTrue();
+		}
+	}
+
+	private static List<String> members(int count) {
+		return IntStream.range(0, count)
+			.mapToObj(i -> "member" + i + "@example.com")
+			.collect(Collectors.toList());
+	}
+
+	private static LscModifications update(String email, List<String> members) {
+		LscModifications modifications = new LscModifications(LscModificationType.UPDATE_OBJECT);
+		modifications.setMainIdentifer(email);
+		modifications.setLscAttributeModifications(ImmutableList.of(
+			new LscDatasetModification(LscDatasetModificationType.REPLACE_VALUES, "members", ImmutableList.copyOf(members))));
+		return modifications;
+	}
+
+	private static LscModifications creation(String email, List<String> members) {
+		LscModifications modifications = new LscModifications(LscModificationType.CREATE_OBJECT);
+		modifications.setMainIdentifer(email);
+		modifications.setLscAttributeModifications(ImmutableList.of(
+			new LscDatasetModification(LscDatasetModificationType.REPLACE_VALUES, "name", ImmutableList.of(email)),
+			new LscDatasetModification(LscDatasetModificationType.REPLACE_VALUES, "email", ImmutableList.of(email)),
+			new LscDatasetModification(LscDatasetModificationType.REPLACE_VALUES, "members", ImmutableList.copyOf(members))));
+		return modifications;
+	}
+}
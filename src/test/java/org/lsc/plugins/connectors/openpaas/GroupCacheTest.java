@@ -0,0 +1,144 @@
+/*
+ ****************************************************************************
+ * Ldap Synchronization Connector provides tools to synchronize
+ * electronic identities from a list of data sources including
+ * any database with a JDBC connector, another LDAP directory,
+ * flat files...
+ *
+ *                  ==LICENSE NOTICE==
+ * 
+ * Copyright (c) 2008 - 2019 LSC Project 
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+
+ *    * Redistributions of source code must retain the above copyright
+ * notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ * notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the LSC Project nor the names of its
+ * contributors may be used to endorse or promote products derived from
+ * this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS
+ * IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED
+ * TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A
+ * PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER
+ * OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ *                  ==LICENSE NOTICE==
+ *
+ *               (c) 2008 - 2019 LSC Project
+ *         Raphael Ouazana <rouazana@linagora.com>
+ ****************************************************************************
+ */
+package org.lsc.plugins.connectors.openpaas;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.lsc.LscDatasetModification;
+import org.lsc.LscDatasetModification.LscDatasetModificationType;
+import org.lsc.LscDatasets;
+import org.lsc.LscModificationType;
+import org.lsc.LscModifications;
+import org.lsc.plugins.connectors.openpaas.beans.GroupWithMembersEmails.Membership;
+import org.lsc.plugins.connectors.openpaas.generated.OpenpaasGroupService;
+
+import com.google.common.cache.CacheStats;
+import com.google.common.collect.ImmutableList;
+
+public class GroupCacheTest {
+	private static final boolean FROM_SAME_SERVICE = true;
+	private static final String GROUP_EMAIL = "group@open-paas.org";
+	private static final String OTHER_GROUP_EMAIL = "other-group@open-paas.org";
+
+	private OpenpaasStandInServer server;
+	private OpenpaasGroupService service;
+	private String groupId;
+
+	@BeforeEach
+	void setup() throws Exception {
+		server = new OpenpaasStandInServer().start();
+		groupId = server.createGroup("test group", GROUP_EMAIL, ImmutableList.of("member1@example.com", "member2@example.com"));
+		server.createGroup("other group", OTHER_GROUP_EMAIL, ImmutableList.of("member1@example.com", "member2@example.com", "member3@example.com"));
+		service = OpenpaasTestTasks.groupService();
+		service.getPerformance().setGroupCacheMaxMembers(10);
+	}
+
+	@AfterEach
+	void tearDown() throws Exception {
+		server.close();
+	}
+
+	@Test
+	public void updateAfterGetBeanShouldNotFetchTheGroupAgain() throws Exception {
+		OpenpaasGroupDstService testee = new OpenpaasGroupDstService(OpenpaasTestTasks.task(server.getUrl(), service));
+		LscDatasets pivot = new LscDatasets();
+		pivot.put("email", GROUP_EMAIL);
+
+		assertThat(testee.getBean("id", pivot, FROM_SAME_SERVICE)).isNotNull();
+		LscModifications modifications = new LscModifications(LscModificationType.UPDATE_OBJECT);
+		modifications.setMainIdentifer(GROUP_EMAIL);
+		modifications.setLscAttributeModifications(ImmutableList.of(
+			new LscDatasetModification(LscDatasetModificationType.REPLACE_VALUES, "name", ImmutableList.of("new name"))));
+		assertThat(testee.apply(modifications)).isTrue();
+		testee.close();
+
+		assertThat(server.getName(GROUP_EMAIL)).contains("new name");
+		assertThat(server.getRequestCount("GET /")).isEqualTo(1);
+		assertThat(server.getRequestCount("GET /{id}/members")).isEqualTo(1);
+	}
+
+	@Test
+	public void writesShouldInvalidateTheCachedGroup() {
+		OpenpaasDao testee = dao();
+		testee.getGroup(GROUP_EMAIL);
+
+		testee.addMembers(groupId, ImmutableList.of(Membership.fromEmail("member3@example.com")));
+
+		assertThat(testee.getGroup(GROUP_EMAIL).getMembers()).hasSize(3);
+		assertThat(testee.getGroupCacheStats().get().hitCount()).isZero();
+	}
+
+	@Test
+	public void writesShouldOnlyInvalidateTheWrittenGroup() {
+		OpenpaasDao testee = dao();
+		testee.getGroup(GROUP_EMAIL);
+		testee.getGroup(OTHER_GROUP_EMAIL);
+
+		testee.addMembers(groupId, ImmutableList.of(Membership.fromEmail("member3@example.com")));
+		testee.getGroup(OTHER_GROUP_EMAIL);
+
+		assertThat(testee.getGroupCacheStats().get().hitCount()).isEqualTo(1);
+	}
+
+	@Test
+	public void cacheShouldBeBoundedByMemberCount() {
+		service.getPerformance().setGroupCacheMaxMembers(5);
+		OpenpaasDao testee = dao();
+		testee.getGroup(GROUP_EMAIL);
+		testee.getGroup(OTHER_GROUP_EMAIL);
+		testee.getGroup(OTHER_GROUP_EMAIL);
+		testee.getGroup(GROUP_EMAIL);
+
+		CacheStats stats = testee.getGroupCacheStats().get();
+		assertThat(stats.evictionCount()).isEqualTo(2);
+		assertThat(stats.hitCount()).isEqualTo(1);
+		assertThat(stats.missCount()).isEqualTo(3);
+	}
+
+	private OpenpaasDao dao() {
+		return new OpenpaasDao(server.getUrl(), OpenpaasTestTasks.USERNAME, OpenpaasTestTasks.PASSWORD, OpenpaasTestTasks.task(server.getUrl(), service), service);
+	}
+}
@@ -0,0 +1,251 @@
+/*
+ ****************************************************************************
+ * Ldap Synchronization Connector provides tools to synchronize
+ * electronic identities from a list of data sources including
+ * any database with a JDBC connector, another LDAP directory,
+ * flat files...
+ *
+ *                  ==LICENSE NOTICE==
+ * 
+ * Copyright (c) 2008 - 2019 LSC Project 
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+
+ *    * Redistributions of source code must retain the above copyright
+ * notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ * notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the LSC Project nor the names of its
+ * contributors may be used to endorse or promote products derived from
+ * this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS
+ * IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED
+ * TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A
+ * PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER
+ * OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ *                  ==LICENSE NOTICE==
+ *
+ *               (c) 2008 - 2019 LSC Project
+ *         Raphael Ouazana <rouazana@linagora.com>
+ ****************************************************************************
+ */
+package org.lsc.plugins.connectors.openpaas;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import java.net.URI;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.ws.rs.core.Response.Status;
+
+import org.glassfish.jersey.client.ClientRequest;
+import org.glassfish.jersey.client.ClientResponse;
+import org.glassfish.jersey.client.JerseyClient;
+import org.glassfish.jersey.client.JerseyClientBuilder;
+import org.glassfish.jersey.client.spi.AsyncConnectorCallback;
+import org.glassfish.jersey.client.spi.Connector;
+import org.glassfish.jersey.internal.MapPropertiesDelegate;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.lsc.exception.LscServiceConfigurationException;
+import org.lsc.plugins.connectors.openpaas.FairScheduler.TenantMetrics;
+import org.lsc.plugins.connectors.openpaas.OpenpaasStandInServer.FaultProfile;
+import org.lsc.plugins.connectors.openpaas.generated.OpenpaasGroupService;
+
+import com.google.common.base.Stopwatch;
+import com.google.common.collect.ImmutableList;
+
+public class HedgingTest {
+	private static final String GROUP_EMAIL = "group@open-paas.org";
+	private static final long FAST_MILLIS = 5;
+	private static final long SLOW_MILLIS = 3000;
+
+	private OpenpaasStandInServer server;
+	private OpenpaasDao testee;
+	private final AtomicInteger slowRequests = new AtomicInteger();
+
+	@BeforeEach
+	void setup() throws Exception {
+		server = new OpenpaasStandInServer().start();
+		server.createGroup("test group", GROUP_EMAIL, ImmutableList.of("user@open-paas.org"));
+		// A pause of the server on the next requests only, as a Mongo pause would do
+		server.setFaults(FaultProfile.builder()
+			.latency(random -> slowRequests.getAndUpdate(count -> Math.max(0, count - 1)) > 0 ? SLOW_MILLIS : FAST_MILLIS)
+			.build());
+	}
+
+	@AfterEach
+	void tearDown() throws Exception {
+		if (testee != null) {
+			testee.close();
+		}
+		server.close();
+	}
+
+	private OpenpaasDao dao(int percentile, int budgetPercent) {
+		OpenpaasGroupService service = OpenpaasTestTasks.groupService();
+		service.getPerformance().setHedgePercentile(percentile);
+		service.getPerformance().setHedgeBudgetPercent(budgetPercent);
+		return new OpenpaasDao(server.getUrl(), OpenpaasTestTasks.USERNAME, OpenpaasTestTasks.PASSWORD, null, service);
+	}
+
+	private void warmUp() {
+		// Each group lookup is a GET of the group and one of its members
+		for (int i = 0; i < HedgingConnector.MIN_SAMPLES; i++) {
+			testee.getGroup(GROUP_EMAIL);
+		}
+	}
+
+	@Test
+	public void aStalledLookupShouldBeAnsweredByItsCopy() {
+		testee = dao(90, 100);
+		warmUp();
+		HedgingConnector hedging = testee.getHedging().get();
+		assertThat(hedging.getHedgeDelayMillis()).isBetween(0L, SLOW_MILLIS);
+
+		slowRequests.set(1);
+		Stopwatch stopwatch = Stopwatch.createStarted();
+		assertThat(testee.getGroup(GROUP_EMAIL).getMembers()).containsExactly("user@open-paas.org");
+
+		assertThat(stopwatch.elapsed(TimeUnit.MILLISECONDS)).isLessThan(SLOW_MILLIS);
+		// A fast lookup slightly above the percentile may have been hedged too
+		assertThat(hedging.getHedgeWinCount()).isPositive();
+	}
+
+	@Test
+	public void firstCopiesShouldBeSentByTheCallingThread() {
+		AtomicInteger sentByCaller = new AtomicInteger();
+		Thread caller = Thread.currentThread();
+		AtomicInteger sent = new AtomicInteger();
+		HedgingConnector hedging = new HedgingConnector(new StubConnector() {
+			@Override
+			public ClientResponse apply(ClientRequest request) {
+				if (Thread.currentThread() == caller) {
+					sentByCaller.incrementAndGet();
+				}
+				// Every tenth lookup is slow
+				sleep(sent.incrementAndGet() % 10 == 0 ? 50 : 1);
+				return new ClientResponse(Status.OK, request);
+			}
+		}, 50, 100);
+		JerseyClient client = new JerseyClientBuilder().build();
+		try {
+			for (int i = 0; i < 4 * HedgingConnector.MIN_SAMPLES; i++) {
+				hedging.apply(lookup(client)).close();
+			}
+		} finally {
+			hedging.close();
+			client.close();
+		}
+
+		assertThat(hedging.getHedgeCount()).isPositive();
+		assertThat(sentByCaller.get()).isEqualTo(hedging.getLookupCount());
+	}
+
+	@Test
+	public void bothCopiesShouldTakeASchedulerSlot() {
+		OpenpaasGroupService service = OpenpaasTestTasks.groupService();
+		service.getPerformance().setHedgePercentile(90);
+		service.getPerformance().setHedgeBudgetPercent(100);
+		service.getPerformance().setSchedulerWeight(1);
+		testee = new OpenpaasDao(server.getUrl(), OpenpaasTestTasks.USERNAME, OpenpaasTestTasks.PASSWORD, null, service);
+		warmUp();
+
+		slowRequests.set(1);
+		testee.getGroup(GROUP_EMAIL);
+
+		HedgingConnector hedging = testee.getHedging().get();
+		assertThat(hedging.getHedgeWinCount()).isPositive();
+		TenantMetrics metrics = testee.getSchedulerMetrics().get();
+		// The first copies and the winning second ones are done, the losing second ones may not be
+		assertThat(metrics.getRequests()).isGreaterThanOrEqualTo(hedging.getLookupCount() + hedging.getHedgeWinCount());
+	}
+
+	@Test
+	public void lookupsShouldNotBeHedgedBeforeTheirLatencyIsKnown() {
+		testee = dao(90, 100);
+
+		testee.getGroup(GROUP_EMAIL);
+
+		assertThat(testee.getHedging().get().getHedgeDelayMillis()).isEqualTo(-1);
+		assertThat(testee.getHedging().get().getHedgeCount()).isZero();
+		assertThat(server.getRequestCount()).isEqualTo(2);
+	}
+
+	@Test
+	public void hedgesShouldStayWithinTheBudget() {
+		testee = dao(50, 5);
+		warmUp();
+		server.resetRequestCounts();
+		// Every lookup is now slower than the median
+		server.setFaults(FaultProfile.builder().latency(OpenpaasStandInServer.Latency.fixed(50)).build());
+
+		for (int i = 0; i < 40; i++) {
+			testee.getGroup(GROUP_EMAIL);
+		}
+		testee.getGroupList();
+
+		HedgingConnector hedging = testee.getHedging().get();
+		assertThat(hedging.getHedgeCount()).isPositive();
+		assertThat(hedging.getHedgeCount()).isLessThanOrEqualTo(hedging.getLookupCount() * 5 / 100);
+		assertThat(hedging.getLookupCount()).isEqualTo(2 * HedgingConnector.MIN_SAMPLES + 80);
+		// Listings are not hedged, a copy may not have reached the server yet when the first response came
+		assertThat(server.getRequestCount()).isBetween(80 + 1, 80 + 1 + (int) hedging.getHedgeCount());
+	}
+
+	private static ClientRequest lookup(JerseyClient client) {
+		ClientRequest request = new ClientRequest(URI.create("http://localhost/api/groups/1"), client.getConfiguration(), new MapPropertiesDelegate()) {
+		};
+		request.setMethod("GET");
+		return request;
+	}
+
+	private static void sleep(long millis) {
+		try {
+			Thread.sleep(millis);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	private abstract static class StubConnector implements Connector {
+		@Override
+		public Future<?> apply(ClientRequest request, AsyncConnectorCallback callback) {
+			throw new UnsupportedOperationException();
+		}
+
+		@Override
+		public String getName() {
+			return "stub";
+		}
+
+		@Override
+		public void close() {
+		}
+	}
+
+	@Test
+	public void percentileShouldBeBelowAHundred() {
+		OpenpaasGroupService service = OpenpaasTestTasks.groupService();
+		service.getPerformance().setHedgePercentile(100);
+
+		assertThatThrownBy(() -> PerformanceSettings.of(service))
+			.isInstanceOf(LscServiceConfigurationException.class)
+			.hasMessageContaining("hedgePercentile");
+	}
+}
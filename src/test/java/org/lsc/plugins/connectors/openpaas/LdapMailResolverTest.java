@@ -0,0 +1,267 @@
+/*
+ ****************************************************************************
+ * Ldap Synchronization Connector provides tools to synchronize
+ * electronic identities from a list of data sources including
+ * any database with a JDBC connector, another LDAP directory,
+ * flat files...
+ *
+ *                  ==LICENSE NOTICE==
+ * 
+ * Copyright (c) 2008 - 2019 LSC Project 
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+
+ *    * Redistributions of source code must retain the above copyright
+ * notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ * notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the LSC Project nor the names of its
+ * contributors may be used to endorse or promote products derived from
+ * this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS
+ * IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED
+ * TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A
+ * PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER
+ * OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ *                  ==LICENSE NOTICE==
+ *
+ *               (c) 2008 - 2019 LSC Project
+ *         Raphael Ouazana <rouazana@linagora.com>
+ ****************************************************************************
+ */
+package org.lsc.plugins.connectors.openpaas;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.contains;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.util.ArrayList;
+import java.util.Hashtable;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import javax.naming.Context;
+import javax.naming.Name;
+import javax.naming.NameNotFoundException;
+import javax.naming.NamingEnumeration;
+import javax.naming.directory.Attributes;
+import javax.naming.directory.BasicAttributes;
+import javax.naming.directory.DirContext;
+import javax.naming.directory.InvalidSearchFilterException;
+import javax.naming.directory.SearchControls;
+import javax.naming.directory.SearchResult;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.lsc.configuration.LdapAuthenticationType;
+import org.lsc.configuration.LdapConnectionType;
+import org.lsc.configuration.LdapDerefAliasesType;
+import org.lsc.configuration.LdapReferralType;
+
+import com.google.common.base.Ticker;
+import com.google.common.collect.ImmutableList;
+
+public class LdapMailResolverTest {
+	private static final String PEOPLE = "ou=users,dc=open-paas.org,dc=local";
+	private static final Pattern EQUALITY = Pattern.compile("\\((\\w+)=\\{(\\d+)\\}\\)");
+
+	private final Map<String, String> mailsByDn = new HashMap<>();
+	private final AtomicInteger searches = new AtomicInteger();
+	private final AtomicInteger reads = new AtomicInteger();
+	private long nanos;
+	private DirContext context;
+	private LdapMailResolver testee;
+
+	@BeforeEach
+	void setup() throws Exception {
+		for (int i = 0; i < 250; i++) {
+			mailsByDn.put("uid=user" + i + "," + PEOPLE, "user" + i + "@open-paas.org");
+		}
+		mailsByDn.put("uid=nomail," + PEOPLE, null);
+		context = mock(DirContext.class);
+		when(context.search(any(Name.class), any(String.class), any(Object[].class), any(SearchControls.class)))
+			.thenAnswer(invocation -> search(invocation.getArgument(0).toString(), invocation.getArgument(1), invocation.getArgument(2)));
+		when(context.getAttributes(any(Name.class), any(String[].class)))
+			.thenAnswer(invocation -> read(invocation.getArgument(0).toString()));
+		Ticker ticker = new Ticker() {
+			@Override
+			public long read() {
+				return nanos;
+			}
+		};
+		testee = new LdapMailResolver(() -> context, 100, 1000, ticker);
+	}
+
+	private Attributes read(String dn) throws NameNotFoundException {
+		reads.incrementAndGet();
+		String key = dn.toLowerCase();
+		if (!mailsByDn.containsKey(key)) {
+			throw new NameNotFoundException(dn);
+		}
+		BasicAttributes attributes = new BasicAttributes(true);
+		if (mailsByDn.get(key) != null) {
+			attributes.put("mail", mailsByDn.get(key));
+		}
+		return attributes;
+	}
+
+	/**
+	 * Evaluates the (|(&(uid={0}))(&(uid={1}))...) filters sent by the resolver.
+	 */
+	private NamingEnumeration<SearchResult> search(String base, String filter, Object[] arguments) {
+		searches.incrementAndGet();
+		List<SearchResult> results = new ArrayList<>();
+		Matcher matcher = EQUALITY.matcher(filter);
+		while (matcher.find()) {
+			// LDAP matches DNs regardless of case
+			String dn = (matcher.group(1) + "=" + arguments[Integer.parseInt(matcher.group(2))] + "," + base).toLowerCase();
+			if (mailsByDn.containsKey(dn)) {
+				BasicAttributes attributes = new BasicAttributes(true);
+				if (mailsByDn.get(dn) != null) {
+					attributes.put("mail", mailsByDn.get(dn));
+				}
+				SearchResult result = new SearchResult(dn, null, attributes, false);
+				result.setNameInNamespace(dn);
+				results.add(result);
+			}
+		}
+		return enumeration(results.iterator());
+	}
+
+	@Test
+	public void resolveShouldSearchMembersByBatchesOfSameParent() throws Exception {
+		List<String> dns = new ArrayList<>();
+		for (int i = 0; i < 250; i++) {
+			dns.add("uid=user" + i + "," + PEOPLE);
+		}
+
+		List<String> mails = testee.resolve(dns);
+
+		assertThat(mails).hasSize(250).startsWith("user0@open-paas.org", "user1@open-paas.org");
+		assertThat(searches.get()).isEqualTo(3);
+	}
+
+	@Test
+	public void resolveShouldSkipMissingEntriesAndEntriesWithoutMail() throws Exception {
+		List<String> mails = testee.resolve(ImmutableList.of(
+			"uid=user1," + PEOPLE,
+			"uid=nomail," + PEOPLE,
+			"uid=unknown," + PEOPLE,
+			"not a dn",
+			"UID=User2," + PEOPLE.toUpperCase()));
+
+		assertThat(mails).containsExactly("user1@open-paas.org", "user2@open-paas.org");
+	}
+
+	@Test
+	public void resolveShouldNotSearchAgainResolvedEntries() throws Exception {
+		testee.resolve(ImmutableList.of("uid=user1," + PEOPLE, "uid=nomail," + PEOPLE, "uid=unknown," + PEOPLE));
+		searches.set(0);
+
+		List<String> mails = testee.resolve(ImmutableList.of("uid=nomail," + PEOPLE, "uid=user1," + PEOPLE, "uid=unknown," + PEOPLE));
+
+		assertThat(mails).containsExactly("user1@open-paas.org");
+		assertThat(searches.get()).isZero();
+	}
+
+	@Test
+	public void resolveShouldSearchAgainEntriesWithoutMailAfterAShortTime() throws Exception {
+		testee.resolve(ImmutableList.of("uid=user1," + PEOPLE, "uid=nomail," + PEOPLE));
+		mailsByDn.put("uid=nomail," + PEOPLE, "nomail@open-paas.org");
+		searches.set(0);
+
+		nanos += TimeUnit.SECONDS.toNanos(LdapMailResolver.MISSING_TTL_SECONDS + 1);
+		List<String> mails = testee.resolve(ImmutableList.of("uid=user1," + PEOPLE, "uid=nomail," + PEOPLE));
+
+		assertThat(mails).containsExactly("user1@open-paas.org", "nomail@open-paas.org");
+		assertThat(searches.get()).isEqualTo(1);
+	}
+
+	@Test
+	public void resolvedMailsShouldExpire() throws Exception {
+		testee.resolve(ImmutableList.of("uid=user1," + PEOPLE));
+		mailsByDn.put("uid=user1," + PEOPLE, "renamed@open-paas.org");
+
+		nanos += TimeUnit.SECONDS.toNanos(LdapMailResolver.CACHE_TTL_SECONDS + 1);
+
+		assertThat(testee.resolve(ImmutableList.of("uid=user1," + PEOPLE))).containsExactly("renamed@open-paas.org");
+	}
+
+	@Test
+	public void aFailedBatchShouldBeReadMemberByMember() throws Exception {
+		when(context.search(any(Name.class), contains("(|"), any(Object[].class), any(SearchControls.class)))
+			.thenThrow(new InvalidSearchFilterException("filter too long"));
+
+		List<String> mails = testee.resolve(ImmutableList.of("uid=user1," + PEOPLE, "uid=unknown," + PEOPLE, "uid=user2," + PEOPLE));
+
+		assertThat(mails).containsExactly("user1@open-paas.org", "user2@open-paas.org");
+		assertThat(reads.get()).isEqualTo(3);
+	}
+
+	@Test
+	public void environmentShouldFollowTheConnectionSettings() {
+		LdapConnectionType connection = new LdapConnectionType();
+		connection.setUrl("ldap://ldap1.example.com:389/dc=example,dc=com ldap://ldap2.example.com:389/dc=example,dc=com");
+		connection.setUsername("cn=admin,dc=example,dc=com");
+		connection.setPassword("secret");
+		connection.setAuthentication(LdapAuthenticationType.DIGEST_MD_5);
+		connection.setReferral(LdapReferralType.THROUGH);
+		connection.setDerefAliases(LdapDerefAliasesType.ALWAYS);
+
+		Hashtable<String, String> environment = LdapMailResolver.environment(connection);
+
+		assertThat(environment.get(Context.PROVIDER_URL)).isEqualTo("ldap://ldap1.example.com:389/ ldap://ldap2.example.com:389/");
+		assertThat(environment.get(Context.SECURITY_AUTHENTICATION)).isEqualTo("DIGEST-MD5");
+		assertThat(environment.get(Context.SECURITY_PRINCIPAL)).isEqualTo("cn=admin,dc=example,dc=com");
+		assertThat(environment.get(Context.REFERRAL)).isEqualTo("follow");
+		assertThat(environment.get("java.naming.ldap.derefAliases")).isEqualTo("always");
+		assertThat(environment.get("java.naming.ldap.version")).isEqualTo("3");
+	}
+
+	private static <T> NamingEnumeration<T> enumeration(Iterator<T> iterator) {
+		return new NamingEnumeration<T>() {
+			@Override
+			public boolean hasMoreElements() {
+				return iterator.hasNext();
+			}
+
+			@Override
+			public T nextElement() {
+				return iterator.next();
+			}
+
+			@Override
+			public boolean hasMore() {
+				return iterator.hasNext();
+			}
+
+			@Override
+			public T next() {
+				return iterator.next();
+			}
+
+			@Override
+			public void close() {
+			}
+		};
+	}
+}
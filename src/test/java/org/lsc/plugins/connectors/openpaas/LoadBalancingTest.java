@@ -0,0 +1,141 @@
+/*
+ ****************************************************************************
+ * Ldap Synchronization Connector provides tools to synchronize
+ * electronic identities from a list of data sources including
+ * any database with a JDBC connector, another LDAP directory,
+ * flat files...
+ *
+ *                  ==LICENSE NOTICE==
+ * 
+ * Copyright (c) 2008 - 2019 LSC Project 
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+
+ *    * Redistributions of source code must retain the above copyright
+ * notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ * notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the LSC Project nor the names of its
+ * contributors may be used to endorse or promote products derived from
+ * this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS
+ * IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED
+ * TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A
+ * PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER
+ * OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ *                  ==LICENSE NOTICE==
+ *
+ *               (c) 2008 - 2019 LSC Project
+ *         Raphael Ouazana <rouazana@linagora.com>
+ ****************************************************************************
+ */
+package org.lsc.plugins.connectors.openpaas;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import javax.ws.rs.ProcessingException;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.lsc.configuration.ValuesType;
+import org.lsc.plugins.connectors.openpaas.LoadBalancingConnector.Endpoint;
+import org.lsc.plugins.connectors.openpaas.OpenpaasStandInServer.FaultProfile;
+import org.lsc.plugins.connectors.openpaas.beans.GroupWithMembersEmails;
+import org.lsc.plugins.connectors.openpaas.generated.OpenpaasGroupService;
+
+import com.google.common.collect.ImmutableList;
+
+public class LoadBalancingTest {
+	private static final String GROUP_EMAIL = "group@open-paas.org";
+	private static final String NEW_GROUP_EMAIL = "new-group@open-paas.org";
+
+	private OpenpaasStandInServer first;
+	private OpenpaasStandInServer second;
+	private OpenpaasDao testee;
+
+	@BeforeEach
+	void setup() throws Exception {
+		first = new OpenpaasStandInServer().start();
+		second = new OpenpaasStandInServer().start();
+		first.createGroup("test group", GROUP_EMAIL, ImmutableList.of());
+		second.createGroup("test group", GROUP_EMAIL, ImmutableList.of());
+		OpenpaasGroupService service = OpenpaasTestTasks.groupService();
+		ValuesType endpoints = new ValuesType();
+		endpoints.getString().addAll(ImmutableList.of(first.getUrl(), second.getUrl()));
+		service.getPerformance().setEndpoints(endpoints);
+		// The connection url only names the instance
+		testee = new OpenpaasDao("http://openpaas.example.com", OpenpaasTestTasks.USERNAME, OpenpaasTestTasks.PASSWORD, null, service);
+	}
+
+	@AfterEach
+	void tearDown() throws Exception {
+		testee.close();
+		first.close();
+		second.close();
+	}
+
+	@Test
+	public void requestsShouldFavorTheFasterEndpoint() {
+		first.setLatency(100, TimeUnit.MILLISECONDS);
+
+		for (int i = 0; i < 10; i++) {
+			assertThat(testee.getGroupList()).hasSize(1);
+		}
+
+		assertThat(first.getRequestCount()).isLessThanOrEqualTo(2);
+		assertThat(second.getRequestCount()).isGreaterThanOrEqualTo(8);
+	}
+
+	@Test
+	public void readsShouldBeRetriedOnAnotherEndpointAndFailingEndpointsLeftOut() throws Exception {
+		first.close();
+
+		for (int i = 0; i < 5; i++) {
+			assertThat(testee.getGroupList()).hasSize(1);
+		}
+
+		List<Endpoint> endpoints = testee.getEndpoints();
+		assertThat(endpoints.get(0).getRequestCount()).isEqualTo(LoadBalancingConnector.UNHEALTHY_AFTER_FAILURES);
+		assertThat(endpoints.get(0).getFailureCount()).isEqualTo(LoadBalancingConnector.UNHEALTHY_AFTER_FAILURES);
+		assertThat(endpoints.get(1).getRequestCount()).isEqualTo(5);
+	}
+
+	@Test
+	public void serverErrorsShouldBeRetriedForReads() {
+		first.setFaults(FaultProfile.builder().errorRate(1).build());
+
+		GroupWithMembersEmails group = testee.getGroup(GROUP_EMAIL);
+
+		assertThat(group.getEmail()).isEqualTo(GROUP_EMAIL);
+		// The group and its members are each tried on the first endpoint, without latency yet
+		assertThat(testee.getEndpoints().get(0).getFailureCount()).isEqualTo(2);
+		assertThat(testee.getEndpoints().get(1).getRequestCount()).isEqualTo(2);
+	}
+
+	@Test
+	public void writesShouldNotBeRetried() {
+		first.setFaults(FaultProfile.builder().connectionResetRate(1).build());
+
+		// The first request goes to the first endpoint
+		assertThatThrownBy(() -> testee.createGroup(new GroupWithMembersEmails(null, "new group", NEW_GROUP_EMAIL, ImmutableList.of())))
+			.isInstanceOf(ProcessingException.class);
+
+		assertThat(second.getRequestCount()).isZero();
+	}
+}
@@ -0,0 +1,146 @@
+/*
+ ****************************************************************************
+ * Ldap Synchronization Connector provides tools to synchronize
+ * electronic identities from a list of data sources including
+ * any database with a JDBC connector, another LDAP directory,
+ * flat files...
+ *
+ *                  ==LICENSE NOTICE==
+ * 
+ * Copyright (c) 2008 - 2019 LSC Project 
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+
+ *    * Redistributions of source code must retain the above copyright
+ * notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ * notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the LSC Project nor the names of its
+ * contributors may be used to endorse or promote products derived from
+ * this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS
+ * IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED
+ * TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A
+ * PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER
+ * OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ *                  ==LICENSE NOTICE==
+ *
+ *               (c) 2008 - 2019 LSC Project
+ *         Raphael Ouazana <rouazana@linagora.com>
+ ****************************************************************************
+ */
+package org.lsc.plugins.connectors.openpaas;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.lsc.plugins.connectors.openpaas.beans.GroupWithMembersEmails.Membership;
+import org.lsc.plugins.connectors.openpaas.generated.OpenpaasGroupService;
+
+import com.google.common.collect.ImmutableList;
+
+public class MembersPrecheckTest {
+	private static final String GROUP_EMAIL = "group@open-paas.org";
+
+	private OpenpaasStandInServer server;
+	private OpenpaasDao testee;
+	private OpenpaasDao otherWriter;
+	private String groupId;
+
+	@BeforeEach
+	void setup() throws Exception {
+		server = new OpenpaasStandInServer().start();
+		groupId = server.createGroup("test group", GROUP_EMAIL, ImmutableList.of("member1@example.com", "member2@example.com", "member3@example.com"));
+		OpenpaasGroupService service = OpenpaasTestTasks.groupService();
+		service.getPerformance().setMembersPrecheck(true);
+		testee = new OpenpaasDao(server.getUrl(), OpenpaasTestTasks.USERNAME, OpenpaasTestTasks.PASSWORD, OpenpaasTestTasks.task(server.getUrl(), service), service);
+		otherWriter = new OpenpaasDao(server.getUrl(), OpenpaasTestTasks.USERNAME, OpenpaasTestTasks.PASSWORD, OpenpaasTestTasks.task(server.getUrl()));
+	}
+
+	@AfterEach
+	void tearDown() throws Exception {
+		server.close();
+	}
+
+	@Test
+	public void uncachedMembersShouldBeDownloadedWithoutPrecheck() {
+		server.resetRequestCounts();
+
+		assertThat(testee.getGroup(GROUP_EMAIL).getMembers()).hasSize(3);
+		assertThat(server.getRequestCount("GET /{id}/members")).isEqualTo(1);
+	}
+
+	@Test
+	public void unchangedMembersShouldNotBeDownloadedAgain() {
+		assertThat(testee.getGroup(GROUP_EMAIL).getMembers()).hasSize(3);
+		server.resetRequestCounts();
+
+		assertThat(testee.getGroup(GROUP_EMAIL).getMembers())
+			.containsOnly("member1@example.com", "member2@example.com", "member3@example.com");
+		assertThat(server.getServedMemberCount()).isEqualTo(1);
+	}
+
+	@Test
+	public void addedMemberShouldBeDetected() {
+		testee.getGroup(GROUP_EMAIL);
+		otherWriter.addMembers(groupId, ImmutableList.of(Membership.fromEmail("member4@example.com")));
+
+		assertThat(testee.getGroup(GROUP_EMAIL).getMembers()).contains("member4@example.com").hasSize(4);
+	}
+
+	@Test
+	public void replacedMemberShouldBeDetected() {
+		testee.getGroup(GROUP_EMAIL);
+		otherWriter.removeMembers(groupId, ImmutableList.of(Membership.fromEmail("member1@example.com")));
+		otherWriter.addMembers(groupId, ImmutableList.of(Membership.fromEmail("member4@example.com")));
+
+		assertThat(testee.getGroup(GROUP_EMAIL).getMembers())
+			.containsOnly("member2@example.com", "member3@example.com", "member4@example.com");
+	}
+
+	@Test
+	public void replacedLastMemberShouldBeDetected() {
+		testee.getGroup(GROUP_EMAIL);
+		otherWriter.removeMembers(groupId, ImmutableList.of(Membership.fromEmail("member3@example.com")));
+		otherWriter.addMembers(groupId, ImmutableList.of(Membership.fromEmail("member4@example.com")));
+
+		assertThat(testee.getGroup(GROUP_EMAIL).getMembers())
+			.containsOnly("member1@example.com", "member2@example.com", "member4@example.com");
+	}
+
+	@Test
+	public void precheckShouldBeDisabledWithoutLastModified() {
+		server.setLastModifiedSent(false);
+		testee.getGroup(GROUP_EMAIL);
+		server.resetRequestCounts();
+
+		assertThat(testee.getGroup(GROUP_EMAIL).getMembers()).hasSize(3);
+		assertThat(server.getRequestCount("GET /{id}/members")).isEqualTo(1);
+		assertThat(server.getServedMemberCount()).isEqualTo(3);
+	}
+
+	@Test
+	public void ownWritesShouldInvalidateCachedMembers() {
+		testee.getGroup(GROUP_EMAIL);
+		testee.removeMembers(groupId, ImmutableList.of(Membership.fromEmail("member1@example.com")));
+		server.resetRequestCounts();
+
+		assertThat(testee.getGroup(GROUP_EMAIL).getMembers()).hasSize(2);
+		// The whole list, without version check
+		assertThat(server.getRequestCount("GET /{id}/members")).isEqualTo(1);
+		assertThat(server.getServedMemberCount()).isEqualTo(2);
+	}
+}
@@ -0,0 +1,151 @@
+/*
+ ****************************************************************************
+ * Ldap Synchronization Connector provides tools to synchronize
+ * electronic identities from a list of data sources including
+ * any database with a JDBC connector, another LDAP directory,
+ * flat files...
+ *
+ *                  ==LICENSE NOTICE==
+ * 
+ * Copyright (c) 2008 - 2019 LSC Project 
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+
+ *    * Redistributions of source code must retain the above copyright
+ * notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ * notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the LSC Project nor the names of its
+ * contributors may be used to endorse or promote products derived from
+ * this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS
+ * IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED
+ * TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A
+ * PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER
+ * OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ *                  ==LICENSE NOTICE==
+ *
+ *               (c) 2008 - 2019 LSC Project
+ *         Raphael Ouazana <rouazana@linagora.com>
+ ****************************************************************************
+ */
+package org.lsc.plugins.connectors.openpaas;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.lsc.plugins.connectors.openpaas.beans.GroupItem;
+import org.lsc.plugins.connectors.openpaas.beans.GroupWithMembersEmails;
+import org.lsc.plugins.connectors.openpaas.generated.OpenpaasGroupService;
+import org.lsc.plugins.connectors.openpaas.generated.TransportType;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+
+import okhttp3.Protocol;
+
+public class OkHttpConnectorTest {
+
+	private OpenpaasStandInServer server;
+	private OpenpaasDao testee;
+
+	@BeforeEach
+	void setup() throws Exception {
+		server = new OpenpaasStandInServer(Protocol.H2_PRIOR_KNOWLEDGE).start();
+		OpenpaasGroupService settings = OpenpaasTestTasks.groupService();
+		settings.getPerformance().setTransport(TransportType.H2C);
+		testee = new OpenpaasDao(server.getUrl(), OpenpaasTestTasks.USERNAME, OpenpaasTestTasks.PASSWORD, null, settings);
+	}
+
+	@AfterEach
+	void tearDown() throws Exception {
+		server.close();
+	}
+
+	@Test
+	public void getGroupListShouldWorkOverH2c() {
+		server.createGroup("group1", "group1@open-paas.org", ImmutableList.of());
+		server.createGroup("group2", "group2@open-paas.org", ImmutableList.of());
+
+		List<GroupItem> groups = testee.getGroupList();
+
+		assertThat(groups).extracting(group -> group.email)
+			.containsOnly("group1@open-paas.org", "group2@open-paas.org");
+	}
+
+	@Test
+	public void getGroupShouldReturnMembersOverH2c() {
+		server.createGroup("group", "group@open-paas.org", ImmutableList.of("member1@example.com", "member2@example.com"));
+
+		GroupWithMembersEmails group = testee.getGroup("group@open-paas.org");
+
+		assertThat(group.getMembers()).containsOnly("member1@example.com", "member2@example.com");
+	}
+
+	@Test
+	public void createGroupShouldSendBodyOverH2c() {
+		GroupWithMembersEmails newGroup = GroupWithMembersEmails.fromModifications(ImmutableMap.of(
+			"name", ImmutableList.of("group"),
+			"email", ImmutableList.of("group@open-paas.org"),
+			"members", ImmutableList.of("member@example.com")));
+
+		assertThat(testee.createGroup(newGroup)).isTrue();
+
+		assertThat(testee.getGroup("group@open-paas.org").getMembers()).containsOnly("member@example.com");
+	}
+
+	@Test
+	public void http2ShouldUseHttp11WithHttpUrls() throws Exception {
+		try (OpenpaasStandInServer http11Server = new OpenpaasStandInServer().start()) {
+			http11Server.createGroup("group", "group@open-paas.org", ImmutableList.of("member@example.com"));
+			OpenpaasGroupService settings = OpenpaasTestTasks.groupService();
+			settings.getPerformance().setTransport(TransportType.HTTP_2);
+			OpenpaasDao dao = new OpenpaasDao(http11Server.getUrl(), OpenpaasTestTasks.USERNAME, OpenpaasTestTasks.PASSWORD, null, settings);
+
+			assertThat(dao.getGroup("group@open-paas.org").getMembers()).containsOnly("member@example.com");
+		}
+	}
+
+	@Test
+	public void concurrentRequestsShouldBeMultiplexedOnOneConnection() throws Exception {
+		server.createGroup("group", "group@open-paas.org", ImmutableList.of("member@example.com"));
+		server.setLatency(50, TimeUnit.MILLISECONDS);
+		// Warm the connection up so that concurrent calls do not race to open their own
+		testee.getGroupList();
+
+		ExecutorService executor = Executors.newFixedThreadPool(16);
+		try {
+			List<Future<GroupWithMembersEmails>> results = IntStream.range(0, 32)
+				.mapToObj(i -> executor.submit(() -> testee.getGroup("group@open-paas.org")))
+				.collect(Collectors.toList());
+			for (Future<GroupWithMembersEmails> result : results) {
+				assertThat(result.get().getMembers()).containsOnly("member@example.com");
+			}
+		} finally {
+			executor.shutdownNow();
+		}
+
+		assertThat(server.getConnectionCount()).isEqualTo(1);
+	}
+}
@@ -0,0 +1,131 @@
+/*
+ ****************************************************************************
+ * Ldap Synchronization Connector provides tools to synchronize
+ * electronic identities from a list of data sources including
+ * any database with a JDBC connector, another LDAP directory,
+ * flat files...
+ *
+ *                  ==LICENSE NOTICE==
+ * 
+ * Copyright (c) 2008 - 2019 LSC Project 
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+
+ *    * Redistributions of source code must retain the above copyright
+ * notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ * notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the LSC Project nor the names of its
+ * contributors may be used to endorse or promote products derived from
+ * this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS
+ * IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED
+ * TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A
+ * PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER
+ * OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ *                  ==LICENSE NOTICE==
+ *
+ *               (c) 2008 - 2019 LSC Project
+ *         Raphael Ouazana <rouazana@linagora.com>
+ ****************************************************************************
+ */
+package org.lsc.plugins.connectors.openpaas;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.lsc.LscDatasets;
+import org.lsc.plugins.connectors.openpaas.generated.OpenpaasGroupService;
+
+import com.google.common.collect.ImmutableList;
+
+public class OpenpaasDaoRegistryTest {
+	private static final boolean FROM_SAME_SERVICE = true;
+	private static final String GROUP_EMAIL = "group@open-paas.org";
+
+	private OpenpaasStandInServer server;
+
+	@BeforeEach
+	void setup() throws Exception {
+		server = new OpenpaasStandInServer().start();
+		server.createGroup("test group", GROUP_EMAIL, ImmutableList.of("member1@example.com"));
+	}
+
+	@AfterEach
+	void tearDown() throws Exception {
+		server.close();
+	}
+
+	@Test
+	public void servicesOfTheSameConnectionShouldShareTheirCache() throws Exception {
+		int referenceCount = OpenpaasDaoRegistry.getReferenceCount();
+		OpenpaasGroupDstService first = new OpenpaasGroupDstService(OpenpaasTestTasks.task(server.getUrl(), cachingService()));
+		OpenpaasGroupDstService second = new OpenpaasGroupDstService(OpenpaasTestTasks.task(server.getUrl(), cachingService()));
+		assertThat(OpenpaasDaoRegistry.getReferenceCount()).isEqualTo(referenceCount + 2);
+
+		assertThat(first.getBean("id", pivot(), FROM_SAME_SERVICE)).isNotNull();
+		assertThat(second.getBean("id", pivot(), FROM_SAME_SERVICE)).isNotNull();
+		assertThat(server.getRequestCount("GET /{id}/members")).isEqualTo(1);
+
+		first.close();
+		first.close();
+		assertThat(OpenpaasDaoRegistry.getReferenceCount()).isEqualTo(referenceCount + 1);
+		assertThat(second.getBean("id", pivot(), FROM_SAME_SERVICE)).isNotNull();
+		second.close();
+		assertThat(OpenpaasDaoRegistry.getReferenceCount()).isEqualTo(referenceCount);
+	}
+
+	@Test
+	public void servicesWithOtherClientSettingsShouldNotShareTheirCache() throws Exception {
+		OpenpaasGroupDstService first = new OpenpaasGroupDstService(OpenpaasTestTasks.task(server.getUrl(), cachingService()));
+		OpenpaasGroupService otherSettings = cachingService();
+		otherSettings.getPerformance().setUpsert(true);
+		OpenpaasGroupDstService second = new OpenpaasGroupDstService(OpenpaasTestTasks.task(server.getUrl(), otherSettings));
+
+		first.getBean("id", pivot(), FROM_SAME_SERVICE);
+		second.getBean("id", pivot(), FROM_SAME_SERVICE);
+		first.close();
+		second.close();
+
+		assertThat(server.getRequestCount("GET /{id}/members")).isEqualTo(2);
+	}
+
+	@Test
+	public void connectionsWithOtherCredentialsShouldNotShareTheirClient() throws Exception {
+		OpenpaasGroupService service = cachingService();
+		PerformanceSettings performance = PerformanceSettings.of(service);
+		OpenpaasDao first = OpenpaasDaoRegistry.acquire(server.getUrl(), OpenpaasTestTasks.USERNAME, OpenpaasTestTasks.PASSWORD,
+				OpenpaasTestTasks.task(server.getUrl(), service), performance);
+		OpenpaasDao second = OpenpaasDaoRegistry.acquire(server.getUrl(), OpenpaasTestTasks.USERNAME, "other secret",
+				OpenpaasTestTasks.task(server.getUrl(), service), performance);
+
+		assertThat(second).isNotSameAs(first);
+		OpenpaasDaoRegistry.release(first);
+		OpenpaasDaoRegistry.release(second);
+	}
+
+	private static OpenpaasGroupService cachingService() {
+		OpenpaasGroupService service = OpenpaasTestTasks.groupService();
+		service.getPerformance().setGroupCacheMaxMembers(100);
+		return service;
+	}
+
+	private static LscDatasets pivot() {
+		LscDatasets pivot = new LscDatasets();
+		pivot.put("email", GROUP_EMAIL);
+		return pivot;
+	}
+}
@@ -0,0 +1,328 @@
+/*
+ ****************************************************************************
+ * Ldap Synchronization Connector provides tools to synchronize
+ * electronic identities from a list of data sources including
+ * any database with a JDBC connector, another LDAP directory,
+ * flat files...
+ *
+ *                  ==LICENSE NOTICE==
+ * 
+ * Copyright (c) 2008 - 2019 LSC Project 
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+
+ *    * Redistributions of source code must retain the above copyright
+ * notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ * notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the LSC Project nor the names of its
+ * contributors may be used to endorse or promote products derived from
+ * this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS
+ * IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED
+ * TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A
+ * PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER
+ * OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ *                  ==LICENSE NOTICE==
+ *
+ *               (c) 2008 - 2019 LSC Project
+ *         Raphael Ouazana <rouazana@linagora.com>
+ ****************************************************************************
+ */
+package org.lsc.plugins.connectors.openpaas;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.lsc.LscDatasetModification;
+import org.lsc.LscDatasetModification.LscDatasetModificationType;
+import org.lsc.LscDatasets;
+import org.lsc.LscModificationType;
+import org.lsc.LscModifications;
+import org.lsc.beans.IBean;
+import org.lsc.exception.LscServiceCommunicationException;
+import org.lsc.exception.LscServiceException;
+import org.lsc.plugins.connectors.openpaas.OpenpaasStandInServer.FaultProfile;
+import org.lsc.plugins.connectors.openpaas.OpenpaasStandInServer.Latency;
+import org.lsc.plugins.connectors.openpaas.generated.OpenpaasGroupService;
+
+import com.google.common.collect.ImmutableList;
+
+/**
+ * Runs the service against the in-process OpenPaaS stand-in, no Docker needed.
+ */
+public class OpenpaasGroupDstServiceStandInTest {
+	private static final boolean FROM_SAME_SERVICE = true;
+	private static final String GROUP_EMAIL = "test-group@open-paas.org";
+
+	private OpenpaasStandInServer server;
+	private OpenpaasGroupDstService testee;
+
+	@BeforeEach
+	void setup() throws Exception {
+		server = new OpenpaasStandInServer().start();
+		testee = new OpenpaasGroupDstService(OpenpaasTestTasks.task(server.getUrl()));
+	}
+
+	@AfterEach
+	void tearDown() throws Exception {
+		server.close();
+	}
+
+	@Test
+	public void getBeanShouldReturnTypedMembersAsEmails() throws Exception {
+		server.createUser("user1@open-paas.org");
+		server.createGroup("subgroup", "subgroup@open-paas.org", ImmutableList.of());
+		server.createGroup("test group", GROUP_EMAIL, ImmutableList.of("user1@open-paas.org", "member@example.com", "subgroup@open-paas.org"));
+
+		IBean bean = testee.getBean("id", testee.getListPivots().get(GROUP_EMAIL), FROM_SAME_SERVICE);
+
+		assertThat(bean.getDatasetById("members")).containsOnly("user1@open-paas.org", "member@example.com", "subgroup@open-paas.org");
+	}
+
+	@Test
+	public void applyShouldNotPostMetadataWhenOnlyMembersChange() throws Exception {
+		server.createGroup("test group", GROUP_EMAIL, ImmutableList.of("member1@example.com"));
+		server.resetRequestCounts();
+
+		boolean applied = testee.apply(update(GROUP_EMAIL, "members", "member1@example.com", "member2@example.com"));
+
+		assertThat(applied).isTrue();
+		assertThat(server.getMembers(GROUP_EMAIL)).contains(ImmutableList.of("member1@example.com", "member2@example.com"));
+		assertThat(server.getRequestCount("POST /{id}")).isZero();
+		assertThat(server.getRequestCount("POST /{id}/members")).isEqualTo(1);
+	}
+
+	@Test
+	public void applyShouldPostMetadataWhenNameChanges() throws Exception {
+		server.createGroup("test group", GROUP_EMAIL, ImmutableList.of());
+
+		boolean applied = testee.apply(update(GROUP_EMAIL, "name", "new name"));
+
+		assertThat(applied).isTrue();
+		assertThat(server.getName(GROUP_EMAIL)).contains("new name");
+	}
+
+	@Test
+	public void applyShouldKeepMembersWhenOnlyNameChanges() throws Exception {
+		server.createGroup("test group", GROUP_EMAIL, ImmutableList.of("member1@example.com"));
+
+		assertThat(testee.apply(update(GROUP_EMAIL, "name", "new name"))).isTrue();
+
+		assertThat(server.getMembers(GROUP_EMAIL)).contains(ImmutableList.of("member1@example.com"));
+	}
+
+	@Test
+	public void applyShouldNotWriteWhenMembersOnlyDifferByAliasOrCase() throws Exception {
+		server.createUser("jane.doe@open-paas.org", "jdoe@open-paas.org");
+		server.createGroup("test group", GROUP_EMAIL, ImmutableList.of("jane.doe@open-paas.org", "member@example.com"));
+		server.resetRequestCounts();
+
+		boolean applied = testee.apply(update(GROUP_EMAIL, "members", "JDoe@open-paas.org", "Member@Example.com"));
+
+		assertThat(applied).isTrue();
+		assertThat(server.getRequestCount("POST /{id}/members")).isZero();
+		assertThat(server.getRequestCount("POST /{id}")).isZero();
+		assertThat(server.getMembers(GROUP_EMAIL)).contains(ImmutableList.of("jane.doe@open-paas.org", "member@example.com"));
+	}
+
+	@Test
+	public void applyShouldPostTypedMembershipsAndLookUpEachNewAddressOnce() throws Exception {
+		server.createUser("jane.doe@open-paas.org");
+		server.createGroup("subgroup", "subgroup@open-paas.org", ImmutableList.of());
+		server.createGroup("test group", GROUP_EMAIL, ImmutableList.of("member1@example.com"));
+		server.createGroup("other group", "other@open-paas.org", ImmutableList.of());
+		server.resetRequestCounts();
+
+		assertThat(testee.apply(update(GROUP_EMAIL, "members", "jane.doe@open-paas.org", "subgroup@open-paas.org", "member2@example.com"))).isTrue();
+		assertThat(testee.apply(update("other@open-paas.org", "members", "jane.doe@open-paas.org", "member2@example.com"))).isTrue();
+
+		assertThat(server.getPostedMembershipCount("user")).isEqualTo(2);
+		assertThat(server.getPostedMembershipCount("group")).isEqualTo(1);
+		// member1 is removed by email, as OpenPaaS stores it
+		assertThat(server.getPostedMembershipCount("email")).isEqualTo(3);
+		assertThat(server.getRequestCount("GET /api/users")).isEqualTo(3);
+		assertThat(server.getMembers(GROUP_EMAIL)).contains(ImmutableList.of("jane.doe@open-paas.org", "subgroup@open-paas.org", "member2@example.com"));
+	}
+
+	@Test
+	public void applyShouldNotLookUpMembersAsGroupsOnceGroupsAreListed() throws Exception {
+		server.createUser("jane.doe@open-paas.org");
+		server.createGroup("subgroup", "subgroup@open-paas.org", ImmutableList.of());
+		server.createGroup("test group", GROUP_EMAIL, ImmutableList.of());
+		testee.getListPivots();
+		int groupLookups = server.getRequestCount("GET /");
+
+		assertThat(testee.apply(update(GROUP_EMAIL, "members", "jane.doe@open-paas.org", "subgroup@open-paas.org", "member@example.com"))).isTrue();
+
+		// subgroup is known from the listing, member@example.com is not looked up as a group
+		assertThat(server.getRequestCount("GET /api/users")).isEqualTo(2);
+		assertThat(server.getRequestCount("GET /") - groupLookups).isLessThanOrEqualTo(1);
+		assertThat(server.getPostedMembershipCount("group")).isEqualTo(1);
+		assertThat(server.getPostedMembershipCount("user")).isEqualTo(1);
+	}
+
+	@Test
+	public void applyShouldApplyValidMembersOfARejectedBatch() throws Exception {
+		server.createGroup("test group", GROUP_EMAIL, ImmutableList.of());
+		List<String> members = IntStream.range(0, 32)
+			.mapToObj(i -> "member" + i + "@example.com")
+			.collect(Collectors.toList());
+		members.set(5, "invalid address");
+		members.set(20, "other invalid address");
+		server.resetRequestCounts();
+
+		boolean applied = testee.apply(update(GROUP_EMAIL, "members", members.toArray(new String[0])));
+
+		assertThat(applied).isFalse();
+		assertThat(server.getMembers(GROUP_EMAIL).get()).hasSize(30).doesNotContain("invalid address", "other invalid address");
+		assertThat(server.getRequestCount("POST /{id}/members")).isLessThan(32);
+	}
+
+	@Test
+	public void batchRejectedWhateverItsContentShouldNotBeBisectedDownToEachMember() throws Exception {
+		server.createGroup("test group", GROUP_EMAIL, ImmutableList.of());
+		String[] members = IntStream.range(0, 500)
+			.mapToObj(i -> "member" + i + "@example.com")
+			.toArray(String[]::new);
+		server.setMembershipWriteStatus(400);
+		server.resetRequestCounts();
+
+		boolean applied = testee.apply(update(GROUP_EMAIL, "members", members));
+
+		assertThat(applied).isFalse();
+		assertThat(server.getRequestCount("POST /{id}/members")).isEqualTo(3);
+	}
+
+	@Test
+	public void bisectionOfABatchWithEveryMemberRejectedShouldBeBounded() throws Exception {
+		server.createGroup("test group", GROUP_EMAIL, ImmutableList.of());
+		String[] members = IntStream.range(0, 500)
+			.mapToObj(i -> "invalid address " + i)
+			.toArray(String[]::new);
+		server.resetRequestCounts();
+
+		boolean applied = testee.apply(update(GROUP_EMAIL, "members", members));
+
+		assertThat(applied).isFalse();
+		assertThat(server.getRequestCount("POST /{id}/members")).isLessThanOrEqualTo(1 + 4 * 9);
+	}
+
+	@Test
+	public void createThenDeleteShouldLeaveNoGroup() throws Exception {
+		assertThat(testee.apply(creation(GROUP_EMAIL))).isTrue();
+		assertThat(server.getGroupCount()).isEqualTo(1);
+		assertThat(testee.apply(deletion(GROUP_EMAIL))).isTrue();
+		assertThat(server.getGroupCount()).isZero();
+	}
+
+	@Test
+	public void getListPivotsShouldFailWithServiceExceptionOnServerError() throws Exception {
+		server.setFaults(FaultProfile.builder().errorRate(1).build());
+
+		assertThatThrownBy(() -> testee.getListPivots())
+			.isInstanceOf(LscServiceException.class);
+	}
+
+	@Test
+	public void getBeanShouldFailWithCommunicationExceptionOnConnectionReset() throws Exception {
+		server.createGroup("test group", GROUP_EMAIL, ImmutableList.of());
+		Map<String, LscDatasets> pivots = testee.getListPivots();
+		server.setFaults(FaultProfile.builder().connectionResetRate(1).build());
+
+		assertThatThrownBy(() -> testee.getBean("id", pivots.get(GROUP_EMAIL), FROM_SAME_SERVICE))
+			.isInstanceOf(LscServiceCommunicationException.class);
+	}
+
+	@Test
+	public void applyShouldReturnFalseWhenThrottled() throws Exception {
+		server.setFaults(FaultProfile.builder()
+			.latency(Latency.uniform(1, 5))
+			.tooManyRequestsRate(1)
+			.build());
+
+		assertThat(testee.apply(creation(GROUP_EMAIL))).isFalse();
+		assertThat(server.getGroupCount()).isZero();
+	}
+
+	@Test
+	public void upsertShouldCreateUnknownGroupsWithoutLookingThemUp() throws Exception {
+		server.createGroup("other group", "other-group@open-paas.org", ImmutableList.of());
+		OpenpaasGroupService service = OpenpaasTestTasks.groupService();
+		service.getPerformance().setUpsert(true);
+		OpenpaasGroupDstService upsertService = new OpenpaasGroupDstService(OpenpaasTestTasks.task(server.getUrl(), service));
+		server.resetRequestCounts();
+
+		assertThat(upsertService.getBean("id", pivot(GROUP_EMAIL), FROM_SAME_SERVICE)).isNull();
+		assertThat(upsertService.getBean("id", pivot("another-group@open-paas.org"), FROM_SAME_SERVICE)).isNull();
+		assertThat(upsertService.apply(creation(GROUP_EMAIL))).isTrue();
+
+		assertThat(server.getRequestCount("GET /")).isEqualTo(1);
+		assertThat(server.getRequestCount("POST /")).isEqualTo(1);
+		assertThat(server.getName(GROUP_EMAIL)).contains("test group");
+		assertThat(upsertService.getBean("id", pivot("other-group@open-paas.org"), FROM_SAME_SERVICE)).isNotNull();
+	}
+
+	@Test
+	public void upsertShouldModifyGroupCreatedMeanwhile() throws Exception {
+		OpenpaasGroupService service = OpenpaasTestTasks.groupService();
+		service.getPerformance().setUpsert(true);
+		OpenpaasGroupDstService upsertService = new OpenpaasGroupDstService(OpenpaasTestTasks.task(server.getUrl(), service));
+		assertThat(upsertService.getBean("id", pivot(GROUP_EMAIL), FROM_SAME_SERVICE)).isNull();
+		server.createGroup("old name", GROUP_EMAIL, ImmutableList.of("member1@example.com"));
+
+		assertThat(upsertService.apply(creation(GROUP_EMAIL))).isTrue();
+
+		assertThat(server.getGroupCount()).isEqualTo(1);
+		assertThat(server.getName(GROUP_EMAIL)).contains("test group");
+		assertThat(server.getMembers(GROUP_EMAIL)).contains(ImmutableList.of("member1@example.com"));
+	}
+
+	private static LscDatasets pivot(String email) {
+		LscDatasets pivot = new LscDatasets();
+		pivot.put("email", email);
+		return pivot;
+	}
+
+	private static LscModifications update(String email, String attribute, String... values) {
+		LscModifications modifications = new LscModifications(LscModificationType.UPDATE_OBJECT);
+		modifications.setMainIdentifer(email);
+		modifications.setLscAttributeModifications(ImmutableList.of(
+			new LscDatasetModification(LscDatasetModificationType.REPLACE_VALUES, attribute, ImmutableList.copyOf(values))));
+		return modifications;
+	}
+
+	private static LscModifications creation(String email) {
+		LscModifications modifications = new LscModifications(LscModificationType.CREATE_OBJECT);
+		modifications.setMainIdentifer(email);
+		modifications.setLscAttributeModifications(ImmutableList.of(
+			new LscDatasetModification(LscDatasetModificationType.REPLACE_VALUES, "name", ImmutableList.of("test group")),
+			new LscDatasetModification(LscDatasetModificationType.REPLACE_VALUES, "email", ImmutableList.of(email))));
+		return modifications;
+	}
+
+	private static LscModifications deletion(String email) {
+		LscModifications modifications = new LscModifications(LscModificationType.DELETE_OBJECT);
+		modifications.setMainIdentifer(email);
+		return modifications;
+	}
+}
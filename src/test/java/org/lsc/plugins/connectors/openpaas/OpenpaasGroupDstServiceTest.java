@@ -629,6 +629,32 @@ public class OpenpaasGroupDstServiceTest {
 		assertThat(bean.getDatasetFirstValueById("email")).isEqualTo(newGroupEmail);
 	}
 
+	@Test
+	public void applyShouldKeepGroupNameAndEmailWhenOnlyMembersModified() throws Exception {
+		String groupName = "test group";
+		String groupEmail = "test-group@open-paas.org";
+		createGroup(groupName, groupEmail, ImmutableList.of("user1@open-paas.org"));
+
+		LscModifications modifications = new LscModifications(LscModificationType.UPDATE_OBJECT);
+		modifications.setMainIdentifer(groupEmail);
+		String newExternalMember = "external@example.com";
+		LscDatasetModification membersModification = new LscDatasetModification(LscDatasetModificationType.REPLACE_VALUES, "members", ImmutableList.of("user1@open-paas.org", newExternalMember));
+		modifications.setLscAttributeModifications(ImmutableList.of(membersModification));
+
+		testee = new OpenpaasGroupDstService(task);
+
+		boolean applied = testee.apply(modifications);
+		
+		assertThat(applied).isTrue();
+
+		Map<String, LscDatasets> pivots = testee.getListPivots();
+		IBean bean = testee.getBean("id", pivots.get(groupEmail), FROM_SAME_SERVICE);
+
+		assertThat(bean.getDatasetFirstValueById("name")).isEqualTo(groupName);
+		assertThat(bean.getDatasetFirstValueById("email")).isEqualTo(groupEmail);
+		assertThat(bean.getDatasetById("members")).containsOnly("user1@open-paas.org", newExternalMember);
+	}
+
 	@Test
 	public void applyShouldAddInternalMemberWhenAdded() throws Exception {
 		String groupName = "test group";
@@ -0,0 +1,744 @@
+/*
+ ****************************************************************************
+ * Ldap Synchronization Connector provides tools to synchronize
+ * electronic identities from a list of data sources including
+ * any database with a JDBC connector, another LDAP directory,
+ * flat files...
+ *
+ *                  ==LICENSE NOTICE==
+ * 
+ * Copyright (c) 2008 - 2019 LSC Project 
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+
+ *    * Redistributions of source code must retain the above copyright
+ * notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ * notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the LSC Project nor the names of its
+ * contributors may be used to endorse or promote products derived from
+ * this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS
+ * IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED
+ * TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A
+ * PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER
+ * OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ *                  ==LICENSE NOTICE==
+ *
+ *               (c) 2008 - 2019 LSC Project
+ *         Raphael Ouazana <rouazana@linagora.com>
+ ****************************************************************************
+ */
+package org.lsc.plugins.connectors.openpaas;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.Random;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+import javax.net.ServerSocketFactory;
+
+import org.codehaus.jackson.map.ObjectMapper;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+
+import okhttp3.HttpUrl;
+import okhttp3.Protocol;
+import okhttp3.mockwebserver.Dispatcher;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+import okhttp3.mockwebserver.SocketPolicy;
+
+/**
+ * In-process stand-in for the OpenPaaS group API, backed by an in-memory store.
+ * <p>
+ * It implements the {@value OpenpaasDao#GROUP_PATH} endpoints and the user lookup by email
+ * of {@value OpenpaasDao#USER_PATH} used by {@link OpenpaasDao},
+ * speaks either HTTP/1.1 or cleartext HTTP/2 (h2c), and can inject latency, errors,
+ * 429 responses and connection resets following a {@link FaultProfile}. Faults are drawn
+ * from a seeded random generator, so a sequential scenario is reproducible.
+ */
+public class OpenpaasStandInServer implements Closeable {
+
+	private static final String USER = "user";
+	private static final String GROUP = "group";
+	private static final String EMAIL = "email";
+	// Ticks one second per membership change from a day ago, so that each change has its own Last-Modified
+	private static final AtomicLong CLOCK = new AtomicLong(System.currentTimeMillis() - TimeUnit.DAYS.toMillis(1));
+
+	private final MockWebServer server;
+	private final ObjectMapper mapper = new ObjectMapper();
+	private final Map<String, StoredGroup> groups = new LinkedHashMap<>();
+	private final Map<String, StoredUser> users = new LinkedHashMap<>();
+	private final Map<String, String> groupIdByEmail = new HashMap<>();
+	private final Map<String, String> userIdByEmail = new HashMap<>();
+	private final AtomicInteger requestCount = new AtomicInteger();
+	private final AtomicInteger connectionCount = new AtomicInteger();
+	private final Map<String, AtomicInteger> requestCountByRoute = new ConcurrentHashMap<>();
+	private final Map<String, AtomicInteger> postedMembershipCountByType = new ConcurrentHashMap<>();
+	private final AtomicInteger servedMemberCount = new AtomicInteger();
+	private final List<String> traceparents = new CopyOnWriteArrayList<>();
+	private volatile FaultProfile faults = FaultProfile.none();
+	private volatile boolean lastModifiedSent = true;
+	private volatile int membershipWriteStatus;
+	private Random random = new Random(0);
+
+	private static class StoredGroup {
+		private final String id;
+		private String name;
+		private String email;
+		private final Set<StoredMember> members = new LinkedHashSet<>();
+		private long membersModified = CLOCK.addAndGet(1000);
+
+		private StoredGroup(String id, String name, String email) {
+			this.id = id;
+			this.name = name;
+			this.email = email;
+		}
+	}
+
+	private static class StoredUser {
+		private final String id;
+		private final String preferredEmail;
+		private final List<String> emails;
+
+		private StoredUser(String id, String preferredEmail, List<String> emails) {
+			this.id = id;
+			this.preferredEmail = preferredEmail;
+			this.emails = emails;
+		}
+	}
+
+	private static class StoredMember {
+		private final String objectType;
+		private final String id;
+
+		private StoredMember(String objectType, String id) {
+			this.objectType = objectType;
+			this.id = id;
+		}
+
+		@Override
+		public boolean equals(Object other) {
+			if (!(other instanceof StoredMember)) {
+				return false;
+			}
+			StoredMember member = (StoredMember) other;
+			return objectType.equals(member.objectType) && id.equals(member.id);
+		}
+
+		@Override
+		public int hashCode() {
+			return Objects.hash(objectType, id);
+		}
+	}
+
+	/**
+	 * Distribution of the delay before the response headers are sent.
+	 */
+	public interface Latency {
+		long nextMillis(Random random);
+
+		static Latency none() {
+			return random -> 0;
+		}
+
+		static Latency fixed(long millis) {
+			return random -> millis;
+		}
+
+		static Latency uniform(long minMillis, long maxMillis) {
+			return random -> minMillis + (long) (random.nextDouble() * (maxMillis - minMillis));
+		}
+
+		static Latency exponential(double meanMillis) {
+			return random -> (long) (-meanMillis * Math.log(1 - random.nextDouble()));
+		}
+
+		/**
+		 * Long tailed latency: the median is {@code medianMillis} and {@code sigma} drives the tail.
+		 */
+		static Latency logNormal(double medianMillis, double sigma) {
+			return random -> (long) (medianMillis * Math.exp(sigma * random.nextGaussian()));
+		}
+	}
+
+	/**
+	 * Faults injected on every request. Rates are probabilities between 0 and 1.
+	 */
+	public static class FaultProfile {
+		private final Latency latency;
+		private final double errorRate;
+		private final double tooManyRequestsRate;
+		private final double connectionResetRate;
+		private final long seed;
+
+		private FaultProfile(Builder builder) {
+			latency = builder.latency;
+			errorRate = builder.errorRate;
+			tooManyRequestsRate = builder.tooManyRequestsRate;
+			connectionResetRate = builder.connectionResetRate;
+			seed = builder.seed;
+		}
+
+		public static FaultProfile none() {
+			return builder().build();
+		}
+
+		public static Builder builder() {
+			return new Builder();
+		}
+
+		public static class Builder {
+			private Latency latency = Latency.none();
+			private double errorRate;
+			private double tooManyRequestsRate;
+			private double connectionResetRate;
+			private long seed;
+
+			public Builder latency(Latency latency) {
+				this.latency = latency;
+				return this;
+			}
+
+			public Builder errorRate(double errorRate) {
+				this.errorRate = errorRate;
+				return this;
+			}
+
+			public Builder tooManyRequestsRate(double tooManyRequestsRate) {
+				this.tooManyRequestsRate = tooManyRequestsRate;
+				return this;
+			}
+
+			public Builder connectionResetRate(double connectionResetRate) {
+				this.connectionResetRate = connectionResetRate;
+				return this;
+			}
+
+			public Builder seed(long seed) {
+				this.seed = seed;
+				return this;
+			}
+
+			public FaultProfile build() {
+				return new FaultProfile(this);
+			}
+		}
+	}
+
+	/**
+	 * Disables Nagle's algorithm on accepted connections, otherwise small responses
+	 * wait for delayed ACKs and every request takes about 40ms.
+	 */
+	private static class NoDelayServerSocketFactory extends ServerSocketFactory {
+		@Override
+		public ServerSocket createServerSocket() throws IOException {
+			return new ServerSocket() {
+				@Override
+				public Socket accept() throws IOException {
+					Socket socket = super.accept();
+					socket.setTcpNoDelay(true);
+					return socket;
+				}
+			};
+		}
+
+		// Same as the default factory, with accepted connections in no delay mode
+		@Override
+		public ServerSocket createServerSocket(int port) throws IOException {
+			return createServerSocket(port, 50, null);
+		}
+
+		@Override
+		public ServerSocket createServerSocket(int port, int backlog) throws IOException {
+			return createServerSocket(port, backlog, null);
+		}
+
+		@Override
+		public ServerSocket createServerSocket(int port, int backlog, InetAddress address) throws IOException {
+			ServerSocket serverSocket = createServerSocket();
+			serverSocket.bind(new InetSocketAddress(address, port), backlog);
+			return serverSocket;
+		}
+	}
+
+	public OpenpaasStandInServer() {
+		this(Protocol.HTTP_1_1);
+	}
+
+	public OpenpaasStandInServer(Protocol protocol) {
+		server = new MockWebServer();
+		server.setServerSocketFactory(new NoDelayServerSocketFactory());
+		server.setProtocols(ImmutableList.of(protocol));
+		server.setDispatcher(new Dispatcher() {
+			@Override
+			public MockResponse dispatch(RecordedRequest request) {
+				return handle(request);
+			}
+		});
+	}
+
+	public OpenpaasStandInServer start() throws IOException {
+		server.start();
+		return this;
+	}
+
+	public String getUrl() {
+		HttpUrl url = server.url("/");
+		return url.scheme() + "://" + url.host() + ":" + url.port();
+	}
+
+	public void setFaults(FaultProfile faults) {
+		synchronized (this) {
+			random = new Random(faults.seed);
+		}
+		this.faults = faults;
+	}
+
+	public void setLatency(long latency, TimeUnit unit) {
+		setFaults(FaultProfile.builder().latency(Latency.fixed(unit.toMillis(latency))).build());
+	}
+
+	public int getRequestCount() {
+		return requestCount.get();
+	}
+
+	/**
+	 * @param route the method and the templated path, e.g. {@code "POST /{id}/members"}
+	 */
+	public int getRequestCount(String route) {
+		return Optional.ofNullable(requestCountByRoute.get(route))
+			.map(AtomicInteger::get)
+			.orElse(0);
+	}
+
+	public void resetRequestCounts() {
+		requestCount.set(0);
+		requestCountByRoute.clear();
+		postedMembershipCountByType.clear();
+		servedMemberCount.set(0);
+	}
+
+	/**
+	 * @param objectType the type of the memberships added or removed, as sent by the client
+	 */
+	public int getPostedMembershipCount(String objectType) {
+		return Optional.ofNullable(postedMembershipCountByType.get(objectType))
+			.map(AtomicInteger::get)
+			.orElse(0);
+	}
+
+	/**
+	 * @return the W3C trace context headers received, in order
+	 */
+	public List<String> getTraceparents() {
+		return ImmutableList.copyOf(traceparents);
+	}
+
+	/**
+	 * Sets whether member list responses carry a Last-Modified header, true by default.
+	 */
+	public void setLastModifiedSent(boolean lastModifiedSent) {
+		this.lastModifiedSent = lastModifiedSent;
+	}
+
+	/**
+	 * Makes all the membership writes fail with this status, whatever their content, 0 to accept them again.
+	 */
+	public void setMembershipWriteStatus(int membershipWriteStatus) {
+		this.membershipWriteStatus = membershipWriteStatus;
+	}
+
+	/**
+	 * @return the number of members sent in member list responses
+	 */
+	public int getServedMemberCount() {
+		return servedMemberCount.get();
+	}
+
+	/**
+	 * @return the number of connections the server has seen a request on
+	 */
+	public int getConnectionCount() {
+		return connectionCount.get();
+	}
+
+	public synchronized String createUser(String preferredEmail, String... otherEmails) {
+		String id = UUID.randomUUID().toString();
+		StoredUser user = new StoredUser(id, preferredEmail, ImmutableList.<String>builder()
+			.add(preferredEmail)
+			.add(otherEmails)
+			.build());
+		users.put(id, user);
+		user.emails.forEach(email -> userIdByEmail.put(email, id));
+		return id;
+	}
+
+	public synchronized String createGroup(String name, String email, List<String> members) {
+		String id = UUID.randomUUID().toString();
+		StoredGroup group = new StoredGroup(id, name, email);
+		groups.put(id, group);
+		groupIdByEmail.put(email, id);
+		members.forEach(member -> group.members.add(resolve(member)));
+		return id;
+	}
+
+	public synchronized Optional<List<String>> getMembers(String groupEmail) {
+		return findGroupByEmail(groupEmail)
+			.map(group -> group.members.stream()
+				.map(this::emailOf)
+				.collect(Collectors.toList()));
+	}
+
+	public synchronized Optional<String> getName(String groupEmail) {
+		return findGroupByEmail(groupEmail).map(group -> group.name);
+	}
+
+	public synchronized int getGroupCount() {
+		return groups.size();
+	}
+
+	@Override
+	public void close() throws IOException {
+		server.shutdown();
+	}
+
+	private MockResponse handle(RecordedRequest request) {
+		requestCount.incrementAndGet();
+		Optional.ofNullable(request.getHeader("traceparent")).ifPresent(traceparents::add);
+		if (request.getSequenceNumber() == 0) {
+			connectionCount.incrementAndGet();
+		}
+		FaultProfile faults = this.faults;
+		long latency;
+		double draw;
+		synchronized (this) {
+			latency = Math.max(0, faults.latency.nextMillis(random));
+			draw = random.nextDouble();
+		}
+		if (draw < faults.connectionResetRate) {
+			return new MockResponse().setSocketPolicy(SocketPolicy.DISCONNECT_AFTER_REQUEST);
+		}
+		draw -= faults.connectionResetRate;
+		MockResponse response;
+		if (draw < faults.tooManyRequestsRate) {
+			response = new MockResponse().setResponseCode(429).setHeader("Retry-After", "1");
+		} else if (draw - faults.tooManyRequestsRate < faults.errorRate) {
+			response = new MockResponse().setResponseCode(500).setBody("{\"error\":{\"code\":500,\"message\":\"Server Error\"}}");
+		} else {
+			response = route(request);
+		}
+		return response.setHeadersDelay(latency, TimeUnit.MILLISECONDS);
+	}
+
+	private MockResponse route(RecordedRequest request) {
+		HttpUrl url = request.getRequestUrl();
+		List<String> segments = url.pathSegments().stream()
+			.filter(segment -> !segment.isEmpty())
+			.collect(Collectors.toList());
+		if (segments.equals(ImmutableList.of("api", "users")) && request.getMethod().equals("GET")) {
+			count("GET /api/users");
+			try {
+				return listUsers(url.queryParameter("email"), url);
+			} catch (IOException e) {
+				return error(400, e.getMessage());
+			}
+		}
+		if (segments.size() < 3 || !segments.subList(0, 3).equals(ImmutableList.of("group", "api", "groups"))) {
+			return new MockResponse().setResponseCode(404);
+		}
+		List<String> subPath = segments.subList(3, segments.size());
+		String method = request.getMethod();
+		try {
+			if (subPath.isEmpty()) {
+				count(method + " /");
+				switch (method) {
+				case "GET":
+					return listGroups(url.queryParameter("email"), url);
+				case "POST":
+					return createGroup(request.getBody().readUtf8());
+				}
+			} else if (subPath.size() == 1) {
+				count(method + " /{id}");
+				switch (method) {
+				case "GET":
+					return getGroup(subPath.get(0));
+				case "POST":
+					return updateGroup(subPath.get(0), request.getBody().readUtf8());
+				case "DELETE":
+					return deleteGroup(subPath.get(0));
+				}
+			} else if (subPath.size() == 2 && subPath.get(1).equals("members")) {
+				count(method + " /{id}/members");
+				switch (method) {
+				case "GET":
+					return listMembers(subPath.get(0), url);
+				case "POST":
+					if (membershipWriteStatus != 0) {
+						return error(membershipWriteStatus, "Membership writes refused");
+					}
+					return updateMembers(subPath.get(0), url.queryParameter("action"), request.getBody().readUtf8());
+				}
+			}
+		} catch (IOException e) {
+			return error(400, e.getMessage());
+		}
+		return new MockResponse().setResponseCode(404);
+	}
+
+	private void count(String route) {
+		requestCountByRoute.computeIfAbsent(route, key -> new AtomicInteger()).incrementAndGet();
+	}
+
+	private synchronized MockResponse listGroups(String email, HttpUrl url) throws IOException {
+		List<StoredGroup> matching = email == null
+			? new ArrayList<>(groups.values())
+			: findGroupByEmail(email).map(ImmutableList::of).orElse(ImmutableList.of());
+		return page(matching, url, this::toJson);
+	}
+
+	private synchronized MockResponse listUsers(String email, HttpUrl url) throws IOException {
+		List<StoredUser> matching = email == null
+			? new ArrayList<>(users.values())
+			: Optional.ofNullable(userIdByEmail.get(email)).map(users::get).map(ImmutableList::of).orElse(ImmutableList.of());
+		return page(matching, url, this::toJson);
+	}
+
+	private synchronized MockResponse getGroup(String id) throws IOException {
+		StoredGroup group = groups.get(id);
+		if (group == null) {
+			return error(404, "Group not found");
+		}
+		return json(200, toJson(group));
+	}
+
+	@SuppressWarnings("unchecked")
+	private synchronized MockResponse createGroup(String body) throws IOException {
+		Map<String, Object> group = mapper.readValue(body, Map.class);
+		String name = (String) group.get("name");
+		String email = (String) group.get("email");
+		if (name == null || email == null) {
+			return error(400, "name and email are required");
+		}
+		if (findGroupByEmail(email).isPresent()) {
+			return error(409, "Email is already in use");
+		}
+		List<String> members = Optional.ofNullable((List<String>) group.get("members")).orElse(ImmutableList.of());
+		String id = createGroup(name, email, members);
+		return json(201, toJson(groups.get(id)));
+	}
+
+	@SuppressWarnings("unchecked")
+	private synchronized MockResponse updateGroup(String id, String body) throws IOException {
+		StoredGroup group = groups.get(id);
+		if (group == null) {
+			return error(404, "Group not found");
+		}
+		Map<String, Object> update = mapper.readValue(body, Map.class);
+		Optional.ofNullable((String) update.get("name")).ifPresent(name -> group.name = name);
+		String email = (String) update.get("email");
+		if (email != null && !email.equals(group.email)) {
+			if (findGroupByEmail(email).isPresent()) {
+				return error(409, "Email is already in use");
+			}
+			groupIdByEmail.remove(group.email);
+			groupIdByEmail.put(email, id);
+			group.email = email;
+		}
+		return json(200, toJson(group));
+	}
+
+	private synchronized MockResponse deleteGroup(String id) {
+		StoredGroup group = groups.remove(id);
+		if (group == null) {
+			return error(404, "Group not found");
+		}
+		groupIdByEmail.remove(group.email);
+		return new MockResponse().setResponseCode(204);
+	}
+
+	private synchronized MockResponse listMembers(String id, HttpUrl url) throws IOException {
+		StoredGroup group = groups.get(id);
+		if (group == null) {
+			return error(404, "Group not found");
+		}
+		MockResponse response = page(new ArrayList<>(group.members), url, member -> {
+			servedMemberCount.incrementAndGet();
+			return toMemberJson(member);
+		});
+		if (lastModifiedSent) {
+			response.setHeader("Last-Modified", DateTimeFormatter.RFC_1123_DATE_TIME.format(
+					Instant.ofEpochMilli(group.membersModified).atZone(ZoneOffset.UTC)));
+		}
+		return response;
+	}
+
+	@SuppressWarnings("unchecked")
+	private synchronized MockResponse updateMembers(String id, String action, String body) throws IOException {
+		StoredGroup group = groups.get(id);
+		if (group == null) {
+			return error(404, "Group not found");
+		}
+		List<Map<String, String>> members = mapper.readValue(body, List.class);
+		List<StoredMember> resolved = new ArrayList<>();
+		for (Map<String, String> member : members) {
+			String objectType = member.get("objectType");
+			String memberId = member.get("id");
+			if (objectType == null || memberId == null) {
+				return error(400, "objectType and id are required");
+			}
+			postedMembershipCountByType.computeIfAbsent(objectType, key -> new AtomicInteger()).incrementAndGet();
+			if (EMAIL.equals(objectType) && !memberId.contains("@")) {
+				return error(400, "Invalid email: " + memberId);
+			}
+			if (USER.equals(objectType) && !users.containsKey(memberId)) {
+				return error(400, "Unknown user: " + memberId);
+			}
+			resolved.add(EMAIL.equals(objectType) ? resolve(memberId) : new StoredMember(objectType, memberId));
+		}
+		if ("add".equals(action)) {
+			group.members.addAll(resolved);
+		} else if ("remove".equals(action)) {
+			resolved.forEach(group.members::remove);
+		} else {
+			return error(400, "Unknown action: " + action);
+		}
+		group.membersModified = CLOCK.addAndGet(1000);
+		return new MockResponse().setResponseCode(204);
+	}
+
+	private StoredMember resolve(String email) {
+		String userId = userIdByEmail.get(email);
+		if (userId != null) {
+			return new StoredMember(USER, userId);
+		}
+		return findGroupByEmail(email)
+			.map(group -> new StoredMember(GROUP, group.id))
+			.orElse(new StoredMember(EMAIL, email));
+	}
+
+	private Optional<StoredGroup> findGroupByEmail(String email) {
+		return Optional.ofNullable(groupIdByEmail.get(email)).map(groups::get);
+	}
+
+	private String emailOf(StoredMember member) {
+		switch (member.objectType) {
+		case USER:
+			return users.get(member.id).preferredEmail;
+		case GROUP:
+			return Optional.ofNullable(groups.get(member.id)).map(group -> group.email).orElse(member.id);
+		default:
+			return member.id;
+		}
+	}
+
+	private Map<String, Object> toJson(StoredGroup group) {
+		List<Map<String, Object>> members = group.members.stream()
+			.map(member -> ImmutableMap.<String, Object>of("member", ImmutableMap.of("objectType", member.objectType, "id", member.id)))
+			.collect(Collectors.toList());
+		Map<String, Object> json = new LinkedHashMap<>();
+		json.put("id", group.id);
+		json.put("name", group.name);
+		json.put("email", group.email);
+		json.put("creator", "admin");
+		json.put("members", members);
+		return json;
+	}
+
+	private Map<String, Object> toJson(StoredUser user) {
+		Map<String, Object> json = new LinkedHashMap<>();
+		json.put("_id", user.id);
+		json.put("preferredEmail", user.preferredEmail);
+		json.put("emails", user.emails);
+		return json;
+	}
+
+	private Map<String, Object> toMemberJson(StoredMember member) {
+		Map<String, Object> json = new LinkedHashMap<>();
+		json.put("objectType", member.objectType);
+		json.put("id", member.id);
+		switch (member.objectType) {
+		case USER:
+			StoredUser user = users.get(member.id);
+			json.put("member", ImmutableMap.of(
+				"_id", user.id,
+				"preferredEmail", user.preferredEmail,
+				"emails", user.emails));
+			break;
+		case GROUP:
+			StoredGroup group = groups.get(member.id);
+			json.put("member", ImmutableMap.of(
+				"_id", group.id,
+				"name", group.name,
+				"email", group.email));
+			break;
+		default:
+			json.put("member", member.id);
+		}
+		return json;
+	}
+
+	private <T> MockResponse page(List<T> items, HttpUrl url, Function<T, Map<String, Object>> toJson) throws IOException {
+		int offset = Optional.ofNullable(url.queryParameter("offset")).map(Integer::parseInt).orElse(0);
+		int limit = Optional.ofNullable(url.queryParameter("limit")).map(Integer::parseInt).orElse(50);
+		List<Map<String, Object>> page = items.stream()
+			.skip(offset)
+			.limit(limit)
+			.map(toJson)
+			.collect(Collectors.toList());
+		return json(200, page)
+			.setHeader("X-ESN-Items-Count", String.valueOf(items.size()));
+	}
+
+	private MockResponse error(int status, String details) {
+		try {
+			return json(status, ImmutableMap.of("error", ImmutableMap.of("code", status, "details", details)));
+		} catch (IOException e) {
+			return new MockResponse().setResponseCode(status);
+		}
+	}
+
+	private MockResponse json(int status, Object body) throws IOException {
+		return new MockResponse()
+			.setResponseCode(status)
+			.setHeader("Content-Type", "application/json; charset=utf-8")
+			.setBody(mapper.writeValueAsString(body));
+	}
+}
@@ -0,0 +1,100 @@
+/*
+ ****************************************************************************
+ * Ldap Synchronization Connector provides tools to synchronize
+ * electronic identities from a list of data sources including
+ * any database with a JDBC connector, another LDAP directory,
+ * flat files...
+ *
+ *                  ==LICENSE NOTICE==
+ * 
+ * Copyright (c) 2008 - 2019 LSC Project 
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+
+ *    * Redistributions of source code must retain the above copyright
+ * notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ * notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the LSC Project nor the names of its
+ * contributors may be used to endorse or promote products derived from
+ * this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS
+ * IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED
+ * TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A
+ * PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER
+ * OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ *                  ==LICENSE NOTICE==
+ *
+ *               (c) 2008 - 2019 LSC Project
+ *         Raphael Ouazana <rouazana@linagora.com>
+ ****************************************************************************
+ */
+package org.lsc.plugins.connectors.openpaas;
+
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import org.lsc.configuration.PluginConnectionType;
+import org.lsc.configuration.PluginDestinationServiceType;
+import org.lsc.configuration.ServiceType.Connection;
+import org.lsc.configuration.TaskType;
+import org.lsc.configuration.ValuesType;
+import org.lsc.plugins.connectors.openpaas.generated.OpenpaasGroupService;
+import org.lsc.plugins.connectors.openpaas.generated.PerformanceType;
+
+import com.google.common.collect.ImmutableList;
+
+/**
+ * Builds LSC task configurations pointing to a test OpenPaaS server.
+ */
+public class OpenpaasTestTasks {
+
+	public static final String USERNAME = "admin@open-paas.org";
+	public static final String PASSWORD = "secret";
+
+	public static OpenpaasGroupService groupService() {
+		OpenpaasGroupService service = new OpenpaasGroupService();
+		service.setName("openpaas-group-service-dst");
+		ValuesType writableAttributes = new ValuesType();
+		writableAttributes.getString().addAll(ImmutableList.of("name", "email", "members"));
+		service.setWritableAttributes(writableAttributes);
+		PerformanceType performance = new PerformanceType();
+		performance.setVersion(PerformanceSettings.VERSION);
+		service.setPerformance(performance);
+		return service;
+	}
+
+	public static TaskType task(String url) {
+		return task(url, groupService());
+	}
+
+	public static TaskType task(String url, OpenpaasGroupService service) {
+		PluginDestinationServiceType pluginDestinationService = mock(PluginDestinationServiceType.class);
+		PluginConnectionType openpaasConnection = mock(PluginConnectionType.class);
+		Connection connection = mock(Connection.class);
+		TaskType task = mock(TaskType.class);
+
+		when(openpaasConnection.getName()).thenReturn("openpaas");
+		when(openpaasConnection.getUrl()).thenReturn(url);
+		when(openpaasConnection.getUsername()).thenReturn(USERNAME);
+		when(openpaasConnection.getPassword()).thenReturn(PASSWORD);
+		when(connection.getReference()).thenReturn(openpaasConnection);
+		service.setConnection(connection);
+		when(task.getName()).thenReturn("group");
+		when(task.getBean()).thenReturn("org.lsc.beans.SimpleBean");
+		when(task.getPluginDestinationService()).thenReturn(pluginDestinationService);
+		when(pluginDestinationService.getAny()).thenReturn(ImmutableList.of(service));
+		return task;
+	}
+}
@@ -0,0 +1,253 @@
+/*
+ ****************************************************************************
+ * Ldap Synchronization Connector provides tools to synchronize
+ * electronic identities from a list of data sources including
+ * any database with a JDBC connector, another LDAP directory,
+ * flat files...
+ *
+ *                  ==LICENSE NOTICE==
+ * 
+ * Copyright (c) 2008 - 2019 LSC Project 
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+
+ *    * Redistributions of source code must retain the above copyright
+ * notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ * notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the LSC Project nor the names of its
+ * contributors may be used to endorse or promote products derived from
+ * this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS
+ * IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED
+ * TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A
+ * PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER
+ * OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ *                  ==LICENSE NOTICE==
+ *
+ *               (c) 2008 - 2019 LSC Project
+ *         Raphael Ouazana <rouazana@linagora.com>
+ ****************************************************************************
+ */
+package org.lsc.plugins.connectors.openpaas;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import java.util.concurrent.TimeUnit;
+
+import javax.ws.rs.ProcessingException;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.lsc.exception.LscServiceConfigurationException;
+import org.lsc.plugins.connectors.openpaas.RequestMonitor.Category;
+import org.lsc.plugins.connectors.openpaas.generated.OpenpaasGroupService;
+import org.lsc.plugins.connectors.openpaas.generated.OperationTimeoutsType;
+import org.lsc.plugins.connectors.openpaas.generated.OperationType;
+import org.lsc.plugins.connectors.openpaas.generated.TimeoutsType;
+import org.lsc.plugins.connectors.openpaas.generated.TransportType;
+import org.lsc.plugins.connectors.openpaas.generated.WriteModeType;
+
+import com.google.common.collect.ImmutableList;
+
+import okhttp3.Protocol;
+
+public class PerformanceSettingsTest {
+	private static final String GROUP_EMAIL = "group@open-paas.org";
+
+	private OpenpaasStandInServer server;
+	private OpenpaasDao testee;
+
+	@AfterEach
+	void tearDown() throws Exception {
+		if (testee != null) {
+			testee.close();
+		}
+		if (server != null) {
+			server.close();
+		}
+	}
+
+	@Test
+	public void unsupportedVersionShouldBeRejected() {
+		OpenpaasGroupService service = OpenpaasTestTasks.groupService();
+		service.getPerformance().setVersion("2");
+
+		assertThatThrownBy(() -> new OpenpaasGroupDstService(OpenpaasTestTasks.task("http://localhost:1", service)))
+			.isInstanceOf(LscServiceConfigurationException.class)
+			.hasMessageContaining("version");
+	}
+
+	@Test
+	public void h2cShouldBeRejectedForHttpsUrls() {
+		OpenpaasGroupService service = OpenpaasTestTasks.groupService();
+		service.getPerformance().setTransport(TransportType.H2C);
+
+		assertThatThrownBy(() -> new OpenpaasGroupDstService(OpenpaasTestTasks.task("https://localhost:1", service)))
+			.isInstanceOf(LscServiceConfigurationException.class)
+			.hasMessageContaining("H2C");
+	}
+
+	@Test
+	public void nonPositiveValuesShouldBeRejected() {
+		OpenpaasGroupService service = OpenpaasTestTasks.groupService();
+		service.getPerformance().getOperationTimeouts().add(operationTimeouts(OperationType.DELETES, null, 0));
+
+		assertThatThrownBy(() -> PerformanceSettings.of(service))
+			.isInstanceOf(LscServiceConfigurationException.class)
+			.hasMessageContaining("operationTimeouts of DELETES readMillis");
+	}
+
+	@Test
+	public void serviceSettingsShouldBeChecked() {
+		OpenpaasGroupService service = OpenpaasTestTasks.groupService();
+		service.getPerformance().setShardIndex(1);
+
+		assertThatThrownBy(() -> PerformanceSettings.of(service))
+			.isInstanceOf(LscServiceConfigurationException.class)
+			.hasMessageContaining("shardIndex and shardCount");
+
+		service.getPerformance().setShardCount(2);
+		service.getPerformance().setGiantGroupThreshold(0);
+		assertThatThrownBy(() -> PerformanceSettings.of(service))
+			.isInstanceOf(LscServiceConfigurationException.class)
+			.hasMessageContaining("giantGroupThreshold");
+	}
+
+	@Test
+	public void settingsOnlyUsedByTheServiceShouldNotSplitTheClient() throws Exception {
+		OpenpaasGroupService service = OpenpaasTestTasks.groupService();
+		OpenpaasGroupService journaled = OpenpaasTestTasks.groupService();
+		journaled.getPerformance().setJournalFile("openpaas.journal");
+		journaled.getPerformance().setWriteMode(WriteModeType.PLANNED);
+		OpenpaasGroupService upserting = OpenpaasTestTasks.groupService();
+		upserting.getPerformance().setUpsert(true);
+
+		assertThat(PerformanceSettings.of(journaled)).isEqualTo(PerformanceSettings.of(service));
+		assertThat(PerformanceSettings.of(upserting)).isNotEqualTo(PerformanceSettings.of(service));
+	}
+
+	@Test
+	public void connectAndReadTimeoutsShouldBeFiniteByDefault() throws Exception {
+		OpenpaasGroupService service = OpenpaasTestTasks.groupService();
+		TimeoutsType timeouts = new TimeoutsType();
+		timeouts.setDeadlineMillis(120000);
+		service.getPerformance().setTimeouts(timeouts);
+
+		assertThat(PerformanceSettings.of(OpenpaasTestTasks.groupService()).getTimeouts(Category.LOOKUPS).getReadMillis())
+			.isEqualTo(PerformanceSettings.DEFAULT_READ_MILLIS);
+		PerformanceSettings settings = PerformanceSettings.of(service);
+		assertThat(settings.getTimeouts(Category.LISTING).getConnectMillis()).isEqualTo(PerformanceSettings.DEFAULT_CONNECT_MILLIS);
+		assertThat(settings.getTimeouts(Category.LISTING).getReadMillis()).isEqualTo(PerformanceSettings.DEFAULT_READ_MILLIS);
+		assertThat(settings.getTimeouts(Category.LISTING).getDeadlineMillis()).isEqualTo(120000);
+	}
+
+	@Test
+	public void operationTimeoutsShouldDefaultToTheCommonOnes() throws Exception {
+		OpenpaasGroupService service = OpenpaasTestTasks.groupService();
+		TimeoutsType timeouts = new TimeoutsType();
+		timeouts.setConnectMillis(1000);
+		timeouts.setReadMillis(5000);
+		service.getPerformance().setTimeouts(timeouts);
+		service.getPerformance().getOperationTimeouts().add(operationTimeouts(OperationType.LISTING, null, 60000));
+
+		PerformanceSettings settings = PerformanceSettings.of(service);
+
+		assertThat(settings.getTimeouts(Category.LISTING).getConnectMillis()).isEqualTo(1000);
+		assertThat(settings.getTimeouts(Category.LISTING).getReadMillis()).isEqualTo(60000);
+		assertThat(settings.getTimeouts(Category.LOOKUPS).getReadMillis()).isEqualTo(5000);
+		assertThat(settings.getTimeouts(Category.LOOKUPS).getDeadlineMillis()).isNull();
+	}
+
+	@Test
+	public void deadlineShouldOnlyAbortItsOperationOverHttp11() throws Exception {
+		server = new OpenpaasStandInServer().start();
+		deadlineShouldOnlyAbortItsOperation(TransportType.HTTP_1_1);
+	}
+
+	@Test
+	public void deadlineShouldOnlyAbortItsOperationOverH2c() throws Exception {
+		server = new OpenpaasStandInServer(Protocol.H2_PRIOR_KNOWLEDGE).start();
+		deadlineShouldOnlyAbortItsOperation(TransportType.H2C);
+	}
+
+	private void deadlineShouldOnlyAbortItsOperation(TransportType transport) throws Exception {
+		server.createGroup("test group", GROUP_EMAIL, ImmutableList.of());
+		OpenpaasGroupService service = OpenpaasTestTasks.groupService();
+		service.getPerformance().setTransport(transport);
+		OperationTimeoutsType lookups = operationTimeouts(OperationType.LOOKUPS, null, null);
+		lookups.setDeadlineMillis(200);
+		service.getPerformance().getOperationTimeouts().add(lookups);
+		testee = dao(service);
+		server.setLatency(600, TimeUnit.MILLISECONDS);
+
+		assertThat(testee.getGroupList()).hasSize(1);
+		long start = System.nanoTime();
+		assertThatThrownBy(() -> testee.getGroup(GROUP_EMAIL)).isInstanceOf(ProcessingException.class);
+		assertThat(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start)).isLessThan(600);
+	}
+
+	@Test
+	public void operationReadTimeoutShouldApplyOverH2c() throws Exception {
+		server = new OpenpaasStandInServer(Protocol.H2_PRIOR_KNOWLEDGE).start();
+		server.createGroup("test group", GROUP_EMAIL, ImmutableList.of());
+		OpenpaasGroupService service = OpenpaasTestTasks.groupService();
+		service.getPerformance().setTransport(TransportType.H2C);
+		service.getPerformance().getOperationTimeouts().add(operationTimeouts(OperationType.LISTING, null, 200));
+		testee = dao(service);
+		server.setLatency(600, TimeUnit.MILLISECONDS);
+
+		assertThatThrownBy(() -> testee.getGroupList()).isInstanceOf(ProcessingException.class);
+		assertThat(testee.getGroup(GROUP_EMAIL).getEmail()).isEqualTo(GROUP_EMAIL);
+	}
+
+	@Test
+	public void readTimeoutShouldApplyOverHttp11() throws Exception {
+		server = new OpenpaasStandInServer().start();
+		OpenpaasGroupService service = OpenpaasTestTasks.groupService();
+		TimeoutsType timeouts = new TimeoutsType();
+		timeouts.setReadMillis(200);
+		service.getPerformance().setTimeouts(timeouts);
+		testee = dao(service);
+		server.setLatency(600, TimeUnit.MILLISECONDS);
+
+		assertThatThrownBy(() -> testee.getGroupList()).isInstanceOf(ProcessingException.class);
+	}
+
+	@Test
+	public void listsShouldBeFetchedInPages() throws Exception {
+		server = new OpenpaasStandInServer().start();
+		server.createGroup("test group", GROUP_EMAIL, ImmutableList.of("member1@example.com", "member2@example.com",
+				"member3@example.com", "member4@example.com", "member5@example.com"));
+		OpenpaasGroupService service = OpenpaasTestTasks.groupService();
+		service.getPerformance().setPageSize(2);
+		testee = dao(service);
+
+		assertThat(testee.getGroup(GROUP_EMAIL).getMembers()).hasSize(5);
+		assertThat(server.getRequestCount("GET /{id}/members")).isEqualTo(3);
+	}
+
+	private static OperationTimeoutsType operationTimeouts(OperationType operation, Integer connectMillis, Integer readMillis) {
+		OperationTimeoutsType timeouts = new OperationTimeoutsType();
+		timeouts.setOperation(operation);
+		timeouts.setConnectMillis(connectMillis);
+		timeouts.setReadMillis(readMillis);
+		return timeouts;
+	}
+
+	private OpenpaasDao dao(OpenpaasGroupService service) {
+		return new OpenpaasDao(server.getUrl(), OpenpaasTestTasks.USERNAME, OpenpaasTestTasks.PASSWORD, OpenpaasTestTasks.task(server.getUrl(), service), service);
+	}
+}
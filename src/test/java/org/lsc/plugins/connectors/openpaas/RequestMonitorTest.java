@@ -0,0 +1,176 @@
+/*
+ ****************************************************************************
+ * Ldap Synchronization Connector provides tools to synchronize
+ * electronic identities from a list of data sources including
+ * any database with a JDBC connector, another LDAP directory,
+ * flat files...
+ *
+ *                  ==LICENSE NOTICE==
+ * 
+ * Copyright (c) 2008 - 2019 LSC Project 
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+
+ *    * Redistributions of source code must retain the above copyright
+ * notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ * notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the LSC Project nor the names of its
+ * contributors may be used to endorse or promote products derived from
+ * this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS
+ * IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED
+ * TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A
+ * PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER
+ * OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ *                  ==LICENSE NOTICE==
+ *
+ *               (c) 2008 - 2019 LSC Project
+ *         Raphael Ouazana <rouazana@linagora.com>
+ ****************************************************************************
+ */
+package org.lsc.plugins.connectors.openpaas;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.lsc.plugins.connectors.openpaas.RequestMonitor.Category;
+import org.lsc.plugins.connectors.openpaas.RequestMonitor.Timing;
+import org.lsc.plugins.connectors.openpaas.beans.GroupMetadata;
+import org.lsc.plugins.connectors.openpaas.beans.GroupWithMembersEmails;
+import org.lsc.plugins.connectors.openpaas.beans.GroupWithMembersEmails.Membership;
+import org.lsc.plugins.connectors.openpaas.generated.OpenpaasGroupService;
+
+import com.google.common.collect.ImmutableList;
+
+public class RequestMonitorTest {
+	private static final String GROUP_EMAIL = "group@open-paas.org";
+	private static final String NEW_GROUP_EMAIL = "new-group@open-paas.org";
+
+	private OpenpaasStandInServer server;
+	private OpenpaasGroupService service;
+	private OpenpaasDao testee;
+
+	@BeforeEach
+	void setup() throws Exception {
+		server = new OpenpaasStandInServer().start();
+		server.createGroup("test group", GROUP_EMAIL, ImmutableList.of("member1@example.com"));
+		service = OpenpaasTestTasks.groupService();
+	}
+
+	@AfterEach
+	void tearDown() throws Exception {
+		if (testee != null) {
+			testee.close();
+		}
+		server.close();
+	}
+
+	@Test
+	public void timingsShouldBreakRequestsDownPerCategory() {
+		testee = dao();
+		testee.getGroupList();
+		GroupWithMembersEmails group = testee.getGroup(GROUP_EMAIL);
+		testee.createGroup(new GroupWithMembersEmails(null, "new group", NEW_GROUP_EMAIL, ImmutableList.of()));
+		testee.updateGroupMetadata(group.getId(), new GroupMetadata("renamed group", GROUP_EMAIL));
+		testee.addMembers(group.getId(), ImmutableList.of(Membership.fromEmail("member2@example.com")));
+		testee.removeMembers(group.getId(), ImmutableList.of(Membership.fromEmail("member1@example.com")));
+		testee.deleteGroup(NEW_GROUP_EMAIL);
+
+		Map<Category, Timing> timings = testee.getRequestMonitor().getTimings();
+		assertThat(timings.get(Category.LISTING).getCount()).isEqualTo(1);
+		// Group and members of the group, then group to delete
+		assertThat(timings.get(Category.LOOKUPS).getCount()).isEqualTo(3);
+		assertThat(timings.get(Category.CREATES).getCount()).isEqualTo(1);
+		assertThat(timings.get(Category.UPDATES).getCount()).isEqualTo(1);
+		assertThat(timings.get(Category.MEMBERSHIP_WRITES).getCount()).isEqualTo(2);
+		assertThat(timings.get(Category.DELETES).getCount()).isEqualTo(1);
+		assertThat(testee.getRequestMonitor().getInFlightCount()).isZero();
+	}
+
+	@Test
+	public void summaryShouldOnlyCountRequestsSinceTheGivenTimings() {
+		testee = dao();
+		testee.getGroupList();
+		Map<Category, Timing> initialTimings = testee.getRequestMonitor().getTimings();
+		testee.getGroupList();
+		testee.getGroupList();
+
+		assertThat(RequestMonitor.summarize(1500, testee.getRequestMonitor().getTimings(), initialTimings))
+			.startsWith("1500 ms wall-clock, listing: 2 requests in ")
+			.contains("deletes: 0 requests in 0 ms");
+	}
+
+	@Test
+	public void scopedTimingsShouldOnlyCountTheRequestsOfTheirScope() throws Exception {
+		testee = dao();
+		RequestMonitor.Timings listings = new RequestMonitor.Timings();
+		RequestMonitor.Timings lookups = new RequestMonitor.Timings();
+		try (RequestMonitor.Scope scope = RequestMonitor.scope(listings)) {
+			testee.getGroupList();
+			try (RequestMonitor.Scope nested = RequestMonitor.scope(lookups)) {
+				testee.getGroup(GROUP_EMAIL);
+			}
+			// Run in the scope of the thread submitting it
+			ExecutorService executor = Executors.newSingleThreadExecutor();
+			try {
+				executor.submit(RequestMonitor.inCurrentScope(testee::getGroupList)).get();
+			} finally {
+				executor.shutdown();
+			}
+		}
+		testee.getGroupList();
+
+		assertThat(listings.get().get(Category.LISTING).getCount()).isEqualTo(2);
+		assertThat(listings.get().get(Category.LOOKUPS).getCount()).isZero();
+		assertThat(lookups.get().get(Category.LOOKUPS).getCount()).isEqualTo(2);
+		assertThat(lookups.get().get(Category.LISTING).getCount()).isZero();
+		assertThat(testee.getRequestMonitor().getTimings().get(Category.LISTING).getCount()).isEqualTo(3);
+	}
+
+	@Test
+	public void onlyRequestsAboveTheThresholdShouldBeLoggedAsSlow() {
+		service.getPerformance().setSlowRequestMillis(200);
+		testee = dao();
+		testee.getGroupList();
+		server.setLatency(300, TimeUnit.MILLISECONDS);
+		testee.getGroupList();
+
+		assertThat(testee.getRequestMonitor().getSlowCount()).isEqualTo(1);
+	}
+
+	@Test
+	public void requestsInFlightForTooLongShouldBeReported() {
+		service.getPerformance().setStallWarningSeconds(1);
+		testee = dao();
+		testee.getGroupList();
+		server.setLatency(1800, TimeUnit.MILLISECONDS);
+		testee.getGroupList();
+
+		assertThat(testee.getRequestMonitor().getStalledCount()).isEqualTo(1);
+		// Reported requests are logged again once completed
+		assertThat(testee.getRequestMonitor().getSlowCount()).isEqualTo(1);
+	}
+
+	private OpenpaasDao dao() {
+		return new OpenpaasDao(server.getUrl(), OpenpaasTestTasks.USERNAME, OpenpaasTestTasks.PASSWORD, OpenpaasTestTasks.task(server.getUrl(), service), service);
+	}
+}
@@ -0,0 +1,126 @@
+/*
+ ****************************************************************************
+ * Ldap Synchronization Connector provides tools to synchronize
+ * electronic identities from a list of data sources including
+ * any database with a JDBC connector, another LDAP directory,
+ * flat files...
+ *
+ *                  ==LICENSE NOTICE==
+ * 
+ * Copyright (c) 2008 - 2019 LSC Project 
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+
+ *    * Redistributions of source code must retain the above copyright
+ * notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ * notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the LSC Project nor the names of its
+ * contributors may be used to endorse or promote products derived from
+ * this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS
+ * IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED
+ * TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A
+ * PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER
+ * OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ *                  ==LICENSE NOTICE==
+ *
+ *               (c) 2008 - 2019 LSC Project
+ *         Raphael Ouazana <rouazana@linagora.com>
+ ****************************************************************************
+ */
+package org.lsc.plugins.connectors.openpaas;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import org.junit.jupiter.api.Test;
+import org.lsc.LscDatasets;
+import org.lsc.LscModificationType;
+import org.lsc.LscModifications;
+import org.lsc.exception.LscServiceConfigurationException;
+import org.lsc.plugins.connectors.openpaas.generated.OpenpaasGroupService;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Sets;
+
+public class ShardTest {
+
+	@Test
+	public void shardsShouldSplitEmailsWithoutOverlap() throws Exception {
+		Set<String> emails = IntStream.range(0, 3000)
+			.mapToObj(i -> "group" + i + "@open-paas.org")
+			.collect(Collectors.toSet());
+		Set<String> seen = Sets.newHashSet();
+		for (int index = 0; index < 3; index++) {
+			Shard shard = Shard.of(index, 3);
+			Set<String> inShard = emails.stream().filter(shard::contains).collect(Collectors.toSet());
+
+			assertThat(inShard.size()).isBetween(800, 1200);
+			assertThat(Sets.intersection(seen, inShard)).isEmpty();
+			seen.addAll(inShard);
+		}
+		assertThat(seen).isEqualTo(emails);
+	}
+
+	@Test
+	public void shardShouldIgnoreEmailCase() throws Exception {
+		Shard shard = Shard.of(1, 4);
+
+		assertThat(shard.contains("Sales@Open-PaaS.org")).isEqualTo(shard.contains("sales@open-paas.org"));
+	}
+
+	@Test
+	public void shardShouldRequireBothSettings() {
+		assertThatThrownBy(() -> Shard.of(0, null)).isInstanceOf(LscServiceConfigurationException.class);
+		assertThatThrownBy(() -> Shard.of(2, 2)).isInstanceOf(LscServiceConfigurationException.class);
+	}
+
+	@Test
+	public void shardedServicesShouldSplitPivotsAndIgnoreOtherWrites() throws Exception {
+		try (OpenpaasStandInServer server = new OpenpaasStandInServer().start()) {
+			for (int i = 0; i < 50; i++) {
+				server.createGroup("group" + i, "group" + i + "@open-paas.org", ImmutableList.of());
+			}
+			OpenpaasGroupDstService first = new OpenpaasGroupDstService(OpenpaasTestTasks.task(server.getUrl(), shardedService(0)));
+			OpenpaasGroupDstService second = new OpenpaasGroupDstService(OpenpaasTestTasks.task(server.getUrl(), shardedService(1)));
+
+			Map<String, LscDatasets> firstPivots = first.getListPivots();
+			Map<String, LscDatasets> secondPivots = second.getListPivots();
+			assertThat(Sets.intersection(firstPivots.keySet(), secondPivots.keySet())).isEmpty();
+			assertThat(firstPivots.size() + secondPivots.size()).isEqualTo(50);
+
+			String otherShardEmail = secondPivots.keySet().iterator().next();
+			server.resetRequestCounts();
+			LscModifications deletion = new LscModifications(LscModificationType.DELETE_OBJECT);
+			deletion.setMainIdentifer(otherShardEmail);
+			assertThat(first.apply(deletion)).isTrue();
+			assertThat(first.getBean("email", secondPivots.get(otherShardEmail), true)).isNull();
+			assertThat(server.getRequestCount()).isZero();
+			assertThat(server.getGroupCount()).isEqualTo(50);
+		}
+	}
+
+	private static OpenpaasGroupService shardedService(int index) {
+		OpenpaasGroupService service = OpenpaasTestTasks.groupService();
+		service.getPerformance().setShardIndex(index);
+		service.getPerformance().setShardCount(2);
+		return service;
+	}
+}
@@ -0,0 +1,329 @@
+/*
+ ****************************************************************************
+ * Ldap Synchronization Connector provides tools to synchronize
+ * electronic identities from a list of data sources including
+ * any database with a JDBC connector, another LDAP directory,
+ * flat files...
+ *
+ *                  ==LICENSE NOTICE==
+ * 
+ * Copyright (c) 2008 - 2019 LSC Project 
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+
+ *    * Redistributions of source code must retain the above copyright
+ * notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ * notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the LSC Project nor the names of its
+ * contributors may be used to endorse or promote products derived from
+ * this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS
+ * IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED
+ * TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A
+ * PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER
+ * OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ *                  ==LICENSE NOTICE==
+ *
+ *               (c) 2008 - 2019 LSC Project
+ *         Raphael Ouazana <rouazana@linagora.com>
+ ****************************************************************************
+ */
+package org.lsc.plugins.connectors.openpaas;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.lsc.LscDatasetModification;
+import org.lsc.LscDatasetModification.LscDatasetModificationType;
+import org.lsc.LscDatasets;
+import org.lsc.LscModificationType;
+import org.lsc.LscModifications;
+import org.lsc.beans.IBean;
+import org.lsc.exception.LscServiceException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.base.Stopwatch;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+
+/**
+ * Drives full LSC-like sync runs through {@link OpenpaasGroupDstService} against the
+ * in-process stand-in, and reports throughput, per operation latencies, request counts
+ * and peak heap for a cold run (empty destination) and a warm one (mostly in sync).
+ * <p>
+ * Run with: mvn test -Pbenchmark -Dloadtest.groups=100000
+ * <ul>
+ * <li>loadtest.groups: number of synthetic source groups (default 2000)</li>
+ * <li>loadtest.threads: number of LSC synchronization threads (default 8)</li>
+ * <li>loadtest.alpha: exponent of the power law of member counts (default 2.2)</li>
+ * <li>loadtest.maxMembers: largest member count (default 30000)</li>
+ * <li>loadtest.latency: stand-in median latency in milliseconds (default 2)</li>
+ * </ul>
+ */
+@Tag("benchmark")
+public class SyncLoadTest {
+
+	private static final Logger LOGGER = LoggerFactory.getLogger(SyncLoadTest.class);
+
+	private static final int GROUPS = Integer.getInteger("loadtest.groups", 2000);
+	private static final int THREADS = Integer.getInteger("loadtest.threads", 8);
+	private static final double ALPHA = Double.parseDouble(System.getProperty("loadtest.alpha", "2.2"));
+	private static final int MAX_MEMBERS = Integer.getInteger("loadtest.maxMembers", 30000);
+	private static final long LATENCY_MILLIS = Long.getLong("loadtest.latency", 2);
+	private static final long SEED = 42;
+
+	@Test
+	public void coldAndWarmSync() throws Exception {
+		Map<String, List<String>> source = generateSource(new Random(SEED));
+		try (OpenpaasStandInServer server = new OpenpaasStandInServer().start()) {
+			server.setFaults(OpenpaasStandInServer.FaultProfile.builder()
+				.latency(OpenpaasStandInServer.Latency.logNormal(LATENCY_MILLIS, 0.5))
+				.seed(SEED)
+				.build());
+
+			RunReport cold = sync("cold", server, source);
+			LOGGER.info(cold.toString());
+
+			Map<String, List<String>> changedSource = mutate(source, new Random(SEED + 1));
+			RunReport warm = sync("warm", server, changedSource);
+			LOGGER.info(warm.toString());
+		}
+	}
+
+	/**
+	 * Group email to member emails, member counts following a power law.
+	 */
+	private static Map<String, List<String>> generateSource(Random random) {
+		Map<String, List<String>> source = new LinkedHashMap<>();
+		for (int i = 0; i < GROUPS; i++) {
+			source.put("group" + i + "@open-paas.org", members(random, memberCount(random)));
+		}
+		return source;
+	}
+
+	private static int memberCount(Random random) {
+		double pareto = Math.pow(1 - random.nextDouble(), -1 / (ALPHA - 1));
+		return (int) Math.min(MAX_MEMBERS, Math.floor(pareto) - 1);
+	}
+
+	private static List<String> members(Random random, int count) {
+		Set<String> members = new HashSet<>();
+		int population = Math.max(count * 4, 1000);
+		while (members.size() < count) {
+			members.add("user" + random.nextInt(population) + "@example.com");
+		}
+		return new ArrayList<>(members);
+	}
+
+	/**
+	 * Changes the membership of 5% of the groups, removes 1% of them and adds 1% of new ones.
+	 */
+	private static Map<String, List<String>> mutate(Map<String, List<String>> source, Random random) {
+		Map<String, List<String>> changed = new LinkedHashMap<>();
+		for (Map.Entry<String, List<String>> group : source.entrySet()) {
+			double draw = random.nextDouble();
+			if (draw < 0.01) {
+				continue;
+			}
+			List<String> members = group.getValue();
+			if (draw < 0.06) {
+				members = new ArrayList<>(members);
+				if (!members.isEmpty()) {
+					members.remove(random.nextInt(members.size()));
+				}
+				members.add("new" + random.nextInt(GROUPS) + "@example.com");
+			}
+			changed.put(group.getKey(), members);
+		}
+		for (int i = 0; i < GROUPS / 100; i++) {
+			changed.put("new-group" + i + "@open-paas.org", members(random, memberCount(random)));
+		}
+		return changed;
+	}
+
+	/**
+	 * Mimics an LSC synchronization: look up every source entry, create or update it,
+	 * then list the destination and delete what is not in the source any more.
+	 */
+	private RunReport sync(String name, OpenpaasStandInServer server, Map<String, List<String>> source) throws Exception {
+		RunReport report = new RunReport(name);
+		server.resetRequestCounts();
+		resetPeakHeap();
+		OpenpaasGroupDstService service = new OpenpaasGroupDstService(OpenpaasTestTasks.task(server.getUrl()));
+
+		Stopwatch stopwatch = Stopwatch.createStarted();
+		ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+		try {
+			List<Future<?>> results = new ArrayList<>();
+			for (Map.Entry<String, List<String>> entry : source.entrySet()) {
+				results.add(executor.submit(() -> {
+					syncOne(service, report, entry.getKey(), entry.getValue());
+					return null;
+				}));
+			}
+			for (Future<?> result : results) {
+				result.get();
+			}
+			Map<String, LscDatasets> pivots = report.time("getListPivots", service::getListPivots);
+			results.clear();
+			for (String email : pivots.keySet()) {
+				if (!source.containsKey(email)) {
+					results.add(executor.submit(() -> report.time("apply(DELETE)", () -> service.apply(deletion(email)))));
+				}
+			}
+			for (Future<?> result : results) {
+				result.get();
+			}
+		} finally {
+			executor.shutdownNow();
+		}
+		report.finish(stopwatch.elapsed(TimeUnit.MILLISECONDS), server, peakHeap());
+		return report;
+	}
+
+	private void syncOne(OpenpaasGroupDstService service, RunReport report, String email, List<String> members) throws LscServiceException {
+		LscDatasets pivot = new LscDatasets(ImmutableMap.of("email", email));
+		IBean bean = report.time("getBean", () -> service.getBean("email", pivot, true));
+		if (bean == null) {
+			report.time("apply(CREATE)", () -> service.apply(creation(email, members)));
+		} else if (!new HashSet<Object>(members).equals(bean.getDatasetById("members"))) {
+			report.time("apply(UPDATE)", () -> service.apply(update(email, members)));
+		}
+	}
+
+	private static LscModifications creation(String email, List<String> members) {
+		LscModifications modifications = new LscModifications(LscModificationType.CREATE_OBJECT);
+		modifications.setMainIdentifer(email);
+		modifications.setLscAttributeModifications(ImmutableList.of(
+			new LscDatasetModification(LscDatasetModificationType.REPLACE_VALUES, "name", ImmutableList.of(email)),
+			new LscDatasetModification(LscDatasetModificationType.REPLACE_VALUES, "email", ImmutableList.of(email)),
+			new LscDatasetModification(LscDatasetModificationType.REPLACE_VALUES, "members", members)));
+		return modifications;
+	}
+
+	private static LscModifications update(String email, List<String> members) {
+		LscModifications modifications = new LscModifications(LscModificationType.UPDATE_OBJECT);
+		modifications.setMainIdentifer(email);
+		modifications.setLscAttributeModifications(ImmutableList.of(
+			new LscDatasetModification(LscDatasetModificationType.REPLACE_VALUES, "members", members)));
+		return modifications;
+	}
+
+	private static LscModifications deletion(String email) {
+		LscModifications modifications = new LscModifications(LscModificationType.DELETE_OBJECT);
+		modifications.setMainIdentifer(email);
+		return modifications;
+	}
+
+	private static void resetPeakHeap() {
+		System.gc();
+		for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+			pool.resetPeakUsage();
+		}
+	}
+
+	private static long peakHeap() {
+		long peak = 0;
+		for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+			if (pool.getType() == MemoryType.HEAP) {
+				peak += pool.getPeakUsage().getUsed();
+			}
+		}
+		return peak;
+	}
+
+	private interface Operation<T> {
+		T call() throws LscServiceException;
+	}
+
+	private static class RunReport {
+		private final String name;
+		private final Map<String, List<Long>> latencies = new ConcurrentHashMap<>();
+		private long elapsedMillis;
+		private int requests;
+		private Map<String, Integer> requestsByRoute;
+		private long peakHeapBytes;
+
+		private RunReport(String name) {
+			this.name = name;
+		}
+
+		private <T> T time(String operation, Operation<T> call) throws LscServiceException {
+			long start = System.nanoTime();
+			try {
+				return call.call();
+			} finally {
+				List<Long> values = latencies.computeIfAbsent(operation, key -> Collections.synchronizedList(new ArrayList<>()));
+				values.add(System.nanoTime() - start);
+			}
+		}
+
+		private void finish(long elapsedMillis, OpenpaasStandInServer server, long peakHeapBytes) {
+			this.elapsedMillis = elapsedMillis;
+			this.peakHeapBytes = peakHeapBytes;
+			requests = server.getRequestCount();
+			requestsByRoute = new LinkedHashMap<>();
+			for (String route : ImmutableList.of("GET /", "POST /", "GET /{id}/members", "POST /{id}", "POST /{id}/members", "DELETE /{id}")) {
+				requestsByRoute.put(route, server.getRequestCount(route));
+			}
+		}
+
+		@Override
+		public String toString() {
+			StringBuilder report = new StringBuilder();
+			int operations = latencies.values().stream().mapToInt(List::size).sum();
+			report.append(String.format("%n=== %s run: %d groups, %d threads ===%n", name, GROUPS, THREADS));
+			report.append(String.format("wall clock %d ms, %d operations (%.0f ops/s), peak heap %d MB%n",
+				elapsedMillis, operations, operations * 1000.0 / Math.max(1, elapsedMillis), peakHeapBytes / (1024 * 1024)));
+			report.append(String.format("%-16s %8s %10s %10s %10s%n", "operation", "count", "p50 (ms)", "p99 (ms)", "max (ms)"));
+			latencies.forEach((operation, values) -> {
+				List<Long> sorted;
+				synchronized (values) {
+					sorted = new ArrayList<>(values);
+				}
+				Collections.sort(sorted);
+				report.append(String.format("%-16s %8d %10.1f %10.1f %10.1f%n", operation, sorted.size(),
+					percentile(sorted, 0.50), percentile(sorted, 0.99), percentile(sorted, 1)));
+			});
+			report.append(String.format("%d HTTP requests: %s", requests, requestsByRoute));
+			return report.toString();
+		}
+
+		private static double percentile(List<Long> sorted, double percentile) {
+			if (sorted.isEmpty()) {
+				return 0;
+			}
+			int index = (int) Math.ceil(percentile * sorted.size()) - 1;
+			return sorted.get(Math.max(0, index)) / 1e6;
+		}
+	}
+}
@@ -0,0 +1,302 @@
+/*
+ ****************************************************************************
+ * Ldap Synchronization Connector provides tools to synchronize
+ * electronic identities from a list of data sources including
+ * any database with a JDBC connector, another LDAP directory,
+ * flat files...
+ *
+ *                  ==LICENSE NOTICE==
+ * 
+ * Copyright (c) 2008 - 2019 LSC Project 
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+
+ *    * Redistributions of source code must retain the above copyright
+ * notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ * notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the LSC Project nor the names of its
+ * contributors may be used to endorse or promote products derived from
+ * this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS
+ * IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED
+ * TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A
+ * PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER
+ * OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ *                  ==LICENSE NOTICE==
+ *
+ *               (c) 2008 - 2019 LSC Project
+ *         Raphael Ouazana <rouazana@linagora.com>
+ ****************************************************************************
+ */
+package org.lsc.plugins.connectors.openpaas;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.lsc.LscDatasetModification;
+import org.lsc.LscDatasetModification.LscDatasetModificationType;
+import org.lsc.LscDatasets;
+import org.lsc.LscModificationType;
+import org.lsc.LscModifications;
+import org.lsc.exception.LscServiceException;
+import org.lsc.plugins.connectors.openpaas.SyncPlanner.Plan;
+import org.lsc.plugins.connectors.openpaas.generated.OpenpaasGroupService;
+import org.lsc.plugins.connectors.openpaas.generated.WriteModeType;
+
+import com.google.common.collect.ImmutableList;
+
+public class SyncPlannerTest {
+	private static final boolean FROM_SAME_SERVICE = true;
+	private static final String GROUP_EMAIL = "test-group@open-paas.org";
+
+	private OpenpaasStandInServer server;
+	private OpenpaasGroupDstService testee;
+
+	@BeforeEach
+	void setup() throws Exception {
+		server = new OpenpaasStandInServer().start();
+		OpenpaasGroupService service = OpenpaasTestTasks.groupService();
+		service.getPerformance().setWriteMode(WriteModeType.PLANNED);
+		testee = new OpenpaasGroupDstService(OpenpaasTestTasks.task(server.getUrl(), service));
+	}
+
+	@AfterEach
+	void tearDown() throws Exception {
+		testee.close();
+		server.close();
+	}
+
+	@Test
+	public void writesShouldBeSentOnClose() throws Exception {
+		assertThat(testee.apply(creation(GROUP_EMAIL, "test group"))).isTrue();
+		assertThat(server.getGroupCount()).isZero();
+
+		testee.close();
+
+		assertThat(server.getGroupCount()).isEqualTo(1);
+	}
+
+	@Test
+	public void writesShouldBeSentBeforeListingPivots() throws Exception {
+		testee.apply(creation(GROUP_EMAIL, "test group"));
+
+		assertThat(testee.getListPivots()).containsOnlyKeys(GROUP_EMAIL);
+	}
+
+	@Test
+	public void planShouldMergeWritesAndDropNoOps() throws Exception {
+		server.createGroup("unchanged", "unchanged@open-paas.org", ImmutableList.of("member1@example.com"));
+		server.createGroup("test group", GROUP_EMAIL, ImmutableList.of());
+		server.resetRequestCounts();
+
+		testee.apply(update("unchanged@open-paas.org", "members", "member1@example.com"));
+		testee.apply(creation("transient@open-paas.org", "transient"));
+		testee.apply(deletion("transient@open-paas.org"));
+		testee.apply(update(GROUP_EMAIL, "name", "new name"));
+		testee.apply(update(GROUP_EMAIL, "members", "member1@example.com"));
+		testee.close();
+
+		assertThat(server.getRequestCount("POST /")).isZero();
+		assertThat(server.getRequestCount("DELETE /{id}")).isZero();
+		assertThat(server.getRequestCount("POST /{id}")).isEqualTo(1);
+		assertThat(server.getRequestCount("POST /{id}/members")).isEqualTo(1);
+		assertThat(server.getName(GROUP_EMAIL)).contains("new name");
+		assertThat(server.getMembers(GROUP_EMAIL)).contains(ImmutableList.of("member1@example.com"));
+	}
+
+	@Test
+	public void deletionShouldBeSentBeforeTheCreationReusingItsEmail() throws Exception {
+		server.createGroup("old group", GROUP_EMAIL, ImmutableList.of());
+
+		testee.apply(deletion(GROUP_EMAIL));
+		testee.apply(creation(GROUP_EMAIL, "new group"));
+		testee.close();
+
+		assertThat(server.getGroupCount()).isEqualTo(1);
+		assertThat(server.getName(GROUP_EMAIL)).contains("new group");
+	}
+
+	@Test
+	public void deletionFollowedByAnUpdateShouldRecreateTheUpdatedGroup() throws Exception {
+		server.createGroup("test group", GROUP_EMAIL, ImmutableList.of("member1@example.com"));
+		LscDatasets pivot = new LscDatasets();
+		pivot.put("email", GROUP_EMAIL);
+		LscModifications modifications = update(GROUP_EMAIL, "name", "new name");
+		modifications.setDestinationBean(testee.getBean("id", pivot, FROM_SAME_SERVICE));
+
+		testee.apply(deletion(GROUP_EMAIL));
+		testee.apply(modifications);
+		testee.close();
+
+		assertThat(server.getGroupCount()).isEqualTo(1);
+		assertThat(server.getName(GROUP_EMAIL)).contains("new name");
+		assertThat(server.getMembers(GROUP_EMAIL)).contains(ImmutableList.of("member1@example.com"));
+	}
+
+	@Test
+	public void writesShouldBeSentOnceTheyReachTheLimit() throws Exception {
+		OpenpaasGroupService service = OpenpaasTestTasks.groupService();
+		service.getPerformance().setWriteMode(WriteModeType.PLANNED);
+		service.getPerformance().setPlannedWritesLimit(2);
+		try (OpenpaasGroupDstService limited = new OpenpaasGroupDstService(OpenpaasTestTasks.task(server.getUrl(), service))) {
+			limited.apply(creation("group1@open-paas.org", "group1"));
+			assertThat(server.getGroupCount()).isZero();
+
+			limited.apply(creation("group2@open-paas.org", "group2"));
+
+			assertThat(server.getGroupCount()).isEqualTo(2);
+		}
+	}
+
+	@Test
+	public void writesShouldBeSentOnceOldEnoughWithoutClosing() throws Exception {
+		OpenpaasGroupService service = OpenpaasTestTasks.groupService();
+		service.getPerformance().setWriteMode(WriteModeType.PLANNED);
+		service.getPerformance().setPlannedWritesMaxAgeSeconds(1);
+		try (OpenpaasGroupDstService aged = new OpenpaasGroupDstService(OpenpaasTestTasks.task(server.getUrl(), service))) {
+			aged.apply(creation(GROUP_EMAIL, "test group"));
+
+			long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+			while (server.getGroupCount() == 0 && System.nanoTime() < deadline) {
+				Thread.sleep(50);
+			}
+
+			assertThat(server.getGroupCount()).isEqualTo(1);
+		}
+	}
+
+	@Test
+	public void failedWritesShouldBeReplayedAtTheNextFlush() throws Exception {
+		Path file = Files.createTempFile("openpaas-journal", ".jsonl");
+		Files.delete(file);
+		server.createGroup("test group", GROUP_EMAIL, ImmutableList.of());
+		OpenpaasGroupService service = OpenpaasTestTasks.groupService();
+		service.getPerformance().setWriteMode(WriteModeType.PLANNED);
+		service.getPerformance().setJournalFile(file.toString());
+		try (OpenpaasGroupDstService journaled = new OpenpaasGroupDstService(OpenpaasTestTasks.task(server.getUrl(), service))) {
+			server.setMembershipWriteStatus(503);
+			journaled.apply(update(GROUP_EMAIL, "members", "member1@example.com"));
+			assertThatThrownBy(() -> journaled.getListPivots()).isInstanceOf(LscServiceException.class);
+			server.setMembershipWriteStatus(0);
+
+			journaled.getListPivots();
+
+			assertThat(server.getMembers(GROUP_EMAIL)).contains(ImmutableList.of("member1@example.com"));
+		} finally {
+			Files.deleteIfExists(file);
+		}
+	}
+
+	@Test
+	public void dryRunShouldCountRequestsAndSendNoWrite() throws Exception {
+		server.createGroup("test group", GROUP_EMAIL, ImmutableList.of());
+		OpenpaasDao dao = new OpenpaasDao(server.getUrl(), OpenpaasTestTasks.USERNAME, OpenpaasTestTasks.PASSWORD, null);
+		SyncPlanner planner = new SyncPlanner(dao, null, 4, 500, true);
+		List<String> members = IntStream.range(0, 1200)
+			.mapToObj(i -> "member" + i + "@example.com")
+			.collect(Collectors.toList());
+		planner.record(update(GROUP_EMAIL, "members", members.toArray(new String[0])));
+		planner.record(creation("other@open-paas.org", "other group"));
+		server.resetRequestCounts();
+
+		Plan plan = planner.flush();
+
+		assertThat(plan.getRequestCount()).isEqualTo(4);
+		assertThat(plan.getBytes()).isGreaterThan(1200 * "member0@example.com".length());
+		assertThat(server.getRequestCount("POST /")).isZero();
+		assertThat(server.getRequestCount("POST /{id}/members")).isZero();
+		assertThat(server.getMembers(GROUP_EMAIL)).contains(ImmutableList.of());
+	}
+
+	@Test
+	public void failedWritesShouldFailTheNextPivotListing() throws Exception {
+		testee.apply(update("missing@open-paas.org", "name", "new name"));
+
+		assertThatThrownBy(() -> testee.getListPivots())
+			.isInstanceOf(LscServiceException.class)
+			.hasMessageContaining("missing@open-paas.org");
+	}
+
+	@Test
+	public void failedWritesShouldBeLeftPendingInTheJournal() throws Exception {
+		Path file = Files.createTempFile("openpaas-journal", ".jsonl");
+		Files.delete(file);
+		OpenpaasDao dao = new OpenpaasDao(server.getUrl(), OpenpaasTestTasks.USERNAME, OpenpaasTestTasks.PASSWORD, null);
+		try (WriteJournal journal = new WriteJournal(file)) {
+			SyncPlanner planner = new SyncPlanner(dao, journal, 4, 500, false);
+			planner.record(update("missing@open-paas.org", "name", "new name"));
+			planner.record(creation(GROUP_EMAIL, "test group"));
+
+			Plan plan = planner.flush();
+
+			assertThat(plan.getFailedWrites()).containsExactly("missing@open-paas.org");
+			assertThat(journal.getPending()).extracting(WriteJournal.Entry::getMainIdentifier).containsExactly("missing@open-paas.org");
+		} finally {
+			Files.deleteIfExists(file);
+		}
+	}
+
+	@Test
+	public void abandonedWritesShouldBeLeftPendingInTheJournalWithoutBeingSent() throws Exception {
+		Path file = Files.createTempFile("openpaas-journal", ".jsonl");
+		Files.delete(file);
+		OpenpaasDao dao = new OpenpaasDao(server.getUrl(), OpenpaasTestTasks.USERNAME, OpenpaasTestTasks.PASSWORD, null);
+		try (WriteJournal journal = new WriteJournal(file)) {
+			SyncPlanner planner = new SyncPlanner(dao, journal, 4, 500, false);
+			planner.record(creation(GROUP_EMAIL, "test group"));
+
+			assertThat(planner.abandon()).isEqualTo(1);
+
+			assertThat(planner.isEmpty()).isTrue();
+			assertThat(server.getRequestCount("POST /")).isZero();
+			assertThat(journal.getPending()).extracting(WriteJournal.Entry::getMainIdentifier).containsExactly(GROUP_EMAIL);
+		} finally {
+			Files.deleteIfExists(file);
+		}
+	}
+
+	private static LscModifications update(String email, String attribute, String... values) {
+		LscModifications modifications = new LscModifications(LscModificationType.UPDATE_OBJECT);
+		modifications.setMainIdentifer(email);
+		modifications.setLscAttributeModifications(ImmutableList.of(
+			new LscDatasetModification(LscDatasetModificationType.REPLACE_VALUES, attribute, ImmutableList.copyOf(values))));
+		return modifications;
+	}
+
+	private static LscModifications creation(String email, String name) {
+		LscModifications modifications = new LscModifications(LscModificationType.CREATE_OBJECT);
+		modifications.setMainIdentifer(email);
+		modifications.setLscAttributeModifications(ImmutableList.of(
+			new LscDatasetModification(LscDatasetModificationType.REPLACE_VALUES, "name", ImmutableList.of(name)),
+			new LscDatasetModification(LscDatasetModificationType.REPLACE_VALUES, "email", ImmutableList.of(email))));
+		return modifications;
+	}
+
+	private static LscModifications deletion(String email) {
+		LscModifications modifications = new LscModifications(LscModificationType.DELETE_OBJECT);
+		modifications.setMainIdentifer(email);
+		return modifications;
+	}
+}
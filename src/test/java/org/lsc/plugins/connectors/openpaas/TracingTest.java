@@ -0,0 +1,149 @@
+/*
+ ****************************************************************************
+ * Ldap Synchronization Connector provides tools to synchronize
+ * electronic identities from a list of data sources including
+ * any database with a JDBC connector, another LDAP directory,
+ * flat files...
+ *
+ *                  ==LICENSE NOTICE==
+ * 
+ * Copyright (c) 2008 - 2019 LSC Project 
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+
+ *    * Redistributions of source code must retain the above copyright
+ * notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ * notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the LSC Project nor the names of its
+ * contributors may be used to endorse or promote products derived from
+ * this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS
+ * IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED
+ * TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A
+ * PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER
+ * OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ *                  ==LICENSE NOTICE==
+ *
+ *               (c) 2008 - 2019 LSC Project
+ *         Raphael Ouazana <rouazana@linagora.com>
+ ****************************************************************************
+ */
+package org.lsc.plugins.connectors.openpaas;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.List;
+import java.util.stream.Collectors;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.lsc.LscDatasetModification;
+import org.lsc.LscDatasetModification.LscDatasetModificationType;
+import org.lsc.LscDatasets;
+import org.lsc.LscModificationType;
+import org.lsc.LscModifications;
+import org.lsc.plugins.connectors.openpaas.generated.OpenpaasGroupService;
+
+import com.google.common.collect.ImmutableList;
+
+import io.opentelemetry.api.GlobalOpenTelemetry;
+import io.opentelemetry.api.trace.SpanKind;
+import io.opentelemetry.api.trace.propagation.W3CTraceContextPropagator;
+import io.opentelemetry.context.propagation.ContextPropagators;
+import io.opentelemetry.sdk.OpenTelemetrySdk;
+import io.opentelemetry.sdk.testing.exporter.InMemorySpanExporter;
+import io.opentelemetry.sdk.trace.SdkTracerProvider;
+import io.opentelemetry.sdk.trace.data.SpanData;
+import io.opentelemetry.sdk.trace.export.SimpleSpanProcessor;
+
+public class TracingTest {
+	private static final boolean FROM_SAME_SERVICE = true;
+	private static final String GROUP_EMAIL = "group@open-paas.org";
+
+	private OpenpaasStandInServer server;
+	private InMemorySpanExporter exporter;
+	private OpenpaasGroupDstService testee;
+
+	@BeforeEach
+	void setup() throws Exception {
+		server = new OpenpaasStandInServer().start();
+		server.createGroup("test group", GROUP_EMAIL, ImmutableList.of("member1@example.com"));
+		exporter = InMemorySpanExporter.create();
+		GlobalOpenTelemetry.resetForTest();
+		GlobalOpenTelemetry.set(OpenTelemetrySdk.builder()
+			.setTracerProvider(SdkTracerProvider.builder()
+				.addSpanProcessor(SimpleSpanProcessor.create(exporter))
+				.build())
+			.setPropagators(ContextPropagators.create(W3CTraceContextPropagator.getInstance()))
+			.build());
+		OpenpaasGroupService service = OpenpaasTestTasks.groupService();
+		service.getPerformance().setTracing(true);
+		testee = new OpenpaasGroupDstService(OpenpaasTestTasks.task(server.getUrl(), service));
+	}
+
+	@AfterEach
+	void tearDown() throws Exception {
+		testee.close();
+		server.close();
+		GlobalOpenTelemetry.resetForTest();
+	}
+
+	@Test
+	public void getBeanShouldBeTracedWithItsRequests() throws Exception {
+		LscDatasets pivot = new LscDatasets();
+		pivot.put("email", GROUP_EMAIL);
+
+		testee.getBean("id", pivot, FROM_SAME_SERVICE);
+
+		SpanData getBean = span("OpenPaaS getBean");
+		assertThat(getBean.getAttributes().get(ServiceTracing.GROUP_EMAIL_ATTRIBUTE)).isEqualTo(GROUP_EMAIL);
+		List<SpanData> requests = children(getBean);
+		assertThat(requests).hasSize(2);
+		assertThat(requests).allMatch(request -> request.getKind() == SpanKind.CLIENT
+			&& request.getAttributes().get(TracingConnector.HTTP_STATUS) == 200);
+		assertThat(server.getTraceparents())
+			.hasSize(2)
+			.allMatch(traceparent -> traceparent.contains(getBean.getTraceId()));
+	}
+
+	@Test
+	public void applyShouldBeTracedWithItsRequests() throws Exception {
+		LscModifications modifications = new LscModifications(LscModificationType.UPDATE_OBJECT);
+		modifications.setMainIdentifer(GROUP_EMAIL);
+		modifications.setLscAttributeModifications(ImmutableList.of(
+			new LscDatasetModification(LscDatasetModificationType.REPLACE_VALUES, "name", ImmutableList.of("new name"))));
+
+		assertThat(testee.apply(modifications)).isTrue();
+
+		SpanData apply = span("OpenPaaS apply");
+		assertThat(apply.getAttributes().get(ServiceTracing.OPERATION_ATTRIBUTE)).isEqualTo("UPDATE_OBJECT");
+		assertThat(children(apply).stream().map(SpanData::getName).collect(Collectors.toList()))
+			.containsExactly("GET", "GET", "POST");
+	}
+
+	private SpanData span(String name) {
+		return exporter.getFinishedSpanItems().stream()
+			.filter(span -> span.getName().equals(name))
+			.findFirst()
+			.get();
+	}
+
+	private List<SpanData> children(SpanData parent) {
+		return exporter.getFinishedSpanItems().stream()
+			.filter(span -> span.getParentSpanId().equals(parent.getSpanId()))
+			.collect(Collectors.toList());
+	}
+}
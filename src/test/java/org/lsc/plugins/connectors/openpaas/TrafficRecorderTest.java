@@ -0,0 +1,146 @@
+/*
+ ****************************************************************************
+ * Ldap Synchronization Connector provides tools to synchronize
+ * electronic identities from a list of data sources including
+ * any database with a JDBC connector, another LDAP directory,
+ * flat files...
+ *
+ *                  ==LICENSE NOTICE==
+ * 
+ * Copyright (c) 2008 - 2019 LSC Project 
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+
+ *    * Redistributions of source code must retain the above copyright
+ * notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ * notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the LSC Project nor the names of its
+ * contributors may be used to endorse or promote products derived from
+ * this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS
+ * IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED
+ * TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A
+ * PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER
+ * OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ *                  ==LICENSE NOTICE==
+ *
+ *               (c) 2008 - 2019 LSC Project
+ *         Raphael Ouazana <rouazana@linagora.com>
+ ****************************************************************************
+ */
+package org.lsc.plugins.connectors.openpaas;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.lsc.plugins.connectors.openpaas.TrafficReplayServer.Exchange;
+import org.lsc.plugins.connectors.openpaas.beans.GroupItem;
+import org.lsc.plugins.connectors.openpaas.beans.GroupWithMembersEmails;
+import org.lsc.plugins.connectors.openpaas.generated.OpenpaasGroupService;
+
+import com.google.common.base.Stopwatch;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+
+public class TrafficRecorderTest {
+
+	private OpenpaasStandInServer server;
+	private Path recording;
+
+	@BeforeEach
+	void setup() throws Exception {
+		server = new OpenpaasStandInServer().start();
+		recording = Files.createTempFile("openpaas-traffic", ".jsonl.gz");
+	}
+
+	@AfterEach
+	void tearDown() throws Exception {
+		server.close();
+		Files.deleteIfExists(recording);
+	}
+
+	private OpenpaasDao recordingDao() {
+		OpenpaasGroupService settings = OpenpaasTestTasks.groupService();
+		settings.getPerformance().setTrafficRecordFile(recording.toString());
+		return new OpenpaasDao(server.getUrl(), OpenpaasTestTasks.USERNAME, OpenpaasTestTasks.PASSWORD, null, settings);
+	}
+
+	@Test
+	public void recordingShouldContainOneRecordPerExchange() throws Exception {
+		server.createGroup("Sales team", "sales@open-paas.org", ImmutableList.of("john.doe@example.com"));
+		OpenpaasDao dao = recordingDao();
+
+		dao.getGroupList();
+		dao.getGroup("sales@open-paas.org");
+
+		List<Exchange> exchanges = TrafficReplayServer.read(recording);
+		assertThat(exchanges).extracting(exchange -> exchange.method).containsExactly("GET", "GET", "GET");
+		assertThat(exchanges).extracting(exchange -> exchange.status).containsOnly(200);
+	}
+
+	@Test
+	public void recordingShouldNotContainEmailsNorNames() throws Exception {
+		server.createUser("jane.doe@open-paas.org", "jdoe@open-paas.org");
+		server.createGroup("Sales team", "sales@open-paas.org", ImmutableList.of("jane.doe@open-paas.org", "john.doe@example.com"));
+		OpenpaasDao dao = recordingDao();
+
+		dao.getGroupList();
+		GroupWithMembersEmails group = dao.getGroup("sales@open-paas.org");
+		dao.modifyGroup(group.modify(ImmutableMap.of(
+			"name", ImmutableList.of("Sales team 2"),
+			"members", ImmutableList.of("jane.doe@open-paas.org", "other@example.com"))));
+
+		String content = new String(TrafficReplayServer.decompress(recording), StandardCharsets.UTF_8);
+		assertThat(content)
+			.doesNotContain("jane.doe")
+			.doesNotContain("jdoe")
+			.doesNotContain("john.doe")
+			.doesNotContain("other@example.com")
+			.doesNotContain("sales@")
+			.doesNotContain("Sales team")
+			.contains("preferredEmail")
+			.contains("emails");
+	}
+
+	@Test
+	public void replayShouldServeRecordedResponsesWithOriginalTiming() throws Exception {
+		server.createGroup("Sales team", "sales@open-paas.org", ImmutableList.of("john.doe@example.com", "jane.doe@example.com"));
+		server.setLatency(100, TimeUnit.MILLISECONDS);
+		OpenpaasDao dao = recordingDao();
+		String email = dao.getGroupList().get(0).email;
+		dao.getGroup(email);
+
+		try (TrafficReplayServer replay = new TrafficReplayServer(recording).start()) {
+			OpenpaasDao replayDao = new OpenpaasDao(replay.getUrl(), OpenpaasTestTasks.USERNAME, OpenpaasTestTasks.PASSWORD, null);
+
+			Stopwatch stopwatch = Stopwatch.createStarted();
+			List<GroupItem> groups = replayDao.getGroupList();
+			GroupWithMembersEmails group = replayDao.getGroup(groups.get(0).email);
+
+			assertThat(stopwatch.elapsed(TimeUnit.MILLISECONDS)).isGreaterThanOrEqualTo(300);
+			assertThat(groups.get(0).email).isNotEqualTo("sales@open-paas.org").endsWith(".invalid");
+			assertThat(group.getMembers()).hasSize(2);
+			assertThat(replay.getUnmatchedRequestCount()).isZero();
+		}
+	}
+}
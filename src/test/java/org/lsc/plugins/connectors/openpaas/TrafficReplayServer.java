@@ -0,0 +1,206 @@
+/*
+ ****************************************************************************
+ * Ldap Synchronization Connector provides tools to synchronize
+ * electronic identities from a list of data sources including
+ * any database with a JDBC connector, another LDAP directory,
+ * flat files...
+ *
+ *                  ==LICENSE NOTICE==
+ * 
+ * Copyright (c) 2008 - 2019 LSC Project 
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+
+ *    * Redistributions of source code must retain the above copyright
+ * notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ * notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the LSC Project nor the names of its
+ * contributors may be used to endorse or promote products derived from
+ * this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS
+ * IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED
+ * TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A
+ * PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER
+ * OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ *                  ==LICENSE NOTICE==
+ *
+ *               (c) 2008 - 2019 LSC Project
+ *         Raphael Ouazana <rouazana@linagora.com>
+ ****************************************************************************
+ */
+package org.lsc.plugins.connectors.openpaas;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UnsupportedEncodingException;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.GZIPInputStream;
+
+import org.codehaus.jackson.JsonNode;
+import org.codehaus.jackson.map.ObjectMapper;
+
+import com.google.common.collect.ImmutableList;
+
+import okhttp3.HttpUrl;
+import okhttp3.Protocol;
+import okhttp3.mockwebserver.Dispatcher;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+
+/**
+ * Serves the exchanges of a {@link TrafficRecorder} file, each response being delayed
+ * by the duration it originally took. Requests are matched on method, path and query;
+ * identical requests get the recorded responses in order, the last one being repeated.
+ */
+public class TrafficReplayServer implements Closeable {
+
+	private final MockWebServer server;
+	private final Map<String, Deque<Exchange>> exchanges = new HashMap<>();
+	private final AtomicInteger unmatchedRequests = new AtomicInteger();
+
+	public static class Exchange {
+		public final long startMillis;
+		public final long durationMillis;
+		public final String method;
+		public final String uri;
+		public final String requestBody;
+		public final int status;
+		public final Map<String, String> headers = new HashMap<>();
+		public final String responseBody;
+
+		private Exchange(JsonNode record) {
+			startMillis = record.get("t").getLongValue();
+			durationMillis = record.get("d").getLongValue();
+			method = record.get("m").getTextValue();
+			uri = record.get("u").getTextValue();
+			requestBody = record.has("q") ? record.get("q").getTextValue() : null;
+			status = record.get("s").getIntValue();
+			Iterator<Map.Entry<String, JsonNode>> fields = record.get("h").getFields();
+			while (fields.hasNext()) {
+				Map.Entry<String, JsonNode> header = fields.next();
+				headers.put(header.getKey(), header.getValue().getTextValue());
+			}
+			responseBody = record.get("b").getTextValue();
+		}
+
+		private String key() {
+			return TrafficReplayServer.key(method, uri);
+		}
+	}
+
+	private static String key(String method, String uri) {
+		// Recorder and client may not percent-encode the same characters
+		try {
+			return method + " " + URLDecoder.decode(uri, "UTF-8");
+		} catch (UnsupportedEncodingException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	public static List<Exchange> read(Path recording) throws IOException {
+		ObjectMapper mapper = new ObjectMapper();
+		List<Exchange> exchanges = new ArrayList<>();
+		for (String line : new String(decompress(recording), StandardCharsets.UTF_8).split("\n")) {
+			if (!line.isEmpty()) {
+				exchanges.add(new Exchange(mapper.readTree(line)));
+			}
+		}
+		return exchanges;
+	}
+
+	/**
+	 * Reads a recording, including one whose recorder has not been closed yet: such a
+	 * file lacks the gzip trailer but everything flushed before is still readable.
+	 */
+	public static byte[] decompress(Path recording) throws IOException {
+		ByteArrayOutputStream content = new ByteArrayOutputStream();
+		try (InputStream input = new GZIPInputStream(Files.newInputStream(recording))) {
+			byte[] buffer = new byte[1];
+			while (input.read(buffer) > 0) {
+				content.write(buffer[0]);
+			}
+		} catch (EOFException e) {
+			// Missing trailer
+		}
+		return content.toByteArray();
+	}
+
+	public TrafficReplayServer(Path recording) throws IOException {
+		for (Exchange exchange : read(recording)) {
+			exchanges.computeIfAbsent(exchange.key(), key -> new ArrayDeque<>()).add(exchange);
+		}
+		server = new MockWebServer();
+		server.setProtocols(ImmutableList.of(Protocol.HTTP_1_1));
+		server.setDispatcher(new Dispatcher() {
+			@Override
+			public MockResponse dispatch(RecordedRequest request) {
+				return replay(request);
+			}
+		});
+	}
+
+	public TrafficReplayServer start() throws IOException {
+		server.start();
+		return this;
+	}
+
+	public String getUrl() {
+		HttpUrl url = server.url("/");
+		return url.scheme() + "://" + url.host() + ":" + url.port();
+	}
+
+	public int getUnmatchedRequestCount() {
+		return unmatchedRequests.get();
+	}
+
+	private MockResponse replay(RecordedRequest request) {
+		Exchange exchange;
+		synchronized (exchanges) {
+			Deque<Exchange> candidates = exchanges.get(key(request.getMethod(), request.getPath()));
+			if (candidates == null) {
+				unmatchedRequests.incrementAndGet();
+				return new MockResponse().setResponseCode(404);
+			}
+			exchange = candidates.size() > 1 ? candidates.poll() : candidates.peek();
+		}
+		MockResponse response = new MockResponse()
+			.setResponseCode(exchange.status)
+			.setBody(exchange.responseBody)
+			.setHeadersDelay(exchange.durationMillis, TimeUnit.MILLISECONDS);
+		exchange.headers.forEach(response::setHeader);
+		return response;
+	}
+
+	@Override
+	public void close() throws IOException {
+		server.shutdown();
+	}
+}
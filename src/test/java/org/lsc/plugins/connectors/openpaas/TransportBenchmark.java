@@ -0,0 +1,139 @@
+/*
+ ****************************************************************************
+ * Ldap Synchronization Connector provides tools to synchronize
+ * electronic identities from a list of data sources including
+ * any database with a JDBC connector, another LDAP directory,
+ * flat files...
+ *
+ *                  ==LICENSE NOTICE==
+ * 
+ * Copyright (c) 2008 - 2019 LSC Project 
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+
+ *    * Redistributions of source code must retain the above copyright
+ * notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ * notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the LSC Project nor the names of its
+ * contributors may be used to endorse or promote products derived from
+ * this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS
+ * IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED
+ * TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A
+ * PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER
+ * OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ *                  ==LICENSE NOTICE==
+ *
+ *               (c) 2008 - 2019 LSC Project
+ *         Raphael Ouazana <rouazana@linagora.com>
+ ****************************************************************************
+ */
+package org.lsc.plugins.connectors.openpaas;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.lsc.plugins.connectors.openpaas.generated.OpenpaasGroupService;
+import org.lsc.plugins.connectors.openpaas.generated.TransportType;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.base.Stopwatch;
+import com.google.common.collect.ImmutableList;
+
+import okhttp3.Protocol;
+
+/**
+ * Compares the default HTTP/1.1 connector with the HTTP/2 one when many LSC
+ * threads read groups concurrently. Run with: mvn test -Pbenchmark
+ */
+@Tag("benchmark")
+public class TransportBenchmark {
+
+	private static final Logger LOGGER = LoggerFactory.getLogger(TransportBenchmark.class);
+
+	private static final int GROUPS = 200;
+	private static final int MEMBERS = 50;
+	private static final int THREADS = 32;
+	private static final int READS = 4000;
+	private static final long LATENCY_MILLIS = 10;
+
+	@Test
+	public void compareTransports() throws Exception {
+		Result http11 = run(Protocol.HTTP_1_1, TransportType.HTTP_1_1);
+		Result http2 = run(Protocol.H2_PRIOR_KNOWLEDGE, TransportType.H2C);
+		LOGGER.info(String.format("HTTP/1.1: %s", http11));
+		LOGGER.info(String.format("HTTP/2:   %s", http2));
+	}
+
+	private Result run(Protocol protocol, TransportType transport) throws Exception {
+		try (OpenpaasStandInServer server = new OpenpaasStandInServer(protocol).start()) {
+			List<String> emails = new ArrayList<>();
+			for (int i = 0; i < GROUPS; i++) {
+				List<String> members = new ArrayList<>();
+				for (int j = 0; j < MEMBERS; j++) {
+					members.add("member" + j + "@example.com");
+				}
+				String email = "group" + i + "@open-paas.org";
+				server.createGroup("group" + i, email, members);
+				emails.add(email);
+			}
+			server.setLatency(LATENCY_MILLIS, TimeUnit.MILLISECONDS);
+			OpenpaasGroupService settings = OpenpaasTestTasks.groupService();
+			settings.getPerformance().setTransport(transport);
+			OpenpaasDao dao = new OpenpaasDao(server.getUrl(), OpenpaasTestTasks.USERNAME, OpenpaasTestTasks.PASSWORD, null, settings);
+
+			ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+			Stopwatch stopwatch = Stopwatch.createStarted();
+			try {
+				List<Future<?>> results = new ArrayList<>();
+				for (int i = 0; i < READS; i++) {
+					String email = emails.get(i % emails.size());
+					results.add(executor.submit(() -> dao.getGroup(email)));
+				}
+				for (Future<?> result : results) {
+					result.get();
+				}
+			} finally {
+				executor.shutdownNow();
+			}
+			return new Result(stopwatch.elapsed(TimeUnit.MILLISECONDS), server.getRequestCount(), server.getConnectionCount());
+		}
+	}
+
+	private static class Result {
+		private final long elapsedMillis;
+		private final int requests;
+		private final int connections;
+
+		private Result(long elapsedMillis, int requests, int connections) {
+			this.elapsedMillis = elapsedMillis;
+			this.requests = requests;
+			this.connections = connections;
+		}
+
+		@Override
+		public String toString() {
+			return String.format("%d getGroup() in %d ms (%.0f/s), %d requests over %d connections",
+				READS, elapsedMillis, READS * 1000.0 / Math.max(1, elapsedMillis), requests, connections);
+		}
+	}
+}
@@ -0,0 +1,251 @@
+/*
+ ****************************************************************************
+ * Ldap Synchronization Connector provides tools to synchronize
+ * electronic identities from a list of data sources including
+ * any database with a JDBC connector, another LDAP directory,
+ * flat files...
+ *
+ *                  ==LICENSE NOTICE==
+ * 
+ * Copyright (c) 2008 - 2019 LSC Project 
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+
+ *    * Redistributions of source code must retain the above copyright
+ * notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ * notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the LSC Project nor the names of its
+ * contributors may be used to endorse or promote products derived from
+ * this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS
+ * IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED
+ * TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A
+ * PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER
+ * OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ *                  ==LICENSE NOTICE==
+ *
+ *               (c) 2008 - 2019 LSC Project
+ *         Raphael Ouazana <rouazana@linagora.com>
+ ****************************************************************************
+ */
+package org.lsc.plugins.connectors.openpaas;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.codehaus.jackson.JsonNode;
+import org.codehaus.jackson.map.ObjectMapper;
+import org.lsc.LscDatasetModification;
+import org.lsc.LscDatasetModification.LscDatasetModificationType;
+import org.lsc.LscModificationType;
+import org.lsc.LscModifications;
+import org.lsc.plugins.connectors.openpaas.generated.OpenpaasGroupService;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Lists;
+
+public class WriteJournalTest {
+	private static final String GROUP_EMAIL = "test-group@open-paas.org";
+	private static final Map<String, List<Object>> CREATION = ImmutableMap.of(
+		"name", ImmutableList.of("test group"),
+		"email", ImmutableList.of(GROUP_EMAIL),
+		"members", ImmutableList.of("member1@example.com", "member2@example.com"));
+
+	private Path file;
+
+	@BeforeEach
+	void setup() throws Exception {
+		file = Files.createTempFile("openpaas-journal", ".jsonl");
+		Files.delete(file);
+	}
+
+	@AfterEach
+	void tearDown() throws Exception {
+		Files.deleteIfExists(file);
+	}
+
+	@Test
+	public void writesNotMarkedDoneShouldBePendingAfterReopening() throws Exception {
+		try (WriteJournal journal = new WriteJournal(file)) {
+			long first = journal.begin(LscModificationType.CREATE_OBJECT, GROUP_EMAIL, CREATION);
+			journal.begin(LscModificationType.DELETE_OBJECT, "other@open-paas.org", ImmutableMap.of());
+			journal.complete(first);
+		}
+
+		try (WriteJournal journal = new WriteJournal(file)) {
+			assertThat(journal.getPending()).extracting(WriteJournal.Entry::getMainIdentifier).containsExactly("other@open-paas.org");
+			assertThat(journal.getPending().get(0).getOperation()).isEqualTo(LscModificationType.DELETE_OBJECT);
+		}
+	}
+
+	@Test
+	public void tornLastRecordShouldBeIgnored() throws Exception {
+		try (WriteJournal journal = new WriteJournal(file)) {
+			journal.begin(LscModificationType.CREATE_OBJECT, GROUP_EMAIL, CREATION);
+		}
+		Files.write(file, "{\"seq\":2,\"op\":\"DEL".getBytes(StandardCharsets.UTF_8), StandardOpenOption.APPEND);
+
+		try (WriteJournal journal = new WriteJournal(file)) {
+			assertThat(journal.getPending()).hasSize(1);
+			assertThat(journal.getPending().get(0).getItems()).isEqualTo(CREATION);
+		}
+	}
+
+	@Test
+	public void compactShouldOnlyKeepPendingWrites() throws Exception {
+		try (WriteJournal journal = new WriteJournal(file)) {
+			for (int i = 0; i < 10; i++) {
+				journal.complete(journal.begin(LscModificationType.DELETE_OBJECT, "group" + i + "@open-paas.org", ImmutableMap.of()));
+			}
+			long pending = journal.begin(LscModificationType.CREATE_OBJECT, GROUP_EMAIL, CREATION);
+			journal.compact();
+			assertThat(Files.readAllLines(file)).hasSize(1);
+
+			assertThat(journal.begin(LscModificationType.DELETE_OBJECT, GROUP_EMAIL, ImmutableMap.of())).isGreaterThan(pending);
+		}
+		try (WriteJournal journal = new WriteJournal(file)) {
+			assertThat(journal.getPending()).hasSize(2);
+		}
+	}
+
+	@Test
+	public void doneWritesShouldBeCompactedPastTheThreshold() throws Exception {
+		try (WriteJournal journal = new WriteJournal(file, 10)) {
+			journal.begin(LscModificationType.CREATE_OBJECT, GROUP_EMAIL, CREATION);
+			for (int i = 0; i < 100; i++) {
+				journal.complete(journal.begin(LscModificationType.DELETE_OBJECT, "group" + i + "@open-paas.org", ImmutableMap.of()));
+			}
+
+			assertThat(Files.readAllLines(file).size()).isLessThan(12);
+		}
+		try (WriteJournal journal = new WriteJournal(file)) {
+			assertThat(journal.getPending()).extracting(WriteJournal.Entry::getMainIdentifier).containsExactly(GROUP_EMAIL);
+		}
+	}
+
+	@Test
+	public void concurrentWritesShouldAllBeDurable() throws Exception {
+		ExecutorService executor = Executors.newFixedThreadPool(16);
+		try (WriteJournal journal = new WriteJournal(file)) {
+			List<Future<Long>> sequences = Lists.newArrayList();
+			for (int i = 0; i < 400; i++) {
+				String email = "group" + i + "@open-paas.org";
+				sequences.add(executor.submit(() -> journal.begin(LscModificationType.DELETE_OBJECT, email, ImmutableMap.of())));
+			}
+			for (Future<Long> sequence : sequences) {
+				sequence.get();
+			}
+			assertThat(journal.getSyncCount()).isLessThanOrEqualTo(400);
+		} finally {
+			executor.shutdown();
+		}
+
+		try (WriteJournal journal = new WriteJournal(file)) {
+			assertThat(journal.getPending()).hasSize(400);
+		}
+	}
+
+	@Test
+	public void serviceShouldReplayPendingWritesAtStartup() throws Exception {
+		try (OpenpaasStandInServer server = new OpenpaasStandInServer().start()) {
+			server.createGroup("deleted group", "deleted@open-paas.org", ImmutableList.of());
+			try (WriteJournal journal = new WriteJournal(file)) {
+				journal.begin(LscModificationType.CREATE_OBJECT, GROUP_EMAIL, CREATION);
+				journal.begin(LscModificationType.DELETE_OBJECT, "deleted@open-paas.org", ImmutableMap.of());
+				journal.complete(journal.begin(LscModificationType.DELETE_OBJECT, "kept@open-paas.org", ImmutableMap.of()));
+			}
+
+			new OpenpaasGroupDstService(OpenpaasTestTasks.task(server.getUrl(), journaledService()));
+
+			assertThat(server.getMembers(GROUP_EMAIL)).contains(ImmutableList.of("member1@example.com", "member2@example.com"));
+			assertThat(server.getMembers("deleted@open-paas.org")).isEmpty();
+			try (WriteJournal journal = new WriteJournal(file)) {
+				assertThat(journal.getPending()).isEmpty();
+			}
+		}
+	}
+
+	@Test
+	public void replayingAnAppliedCreationShouldNotCreateTheGroupAgain() throws Exception {
+		try (OpenpaasStandInServer server = new OpenpaasStandInServer().start()) {
+			server.createGroup("test group", GROUP_EMAIL, ImmutableList.of("member1@example.com"));
+			try (WriteJournal journal = new WriteJournal(file)) {
+				journal.begin(LscModificationType.CREATE_OBJECT, GROUP_EMAIL, CREATION);
+			}
+
+			new OpenpaasGroupDstService(OpenpaasTestTasks.task(server.getUrl(), journaledService()));
+
+			assertThat(server.getRequestCount("POST /")).isZero();
+			assertThat(server.getGroupCount()).isEqualTo(1);
+			assertThat(server.getMembers(GROUP_EMAIL)).contains(ImmutableList.of("member1@example.com", "member2@example.com"));
+		}
+	}
+
+	@Test
+	public void updatesShouldBeJournaledWithTheirMemberDelta() throws Exception {
+		try (OpenpaasStandInServer server = new OpenpaasStandInServer().start()) {
+			server.createGroup("test group", GROUP_EMAIL, ImmutableList.of("member1@example.com", "member2@example.com", "member3@example.com"));
+			OpenpaasGroupDstService testee = new OpenpaasGroupDstService(OpenpaasTestTasks.task(server.getUrl(), journaledService()));
+			LscModifications modifications = new LscModifications(LscModificationType.UPDATE_OBJECT);
+			modifications.setMainIdentifer(GROUP_EMAIL);
+			modifications.setLscAttributeModifications(ImmutableList.of(new LscDatasetModification(LscDatasetModificationType.REPLACE_VALUES,
+				"members", ImmutableList.of("member1@example.com", "member2@example.com", "member4@example.com"))));
+
+			assertThat(testee.apply(modifications)).isTrue();
+			// The closing compacts the journal
+			JsonNode record = new ObjectMapper().readTree(Files.readAllLines(file).get(0));
+			testee.close();
+
+			assertThat(record.get("items").has("members")).isFalse();
+			assertThat(record.get("items").get(WriteJournal.ADDED_MEMBERS).toString()).isEqualTo("[\"member4@example.com\"]");
+			assertThat(record.get("items").get(WriteJournal.REMOVED_MEMBERS).toString()).isEqualTo("[\"member3@example.com\"]");
+		}
+	}
+
+	@Test
+	public void replayingAMemberDeltaShouldKeepTheOtherMembers() throws Exception {
+		try (OpenpaasStandInServer server = new OpenpaasStandInServer().start()) {
+			server.createGroup("test group", GROUP_EMAIL, ImmutableList.of("member1@example.com", "member2@example.com", "member5@example.com"));
+			try (WriteJournal journal = new WriteJournal(file)) {
+				journal.begin(LscModificationType.UPDATE_OBJECT, GROUP_EMAIL, ImmutableMap.of(
+					WriteJournal.ADDED_MEMBERS, ImmutableList.of("member3@example.com"),
+					WriteJournal.REMOVED_MEMBERS, ImmutableList.of("member1@example.com")));
+			}
+
+			new OpenpaasGroupDstService(OpenpaasTestTasks.task(server.getUrl(), journaledService())).close();
+
+			assertThat(server.getMembers(GROUP_EMAIL).get()).containsOnly("member2@example.com", "member5@example.com", "member3@example.com");
+		}
+	}
+
+	private OpenpaasGroupService journaledService() {
+		OpenpaasGroupService service = OpenpaasTestTasks.groupService();
+		service.getPerformance().setJournalFile(file.toString());
+		return service;
+	}
+}
@@ -0,0 +1,124 @@
+/*
+ ****************************************************************************
+ * Ldap Synchronization Connector provides tools to synchronize
+ * electronic identities from a list of data sources including
+ * any database with a JDBC connector, another LDAP directory,
+ * flat files...
+ *
+ *                  ==LICENSE NOTICE==
+ * 
+ * Copyright (c) 2008 - 2019 LSC Project 
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+
+ *    * Redistributions of source code must retain the above copyright
+ * notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ * notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the LSC Project nor the names of its
+ * contributors may be used to endorse or promote products derived from
+ * this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS
+ * IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED
+ * TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A
+ * PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER
+ * OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ *                  ==LICENSE NOTICE==
+ *
+ *               (c) 2008 - 2019 LSC Project
+ *         Raphael Ouazana <rouazana@linagora.com>
+ ****************************************************************************
+ */
+package org.lsc.plugins.connectors.openpaas;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.lsc.plugins.connectors.openpaas.beans.GroupWithMembersEmails;
+import org.lsc.plugins.connectors.openpaas.jfr.FlightRecorderEvents;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+
+public class FlightRecorderEventsTest {
+	private static final String GROUP_EMAIL = "group@open-paas.org";
+
+	private OpenpaasStandInServer server;
+	private OpenpaasDao dao;
+	private Path recordingFile;
+
+	@BeforeEach
+	void setup() throws Exception {
+		server = new OpenpaasStandInServer().start();
+		server.createGroup("test group", GROUP_EMAIL, ImmutableList.of("member1@example.com", "member2@example.com"));
+		dao = new OpenpaasDao(server.getUrl(), OpenpaasTestTasks.USERNAME, OpenpaasTestTasks.PASSWORD, OpenpaasTestTasks.task(server.getUrl()));
+		recordingFile = Files.createTempFile("openpaas", ".jfr");
+	}
+
+	@AfterEach
+	void tearDown() throws Exception {
+		dao.close();
+		server.close();
+		Files.delete(recordingFile);
+	}
+
+	@Test
+	public void daoCallsAndMembershipDiffsShouldBeRecorded() throws Exception {
+		assertThat(FlightRecorderEvents.isAvailable()).isTrue();
+		try (Recording recording = new Recording()) {
+			recording.enable("org.lsc.openpaas.HttpCall");
+			recording.enable("org.lsc.openpaas.MembershipDiff");
+			recording.start();
+			GroupWithMembersEmails group = dao.getGroup(GROUP_EMAIL);
+			dao.modifyGroup(dao.modify(group, ImmutableMap.of("members", ImmutableList.<Object>of("member2@example.com", "member3@example.com"))));
+			recording.stop();
+			recording.dump(recordingFile);
+		}
+		List<RecordedEvent> events = RecordingFile.readAllEvents(recordingFile);
+
+		List<String> operations = events.stream()
+			.filter(event -> event.getEventType().getName().equals("org.lsc.openpaas.HttpCall"))
+			.map(event -> event.getString("operation") + " " + event.getString("groupEmail") + " " + event.getInt("status"))
+			.collect(Collectors.toList());
+		assertThat(operations).contains(
+			"GET /group/api/groups " + GROUP_EMAIL + " 200",
+			"GET /group/api/groups/{id}/members " + GROUP_EMAIL + " 200",
+			"POST /group/api/groups/{id}/members?action=add " + GROUP_EMAIL + " 204",
+			"POST /group/api/groups/{id}/members?action=remove " + GROUP_EMAIL + " 204");
+		assertThat(events.stream()
+				.filter(event -> event.getEventType().getName().equals("org.lsc.openpaas.HttpCall"))
+				.filter(event -> event.getString("operation").startsWith("POST"))
+				.allMatch(event -> event.getLong("requestBytes") > 0))
+			.isTrue();
+		RecordedEvent diff = events.stream()
+			.filter(event -> event.getEventType().getName().equals("org.lsc.openpaas.MembershipDiff"))
+			.findFirst()
+			.get();
+		assertThat(diff.getString("groupEmail")).isEqualTo(GROUP_EMAIL);
+		assertThat(diff.getInt("groupSize")).isEqualTo(2);
+		assertThat(diff.getInt("adds")).isEqualTo(1);
+		assertThat(diff.getInt("removes")).isEqualTo(1);
+	}
+}